@@ -0,0 +1,341 @@
+package com.example.elasticsearchdemo.esapi;
+
+import com.example.elasticsearchdemo.esapi.entity.EsAggregationResult;
+import com.example.elasticsearchdemo.esapi.entity.EsStringDoubleMap;
+import com.example.elasticsearchdemo.esapi.entity.EsStringLongMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 不再写入的索引（比如按天分的历史索引）的聚合结果本地文件缓存。
+ * 每个结果存成一个文件，路径为 目录/索引名/索引uuid/聚合定义的sha256.agg，读取时通过mmap映射文件直接解析，
+ * 服务重启后也能直接命中，看90天的报表时只有当天的索引需要查询es。
+ * 索引是否不再写入由调用方判断；删除后重建的同名索引uuid不同，不会读到旧索引的结果，写入新uuid的结果时会顺便删掉旧uuid的目录。
+ * 文件先写到临时文件再原子替换，多个进程共用一个目录也不会读到写了一半的文件。
+ * 只有全部分片成功并且没有超时的结果才会写文件，不完整的结果直接返回给调用方，下次仍然查询es。
+ * 索引uuid在内存中缓存uuidTtlMillis，不用每次都查一次settings，期间删除重建的索引要调用invalidate
+ **/
+public class EsAggregationFileCache {
+
+    private static final Logger log = LoggerFactory.getLogger(EsAggregationFileCache.class);
+
+    private static final int MAGIC = 0x45534143;
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".agg";
+    private static final long DEFAULT_UUID_TTL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final EsQueryOperator queryOperator;
+    private final EsIndexOperator indexOperator;
+    private final Path directory;
+    private final Predicate<String> immutableIndex;
+    private final long uuidTtlMillis;
+    private final ConcurrentHashMap<String, CachedUuid> uuids = new ConcurrentHashMap<>();
+
+    /**
+     * @param operator       一般就是EsOperatorImpl
+     * @param directory      缓存目录，不存在时会创建
+     * @param immutableIndex 判断索引是否已经不会再写入，只有返回true的索引才会缓存
+     */
+    public <O extends EsQueryOperator & EsIndexOperator> EsAggregationFileCache(O operator, Path directory, Predicate<String> immutableIndex) {
+        this(operator, operator, directory, immutableIndex);
+    }
+
+    public EsAggregationFileCache(EsQueryOperator queryOperator, EsIndexOperator indexOperator, Path directory, Predicate<String> immutableIndex) {
+        this(queryOperator, indexOperator, directory, immutableIndex, DEFAULT_UUID_TTL_MILLIS);
+    }
+
+    /**
+     * @param queryOperator
+     * @param indexOperator  用来查询索引uuid
+     * @param directory      缓存目录，不存在时会创建
+     * @param immutableIndex 判断索引是否已经不会再写入，只有返回true的索引才会缓存
+     * @param uuidTtlMillis  索引uuid在内存中缓存的时间，超过后重新查询，默认1分钟
+     */
+    public EsAggregationFileCache(EsQueryOperator queryOperator, EsIndexOperator indexOperator, Path directory, Predicate<String> immutableIndex, long uuidTtlMillis) {
+        this.uuidTtlMillis = uuidTtlMillis;
+        this.queryOperator = queryOperator;
+        this.indexOperator = indexOperator;
+        this.directory = directory;
+        this.immutableIndex = immutableIndex;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("创建聚合缓存目录" + directory + "失败", e);
+        }
+    }
+
+    /**
+     * 同EsQueryOperator.searchWithMetricAggregation，不再写入的索引优先读本地文件
+     */
+    public Double searchWithMetricAggregation(String indexName, String sumField) {
+        return cached(indexName, "metric|sum|" + sumField,
+                () -> queryOperator.searchWithMetricAggregationResult(indexName, sumField),
+                (value, out) -> out.writeDouble(value),
+                ByteBuffer::getDouble);
+    }
+
+    /**
+     * 同EsQueryOperator.searchWithBulkAggregation，不再写入的索引优先读本地文件
+     */
+    public EsStringLongMap searchWithBulkAggregation(String indexName, String groupField) {
+        return cached(indexName, "bulk|terms|" + groupField,
+                () -> queryOperator.searchWithBulkAggregationResult(indexName, groupField),
+                (map, out) -> {
+                    out.writeInt(map.size());
+                    for (int i = 0; i < map.size(); i++) {
+                        writeString(map.keyAt(i), out);
+                        out.writeLong(map.longAt(i));
+                    }
+                },
+                buffer -> {
+                    int size = readSize(buffer, Integer.BYTES + Long.BYTES);
+                    EsStringLongMap map = new EsStringLongMap(size);
+                    for (int i = 0; i < size; i++) {
+                        map.putLong(readString(buffer), buffer.getLong());
+                    }
+                    return map;
+                });
+    }
+
+    /**
+     * 同EsQueryOperator.searchWithPipelineAggregation，不再写入的索引优先读本地文件
+     */
+    public EsStringDoubleMap searchWithPipelineAggregation(String indexName, String groupField, String sumField) {
+        return cached(indexName, "pipeline|terms|" + groupField + "|sum|" + sumField,
+                () -> queryOperator.searchWithPipelineAggregationResult(indexName, groupField, sumField),
+                (map, out) -> {
+                    out.writeInt(map.size());
+                    for (int i = 0; i < map.size(); i++) {
+                        writeString(map.keyAt(i), out);
+                        out.writeDouble(map.doubleAt(i));
+                    }
+                },
+                buffer -> {
+                    int size = readSize(buffer, Integer.BYTES + Double.BYTES);
+                    EsStringDoubleMap map = new EsStringDoubleMap(size);
+                    for (int i = 0; i < size; i++) {
+                        map.putDouble(readString(buffer), buffer.getDouble());
+                    }
+                    return map;
+                });
+    }
+
+    /**
+     * 同EsQueryOperator.searchAggregation，不再写入的索引优先读本地文件，queryJson、aggsJson规范化后作为key
+     */
+    public String searchAggregation(String indexName, String queryJson, String aggsJson) {
+        return cached(indexName, "aggs|" + EsQueryNormalizer.normalize(queryJson) + "|" + EsQueryNormalizer.normalize(aggsJson),
+                () -> queryOperator.searchAggregationResult(indexName, queryJson, aggsJson),
+                EsAggregationFileCache::writeString,
+                EsAggregationFileCache::readString);
+    }
+
+    /**
+     * 删除索引的全部缓存文件和内存中的uuid，索引重新开放写入或者被删除重建时调用
+     *
+     * @param indexName
+     */
+    public void invalidate(String indexName) {
+        uuids.remove(indexName);
+        deleteRecursively(directory.resolve(indexName));
+    }
+
+    private <T> T cached(String indexName, String aggKey, Supplier<EsAggregationResult<T>> loader, ValueWriter<T> writer, ValueReader<T> reader) {
+        if (!immutableIndex.test(indexName)) {
+            return valueOf(loader.get());
+        }
+        String uuid = getIndexUuid(indexName);
+        if (uuid == null) {
+            return valueOf(loader.get());
+        }
+        Path file = directory.resolve(indexName).resolve(uuid).resolve(sha256Hex(aggKey) + SUFFIX);
+        T value = read(file, aggKey, reader);
+        if (value != null) {
+            return value;
+        }
+        EsAggregationResult<T> result = loader.get();
+        if (result != null && result.isComplete()) {
+            write(file, aggKey, result.getValue(), writer);
+        } else if (result != null) {
+            log.warn("索引{}的聚合结果不完整，不写入缓存，分片总数:{}，成功:{}，失败:{}，超时:{}", indexName,
+                    result.getTotalShards(), result.getSuccessfulShards(), result.getFailedShards(), result.isTimedOut());
+        }
+        return valueOf(result);
+    }
+
+    private static <T> T valueOf(EsAggregationResult<T> result) {
+        return result == null ? null : result.getValue();
+    }
+
+    /**
+     * 先取内存中没过期的uuid，过期或没有时再查询es，查不到时不缓存
+     */
+    private String getIndexUuid(String indexName) {
+        long now = System.currentTimeMillis();
+        CachedUuid cachedUuid = uuids.get(indexName);
+        if (cachedUuid != null && now < cachedUuid.expireAtMillis) {
+            return cachedUuid.uuid;
+        }
+        String uuid = indexOperator.getIndexUuid(indexName);
+        if (uuid == null) {
+            uuids.remove(indexName);
+        } else {
+            uuids.put(indexName, new CachedUuid(uuid, now + uuidTtlMillis));
+        }
+        return uuid;
+    }
+
+    private <T> T read(Path file, String aggKey, ValueReader<T> reader) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || !aggKey.equals(readString(buffer))) {
+                throw new IllegalStateException("文件头不匹配");
+            }
+            return reader.read(buffer);
+        } catch (IOException | RuntimeException e) {
+            log.error("读取聚合缓存文件{}异常，删除后重新查询", file, e);
+            deleteRecursively(file);
+            return null;
+        }
+    }
+
+    private <T> void write(Path file, String aggKey, T value, ValueWriter<T> writer) {
+        Path uuidDirectory = file.getParent();
+        Path temp = null;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(aggKey, out);
+            writer.write(value, out);
+            out.flush();
+            Files.createDirectories(uuidDirectory);
+            temp = Files.createTempFile(uuidDirectory, "agg", ".tmp");
+            Files.write(temp, bytes.toByteArray());
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            log.error("写入聚合缓存文件{}异常", file, e);
+            if (temp != null) {
+                deleteRecursively(temp);
+            }
+            return;
+        }
+        //同名索引被删除重建过，旧uuid的结果不会再用到
+        try (DirectoryStream<Path> uuidDirectories = Files.newDirectoryStream(uuidDirectory.getParent())) {
+            for (Path other : uuidDirectories) {
+                if (!other.equals(uuidDirectory)) {
+                    deleteRecursively(other);
+                }
+            }
+        } catch (IOException e) {
+            log.error("清理{}下旧的聚合缓存异常", uuidDirectory.getParent(), e);
+        }
+    }
+
+    private static void writeString(String value, DataOutputStream out) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalStateException("字符串长度" + length + "超出文件剩余长度" + buffer.remaining());
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 读取元素个数，按每个元素至少占用的字节数校验，文件损坏时不会按错误的个数分配内存
+     */
+    private static int readSize(ByteBuffer buffer, int minEntryBytes) {
+        int size = buffer.getInt();
+        if (size < 0 || size > buffer.remaining() / minEntryBytes) {
+            throw new IllegalStateException("元素个数" + size + "超出文件剩余长度" + buffer.remaining());
+        }
+        return size;
+    }
+
+    private static String sha256Hex(String value) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static void deleteRecursively(Path path) {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            log.error("删除聚合缓存{}异常", path, e);
+        }
+    }
+
+    private static final class CachedUuid {
+        private final String uuid;
+        private final long expireAtMillis;
+
+        private CachedUuid(String uuid, long expireAtMillis) {
+            this.uuid = uuid;
+            this.expireAtMillis = expireAtMillis;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ValueWriter<T> {
+        void write(T value, DataOutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface ValueReader<T> {
+        T read(ByteBuffer buffer);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.elasticsearchdemo.esapi;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: es异步index和doc增删操作，和EsIndexOperator中的方法一一对应。
+ * 请求失败时future以对应的异常结束，回调默认在es客户端的网络线程中执行
+ **/
+public interface EsAsyncIndexOperator {
+
+    /**
+     * 同existIndex
+     *
+     * @param indexName
+     * @return
+     */
+    CompletableFuture<Boolean> existIndexAsync(String indexName);
+
+    /**
+     * 同createIndex
+     *
+     * @param indexName
+     * @return
+     */
+    CompletableFuture<Boolean> createIndexAsync(String indexName);
+
+    /**
+     * 同createIndexWithSettingsAndMappings
+     *
+     * @param indexName
+     * @param settingJson
+     * @param mappingJson
+     * @return
+     */
+    CompletableFuture<Boolean> createIndexWithSettingsAndMappingsAsync(String indexName, String settingJson, String mappingJson);
+
+    /**
+     * 同deleteIndex
+     *
+     * @param indexName
+     * @return
+     */
+    CompletableFuture<Boolean> deleteIndexAsync(String indexName);
+
+    /**
+     * 同createDoc
+     *
+     * @param indexName
+     * @param docJson
+     * @return
+     */
+    CompletableFuture<Boolean> createDocAsync(String indexName, String docJson);
+
+    /**
+     * 同createDocWithId
+     *
+     * @param indexName
+     * @param docId
+     * @param docJson
+     * @return
+     */
+    CompletableFuture<Boolean> createDocWithIdAsync(String indexName, String docId, String docJson);
+
+    /**
+     * 同createDocWithId，doc通过EsCodecRegistry直接编码成json字节作为source
+     *
+     * @param indexName
+     * @param docId
+     * @param doc
+     * @return
+     */
+    <T> CompletableFuture<Boolean> createDocWithIdAsync(String indexName, String docId, T doc);
+
+    /**
+     * 同updateDoc
+     *
+     * @param indexName
+     * @param docId
+     * @param docJson
+     * @return
+     */
+    CompletableFuture<Boolean> updateDocAsync(String indexName, String docId, String docJson);
+
+    /**
+     * 同upsertDoc
+     *
+     * @param indexName
+     * @param docId
+     * @param docJson
+     * @return
+     */
+    CompletableFuture<Boolean> upsertDocAsync(String indexName, String docId, String docJson);
+
+    /**
+     * 同deleteIndexDoc
+     *
+     * @param indexName
+     * @param docId
+     * @return
+     */
+    CompletableFuture<Boolean> deleteIndexDocAsync(String indexName, String docId);
+}
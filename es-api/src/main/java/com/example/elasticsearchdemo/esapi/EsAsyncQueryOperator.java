@@ -0,0 +1,187 @@
+package com.example.elasticsearchdemo.esapi;
+
+import com.example.elasticsearchdemo.esapi.entity.EsMultiSearchQuery;
+import com.example.elasticsearchdemo.esapi.entity.EsPage;
+import com.example.elasticsearchdemo.esapi.entity.EsSearchResult;
+import com.example.elasticsearchdemo.esapi.entity.EsStringDoubleMap;
+import com.example.elasticsearchdemo.esapi.entity.EsStringLongMap;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: es异步查询操作，和EsQueryOperator中的方法一一对应，返回CompletableFuture，调用方线程不用阻塞等待es响应。
+ * 请求失败时future以对应的异常结束（同步方法是打日志返回null）。
+ * 回调默认在es客户端的网络线程中执行，回调里有耗时或阻塞操作时，用thenApplyAsync等方法切换到自己的线程池，不要占着es客户端的线程。
+ * 需要串行多次请求的跳页查询（searchPageByScroll、searchPageBySearchAfter按pageNum跳页）没有异步版本，用基于游标的版本代替
+ **/
+public interface EsAsyncQueryOperator {
+
+    /**
+     * 同getDoc
+     *
+     * @param indexName
+     * @param docId
+     * @return doc不存在时结果为null
+     */
+    CompletableFuture<String> getDocAsync(String indexName, String docId);
+
+    /**
+     * 同getDoc，_source字节直接反序列化成type
+     *
+     * @param indexName
+     * @param docId
+     * @param type
+     * @return doc不存在时结果为null
+     */
+    <T> CompletableFuture<T> getDocAsync(String indexName, String docId, Class<T> type);
+
+    /**
+     * 同mulitGet
+     *
+     * @param indexName
+     * @param docIds
+     * @return 和docIds一一对应，不存在的doc对应位置为null
+     */
+    CompletableFuture<List<String>> mulitGetAsync(String indexName, String... docIds);
+
+    /**
+     * 同mulitGet，_source字节直接反序列化成type
+     *
+     * @param indexName
+     * @param type
+     * @param docIds
+     * @return 和docIds一一对应，不存在的doc对应位置为null
+     */
+    <T> CompletableFuture<List<T>> mulitGetAsync(String indexName, Class<T> type, String... docIds);
+
+    /**
+     * 同search
+     *
+     * @param indexName
+     * @param queryJson
+     * @return
+     */
+    CompletableFuture<EsSearchResult<String>> searchAsync(String indexName, String queryJson);
+
+    /**
+     * 同search，每个hit的_source字节直接反序列化成type
+     *
+     * @param indexName
+     * @param queryJson
+     * @param type
+     * @return
+     */
+    <T> CompletableFuture<EsSearchResult<T>> searchAsync(String indexName, String queryJson, Class<T> type);
+
+    /**
+     * 同searchPageByFromSize，from+size超过1w时直接抛异常
+     *
+     * @param indexName
+     * @param queryJson
+     * @param pageNum
+     * @param pageSize
+     * @return
+     */
+    CompletableFuture<EsSearchResult<String>> searchPageByFromSizeAsync(String indexName, String queryJson, int pageNum, int pageSize);
+
+    /**
+     * 同基于游标的searchPageByScroll，最后一页返回时异步clear掉scroll快照
+     *
+     * @param indexName
+     * @param queryJson
+     * @param scrollMinute 快照留存时间
+     * @param pageSize
+     * @param cursor       上一页返回的nextCursor，为空表示第一页
+     * @return
+     */
+    CompletableFuture<EsPage<String>> searchPageByScrollAsync(String indexName, String queryJson, int scrollMinute, int pageSize, String cursor);
+
+    /**
+     * 同基于游标的searchPageBySearchAfter
+     *
+     * @param indexName
+     * @param queryJson
+     * @param pageSize
+     * @param cursor    上一页返回的nextCursor，为空表示第一页
+     * @return
+     */
+    CompletableFuture<EsPage<String>> searchPageBySearchAfterAsync(String indexName, String queryJson, int pageSize, String cursor);
+
+    /**
+     * 同searchWithSort
+     *
+     * @param indexName
+     * @param queryJson
+     * @param sortFields
+     * @return
+     */
+    CompletableFuture<EsSearchResult<String>> searchWithSortAsync(String indexName, String queryJson, String... sortFields);
+
+    /**
+     * 同searchWithMetricAggregation
+     *
+     * @param indexName
+     * @param sumField
+     * @return
+     */
+    CompletableFuture<Double> searchWithMetricAggregationAsync(String indexName, String sumField);
+
+    /**
+     * 同searchWithBulkAggregation
+     *
+     * @param indexName
+     * @param groupField
+     * @return
+     */
+    CompletableFuture<EsStringLongMap> searchWithBulkAggregationAsync(String indexName, String groupField);
+
+    /**
+     * 同searchWithPipelineAggregation
+     *
+     * @param indexName
+     * @param groupField
+     * @param sumField
+     * @return
+     */
+    CompletableFuture<EsStringDoubleMap> searchWithPipelineAggregationAsync(String indexName, String groupField, String sumField);
+
+    /**
+     * 同searchAggregation
+     *
+     * @param indexName
+     * @param queryJson
+     * @param aggsJson
+     * @return
+     */
+    CompletableFuture<String> searchAggregationAsync(String indexName, String queryJson, String aggsJson);
+
+    /**
+     * 同multiSearchWithIndexNames
+     *
+     * @param indexNames
+     * @return
+     */
+    CompletableFuture<EsSearchResult<String>> multiSearchWithIndexNamesAsync(String... indexNames);
+
+    /**
+     * 同multiSearchWithQueryJsons
+     *
+     * @param indexName
+     * @param queryJson
+     * @return
+     */
+    CompletableFuture<List<EsSearchResult<String>>> multiSearchWithQueryJsonsAsync(String indexName, String... queryJson);
+
+    /**
+     * 同multiSearch，各个批次都返回后完成，批次失败时对应位置为null，future不会异常结束
+     *
+     * @param indexName
+     * @param queries
+     * @return
+     */
+    CompletableFuture<List<EsSearchResult<String>>> multiSearchAsync(String indexName, List<EsMultiSearchQuery> queries);
+}
@@ -0,0 +1,97 @@
+package com.example.elasticsearchdemo.esapi;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 带缓冲的bulk写入器。add的请求先在客户端攒批，按EsBulkConfig中的条件flush到es，
+ * 大批量导入时比一条条createDoc/upsertDoc少了大量网络往返。用完一定要close，否则缓冲区里剩余的请求会丢失
+ **/
+public interface EsBulkProcessor extends Closeable {
+
+    /**
+     * 新增或覆盖doc
+     *
+     * @param indexName
+     * @param docId     为空时由es自动生成docId
+     * @param docJson
+     * @return
+     */
+    EsBulkProcessor index(String indexName, String docId, String docJson);
+
+    /**
+     * 新增或覆盖doc，doc通过EsCodecRegistry直接编码成json字节作为source
+     *
+     * @param indexName
+     * @param docId     为空时由es自动生成docId
+     * @param doc
+     * @return
+     */
+    <T> EsBulkProcessor index(String indexName, String docId, T doc);
+
+    /**
+     * 更新指定doc，doc不存在时该条失败
+     *
+     * @param indexName
+     * @param docId
+     * @param docJson
+     * @return
+     */
+    EsBulkProcessor update(String indexName, String docId, String docJson);
+
+    /**
+     * 更新或新增
+     *
+     * @param indexName
+     * @param docId
+     * @param docJson
+     * @return
+     */
+    EsBulkProcessor upsert(String indexName, String docId, String docJson);
+
+    /**
+     * 删除doc
+     *
+     * @param indexName
+     * @param docId
+     * @return
+     */
+    EsBulkProcessor delete(String indexName, String docId);
+
+    /**
+     * 立即把缓冲区中的请求发出去（异步，不等待返回）
+     */
+    void flush();
+
+    /**
+     * flush剩余请求并等待在途的bulk全部返回
+     *
+     * @param timeout
+     * @param unit
+     * @return 超时前全部完成返回true
+     */
+    boolean awaitClose(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * 已成功的action数
+     *
+     * @return
+     */
+    long getSucceededActions();
+
+    /**
+     * 已失败的action数（包括整个bulk请求失败的情况）
+     *
+     * @return
+     */
+    long getFailedActions();
+
+    /**
+     * flush剩余请求后关闭，不等待在途的bulk返回
+     */
+    @Override
+    void close();
+}
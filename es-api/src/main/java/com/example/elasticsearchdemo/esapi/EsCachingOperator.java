@@ -0,0 +1,819 @@
+package com.example.elasticsearchdemo.esapi;
+
+import com.example.elasticsearchdemo.esapi.config.EsBulkConfig;
+import com.example.elasticsearchdemo.esapi.config.EsCacheConfig;
+import com.example.elasticsearchdemo.esapi.entity.EsAggregationResult;
+import com.example.elasticsearchdemo.esapi.entity.EsMultiSearchQuery;
+import com.example.elasticsearchdemo.esapi.entity.EsPage;
+import com.example.elasticsearchdemo.esapi.entity.EsProjection;
+import com.example.elasticsearchdemo.esapi.entity.EsSearchResult;
+import com.example.elasticsearchdemo.esapi.entity.EsStringDoubleMap;
+import com.example.elasticsearchdemo.esapi.entity.EsStringLongMap;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 带本地缓存的操作类，包装在EsOperatorImpl外面使用。
+ * getDoc、mulitGet按(index, docId)读穿缓存，通过本操作类执行的updateDoc、upsertDoc、deleteIndexDoc、deleteIndex等写操作会失效对应的缓存；
+ * 其他客户端的写入感知不到，只能等ttl过期。不存在的doc不缓存，带type、projection的重载不走缓存。
+ * search、searchPageByFromSize、searchWithSort、multiSearchWithIndexNames、multiSearchWithQueryJsons的结果按
+ * (索引, 规范化后的queryJson, 分页, 排序)缓存，索引有写入时该索引上的查询缓存全部失效。
+ * 查询的索引名没有通过本操作类写入过时（别名、通配符、还没写过的索引）按全局代数判断，任意索引有写入都会失效，
+ * 因为别名指向哪些索引在本地不知道；同一个索引既通过别名又通过真实索引名写入时，按真实索引名查询感知不到通过别名的写入，只能等ttl过期。
+ * es的写入要等refresh之后才能被查到，写入后refreshIntervalMillis内的查询结果不缓存，避免把写入前的结果缓存到ttl过期。其余方法直接委托给被包装的操作类
+ **/
+public class EsCachingOperator implements EsQueryOperator, EsIndexOperator {
+
+    private final EsQueryOperator queryOperator;
+    private final EsIndexOperator indexOperator;
+    /**
+     * doc缓存，配置的大小小于等于0时为null
+     */
+    private final Cache<DocKey, String> docCache;
+    /**
+     * 失效代数，每次失效缓存都加1。读穿时先记下代数再去es读，回填前代数变了说明期间有写入，读到的可能是旧值，不回填
+     */
+    private volatile long docGeneration;
+    private final Object invalidationLock = new Object();
+    /**
+     * 查询结果缓存，配置的大小小于等于0时为null
+     */
+    private final Cache<String, QueryResult> queryCache;
+    /**
+     * 每个索引的写入代数和最后写入时间，只在索引有写入时创建，查询缓存中记录的代数和当前不一致就说明缓存已过期
+     */
+    private final Map<String, IndexWrite> indexWrites = new ConcurrentHashMap<>();
+    /**
+     * 全局写入代数和最后写入时间，任意索引有写入时更新，用于带通配符的索引名和没有写入过的索引名（可能是别名）
+     */
+    private final IndexWrite globalWrite = new IndexWrite();
+    private final long refreshIntervalMillis;
+
+    /**
+     * @param operator    一般就是EsOperatorImpl
+     * @param cacheConfig
+     */
+    public <O extends EsQueryOperator & EsIndexOperator> EsCachingOperator(O operator, EsCacheConfig cacheConfig) {
+        this(operator, operator, cacheConfig);
+    }
+
+    public EsCachingOperator(EsQueryOperator queryOperator, EsIndexOperator indexOperator, EsCacheConfig cacheConfig) {
+        this.queryOperator = queryOperator;
+        this.indexOperator = indexOperator;
+        this.refreshIntervalMillis = cacheConfig.getRefreshIntervalMillis();
+        this.docCache = cacheConfig.getDocMaxWeightBytes() <= 0 ? null : Caffeine.newBuilder()
+                .maximumWeight(cacheConfig.getDocMaxWeightBytes())
+                .weigher((DocKey key, String doc) -> key.weight() + doc.length() * 2)
+                .expireAfterWrite(cacheConfig.getDocTtlMillis(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        this.queryCache = cacheConfig.getQueryMaxWeightBytes() <= 0 ? null : Caffeine.newBuilder()
+                .maximumWeight(cacheConfig.getQueryMaxWeightBytes())
+                .weigher((String key, QueryResult result) -> key.length() * 2 + result.weight)
+                .expireAfterWrite(cacheConfig.getQueryTtlMillis(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * doc缓存的命中率等统计
+     *
+     * @return 没有开启doc缓存时返回null
+     */
+    public CacheStats getDocCacheStats() {
+        return docCache == null ? null : docCache.stats();
+    }
+
+    /**
+     * 查询结果缓存的命中率等统计
+     *
+     * @return 没有开启查询缓存时返回null
+     */
+    public CacheStats getQueryCacheStats() {
+        return queryCache == null ? null : queryCache.stats();
+    }
+
+    /**
+     * 失效某个索引的全部缓存（doc和查询结果）。其他客户端写入时可以通过mq等通知调用这里，不用等ttl过期
+     *
+     * @param indexName
+     */
+    public void invalidateIndex(String indexName) {
+        invalidateDocs(indexName);
+        bumpIndexGeneration(indexName);
+    }
+
+    @Override
+    public String getDoc(String indexName, String docId) {
+        if (docCache == null) {
+            return queryOperator.getDoc(indexName, docId);
+        }
+        DocKey docKey = new DocKey(indexName, docId);
+        String doc = docCache.getIfPresent(docKey);
+        if (doc != null) {
+            return doc;
+        }
+        long generation = docGeneration;
+        doc = queryOperator.getDoc(indexName, docId);
+        if (doc != null) {
+            Map<DocKey, String> loaded = new HashMap<>(2);
+            loaded.put(docKey, doc);
+            putIfNotInvalidated(generation, loaded);
+        }
+        return doc;
+    }
+
+    @Override
+    public <T> T getDoc(String indexName, String docId, Class<T> type) {
+        return queryOperator.getDoc(indexName, docId, type);
+    }
+
+    @Override
+    public String getDoc(String indexName, String docId, EsProjection projection) {
+        return queryOperator.getDoc(indexName, docId, projection);
+    }
+
+    @Override
+    public List<String> mulitGet(String indexName, String... docIds) {
+        if (docCache == null || docIds.length <= 0) {
+            return queryOperator.mulitGet(indexName, docIds);
+        }
+        List<DocKey> docKeys = new ArrayList<>(docIds.length);
+        for (String docId : docIds) {
+            docKeys.add(new DocKey(indexName, docId));
+        }
+        Map<DocKey, String> cached = docCache.getAllPresent(docKeys);
+        Map<DocKey, String> loaded = new HashMap<>();
+        if (cached.size() < docKeys.size()) {
+            //只去es读没有命中的doc，同一个docId只读一次
+            Set<String> missDocIds = new LinkedHashSet<>();
+            for (DocKey docKey : docKeys) {
+                if (!cached.containsKey(docKey)) {
+                    missDocIds.add(docKey.docId);
+                }
+            }
+            long generation = docGeneration;
+            String[] missDocIdArray = missDocIds.toArray(new String[0]);
+            List<String> missDocs = queryOperator.mulitGet(indexName, missDocIdArray);
+            if (missDocs == null) {
+                return null;
+            }
+            for (int i = 0; i < missDocIdArray.length; i++) {
+                if (missDocs.get(i) != null) {
+                    loaded.put(new DocKey(indexName, missDocIdArray[i]), missDocs.get(i));
+                }
+            }
+            putIfNotInvalidated(generation, loaded);
+        }
+        List<String> res = new ArrayList<>(docKeys.size());
+        for (DocKey docKey : docKeys) {
+            String doc = cached.get(docKey);
+            res.add(doc != null ? doc : loaded.get(docKey));
+        }
+        return res;
+    }
+
+    @Override
+    public <T> List<T> mulitGet(String indexName, Class<T> type, String... docIds) {
+        return queryOperator.mulitGet(indexName, type, docIds);
+    }
+
+    @Override
+    public List<String> mulitGet(String indexName, EsProjection projection, String... docIds) {
+        return queryOperator.mulitGet(indexName, projection, docIds);
+    }
+
+    @Override
+    public EsSearchResult<String> search(String indexName, String queryJson) {
+        return cachedQuery(new String[]{indexName}, "search", queryJson, "", () -> queryOperator.search(indexName, queryJson));
+    }
+
+    @Override
+    public <T> EsSearchResult<T> search(String indexName, String queryJson, Class<T> type) {
+        return queryOperator.search(indexName, queryJson, type);
+    }
+
+    @Override
+    public EsSearchResult<String> search(String indexName, String queryJson, EsProjection projection) {
+        return queryOperator.search(indexName, queryJson, projection);
+    }
+
+    @Override
+    public EsHitBuffer searchAsBuffer(String indexName, String queryJson) {
+        return queryOperator.searchAsBuffer(indexName, queryJson);
+    }
+
+    @Override
+    public EsSearchResult<String> searchPageByFromSize(String indexName, String queryJson, int pageNum, int pageSize) {
+        return cachedQuery(new String[]{indexName}, "fromSize", queryJson, pageNum + ":" + pageSize,
+                () -> queryOperator.searchPageByFromSize(indexName, queryJson, pageNum, pageSize));
+    }
+
+    @Override
+    public EsSearchResult<String> searchPageByFromSize(String indexName, String queryJson, int pageNum, int pageSize, EsProjection projection) {
+        return queryOperator.searchPageByFromSize(indexName, queryJson, pageNum, pageSize, projection);
+    }
+
+    @Override
+    public EsSearchResult<String> searchPageByScroll(String indexName, String queryJson, int scrollMinute, int pageNum, int pageSize) {
+        return queryOperator.searchPageByScroll(indexName, queryJson, scrollMinute, pageNum, pageSize);
+    }
+
+    @Override
+    public EsSearchResult<String> searchPageByScroll(String indexName, String queryJson, int scrollMinute, int pageNum, int pageSize, EsProjection projection) {
+        return queryOperator.searchPageByScroll(indexName, queryJson, scrollMinute, pageNum, pageSize, projection);
+    }
+
+    @Override
+    public EsPage<String> searchPageByScroll(String indexName, String queryJson, int scrollMinute, int pageSize, String cursor) {
+        return queryOperator.searchPageByScroll(indexName, queryJson, scrollMinute, pageSize, cursor);
+    }
+
+    @Override
+    public EsPage<String> searchPageByScroll(String indexName, String queryJson, int scrollMinute, int pageSize, String cursor, EsProjection projection) {
+        return queryOperator.searchPageByScroll(indexName, queryJson, scrollMinute, pageSize, cursor, projection);
+    }
+
+    @Override
+    public EsHitIterator<String> searchByScroll(String indexName, String queryJson, int scrollMinute, int pageSize) {
+        return queryOperator.searchByScroll(indexName, queryJson, scrollMinute, pageSize);
+    }
+
+    @Override
+    public EsHitIterator<String> searchByScroll(String indexName, String queryJson, int scrollMinute, int pageSize, int prefetchPages) {
+        return queryOperator.searchByScroll(indexName, queryJson, scrollMinute, pageSize, prefetchPages);
+    }
+
+    @Override
+    public EsHitIterator<String> searchByScroll(String indexName, String queryJson, int scrollMinute, int pageSize, int prefetchPages, EsProjection projection) {
+        return queryOperator.searchByScroll(indexName, queryJson, scrollMinute, pageSize, prefetchPages, projection);
+    }
+
+    @Override
+    public EsHitIterator<String> searchBySlicedScroll(String indexName, String queryJson, int scrollMinute, int pageSize, int slices, Executor executor) {
+        return queryOperator.searchBySlicedScroll(indexName, queryJson, scrollMinute, pageSize, slices, executor);
+    }
+
+    @Override
+    public boolean exportBySlicedScroll(String indexName, String queryJson, int scrollMinute, int pageSize, int slices, Executor executor, BiConsumer<Integer, List<String>> sliceSink) {
+        return queryOperator.exportBySlicedScroll(indexName, queryJson, scrollMinute, pageSize, slices, executor, sliceSink);
+    }
+
+    @Override
+    public EsSearchResult<String> searchPageBySearchAfter(String indexName, String queryJson, int pageNum, int pageSize) {
+        return queryOperator.searchPageBySearchAfter(indexName, queryJson, pageNum, pageSize);
+    }
+
+    @Override
+    public EsSearchResult<String> searchPageBySearchAfter(String indexName, String queryJson, int pageNum, int pageSize, EsProjection projection) {
+        return queryOperator.searchPageBySearchAfter(indexName, queryJson, pageNum, pageSize, projection);
+    }
+
+    @Override
+    public <T> EsHitIterator<T> searchByScroll(String indexName, String queryJson, int scrollMinute, int pageSize, Class<T> type) {
+        return queryOperator.searchByScroll(indexName, queryJson, scrollMinute, pageSize, type);
+    }
+
+    @Override
+    public EsPage<String> searchPageBySearchAfter(String indexName, String queryJson, int pageSize, String cursor) {
+        return queryOperator.searchPageBySearchAfter(indexName, queryJson, pageSize, cursor);
+    }
+
+    @Override
+    public EsPage<String> searchPageBySearchAfter(String indexName, String queryJson, int pageSize, String cursor, EsProjection projection) {
+        return queryOperator.searchPageBySearchAfter(indexName, queryJson, pageSize, cursor, projection);
+    }
+
+    @Override
+    public EsHitIterator<String> searchBySearchAfter(String indexName, String queryJson, int pageSize) {
+        return queryOperator.searchBySearchAfter(indexName, queryJson, pageSize);
+    }
+
+    @Override
+    public EsHitIterator<String> searchBySearchAfter(String indexName, String queryJson, int pageSize, int prefetchPages) {
+        return queryOperator.searchBySearchAfter(indexName, queryJson, pageSize, prefetchPages);
+    }
+
+    @Override
+    public EsHitIterator<String> searchBySearchAfter(String indexName, String queryJson, int pageSize, int prefetchPages, EsProjection projection) {
+        return queryOperator.searchBySearchAfter(indexName, queryJson, pageSize, prefetchPages, projection);
+    }
+
+    @Override
+    public EsSearchResult<String> searchWithSort(String indexName, String queryJson, String... sortFields) {
+        return cachedQuery(new String[]{indexName}, "sort", queryJson, String.join(",", sortFields),
+                () -> queryOperator.searchWithSort(indexName, queryJson, sortFields));
+    }
+
+    @Override
+    public EsSearchResult<String> searchWithSort(String indexName, String queryJson, EsProjection projection, String... sortFields) {
+        return queryOperator.searchWithSort(indexName, queryJson, projection, sortFields);
+    }
+
+    @Override
+    public Double searchWithMetricAggregation(String indexName, String sumField) {
+        return queryOperator.searchWithMetricAggregation(indexName, sumField);
+    }
+
+    @Override
+    public EsStringLongMap searchWithBulkAggregation(String indexName, String groupField) {
+        return queryOperator.searchWithBulkAggregation(indexName, groupField);
+    }
+
+    @Override
+    public boolean searchWithCompositeAggregation(String indexName, String queryJson, String groupField, int pageSize, ObjLongConsumer<String> bucketSink) {
+        return queryOperator.searchWithCompositeAggregation(indexName, queryJson, groupField, pageSize, bucketSink);
+    }
+
+    @Override
+    public EsStringDoubleMap searchWithPipelineAggregation(String indexName, String groupField, String sumField) {
+        return queryOperator.searchWithPipelineAggregation(indexName, groupField, sumField);
+    }
+
+    @Override
+    public String searchAggregation(String indexName, String queryJson, String aggsJson) {
+        return queryOperator.searchAggregation(indexName, queryJson, aggsJson);
+    }
+
+    @Override
+    public EsAggregationResult<Double> searchWithMetricAggregationResult(String indexName, String sumField) {
+        return queryOperator.searchWithMetricAggregationResult(indexName, sumField);
+    }
+
+    @Override
+    public EsAggregationResult<EsStringLongMap> searchWithBulkAggregationResult(String indexName, String groupField) {
+        return queryOperator.searchWithBulkAggregationResult(indexName, groupField);
+    }
+
+    @Override
+    public EsAggregationResult<EsStringDoubleMap> searchWithPipelineAggregationResult(String indexName, String groupField, String sumField) {
+        return queryOperator.searchWithPipelineAggregationResult(indexName, groupField, sumField);
+    }
+
+    @Override
+    public EsAggregationResult<String> searchAggregationResult(String indexName, String queryJson, String aggsJson) {
+        return queryOperator.searchAggregationResult(indexName, queryJson, aggsJson);
+    }
+
+    @Override
+    public EsSearchResult<String> multiSearchWithIndexNames(String... indexNames) {
+        return cachedQuery(indexNames, "indices", null, "", () -> queryOperator.multiSearchWithIndexNames(indexNames));
+    }
+
+    @Override
+    public List<EsSearchResult<String>> multiSearchWithQueryJsons(String indexName, String... queryJson) {
+        if (queryCache == null || queryJson.length <= 0) {
+            return queryOperator.multiSearchWithQueryJsons(indexName, queryJson);
+        }
+        String[] indexNames = {indexName};
+        List<EsSearchResult<String>> res = new ArrayList<>(queryJson.length);
+        List<Integer> missIndexes = new ArrayList<>();
+        for (int i = 0; i < queryJson.length; i++) {
+            EsSearchResult<String> hits = getCachedQuery(queryKey(indexNames, "msearch", queryJson[i], ""));
+            res.add(hits);
+            if (hits == null) {
+                missIndexes.add(i);
+            }
+        }
+        if (missIndexes.isEmpty()) {
+            return res;
+        }
+        //只把没命中的查询交给msearch
+        boolean cacheable = !recentlyWritten(indexNames);
+        long[] generations = snapshotGenerations(indexNames);
+        String[] missQueryJsons = new String[missIndexes.size()];
+        for (int i = 0; i < missQueryJsons.length; i++) {
+            missQueryJsons[i] = queryJson[missIndexes.get(i)];
+        }
+        List<EsSearchResult<String>> missResults = queryOperator.multiSearchWithQueryJsons(indexName, missQueryJsons);
+        if (missResults == null) {
+            return null;
+        }
+        for (int i = 0; i < missQueryJsons.length; i++) {
+            EsSearchResult<String> hits = missResults.get(i);
+            res.set(missIndexes.get(i), hits == null ? null : new EsSearchResult<>(hits));
+            if (cacheable) {
+                putCachedQuery(queryKey(indexNames, "msearch", missQueryJsons[i], ""), indexNames, generations, hits);
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public List<EsSearchResult<String>> multiSearch(String indexName, List<EsMultiSearchQuery> queries) {
+        return queryOperator.multiSearch(indexName, queries);
+    }
+
+    @Override
+    public void asyncSearch(String indexName) {
+        queryOperator.asyncSearch(indexName);
+    }
+
+    @Override
+    public boolean existIndex(String indexName) {
+        return indexOperator.existIndex(indexName);
+    }
+
+    @Override
+    public boolean createIndex(String indexName) {
+        return indexOperator.createIndex(indexName);
+    }
+
+    @Override
+    public boolean createIndexWithSettingsAndMappings(String indexName, String settingJson, String mappingJson) {
+        return indexOperator.createIndexWithSettingsAndMappings(indexName, settingJson, mappingJson);
+    }
+
+    @Override
+    public boolean deleteIndex(String indexName) {
+        try {
+            return indexOperator.deleteIndex(indexName);
+        } finally {
+            invalidateIndex(indexName);
+        }
+    }
+
+    @Override
+    public String getIndexUuid(String indexName) {
+        return indexOperator.getIndexUuid(indexName);
+    }
+
+    @Override
+    public boolean createDoc(String indexName, String docJson) {
+        try {
+            return indexOperator.createDoc(indexName, docJson);
+        } finally {
+            //自动生成的docId不会有旧的doc缓存，只失效查询缓存
+            bumpIndexGeneration(indexName);
+        }
+    }
+
+    @Override
+    public boolean createDocWithId(String indexName, String docId, String docJson) {
+        try {
+            return indexOperator.createDocWithId(indexName, docId, docJson);
+        } finally {
+            invalidateDoc(indexName, docId);
+        }
+    }
+
+    @Override
+    public <T> boolean createDocWithId(String indexName, String docId, T doc) {
+        try {
+            return indexOperator.createDocWithId(indexName, docId, doc);
+        } finally {
+            invalidateDoc(indexName, docId);
+        }
+    }
+
+    @Override
+    public boolean updateDoc(String indexName, String docId, String docJson) {
+        try {
+            return indexOperator.updateDoc(indexName, docId, docJson);
+        } finally {
+            invalidateDoc(indexName, docId);
+        }
+    }
+
+    @Override
+    public boolean upsertDoc(String indexName, String docId, String docJson) {
+        try {
+            return indexOperator.upsertDoc(indexName, docId, docJson);
+        } finally {
+            invalidateDoc(indexName, docId);
+        }
+    }
+
+    @Override
+    public boolean deleteIndexDoc(String indexName, String docId) {
+        try {
+            return indexOperator.deleteIndexDoc(indexName, docId);
+        } finally {
+            invalidateDoc(indexName, docId);
+        }
+    }
+
+    @Override
+    public EsBulkProcessor bulkRequest(EsBulkConfig bulkConfig) {
+        //bulk返回时再失效一次，在拷贝上挂回调，调用方自己的回调照常执行
+        EsBulkConfig invalidatingConfig = new EsBulkConfig(bulkConfig);
+        BiConsumer<String, String> afterBulkAction = bulkConfig.getAfterBulkAction();
+        invalidatingConfig.setAfterBulkAction(afterBulkAction == null ? this::invalidateDoc : (indexName, docId) -> {
+            invalidateDoc(indexName, docId);
+            afterBulkAction.accept(indexName, docId);
+        });
+        return new InvalidatingBulkProcessor(indexOperator.bulkRequest(invalidatingConfig));
+    }
+
+    /**
+     * 写操作完成后调用（不管成功与否），保证之后的读能看到这次写入
+     *
+     * @param indexName
+     * @param docId
+     */
+    private void invalidateDoc(String indexName, String docId) {
+        bumpIndexGeneration(indexName);
+        if (docCache == null || docId == null) {
+            return;
+        }
+        synchronized (invalidationLock) {
+            docGeneration++;
+            docCache.invalidate(new DocKey(indexName, docId));
+        }
+    }
+
+    private void invalidateDocs(String indexName) {
+        if (docCache == null) {
+            return;
+        }
+        synchronized (invalidationLock) {
+            docGeneration++;
+            docCache.asMap().keySet().removeIf(docKey -> docKey.indexName.equals(indexName));
+        }
+    }
+
+    /**
+     * 读穿回填，和失效互斥：读es期间发生过失效就放弃回填，避免把写入前读到的旧值放进缓存
+     *
+     * @param generation 读es之前记下的失效代数
+     * @param docs
+     */
+    private void putIfNotInvalidated(long generation, Map<DocKey, String> docs) {
+        if (docs.isEmpty()) {
+            return;
+        }
+        synchronized (invalidationLock) {
+            if (docGeneration == generation) {
+                docCache.putAll(docs);
+            }
+        }
+    }
+
+    /**
+     * 查询结果读穿缓存
+     *
+     * @param indexNames
+     * @param kind       查询方法，不同方法的默认size等不一样，结果不能混用
+     * @param queryJson
+     * @param paging     分页、排序等其他参数
+     * @param loader     缓存没命中时实际执行的查询
+     * @return
+     */
+    private EsSearchResult<String> cachedQuery(String[] indexNames, String kind, String queryJson, String paging, Supplier<EsSearchResult<String>> loader) {
+        if (queryCache == null) {
+            return loader.get();
+        }
+        String key = queryKey(indexNames, kind, queryJson, paging);
+        EsSearchResult<String> hits = getCachedQuery(key);
+        if (hits != null) {
+            return hits;
+        }
+        if (recentlyWritten(indexNames)) {
+            return loader.get();
+        }
+        //先记下代数再去es查，查询期间有写入的话代数对不上，这次的结果之后不会被命中
+        long[] generations = snapshotGenerations(indexNames);
+        hits = loader.get();
+        putCachedQuery(key, indexNames, generations, hits);
+        return hits == null ? null : new EsSearchResult<>(hits);
+    }
+
+    private static String queryKey(String[] indexNames, String kind, String queryJson, String paging) {
+        return kind + '\n' + String.join(",", indexNames) + '\n' + EsQueryNormalizer.normalize(queryJson) + '\n' + paging;
+    }
+
+    /**
+     * @param key
+     * @return 没命中或者缓存已过期返回null，否则返回结果的拷贝，调用方可以随意修改
+     */
+    private EsSearchResult<String> getCachedQuery(String key) {
+        QueryResult result = queryCache.getIfPresent(key);
+        if (result == null) {
+            return null;
+        }
+        if (!Arrays.equals(result.generations, snapshotGenerations(result.indexNames))) {
+            queryCache.asMap().remove(key, result);
+            return null;
+        }
+        return new EsSearchResult<>(result.hits);
+    }
+
+    private void putCachedQuery(String key, String[] indexNames, long[] generations, EsSearchResult<String> hits) {
+        if (hits == null) {
+            return;
+        }
+        queryCache.put(key, new QueryResult(indexNames, generations, hits));
+    }
+
+    /**
+     * 记下各个索引当前的写入代数，最后一位是全局代数（有带通配符或者没写入过的索引名时才有意义）。
+     * 没写入过的索引之后有了写入，对应位置从0变成大于0，和之前记下的代数对不上
+     *
+     * @param indexNames
+     * @return
+     */
+    private long[] snapshotGenerations(String[] indexNames) {
+        long[] generations = new long[indexNames.length + 1];
+        boolean global = false;
+        for (int i = 0; i < indexNames.length; i++) {
+            //没有写入过的索引代数为0，查询不会往map里加条目
+            IndexWrite indexWrite = indexWrites.get(indexNames[i]);
+            generations[i] = indexWrite == null ? 0 : indexWrite.generation.get();
+            global |= indexWrite == null || isWildcard(indexNames[i]);
+        }
+        generations[indexNames.length] = global ? globalWrite.generation.get() : 0;
+        return generations;
+    }
+
+    /**
+     * 查询的索引在refreshIntervalMillis内有过写入时es可能还没refresh，查到的是写入前的结果，这样的结果不缓存。
+     * 要在执行查询前判断，查询开始时已经过了refresh间隔的写入一定能被查到
+     *
+     * @param indexNames
+     * @return
+     */
+    private boolean recentlyWritten(String[] indexNames) {
+        if (refreshIntervalMillis <= 0) {
+            return false;
+        }
+        long refreshedBefore = System.currentTimeMillis() - refreshIntervalMillis;
+        for (String indexName : indexNames) {
+            IndexWrite indexWrite = isWildcard(indexName) ? globalWrite : indexWrites.getOrDefault(indexName, globalWrite);
+            if (indexWrite.lastWriteMillis > refreshedBefore) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isWildcard(String indexName) {
+        return StringUtils.containsAny(indexName, '*', ',') || "_all".equals(indexName);
+    }
+
+    private void bumpIndexGeneration(String indexName) {
+        if (queryCache == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        IndexWrite indexWrite = indexWrites.computeIfAbsent(indexName, name -> new IndexWrite());
+        indexWrite.lastWriteMillis = now;
+        indexWrite.generation.incrementAndGet();
+        globalWrite.lastWriteMillis = now;
+        globalWrite.generation.incrementAndGet();
+    }
+
+    private static final class IndexWrite {
+        private final AtomicLong generation = new AtomicLong();
+        private volatile long lastWriteMillis;
+    }
+
+    /**
+     * 缓存的查询结果，hits是拷贝出来的，不会再被修改
+     */
+    private static final class QueryResult {
+        private final String[] indexNames;
+        private final long[] generations;
+        private final EsSearchResult<String> hits;
+        private final int weight;
+
+        private QueryResult(String[] indexNames, long[] generations, EsSearchResult<String> hits) {
+            this.indexNames = indexNames;
+            this.generations = generations;
+            this.hits = new EsSearchResult<>(hits);
+            int weight = 64;
+            for (String hit : hits) {
+                weight += 16 + (hit == null ? 0 : hit.length() * 2);
+            }
+            this.weight = weight;
+        }
+    }
+
+    private static final class DocKey {
+        private final String indexName;
+        private final String docId;
+
+        private DocKey(String indexName, String docId) {
+            this.indexName = indexName;
+            this.docId = docId;
+        }
+
+        /**
+         * 估算key占用的字节数
+         *
+         * @return
+         */
+        private int weight() {
+            return 32 + (indexName.length() + docId.length()) * 2;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof DocKey)) {
+                return false;
+            }
+            DocKey docKey = (DocKey) o;
+            return indexName.equals(docKey.indexName) && docId.equals(docKey.docId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(indexName, docId);
+        }
+    }
+
+    /**
+     * bulk写入时按doc失效缓存。bulk是异步攒批发送的，add时失效一次，bulk返回时（afterBulkAction回调）再失效一次：
+     * add到真正写入es之间的读会把旧值回填进去，要靠第二次失效清掉，refresh间隔也从bulk返回时开始算
+     */
+    private class InvalidatingBulkProcessor implements EsBulkProcessor {
+        private final EsBulkProcessor delegate;
+
+        private InvalidatingBulkProcessor(EsBulkProcessor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public EsBulkProcessor index(String indexName, String docId, String docJson) {
+            delegate.index(indexName, docId, docJson);
+            invalidateDoc(indexName, docId);
+            return this;
+        }
+
+        @Override
+        public <T> EsBulkProcessor index(String indexName, String docId, T doc) {
+            delegate.index(indexName, docId, doc);
+            invalidateDoc(indexName, docId);
+            return this;
+        }
+
+        @Override
+        public EsBulkProcessor update(String indexName, String docId, String docJson) {
+            delegate.update(indexName, docId, docJson);
+            invalidateDoc(indexName, docId);
+            return this;
+        }
+
+        @Override
+        public EsBulkProcessor upsert(String indexName, String docId, String docJson) {
+            delegate.upsert(indexName, docId, docJson);
+            invalidateDoc(indexName, docId);
+            return this;
+        }
+
+        @Override
+        public EsBulkProcessor delete(String indexName, String docId) {
+            delegate.delete(indexName, docId);
+            invalidateDoc(indexName, docId);
+            return this;
+        }
+
+        @Override
+        public void flush() {
+            delegate.flush();
+        }
+
+        @Override
+        public boolean awaitClose(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitClose(timeout, unit);
+        }
+
+        @Override
+        public long getSucceededActions() {
+            return delegate.getSucceededActions();
+        }
+
+        @Override
+        public long getFailedActions() {
+            return delegate.getFailedActions();
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.elasticsearchdemo.esapi;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 堆外内存块池。分配DirectByteBuffer比较慢，而且只有在buffer对象被GC时才会释放堆外内存，
+ * 所以固定大小的块用完后放回池子复用，池子满了多出来的块直接丢弃等GC回收
+ **/
+public class EsDirectBufferPool {
+
+    /**
+     * 默认池，块大小1MB，最多缓存64块
+     */
+    public static final EsDirectBufferPool DEFAULT = new EsDirectBufferPool(1024 * 1024, 64);
+
+    private final int chunkSize;
+    private final int maxPooledChunks;
+    private final Queue<ByteBuffer> pooled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledCount = new AtomicInteger();
+
+    /**
+     * @param chunkSize       每块的字节数
+     * @param maxPooledChunks 池中最多缓存多少块
+     */
+    public EsDirectBufferPool(int chunkSize, int maxPooledChunks) {
+        this.chunkSize = chunkSize;
+        this.maxPooledChunks = maxPooledChunks;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * 取一块，position为0，limit为chunkSize
+     *
+     * @return
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer chunk = pooled.poll();
+        if (chunk == null) {
+            return ByteBuffer.allocateDirect(chunkSize);
+        }
+        pooledCount.decrementAndGet();
+        //转成Buffer调用，jdk9以上编译时ByteBuffer.clear的返回值变了，在jdk8上运行会NoSuchMethodError
+        ((Buffer) chunk).clear();
+        return chunk;
+    }
+
+    /**
+     * 归还，只接受本池大小的块。归还后调用方不能再使用这块内存
+     *
+     * @param chunk
+     */
+    public void release(ByteBuffer chunk) {
+        if (chunk == null || !chunk.isDirect() || chunk.capacity() != chunkSize) {
+            return;
+        }
+        if (pooledCount.incrementAndGet() > maxPooledChunks) {
+            pooledCount.decrementAndGet();
+            return;
+        }
+        pooled.offer(chunk);
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.elasticsearchdemo.esapi;
+
+import com.alibaba.fastjson.JSONObject;
+import com.example.elasticsearchdemo.esapi.entity.EsPartialAggregation;
+import com.example.elasticsearchdemo.esapi.entity.EsPartialAggregationSpec;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 多索引（比如按天分的索引）扇出聚合：每个索引（或用逗号分隔的一组索引）单独发一次聚合请求，在executor上并行执行，
+ * 得到可合并的partial后在客户端合并。每个请求只落到对应索引的分片上，协调节点的压力分散到多个请求里；
+ * 分组通过composite聚合全部拉取，不受terms默认10个分组的限制。
+ * 已经不会再写入的索引（比如关闭写入的历史索引）可以缓存它的partial，下次只需要查询还在写入的索引
+ **/
+public class EsFanOutAggregator {
+
+    private static final Logger log = LoggerFactory.getLogger(EsFanOutAggregator.class);
+
+    /**
+     * 每个索引上取0.5%、1.5%...99.5%共100个分位点，每个点代表1%的数据，当成带权重的点放到t-digest里
+     */
+    private static final String PERCENTS;
+
+    static {
+        StringBuilder percents = new StringBuilder("[");
+        for (int i = 0; i < 100; i++) {
+            percents.append(i == 0 ? "" : ",").append(i).append(".5");
+        }
+        PERCENTS = percents.append(']').toString();
+    }
+
+    private final EsQueryOperator queryOperator;
+    private final Executor executor;
+    /**
+     * 不再写入的索引的partial缓存，配置的大小小于等于0时为null
+     */
+    private final Cache<String, EsPartialAggregation> partialCache;
+
+    /**
+     * @param queryOperator     一般就是EsOperatorImpl
+     * @param executor          并行查询各个索引的线程池
+     * @param maxCachedPartials 最多缓存多少个partial，小于等于0表示不缓存
+     */
+    public EsFanOutAggregator(EsQueryOperator queryOperator, Executor executor, long maxCachedPartials) {
+        this.queryOperator = queryOperator;
+        this.executor = executor;
+        this.partialCache = maxCachedPartials <= 0 ? null : Caffeine.newBuilder()
+                .maximumSize(maxCachedPartials)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 同aggregate，不使用partial缓存
+     */
+    public EsPartialAggregation aggregate(List<String> indexNames, String queryJson, EsPartialAggregationSpec spec) {
+        return aggregate(indexNames, queryJson, spec, indexName -> false);
+    }
+
+    /**
+     * 并行统计每个索引的partial并合并，阻塞直到全部索引都返回
+     *
+     * @param indexNames     每一项单独发一次请求，可以是一个索引，也可以是逗号分隔的一组索引
+     * @param queryJson      过滤条件，为空时对全部doc聚合
+     * @param spec           要统计的聚合
+     * @param immutableIndex 判断索引是否已经不会再写入，返回true的索引的partial会被缓存
+     * @return 合并后的结果，任一索引异常时返回null
+     */
+    public EsPartialAggregation aggregate(List<String> indexNames, String queryJson, EsPartialAggregationSpec spec, Predicate<String> immutableIndex) {
+        List<CompletableFuture<EsPartialAggregation>> futures = new ArrayList<>(indexNames.size());
+        for (String indexName : indexNames) {
+            futures.add(CompletableFuture.supplyAsync(() -> immutableIndex.test(indexName)
+                    ? getCachedPartial(indexName, queryJson, spec)
+                    : getPartial(indexName, queryJson, spec), executor));
+        }
+        EsPartialAggregation merged = new EsPartialAggregation(spec);
+        for (int i = 0; i < futures.size(); i++) {
+            EsPartialAggregation partial = futures.get(i).join();
+            if (partial == null) {
+                log.error("索引{}的partial聚合失败，放弃合并", indexNames.get(i));
+                return null;
+            }
+            merged.merge(partial);
+        }
+        return merged;
+    }
+
+    /**
+     * 索引又有写入（比如重新打开写入）时清掉它的partial缓存
+     *
+     * @param indexName
+     */
+    public void invalidate(String indexName) {
+        if (partialCache != null) {
+            String prefix = indexName + '\u0000';
+            partialCache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+        }
+    }
+
+    public CacheStats getPartialCacheStats() {
+        return partialCache == null ? CacheStats.empty() : partialCache.stats();
+    }
+
+    private EsPartialAggregation getCachedPartial(String indexName, String queryJson, EsPartialAggregationSpec spec) {
+        if (partialCache == null) {
+            return getPartial(indexName, queryJson, spec);
+        }
+        String key = indexName + '\u0000' + EsQueryNormalizer.normalize(queryJson) + '\u0000' + spec.cacheKey();
+        //同一个key同时只会有一个线程去es查询，返回null时不缓存
+        return partialCache.get(key, k -> getPartial(indexName, queryJson, spec));
+    }
+
+    /**
+     * 单个索引的partial。缓存中的partial会被多个线程同时合并，返回前把t-digest压缩好，合并时只读不写
+     */
+    private EsPartialAggregation getPartial(String indexName, String queryJson, EsPartialAggregationSpec spec) {
+        EsPartialAggregation partial = new EsPartialAggregation(spec);
+        try {
+            if (spec.getMetricField() != null && !addMetric(partial, indexName, queryJson, spec)) {
+                return null;
+            }
+            if (spec.getGroupField() != null && !queryOperator.searchWithCompositeAggregation(indexName, queryJson,
+                    spec.getGroupField(), spec.getCompositePageSize(), partial.getGroupCounts()::addTo)) {
+                return null;
+            }
+            if (spec.getCardinalityField() != null && !queryOperator.searchWithCompositeAggregation(indexName, queryJson,
+                    spec.getCardinalityField(), spec.getCompositePageSize(), (key, count) -> partial.getCardinalitySketch().add(key))) {
+                return null;
+            }
+        } catch (RuntimeException e) {
+            log.error("统计索引{}的partial聚合时异常", indexName, e);
+            return null;
+        }
+        if (partial.getPercentileDigest() != null) {
+            partial.getPercentileDigest().compress();
+        }
+        return partial;
+    }
+
+    private boolean addMetric(EsPartialAggregation partial, String indexName, String queryJson, EsPartialAggregationSpec spec) {
+        String field = JSONObject.toJSONString(spec.getMetricField());
+        StringBuilder aggsJson = new StringBuilder("{\"stats\":{\"stats\":{\"field\":").append(field).append("}}");
+        if (spec.isPercentiles()) {
+            aggsJson.append(",\"percentiles\":{\"percentiles\":{\"field\":").append(field)
+                    .append(",\"percents\":").append(PERCENTS).append("}}");
+        }
+        String aggregations = queryOperator.searchAggregation(indexName, queryJson, aggsJson.append('}').toString());
+        if (aggregations == null) {
+            return false;
+        }
+        JSONObject result = JSONObject.parseObject(aggregations);
+        JSONObject stats = result.getJSONObject("stats");
+        long count = stats.getLongValue("count");
+        if (count == 0) {
+            return true;
+        }
+        partial.addMetricStats(count, stats.getDoubleValue("sum"), stats.getDoubleValue("min"), stats.getDoubleValue("max"));
+        if (spec.isPercentiles()) {
+            double weight = count / 100.0;
+            for (Map.Entry<String, Object> entry : result.getJSONObject("percentiles").getJSONObject("values").entrySet()) {
+                if (entry.getValue() instanceof Number) {
+                    partial.getPercentileDigest().add(((Number) entry.getValue()).doubleValue(), weight);
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.elasticsearchdemo.esapi;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: getDoc请求合并。不同线程并发调用getDoc时，同一个index的请求先攒一小段时间（或攒够maxBatchSize个docId），
+ * 然后合并成一次mulitGetAsync发给es，返回后再按docId把结果分给各个调用方的future。
+ * 同一批里重复的docId只请求一次。高峰期可以把对es的请求数降一个数量级，代价是每个请求最多多等maxDelayMicros。
+ * future在es客户端的网络线程中完成，回调里有耗时操作时切换到自己的线程池
+ **/
+public class EsGetCoalescer implements Closeable {
+
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+
+    private final EsAsyncQueryOperator queryOperator;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    /**
+     * 每个index当前正在攒的批次
+     */
+    private final Map<String, Batch> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong requestedDocs = new AtomicLong();
+    private final AtomicLong sentBatches = new AtomicLong();
+
+    /**
+     * @param queryOperator  实际发送mget的操作类
+     * @param maxBatchSize   一批最多多少个docId，攒够了立即发送
+     * @param maxDelayMicros 一批从第一个请求开始最多等多久（微秒），到时间不管攒了多少都发送
+     */
+    public EsGetCoalescer(EsAsyncQueryOperator queryOperator, int maxBatchSize, long maxDelayMicros) {
+        this.queryOperator = queryOperator;
+        this.maxBatchSize = Math.max(maxBatchSize, 1);
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(maxDelayMicros, 0));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "es-get-coalescer-" + THREAD_ID.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 同getDoc，请求会和其他线程同一时间窗口内的请求合并成一次mget
+     *
+     * @param indexName
+     * @param docId
+     * @return doc不存在时结果为null，mget失败时future以对应异常结束
+     */
+    public CompletableFuture<String> getDoc(String indexName, String docId) {
+        requestedDocs.incrementAndGet();
+        while (true) {
+            Batch batch = pending.computeIfAbsent(indexName, Batch::new);
+            CompletableFuture<String> future;
+            boolean first;
+            boolean full;
+            synchronized (batch) {
+                if (batch.sent) {
+                    //这一批刚被发出去，还没从pending中移除，换下一批
+                    pending.remove(indexName, batch);
+                    continue;
+                }
+                first = batch.docs.isEmpty();
+                future = batch.docs.computeIfAbsent(docId, id -> new CompletableFuture<>());
+                full = batch.docs.size() >= maxBatchSize;
+                if (full) {
+                    batch.sent = true;
+                }
+            }
+            if (full) {
+                pending.remove(indexName, batch);
+                send(batch);
+            } else if (first) {
+                scheduler.schedule(() -> flush(batch), maxDelayNanos, TimeUnit.NANOSECONDS);
+            }
+            return future;
+        }
+    }
+
+    /**
+     * 调用方请求的doc总数
+     *
+     * @return
+     */
+    public long getRequestedDocs() {
+        return requestedDocs.get();
+    }
+
+    /**
+     * 实际发给es的mget次数
+     *
+     * @return
+     */
+    public long getSentBatches() {
+        return sentBatches.get();
+    }
+
+    /**
+     * 立即发送所有正在攒的批次，然后停止定时线程。close之后不能再调用getDoc
+     */
+    @Override
+    public void close() {
+        for (Batch batch : new ArrayList<>(pending.values())) {
+            flush(batch);
+        }
+        scheduler.shutdown();
+    }
+
+    private void flush(Batch batch) {
+        synchronized (batch) {
+            if (batch.sent) {
+                return;
+            }
+            batch.sent = true;
+        }
+        pending.remove(batch.indexName, batch);
+        send(batch);
+    }
+
+    /**
+     * 发送一批mget，此时batch已经标记为sent，不会再被修改
+     *
+     * @param batch
+     */
+    private void send(Batch batch) {
+        sentBatches.incrementAndGet();
+        List<String> docIds = new ArrayList<>(batch.docs.keySet());
+        List<CompletableFuture<String>> futures = new ArrayList<>(batch.docs.values());
+        CompletableFuture<List<String>> mget;
+        try {
+            mget = queryOperator.mulitGetAsync(batch.indexName, docIds.toArray(new String[0]));
+        } catch (RuntimeException e) {
+            futures.forEach(future -> future.completeExceptionally(e));
+            return;
+        }
+        mget.whenComplete((docs, e) -> {
+            for (int i = 0; i < futures.size(); i++) {
+                if (e != null) {
+                    futures.get(i).completeExceptionally(e);
+                } else {
+                    futures.get(i).complete(docs.get(i));
+                }
+            }
+        });
+    }
+
+    /**
+     * 一个index下正在攒的一批docId，docs和sent都在batch的锁内读写
+     */
+    private static class Batch {
+        private final String indexName;
+        private final Map<String, CompletableFuture<String>> docs = new LinkedHashMap<>();
+        private boolean sent;
+
+        private Batch(String indexName) {
+            this.indexName = indexName;
+        }
+    }
+}
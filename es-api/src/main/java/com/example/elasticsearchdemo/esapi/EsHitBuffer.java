@@ -0,0 +1,234 @@
+package com.example.elasticsearchdemo.esapi;
+
+import com.example.elasticsearchdemo.esapi.codec.EsCodecRegistry;
+
+import java.io.Closeable;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 堆外的命中结果容器。每个hit的_source原始utf8字节依次拷贝到EsDirectBufferPool的堆外内存块里，
+ * 堆上只有三个int数组记录每个hit所在的块、偏移和长度，不会为每个hit创建String和链表节点。
+ * source(i)返回的是堆外内存的只读视图，不拷贝数据；需要String或实体类时再按需解码。
+ * 用完一定要close，内存块会还给池子复用，close之后之前拿到的视图都不能再用。不是线程安全的
+ **/
+public class EsHitBuffer implements Iterable<ByteBuffer>, Closeable {
+
+    /**
+     * 解码时把堆外字节拷到这个线程私有的数组里，避免每次解码都分配数组
+     */
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[8 * 1024]);
+
+    private final EsDirectBufferPool pool;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private ByteBuffer current;
+    private int[] chunkIds;
+    private int[] offsets;
+    /**
+     * 每个hit的字节数，-1表示这个hit没有_source
+     */
+    private int[] lengths;
+    private int size;
+    private long totalHits;
+    private boolean closed;
+
+    /**
+     * @param pool         内存块池
+     * @param expectedHits 预计的hit数，用来预分配索引数组
+     */
+    public EsHitBuffer(EsDirectBufferPool pool, int expectedHits) {
+        this.pool = pool;
+        int capacity = Math.max(expectedHits, 8);
+        this.chunkIds = new int[capacity];
+        this.offsets = new int[capacity];
+        this.lengths = new int[capacity];
+    }
+
+    /**
+     * 追加一个hit的_source
+     *
+     * @param bytes  为null表示没有_source
+     * @param offset
+     * @param length
+     */
+    public void append(byte[] bytes, int offset, int length) {
+        checkOpen();
+        if (size == lengths.length) {
+            int capacity = size << 1;
+            chunkIds = Arrays.copyOf(chunkIds, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        if (bytes == null) {
+            lengths[size++] = -1;
+            return;
+        }
+        ByteBuffer target;
+        if (length > pool.getChunkSize()) {
+            //比一块还大的hit单独分配，不放回池子
+            target = ByteBuffer.allocateDirect(length);
+            chunks.add(target);
+        } else {
+            if (current == null || current.remaining() < length) {
+                current = pool.acquire();
+                chunks.add(current);
+            }
+            target = current;
+        }
+        chunkIds[size] = chunks.size() - 1;
+        offsets[size] = target.position();
+        lengths[size] = length;
+        target.put(bytes, offset, length);
+        size++;
+    }
+
+    /**
+     * hit数
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * es返回的命中总数，可能大于size
+     *
+     * @return
+     */
+    public long getTotalHits() {
+        return totalHits;
+    }
+
+    public void setTotalHits(long totalHits) {
+        this.totalHits = totalHits;
+    }
+
+    /**
+     * 第i个hit的_source字节的只读视图，和堆外内存共享数据，不拷贝
+     *
+     * @param i
+     * @return 没有_source时返回null
+     */
+    public ByteBuffer source(int i) {
+        checkOpen();
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("index:" + i + ",size:" + size);
+        }
+        if (lengths[i] < 0) {
+            return null;
+        }
+        ByteBuffer view = chunks.get(chunkIds[i]).duplicate();
+        //转成Buffer调用，jdk9以上编译时ByteBuffer.limit/position的返回值变了，在jdk8上运行会NoSuchMethodError
+        ((Buffer) view).limit(offsets[i] + lengths[i]);
+        ((Buffer) view).position(offsets[i]);
+        return view.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * 第i个hit的_source解码成String
+     *
+     * @param i
+     * @return 没有_source时返回null
+     */
+    public String sourceAsString(int i) {
+        ByteBuffer source = source(i);
+        if (source == null) {
+            return null;
+        }
+        int length = source.remaining();
+        byte[] bytes = copyToScratch(source);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 第i个hit的_source通过EsCodecRegistry直接反序列化成type
+     *
+     * @param i
+     * @param type
+     * @return 没有_source时返回null
+     */
+    public <T> T decode(int i, Class<T> type) {
+        ByteBuffer source = source(i);
+        if (source == null) {
+            return null;
+        }
+        int length = source.remaining();
+        byte[] bytes = copyToScratch(source);
+        return EsCodecRegistry.codec(type).decode(bytes, 0, length);
+    }
+
+    /**
+     * 所有hit的_source占用的字节数
+     *
+     * @return
+     */
+    public long byteSize() {
+        long byteSize = 0;
+        for (int i = 0; i < size; i++) {
+            byteSize += Math.max(lengths[i], 0);
+        }
+        return byteSize;
+    }
+
+    @Override
+    public Iterator<ByteBuffer> iterator() {
+        return new Iterator<ByteBuffer>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public ByteBuffer next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return source(next++);
+            }
+        };
+    }
+
+    /**
+     * 把内存块还给池子，重复close没有影响
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (ByteBuffer chunk : chunks) {
+            pool.release(chunk);
+        }
+        chunks.clear();
+        current = null;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("EsHitBuffer已经close");
+        }
+    }
+
+    private static byte[] copyToScratch(ByteBuffer source) {
+        byte[] scratch = SCRATCH.get();
+        if (scratch.length < source.remaining()) {
+            scratch = new byte[Integer.highestOneBit(source.remaining()) << 1];
+            SCRATCH.set(scratch);
+        }
+        source.get(scratch, 0, source.remaining());
+        return scratch;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.elasticsearchdemo.esapi;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 遍历全部命中结果的懒加载迭代器，当前页消费完才去拉下一页，内存中最多只有一页数据。
+ * 遍历完会自动close，中途放弃遍历时要手动close（或者对stream()调用close），及时释放scroll快照
+ **/
+public class EsHitIterator<T> implements Iterator<T>, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(EsHitIterator.class);
+
+    private final EsPageFetcher<T> pageFetcher;
+    private Iterator<T> currentPage = Collections.emptyIterator();
+    private boolean closed;
+
+    public EsHitIterator(EsPageFetcher<T> pageFetcher) {
+        this.pageFetcher = pageFetcher;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        while (!currentPage.hasNext()) {
+            List<T> page;
+            try {
+                page = pageFetcher.nextPage();
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException("拉取下一页数据异常", e);
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+            if (page == null || page.isEmpty()) {
+                close();
+                return false;
+            }
+            currentPage = page.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return currentPage.next();
+    }
+
+    /**
+     * 转成顺序stream，stream关闭时同时关闭迭代器
+     *
+     * @return
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false)
+                .onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            pageFetcher.close();
+        } catch (IOException e) {
+            log.warn("释放分页资源异常", e);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.elasticsearchdemo.esapi;
 
+import com.example.elasticsearchdemo.esapi.config.EsBulkConfig;
+
 /**
  * @program: elasticsearch-demo
  * @date: 2022/1/19
@@ -42,6 +44,14 @@ public interface EsIndexOperator {
      */
     boolean deleteIndex(String indexName);
 
+    /**
+     * 获取索引的uuid，删除后再创建的同名索引uuid不同，可以用来判断本地缓存的结果是否还属于同一个索引
+     *
+     * @param indexName 具体的索引名，不能是别名或通配符
+     * @return 索引不存在或异常时返回null
+     */
+    String getIndexUuid(String indexName);
+
     /**
      * 在index下创建doc
      *
@@ -61,6 +71,16 @@ public interface EsIndexOperator {
      */
     boolean createDocWithId(String indexName, String docId, String docJson);
 
+    /**
+     * 在index下创建doc，doc通过EsCodecRegistry直接编码成json字节作为source
+     *
+     * @param indexName
+     * @param docId
+     * @param doc
+     * @return
+     */
+    <T> boolean createDocWithId(String indexName, String docId, T doc);
+
     /**
      * 更新指定doc
      *
@@ -91,8 +111,11 @@ public interface EsIndexOperator {
 
 
     /**
-     * bulk批量请求
+     * 创建bulk批量写入器，大批量写入时用它代替单条的createDoc/upsertDoc等操作
+     *
+     * @param bulkConfig 攒批及并发配置
+     * @return
      */
-    void bulkRequest();
+    EsBulkProcessor bulkRequest(EsBulkConfig bulkConfig);
 
 }
@@ -0,0 +1,162 @@
+package com.example.elasticsearchdemo.esapi;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 把多个fetcher（比如sliced scroll的每个slice）放到executor上并行拉取，结果汇总到一个有界队列里按页返回。
+ * 页之间的顺序不固定；队列满时各个worker阻塞等待（背压）。任一worker出错会通知其他worker停止
+ **/
+public class EsMergedPageFetcher<T> implements EsPageFetcher<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(EsMergedPageFetcher.class);
+
+    /**
+     * 结束标记，最后一个退出的worker放入队列
+     */
+    private static final List<Object> END_OF_PAGES = new ArrayList<>(0);
+
+    private final BlockingQueue<List<T>> pages;
+    private final AtomicInteger runningWorkers;
+    /**
+     * worker是否应该停止拉取（出错或者调用方close）
+     */
+    private volatile boolean stopped;
+    /**
+     * 调用方是否已经close，close后不再往队列里放任何东西
+     */
+    private volatile boolean closed;
+    private volatile Exception failure;
+    private boolean finished;
+
+    /**
+     * @param fetchers   每个fetcher由一个worker负责拉取
+     * @param executor   执行worker的线程池，线程数不小于fetchers数量时才能全部并行
+     * @param queuePages 汇总队列最多缓存多少页
+     * @throws java.util.concurrent.RejectedExecutionException executor拒绝执行时，已经启动的worker会被停止，全部fetcher都会被close
+     */
+    public EsMergedPageFetcher(List<? extends EsPageFetcher<T>> fetchers, Executor executor, int queuePages) {
+        this.pages = new ArrayBlockingQueue<>(Math.max(queuePages, 1));
+        this.runningWorkers = new AtomicInteger(fetchers.size());
+        if (fetchers.isEmpty()) {
+            finished = true;
+        }
+        for (int i = 0; i < fetchers.size(); i++) {
+            EsPageFetcher<T> fetcher = fetchers.get(i);
+            try {
+                executor.execute(() -> fetchLoop(fetcher));
+            } catch (RuntimeException e) {
+                //已经启动的worker没人消费会一直等着往队列里放，这里让它们停下来并各自close掉fetcher，没启动的fetcher直接close
+                close();
+                for (EsPageFetcher<T> notStarted : fetchers.subList(i, fetchers.size())) {
+                    closeQuietly(notStarted);
+                }
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public List<T> nextPage() throws IOException {
+        if (finished) {
+            return Collections.emptyList();
+        }
+        List<T> page;
+        try {
+            page = pages.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new IOException("等待分页结果时被中断", e);
+        }
+        if (page != END_OF_PAGES) {
+            return page;
+        }
+        finished = true;
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure != null) {
+            throw new IOException("并行拉取分页异常", failure);
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * 通知所有worker停止，不等待正在进行的请求返回。每个worker退出前会close掉自己的fetcher
+     */
+    @Override
+    public void close() {
+        closed = true;
+        stopped = true;
+        finished = true;
+        pages.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void fetchLoop(EsPageFetcher<T> fetcher) {
+        try {
+            while (!stopped) {
+                List<T> page = fetcher.nextPage();
+                if (page == null || page.isEmpty() || !enqueue(page)) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(e);
+        } catch (Exception e) {
+            fail(e);
+        } finally {
+            closeQuietly(fetcher);
+            //最后一个退出的worker负责放入结束标记，调用方没close就一直等到放进去为止
+            if (runningWorkers.decrementAndGet() == 0) {
+                try {
+                    while (!closed && !pages.offer((List<T>) (List<?>) END_OF_PAGES, 100, TimeUnit.MILLISECONDS)) {
+                        //队列已满，等调用方消费
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    static void closeQuietly(EsPageFetcher<?> fetcher) {
+        try {
+            fetcher.close();
+        } catch (IOException | RuntimeException e) {
+            log.warn("释放分页资源异常", e);
+        }
+    }
+
+    private void fail(Exception e) {
+        if (failure == null) {
+            failure = e;
+        }
+        //其他worker没必要继续拉了
+        stopped = true;
+    }
+
+    private boolean enqueue(List<T> page) throws InterruptedException {
+        while (!stopped) {
+            if (pages.offer(page, 100, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
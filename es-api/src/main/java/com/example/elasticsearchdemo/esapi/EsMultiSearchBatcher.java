@@ -0,0 +1,181 @@
+package com.example.elasticsearchdemo.esapi;
+
+import com.example.elasticsearchdemo.esapi.config.EsMultiSearchConfig;
+import com.example.elasticsearchdemo.esapi.entity.EsMultiSearchQuery;
+import com.example.elasticsearchdemo.esapi.entity.EsSearchResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 把大量查询拆成多个msearch批次并发发送。每批的查询数根据最近批次的耗时调整：比目标耗时慢就按比例减少，
+ * 快就逐步增加（最多翻倍），失败时减半；同时每批的请求体大小不超过配置的字节数。
+ * 同一时间最多maxInFlightBatches个批次在执行，一个批次返回后才发送下一个，不阻塞调用线程。
+ * 批次大小在多次调用之间共享，一个实例对应一个es集群
+ **/
+public class EsMultiSearchBatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(EsMultiSearchBatcher.class);
+
+    /**
+     * msearch中每个查询的header行和size、_source等参数的估算字节数
+     */
+    private static final int QUERY_OVERHEAD_BYTES = 128;
+
+    private final EsMultiSearchConfig config;
+    private final AtomicInteger batchSize;
+
+    public EsMultiSearchBatcher(EsMultiSearchConfig config) {
+        this.config = config;
+        this.batchSize = new AtomicInteger(clamp(config.getInitialBatchSize()));
+    }
+
+    /**
+     * 当前的每批查询数
+     *
+     * @return
+     */
+    public int getBatchSize() {
+        return batchSize.get();
+    }
+
+    /**
+     * 分批执行全部查询
+     *
+     * @param queries     全部查询
+     * @param batchSender 发送一批查询，返回和这批查询一一对应的结果
+     * @return 和queries一一对应的结果，失败的查询（包括整批失败）对应位置为null，不会异常完成
+     */
+    public CompletableFuture<List<EsSearchResult<String>>> execute(List<EsMultiSearchQuery> queries,
+                                                                   Function<List<EsMultiSearchQuery>, CompletableFuture<List<EsSearchResult<String>>>> batchSender) {
+        if (queries.isEmpty()) {
+            return CompletableFuture.completedFuture(new ArrayList<>(0));
+        }
+        return new Execution(queries, batchSender).dispatch();
+    }
+
+    private int clamp(int size) {
+        return Math.max(config.getMinBatchSize(), Math.min(config.getMaxBatchSize(), size));
+    }
+
+    /**
+     * 按这一批的耗时估计目标耗时内能处理的查询数，和当前值取平均，避免一次抖动就大幅变化
+     */
+    private void onBatchSuccess(int queryCount, long millis) {
+        int current = batchSize.get();
+        long ideal = queryCount * config.getTargetBatchLatencyMillis() / Math.max(millis, 1);
+        long updated = (current + Math.min(ideal, (long) current * 2)) / 2;
+        batchSize.set(clamp((int) Math.max(updated, 1)));
+    }
+
+    private void onBatchFailure() {
+        batchSize.set(clamp(batchSize.get() / 2));
+    }
+
+    /**
+     * 一次execute调用的状态
+     */
+    private final class Execution {
+        private final List<EsMultiSearchQuery> queries;
+        private final Function<List<EsMultiSearchQuery>, CompletableFuture<List<EsSearchResult<String>>>> batchSender;
+        private final AtomicReferenceArray<EsSearchResult<String>> results;
+        private final CompletableFuture<List<EsSearchResult<String>>> future = new CompletableFuture<>();
+        /**
+         * 下一个要发送的查询下标和正在执行的批次数，由this保护
+         */
+        private int next;
+        private int inFlight;
+
+        private Execution(List<EsMultiSearchQuery> queries, Function<List<EsMultiSearchQuery>, CompletableFuture<List<EsSearchResult<String>>>> batchSender) {
+            this.queries = queries;
+            this.batchSender = batchSender;
+            this.results = new AtomicReferenceArray<>(queries.size());
+        }
+
+        /**
+         * 在不超过并发限制的前提下发送剩余的批次，全部返回后完成future
+         */
+        private CompletableFuture<List<EsSearchResult<String>>> dispatch() {
+            while (true) {
+                int from;
+                int to;
+                synchronized (this) {
+                    if (next >= queries.size()) {
+                        if (inFlight == 0) {
+                            complete();
+                        }
+                        return future;
+                    }
+                    if (inFlight >= Math.max(config.getMaxInFlightBatches(), 1)) {
+                        return future;
+                    }
+                    from = next;
+                    to = batchEnd(from);
+                    next = to;
+                    inFlight++;
+                }
+                send(from, to);
+            }
+        }
+
+        private int batchEnd(int from) {
+            int maxCount = batchSize.get();
+            long bytes = 0;
+            int to = from;
+            while (to < queries.size() && to - from < maxCount) {
+                String queryJson = queries.get(to).getQueryJson();
+                bytes += QUERY_OVERHEAD_BYTES + (queryJson == null ? 0 : queryJson.length());
+                //至少发送一个查询
+                if (bytes > config.getMaxBatchBytes() && to > from) {
+                    break;
+                }
+                to++;
+            }
+            return to;
+        }
+
+        private void send(int from, int to) {
+            long start = System.nanoTime();
+            CompletableFuture<List<EsSearchResult<String>>> batch;
+            try {
+                batch = batchSender.apply(queries.subList(from, to));
+            } catch (RuntimeException e) {
+                batch = new CompletableFuture<>();
+                batch.completeExceptionally(e);
+            }
+            batch.whenComplete((batchResults, e) -> {
+                if (e != null || batchResults == null) {
+                    log.error("msearch第{}到{}个查询失败", from, to - 1, e);
+                    onBatchFailure();
+                } else {
+                    for (int i = 0; i < batchResults.size(); i++) {
+                        results.set(from + i, batchResults.get(i));
+                    }
+                    onBatchSuccess(to - from, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }
+                synchronized (this) {
+                    inFlight--;
+                }
+                dispatch();
+            });
+        }
+
+        private void complete() {
+            List<EsSearchResult<String>> res = new ArrayList<>(results.length());
+            for (int i = 0; i < results.length(); i++) {
+                res.add(results.get(i));
+            }
+            future.complete(res);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.elasticsearchdemo.esapi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 按页拉取es结果（scroll、searchAfter等），每次调用只请求下一页
+ **/
+public interface EsPageFetcher<T> extends Closeable {
+
+    /**
+     * 拉取下一页
+     *
+     * @return 下一页的结果，没有更多数据时返回空列表
+     * @throws IOException
+     */
+    List<T> nextPage() throws IOException;
+
+    /**
+     * 释放服务端资源，比如clear掉scroll快照。可重复调用
+     *
+     * @throws IOException
+     */
+    @Override
+    void close() throws IOException;
+}
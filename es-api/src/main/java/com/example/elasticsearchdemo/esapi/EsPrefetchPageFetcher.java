@@ -0,0 +1,132 @@
+package com.example.elasticsearchdemo.esapi;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 预取分页，后台线程在调用方处理第n页时就去拉第n+1页，拉到的页放进有界队列。
+ * 队列满了后台线程就阻塞等待（背压），所以内存中最多有prefetchPages+1页数据。
+ * 被包装的EsPageFetcher只会在后台线程中被调用，包括最后的close
+ **/
+public class EsPrefetchPageFetcher<T> implements EsPageFetcher<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(EsPrefetchPageFetcher.class);
+
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+
+    /**
+     * 结束标记，后台线程拉完或者出错时放入队列
+     */
+    private static final List<Object> END_OF_PAGES = new ArrayList<>(0);
+
+    private final EsPageFetcher<T> delegate;
+    private final BlockingQueue<List<T>> pages;
+    private volatile boolean closed;
+    private volatile Exception failure;
+    private boolean finished;
+
+    /**
+     * @param delegate      实际拉取分页的fetcher
+     * @param prefetchPages 最多预取多少页，至少为1
+     */
+    public EsPrefetchPageFetcher(EsPageFetcher<T> delegate, int prefetchPages) {
+        this.delegate = delegate;
+        this.pages = new ArrayBlockingQueue<>(Math.max(prefetchPages, 1));
+        Thread thread = new Thread(this::fetchLoop, "es-prefetch-" + THREAD_ID.incrementAndGet());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public List<T> nextPage() throws IOException {
+        if (finished) {
+            return Collections.emptyList();
+        }
+        List<T> page;
+        try {
+            page = pages.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new IOException("等待预取分页时被中断", e);
+        }
+        if (page != END_OF_PAGES) {
+            return page;
+        }
+        finished = true;
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure != null) {
+            throw new IOException("预取分页异常", failure);
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * 通知后台线程停止，不等待正在进行的请求返回。后台线程退出前会close掉被包装的fetcher
+     */
+    @Override
+    public void close() {
+        closed = true;
+        finished = true;
+        //腾出队列空间，让阻塞在put上的后台线程尽快退出
+        pages.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void fetchLoop() {
+        try {
+            while (!closed) {
+                List<T> page = delegate.nextPage();
+                if (page == null || page.isEmpty() || !enqueue(page)) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = e;
+        } catch (Exception e) {
+            failure = e;
+        } finally {
+            try {
+                delegate.close();
+            } catch (IOException e) {
+                log.warn("释放分页资源异常", e);
+            }
+            try {
+                enqueue((List<T>) (List<?>) END_OF_PAGES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 放入队列，队列满时阻塞等调用方消费，调用方close后直接放弃
+     *
+     * @param page
+     * @return 是否放入成功
+     * @throws InterruptedException
+     */
+    private boolean enqueue(List<T> page) throws InterruptedException {
+        while (!closed) {
+            if (pages.offer(page, 100, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
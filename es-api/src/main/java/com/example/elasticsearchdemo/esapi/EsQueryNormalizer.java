@@ -0,0 +1,36 @@
+package com.example.elasticsearchdemo.esapi;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: queryJson规范化，去掉空白并对所有key排序，语义相同但写法不同的queryJson会得到同一个字符串，用来做缓存key
+ **/
+public class EsQueryNormalizer {
+
+    private EsQueryNormalizer() {
+    }
+
+    /**
+     * 规范化queryJson
+     *
+     * @param queryJson
+     * @return 为空时返回空串；不是合法json时原样返回
+     */
+    public static String normalize(String queryJson) {
+        if (StringUtils.isBlank(queryJson)) {
+            return "";
+        }
+        Object json;
+        try {
+            json = JSON.parse(queryJson);
+        } catch (RuntimeException e) {
+            return queryJson;
+        }
+        return JSON.toJSONString(json, SerializerFeature.MapSortField, SerializerFeature.WriteMapNullValue);
+    }
+}
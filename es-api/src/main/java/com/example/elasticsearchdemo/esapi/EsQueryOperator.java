@@ -1,7 +1,17 @@
 package com.example.elasticsearchdemo.esapi;
 
+import com.example.elasticsearchdemo.esapi.entity.EsAggregationResult;
+import com.example.elasticsearchdemo.esapi.entity.EsMultiSearchQuery;
+import com.example.elasticsearchdemo.esapi.entity.EsPage;
+import com.example.elasticsearchdemo.esapi.entity.EsProjection;
+import com.example.elasticsearchdemo.esapi.entity.EsSearchResult;
+import com.example.elasticsearchdemo.esapi.entity.EsStringDoubleMap;
+import com.example.elasticsearchdemo.esapi.entity.EsStringLongMap;
+
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.ObjLongConsumer;
 
 /**
  * @program: elasticsearch-demo
@@ -17,6 +27,26 @@ public interface EsQueryOperator{
      */
     String getDoc(String indexName,String docId);
 
+    /**
+     * 根据docId查询doc，_source字节通过EsCodecRegistry中type的编解码器反序列化成type
+     *
+     * @param indexName
+     * @param docId
+     * @param type
+     * @return doc不存在时返回null
+     */
+    <T> T getDoc(String indexName, String docId, Class<T> type);
+
+    /**
+     * 根据docId查询doc，只返回projection指定的字段。get不支持docvalue_fields，projection中的docValueFields会被忽略
+     *
+     * @param indexName
+     * @param docId
+     * @param projection 为null时返回完整的_source
+     * @return doc不存在时返回null
+     */
+    String getDoc(String indexName, String docId, EsProjection projection);
+
     /**
      * 根据docIds查询多个doc
      * @param indexName
@@ -24,6 +54,26 @@ public interface EsQueryOperator{
      */
     List<String> mulitGet(String indexName, String... docIds);
 
+    /**
+     * 根据docIds查询多个doc，_source字节通过EsCodecRegistry中type的编解码器反序列化成type
+     *
+     * @param indexName
+     * @param type
+     * @param docIds
+     * @return 和docIds一一对应，不存在的doc对应位置为null
+     */
+    <T> List<T> mulitGet(String indexName, Class<T> type, String... docIds);
+
+    /**
+     * 根据docIds查询多个doc，只返回projection指定的字段。mget不支持docvalue_fields，projection中的docValueFields会被忽略
+     *
+     * @param indexName
+     * @param projection 为null时返回完整的_source
+     * @param docIds
+     * @return 和docIds一一对应，不存在的doc对应位置为null
+     */
+    List<String> mulitGet(String indexName, EsProjection projection, String... docIds);
+
     /**
      * 自己构建条件json进行search
      * 大部分情况下，各种条件主要是对queryJson的构建，详情查看es官网中各种query dsl使用
@@ -31,7 +81,37 @@ public interface EsQueryOperator{
      * @param indexName
      * @return
      */
-    List<String> search(String indexName, String queryJson);
+    EsSearchResult<String> search(String indexName, String queryJson);
+
+    /**
+     * 同search，每个hit的_source字节通过EsCodecRegistry中type的编解码器反序列化成type
+     *
+     * @param indexName
+     * @param queryJson
+     * @param type
+     * @return
+     */
+    <T> EsSearchResult<T> search(String indexName, String queryJson, Class<T> type);
+
+    /**
+     * 同search，每个hit只返回projection指定的字段，宽文档只需要几个字段时可以少传输、少解析很多
+     *
+     * @param indexName
+     * @param queryJson
+     * @param projection 为null时返回完整的_source
+     * @return
+     */
+    EsSearchResult<String> search(String indexName, String queryJson, EsProjection projection);
+
+    /**
+     * 同search，每个hit的_source原始字节放到堆外的EsHitBuffer里，适合命中很多、结果要保留一段时间的场景，
+     * 不会为每个hit创建String，也不占用堆。用完必须close
+     *
+     * @param indexName
+     * @param queryJson
+     * @return 异常时返回null
+     */
+    EsHitBuffer searchAsBuffer(String indexName, String queryJson);
 
     /**
      * 通过from、size进行分页查询
@@ -43,7 +123,19 @@ public interface EsQueryOperator{
      * @param pageSize
      * @return
      */
-    List<String> searchPageByFromSize(String indexName, String queryJson, int pageNum, int pageSize);
+    EsSearchResult<String> searchPageByFromSize(String indexName, String queryJson, int pageNum, int pageSize);
+
+    /**
+     * 同searchPageByFromSize，每个hit只返回projection指定的字段
+     *
+     * @param indexName
+     * @param queryJson
+     * @param pageNum
+     * @param pageSize
+     * @param projection 为null时返回完整的_source
+     * @return
+     */
+    EsSearchResult<String> searchPageByFromSize(String indexName, String queryJson, int pageNum, int pageSize, EsProjection projection);
 
     /**
      * 通过scroll先在es服务端构建一个快照，生成符合当前请求条件的返回结果。
@@ -56,7 +148,115 @@ public interface EsQueryOperator{
      * @param pageNum
      * @param pageSize
      */
-    List<String> searchPageByScroll(String indexName, String queryJson, int scrollMinute, int pageNum, int pageSize);
+    EsSearchResult<String> searchPageByScroll(String indexName, String queryJson, int scrollMinute, int pageNum, int pageSize);
+
+    /**
+     * 同按pageNum跳页的searchPageByScroll，每个hit只返回projection指定的字段。
+     * 跳过的页也只取projection指定的字段，跳页时传输的数据量跟着变少
+     *
+     * @param indexName
+     * @param queryJson
+     * @param scrollMinute
+     * @param pageNum
+     * @param pageSize
+     * @param projection   为null时返回完整的_source
+     * @return
+     */
+    EsSearchResult<String> searchPageByScroll(String indexName, String queryJson, int scrollMinute, int pageNum, int pageSize, EsProjection projection);
+
+    /**
+     * 基于游标的scroll分页，返回当前页和下一页的游标（包含scrollId），翻下一页只需要一次scroll请求。
+     * 注意scroll是有状态的，同一个游标只能往后翻一次，不能用来重复请求同一页；最后一页返回时会clear掉scroll快照
+     *
+     * @param indexName
+     * @param queryJson
+     * @param scrollMinute 快照留存时间，两次翻页的间隔不能超过这个时间
+     * @param pageSize
+     * @param cursor       上一页返回的nextCursor，为空表示第一页
+     * @return
+     */
+    EsPage<String> searchPageByScroll(String indexName, String queryJson, int scrollMinute, int pageSize, String cursor);
+
+    /**
+     * 同基于游标的searchPageByScroll，每个hit只返回projection指定的字段。
+     * 返回哪些字段在创建快照时就确定了，翻后面的页时projection要和第一页一致
+     *
+     * @param indexName
+     * @param queryJson
+     * @param scrollMinute 快照留存时间
+     * @param pageSize
+     * @param cursor       上一页返回的nextCursor，为空表示第一页
+     * @param projection   为null时返回完整的_source
+     * @return
+     */
+    EsPage<String> searchPageByScroll(String indexName, String queryJson, int scrollMinute, int pageSize, String cursor, EsProjection projection);
+
+    /**
+     * 通过scroll遍历全部命中结果，返回懒加载的迭代器，每消费完一页才去请求下一页，不会把全部结果放到内存里。
+     * 适合全量导出，遍历完或close时会clear掉scroll快照
+     *
+     * @param indexName
+     * @param queryJson
+     * @param scrollMinute 快照留存时间，两次拉取的间隔不能超过这个时间
+     * @param pageSize     每次拉取的数量
+     * @return
+     */
+    EsHitIterator<String> searchByScroll(String indexName, String queryJson, int scrollMinute, int pageSize);
+
+    /**
+     * 同searchByScroll，但由后台线程预取后面的页：调用方处理第n页时，第n+1页已经在请求中了。
+     * 预取队列满时后台线程会停下来等待，不会无限占用内存
+     *
+     * @param indexName
+     * @param queryJson
+     * @param scrollMinute  快照留存时间，两次拉取的间隔不能超过这个时间
+     * @param pageSize      每次拉取的数量
+     * @param prefetchPages 最多预取多少页，小于等于0表示不预取
+     * @return
+     */
+    EsHitIterator<String> searchByScroll(String indexName, String queryJson, int scrollMinute, int pageSize, int prefetchPages);
+
+    /**
+     * 同searchByScroll，每个hit只返回projection指定的字段，全量导出宽文档的几个字段时用
+     *
+     * @param indexName
+     * @param queryJson
+     * @param scrollMinute  快照留存时间
+     * @param pageSize      每次拉取的数量
+     * @param prefetchPages 最多预取多少页，小于等于0表示不预取
+     * @param projection    为null时返回完整的_source
+     * @return
+     */
+    EsHitIterator<String> searchByScroll(String indexName, String queryJson, int scrollMinute, int pageSize, int prefetchPages, EsProjection projection);
+
+    /**
+     * sliced scroll：把一个scroll按shard拆成slices份，每个slice由executor中的一个worker独立scroll，结果汇总成一个迭代器返回。
+     * 页之间的顺序不固定。slices一般设置成索引的分片数，超过分片数时es需要额外计算每个doc属于哪个slice，反而更慢
+     *
+     * @param indexName
+     * @param queryJson
+     * @param scrollMinute 快照留存时间
+     * @param pageSize     每个slice每次拉取的数量
+     * @param slices       slice数，小于等于1时退化成普通scroll
+     * @param executor     执行各个slice的线程池，线程数不小于slices时才能全部并行
+     * @return
+     */
+    EsHitIterator<String> searchBySlicedScroll(String indexName, String queryJson, int scrollMinute, int pageSize, int slices, Executor executor);
+
+    /**
+     * sliced scroll导出：每个slice由executor中的一个worker独立scroll，每拉到一页就交给sliceSink处理（比如每个slice写一个文件），
+     * 阻塞直到全部slice导出完成
+     *
+     * @param indexName
+     * @param queryJson
+     * @param scrollMinute 快照留存时间
+     * @param pageSize     每个slice每次拉取的数量
+     * @param slices       slice数，小于等于1时退化成普通scroll
+     * @param executor     执行各个slice的线程池
+     * @param sliceSink    入参为sliceId和该slice的一页结果，在对应slice的worker线程中回调
+     * @return 全部slice都成功导出返回true
+     */
+    boolean exportBySlicedScroll(String indexName, String queryJson, int scrollMinute, int pageSize, int slices, Executor executor, BiConsumer<Integer, List<String>> sliceSink);
 
     /**
      * 通过searchAfter走queryAndFetch流程，和from=1w+size=10不一样的地方在于，第一步query的时候不是返回n*(1w+10)条数据，而是每个shard
@@ -71,7 +271,89 @@ public interface EsQueryOperator{
      * @param pageNum
      * @param pageSize
      */
-    List<String> searchPageBySearchAfter(String indexName, String queryJson, int pageNum, int pageSize);
+    EsSearchResult<String> searchPageBySearchAfter(String indexName, String queryJson, int pageNum, int pageSize);
+
+    /**
+     * 同按pageNum跳页的searchPageBySearchAfter，每个hit只返回projection指定的字段，跳过的页也只取这些字段
+     *
+     * @param indexName
+     * @param queryJson
+     * @param pageNum
+     * @param pageSize
+     * @param projection 为null时返回完整的_source
+     * @return
+     */
+    EsSearchResult<String> searchPageBySearchAfter(String indexName, String queryJson, int pageNum, int pageSize, EsProjection projection);
+
+    /**
+     * 同searchByScroll，每个hit的_source字节通过EsCodecRegistry中type的编解码器反序列化成type
+     *
+     * @param indexName
+     * @param queryJson
+     * @param scrollMinute 快照留存时间
+     * @param pageSize     每次拉取的数量
+     * @param type
+     * @return
+     */
+    <T> EsHitIterator<T> searchByScroll(String indexName, String queryJson, int scrollMinute, int pageSize, Class<T> type);
+
+    /**
+     * 基于游标的searchAfter分页，返回当前页和下一页的游标（包含当前页最后一个hit的sortValues），
+     * 翻下一页只需要一次search请求，不用再从第一页遍历。游标是无状态的，可以重复使用
+     *
+     * @param indexName
+     * @param queryJson
+     * @param pageSize
+     * @param cursor    上一页返回的nextCursor，为空表示第一页
+     * @return
+     */
+    EsPage<String> searchPageBySearchAfter(String indexName, String queryJson, int pageSize, String cursor);
+
+    /**
+     * 同基于游标的searchPageBySearchAfter，每个hit只返回projection指定的字段
+     *
+     * @param indexName
+     * @param queryJson
+     * @param pageSize
+     * @param cursor     上一页返回的nextCursor，为空表示第一页
+     * @param projection 为null时返回完整的_source
+     * @return
+     */
+    EsPage<String> searchPageBySearchAfter(String indexName, String queryJson, int pageSize, String cursor, EsProjection projection);
+
+    /**
+     * 通过searchAfter遍历全部命中结果，返回懒加载的迭代器，按_index、_id排序，每消费完一页才去请求下一页。
+     * 和scroll不同，不需要服务端维护快照，但遍历过程中的增删改会体现在后面的页中
+     *
+     * @param indexName
+     * @param queryJson
+     * @param pageSize  每次拉取的数量
+     * @return
+     */
+    EsHitIterator<String> searchBySearchAfter(String indexName, String queryJson, int pageSize);
+
+    /**
+     * 同searchBySearchAfter，但由后台线程预取后面的页，预取队列满时后台线程会停下来等待
+     *
+     * @param indexName
+     * @param queryJson
+     * @param pageSize      每次拉取的数量
+     * @param prefetchPages 最多预取多少页，小于等于0表示不预取
+     * @return
+     */
+    EsHitIterator<String> searchBySearchAfter(String indexName, String queryJson, int pageSize, int prefetchPages);
+
+    /**
+     * 同searchBySearchAfter，每个hit只返回projection指定的字段
+     *
+     * @param indexName
+     * @param queryJson
+     * @param pageSize      每次拉取的数量
+     * @param prefetchPages 最多预取多少页，小于等于0表示不预取
+     * @param projection    为null时返回完整的_source
+     * @return
+     */
+    EsHitIterator<String> searchBySearchAfter(String indexName, String queryJson, int pageSize, int prefetchPages, EsProjection projection);
 
     /**
      * 对返回结果进行排序
@@ -79,7 +361,18 @@ public interface EsQueryOperator{
      * @param queryJson
      * @param sortFields
      */
-    List<String> searchWithSort(String indexName, String queryJson, String... sortFields);
+    EsSearchResult<String> searchWithSort(String indexName, String queryJson, String... sortFields);
+
+    /**
+     * 同searchWithSort，每个hit只返回projection指定的字段
+     *
+     * @param indexName
+     * @param queryJson
+     * @param projection 为null时返回完整的_source
+     * @param sortFields
+     * @return
+     */
+    EsSearchResult<String> searchWithSort(String indexName, String queryJson, EsProjection projection, String... sortFields);
 
     /**
      * es将aggregation分为三类，一类是metric（指标类信息，count、sum、avg、中位数等），一类是bulk（分组统计，就是group by语句），
@@ -94,12 +387,26 @@ public interface EsQueryOperator{
 
     /**
      * 获得bulk分组统计结果，等同于mysql的groupby
+     * terms聚合默认只返回doc数最多的10个分组，分组很多时用searchWithCompositeAggregation
      *
      * @param indexName
      * @param groupField
      * @return
      */
-    Map<String,Long> searchWithBulkAggregation(String indexName, String groupField);
+    EsStringLongMap searchWithBulkAggregation(String indexName, String groupField);
+
+    /**
+     * 基于composite聚合的分组统计，通过after_key一页一页地拉取全部分组，每拉到一页就把其中的分组逐个交给bucketSink，
+     * 不会在内存中攒下所有分组，适合分组数很多（比如按用户分组）的场景。阻塞直到全部分组拉完
+     *
+     * @param indexName
+     * @param queryJson  过滤条件，为空时对全部doc分组
+     * @param groupField 分组字段，需要是keyword、数值等可以聚合的字段
+     * @param pageSize   每次请求的分组数，小于等于0时为1000
+     * @param bucketSink 入参为分组的key和doc数，按key升序在调用线程中回调
+     * @return 全部分组都拉取完成返回true，中途异常返回false
+     */
+    boolean searchWithCompositeAggregation(String indexName, String queryJson, String groupField, int pageSize, ObjLongConsumer<String> bucketSink);
 
     /**
      * 先groupby再对groupby之后的bulk进行aggregation操作
@@ -110,21 +417,81 @@ public interface EsQueryOperator{
      * @param sumField
      * @return
      */
-    Map<String, Double> searchWithPipelineAggregation(String indexName, String groupField, String sumField);
+    EsStringDoubleMap searchWithPipelineAggregation(String indexName, String groupField, String sumField);
+
+    /**
+     * 只做聚合的通用查询，aggsJson是请求体中aggs下的部分，可以是任意的聚合组合。
+     * 固定size为0不取hit、不统计命中总数，7.x通过filter_path让es只返回聚合树，适合大量的报表类查询
+     *
+     * @param indexName
+     * @param queryJson 过滤条件，为空时对全部doc聚合
+     * @param aggsJson  比如{"groupby":{"terms":{"field":"user"}}}
+     * @return 各个聚合的结果json，key是聚合名，和es返回的aggregations一致；异常时返回null
+     */
+    String searchAggregation(String indexName, String queryJson, String aggsJson);
+
+    /**
+     * 同searchWithMetricAggregation，结果带上分片情况，调用方通过isComplete判断是否有分片失败或超时
+     *
+     * @param indexName
+     * @param sumField
+     * @return 异常时返回null
+     */
+    EsAggregationResult<Double> searchWithMetricAggregationResult(String indexName, String sumField);
+
+    /**
+     * 同searchWithBulkAggregation，结果带上分片情况
+     *
+     * @param indexName
+     * @param groupField
+     * @return 异常时返回null
+     */
+    EsAggregationResult<EsStringLongMap> searchWithBulkAggregationResult(String indexName, String groupField);
+
+    /**
+     * 同searchWithPipelineAggregation，结果带上分片情况
+     *
+     * @param indexName
+     * @param groupField
+     * @param sumField
+     * @return 异常时返回null
+     */
+    EsAggregationResult<EsStringDoubleMap> searchWithPipelineAggregationResult(String indexName, String groupField, String sumField);
+
+    /**
+     * 同searchAggregation，结果带上分片情况
+     *
+     * @param indexName
+     * @param queryJson 过滤条件，为空时对全部doc聚合
+     * @param aggsJson  比如{"groupby":{"terms":{"field":"user"}}}
+     * @return 异常时返回null
+     */
+    EsAggregationResult<String> searchAggregationResult(String indexName, String queryJson, String aggsJson);
 
     /**
      * 一次搜索多个索引
      * @param indexNames
      * @return
      */
-    List<String> multiSearchWithIndexNames(String... indexNames);
+    EsSearchResult<String> multiSearchWithIndexNames(String... indexNames);
 
     /**
-     * 一次搜索多个条件
+     * 一次搜索多个条件，每个条件返回前100条，等同于用默认参数的EsMultiSearchQuery调用multiSearch
      * @param queryJson
-     * @return
+     * @return 和queryJson一一对应，失败的查询对应位置为null
+     */
+    List<EsSearchResult<String>> multiSearchWithQueryJsons(String indexName, String... queryJson);
+
+    /**
+     * 一次执行大量查询，每个查询可以单独设置返回条数和_source过滤。
+     * 查询会按EsMultiSearchConfig拆成多个msearch并发发送，每批的查询数根据耗时自动调整；
+     * queryJson在es端解析，不合法时只有对应的查询失败，不影响同一批的其他查询
+     *
+     * @param indexName
+     * @param queries
+     * @return 和queries一一对应，失败的查询对应位置为null
      */
-    List<List<String>> multiSearchWithQueryJsons(String indexName, String... queryJson);
+    List<EsSearchResult<String>> multiSearch(String indexName, List<EsMultiSearchQuery> queries);
 
 
     void asyncSearch(String indexName);
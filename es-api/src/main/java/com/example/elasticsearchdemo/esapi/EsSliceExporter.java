@@ -0,0 +1,80 @@
+package com.example.elasticsearchdemo.esapi;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 把多个fetcher（比如sliced scroll的每个slice）放到executor上并行拉取，每页直接交给对应slice的sink处理，
+ * 不经过汇总队列。sink会在各自slice的worker线程中被调用，同一个slice的页是按顺序串行回调的
+ **/
+public class EsSliceExporter {
+
+    private static final Logger log = LoggerFactory.getLogger(EsSliceExporter.class);
+
+    private EsSliceExporter() {
+    }
+
+    /**
+     * 并行导出，阻塞直到所有slice都拉取完成
+     *
+     * @param fetchers  第i个fetcher对应sliceId为i
+     * @param executor  执行worker的线程池，线程数不小于fetchers数量时才能全部并行
+     * @param sliceSink 入参为sliceId和该slice的一页结果
+     * @return 全部slice都成功导出返回true，任一slice失败返回false（其他slice会尽快停止）
+     * @throws java.util.concurrent.RejectedExecutionException executor拒绝执行时，等已经启动的slice停下并close掉全部fetcher后抛出
+     */
+    public static <T> boolean export(List<? extends EsPageFetcher<T>> fetchers, Executor executor, BiConsumer<Integer, List<T>> sliceSink) {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[fetchers.size()];
+        AtomicBoolean stopped = new AtomicBoolean();
+        for (int i = 0; i < fetchers.size(); i++) {
+            int sliceId = i;
+            EsPageFetcher<T> fetcher = fetchers.get(i);
+            try {
+                futures[i] = CompletableFuture.runAsync(() -> {
+                    try (EsPageFetcher<T> sliceFetcher = fetcher) {
+                        List<T> page;
+                        while (!stopped.get() && !(page = sliceFetcher.nextPage()).isEmpty()) {
+                            sliceSink.accept(sliceId, page);
+                        }
+                    } catch (Exception e) {
+                        stopped.set(true);
+                        log.error("slice-{}导出异常", sliceId, e);
+                        throw new IllegalStateException(e);
+                    }
+                }, executor);
+            } catch (RuntimeException e) {
+                //已经启动的slice停下后会各自close掉fetcher，没启动的直接close，保证scroll都被clear
+                stopped.set(true);
+                for (EsPageFetcher<T> notStarted : fetchers.subList(i, fetchers.size())) {
+                    EsMergedPageFetcher.closeQuietly(notStarted);
+                }
+                awaitQuietly(Arrays.copyOf(futures, i));
+                throw e;
+            }
+        }
+        try {
+            CompletableFuture.allOf(futures).join();
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static void awaitQuietly(CompletableFuture<?>[] futures) {
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (Exception e) {
+            log.debug("等待已启动的slice停止时异常", e);
+        }
+    }
+}
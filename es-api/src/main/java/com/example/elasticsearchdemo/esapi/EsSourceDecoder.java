@@ -0,0 +1,31 @@
+package com.example.elasticsearchdemo.esapi;
+
+import com.example.elasticsearchdemo.esapi.codec.EsCodecRegistry;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 把_source的字节反序列化成实体类，具体的解码交给EsCodecRegistry中对应实体类的编解码器，复用预先生成的反序列化器。
+ * fastjson 1.x没有直接解析utf8字节的实现，解码时仍会先转成一个String再解析，开销和getSourceAsString后再解析相当；
+ * 只按offset、length解码，_source是共享buffer中的一段时也不会按整个buffer分配内存
+ **/
+public class EsSourceDecoder {
+
+    private EsSourceDecoder() {
+    }
+
+    /**
+     * @param bytes  _source所在的字节数组
+     * @param offset _source在数组中的起始位置
+     * @param length _source的字节数
+     * @param type   目标类型
+     * @return
+     */
+    public static <T> T decode(byte[] bytes, int offset, int length, Class<T> type) {
+        if (bytes == null || length <= 0) {
+            return null;
+        }
+        return EsCodecRegistry.codec(type).decode(bytes, offset, length);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.elasticsearchdemo.esapi.codec;
+
+import com.alibaba.fastjson.JSONException;
+import com.alibaba.fastjson.parser.DefaultJSONParser;
+import com.alibaba.fastjson.parser.JSONLexer;
+import com.alibaba.fastjson.parser.JSONToken;
+import com.alibaba.fastjson.parser.deserializer.ContextObjectDeserializer;
+import com.alibaba.fastjson.parser.deserializer.Jdk8DateCodec;
+import com.alibaba.fastjson.serializer.BeanContext;
+import com.alibaba.fastjson.serializer.ContextObjectSerializer;
+import com.alibaba.fastjson.serializer.JSONSerializer;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: LocalDateTime、LocalDate、LocalTime的编解码，@JSONField(format)指定的格式按pattern缓存DateTimeFormatter，
+ * 不用每次编解码都重新解析pattern。没有指定format的字段交给fastjson默认的Jdk8DateCodec处理
+ **/
+class CachedFormatJavaTimeCodec extends ContextObjectDeserializer implements ContextObjectSerializer {
+
+    static final CachedFormatJavaTimeCodec INSTANCE = new CachedFormatJavaTimeCodec();
+
+    private final ConcurrentMap<String, DateTimeFormatter> formatters = new ConcurrentHashMap<>();
+
+    private CachedFormatJavaTimeCodec() {
+    }
+
+    @Override
+    public void write(JSONSerializer serializer, Object object, BeanContext context) throws IOException {
+        String format = context == null ? null : context.getFormat();
+        if (object == null || format == null) {
+            Jdk8DateCodec.instance.write(serializer, object, context);
+            return;
+        }
+        serializer.write(formatter(format).format((TemporalAccessor) object));
+    }
+
+    @Override
+    public void write(JSONSerializer serializer, Object object, Object fieldName, Type fieldType, int features) throws IOException {
+        Jdk8DateCodec.instance.write(serializer, object, fieldName, fieldType, features);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T deserialze(DefaultJSONParser parser, Type type, Object fieldName, String format, int features) {
+        JSONLexer lexer = parser.lexer;
+        if (format == null || lexer.token() != JSONToken.LITERAL_STRING) {
+            return Jdk8DateCodec.instance.deserialze(parser, type, fieldName, format, features);
+        }
+        String text = lexer.stringVal();
+        lexer.nextToken();
+        if (text.isEmpty()) {
+            return null;
+        }
+        DateTimeFormatter formatter = formatter(format);
+        try {
+            if (type == LocalDateTime.class) {
+                return (T) LocalDateTime.parse(text, formatter);
+            }
+            if (type == LocalDate.class) {
+                return (T) LocalDate.parse(text, formatter);
+            }
+            if (type == LocalTime.class) {
+                return (T) LocalTime.parse(text, formatter);
+            }
+        } catch (DateTimeParseException e) {
+            throw new JSONException("字段" + fieldName + "的值" + text + "不符合格式" + format, e);
+        }
+        throw new JSONException("不支持的时间类型" + type);
+    }
+
+    @Override
+    public int getFastMatchToken() {
+        return JSONToken.LITERAL_STRING;
+    }
+
+    private DateTimeFormatter formatter(String format) {
+        return formatters.computeIfAbsent(format, DateTimeFormatter::ofPattern);
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.elasticsearchdemo.esapi.codec;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 实体类和es文档json字节之间的编解码器，每个实体类一个实例，线程安全
+ **/
+public interface EsCodec<T> {
+
+    /**
+     * 实体类编码成utf8的json字节，直接作为index请求的source
+     *
+     * @param value
+     * @return
+     */
+    byte[] encode(T value);
+
+    /**
+     * utf8的json字节解码成实体类
+     *
+     * @param bytes
+     * @param offset
+     * @param length
+     * @return
+     */
+    T decode(byte[] bytes, int offset, int length);
+}
@@ -0,0 +1,55 @@
+package com.example.elasticsearchdemo.esapi.codec;
+
+import com.alibaba.fastjson.parser.ParserConfig;
+import com.alibaba.fastjson.serializer.SerializeConfig;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 实体类编解码器注册表，每个实体类第一次用到时生成一次编解码器并缓存，写入（createDocWithId、bulk）和读取（hit解码）共用。
+ * 对性能要求特别高的实体类可以自己实现EsCodec并register，替换默认的fastjson实现
+ **/
+public class EsCodecRegistry {
+
+    private static final SerializeConfig SERIALIZE_CONFIG = new SerializeConfig();
+    private static final ParserConfig PARSER_CONFIG = new ParserConfig();
+    private static final ConcurrentMap<Class<?>, EsCodec<?>> CODECS = new ConcurrentHashMap<>();
+
+    static {
+        for (Class<?> timeType : new Class<?>[]{LocalDateTime.class, LocalDate.class, LocalTime.class}) {
+            SERIALIZE_CONFIG.put(timeType, CachedFormatJavaTimeCodec.INSTANCE);
+            PARSER_CONFIG.putDeserializer(timeType, CachedFormatJavaTimeCodec.INSTANCE);
+        }
+    }
+
+    private EsCodecRegistry() {
+    }
+
+    /**
+     * 获取实体类的编解码器，没有时生成一个fastjson实现
+     *
+     * @param type
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> EsCodec<T> codec(Class<T> type) {
+        return (EsCodec<T>) CODECS.computeIfAbsent(type, clazz -> new FastjsonCodec<>(clazz, SERIALIZE_CONFIG, PARSER_CONFIG));
+    }
+
+    /**
+     * 注册自定义编解码器，会覆盖已有的
+     *
+     * @param type
+     * @param codec
+     */
+    public static <T> void register(Class<T> type, EsCodec<T> codec) {
+        CODECS.put(type, codec);
+    }
+}
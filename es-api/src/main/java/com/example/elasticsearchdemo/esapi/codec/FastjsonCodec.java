@@ -0,0 +1,66 @@
+package com.example.elasticsearchdemo.esapi.codec;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.parser.ParserConfig;
+import com.alibaba.fastjson.serializer.JSONSerializer;
+import com.alibaba.fastjson.serializer.ObjectSerializer;
+import com.alibaba.fastjson.serializer.SerializeConfig;
+import com.alibaba.fastjson.serializer.SerializeWriter;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 基于fastjson的编解码器。创建时就让fastjson为实体类生成好asm序列化/反序列化器，之后每次编解码直接复用，
+ * 编码时SerializeWriter直接把字符缓冲区转成utf8字节，不创建中间的String对象；
+ * 解码时fastjson 1.x只能解析字符，会先把utf8字节按length解码成String再解析
+ **/
+class FastjsonCodec<T> implements EsCodec<T> {
+
+    private final Class<T> type;
+    private final SerializeConfig serializeConfig;
+    private final ParserConfig parserConfig;
+    private final ObjectSerializer serializer;
+
+    FastjsonCodec(Class<T> type, SerializeConfig serializeConfig, ParserConfig parserConfig) {
+        this.type = type;
+        this.serializeConfig = serializeConfig;
+        this.parserConfig = parserConfig;
+        this.serializer = serializeConfig.getObjectWriter(type);
+        //提前生成反序列化器，避免第一次解码时才去生成
+        parserConfig.getDeserializer(type);
+    }
+
+    @Override
+    public byte[] encode(T value) {
+        SerializeWriter out = new SerializeWriter(null, JSON.DEFAULT_GENERATE_FEATURE, SerializerFeature.EMPTY);
+        try {
+            if (value == null) {
+                out.writeNull();
+            } else {
+                serializer.write(new JSONSerializer(out, serializeConfig), value, null, null, 0);
+            }
+            return out.toBytes(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(type.getName() + "序列化异常", e);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Override
+    public T decode(byte[] bytes, int offset, int length) {
+        if (bytes == null || length <= 0) {
+            return null;
+        }
+        //fastjson 1.x没有直接解析utf8字节的实现，按字节的重载会按整个数组的长度分配char[]再转成String，
+        //_source是共享buffer中的一段时每个hit都会分配一个和buffer一样大的char[]，这里只按length解码成String
+        String text = new String(bytes, offset, length, StandardCharsets.UTF_8);
+        return JSON.parseObject(text, type, parserConfig, JSON.DEFAULT_PARSER_FEATURE);
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.elasticsearchdemo.esapi.config;
+
+import java.util.function.BiConsumer;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: bulk批量写入配置，满足action数、字节数、时间间隔任一条件就会触发一次flush
+ **/
+public class EsBulkConfig {
+
+    /**
+     * 累计多少个action触发一次bulk，-1表示不按action数flush
+     */
+    private int bulkActions = 1000;
+
+    /**
+     * 累计多少字节触发一次bulk，-1表示不按字节数flush。官方建议单次bulk在5~15MB之间
+     */
+    private long bulkSizeBytes = 5 * 1024 * 1024;
+
+    /**
+     * 定时flush的间隔毫秒数，小于等于0表示不定时flush
+     */
+    private long flushIntervalMillis = 5_000;
+
+    /**
+     * 允许同时在途的bulk请求数，0表示同步执行（add时阻塞直到bulk返回）
+     */
+    private int concurrentRequests = 1;
+
+    /**
+     * es返回429(EsRejectedExecutionException)时的重试次数
+     */
+    private int backoffRetries = 3;
+
+    /**
+     * 重试的初始等待毫秒数，之后按指数退避
+     */
+    private long backoffInitialDelayMillis = 100;
+
+    /**
+     * 每批bulk返回后（不管成功失败）对其中每个action回调一次(索引名, docId)，在bulk的回调线程执行，不能阻塞。null表示不回调
+     */
+    private BiConsumer<String, String> afterBulkAction;
+
+    public EsBulkConfig() {
+    }
+
+    /**
+     * 拷贝一份配置，包装写入器时在拷贝上修改，不影响调用方传进来的配置
+     *
+     * @param other
+     */
+    public EsBulkConfig(EsBulkConfig other) {
+        this.bulkActions = other.bulkActions;
+        this.bulkSizeBytes = other.bulkSizeBytes;
+        this.flushIntervalMillis = other.flushIntervalMillis;
+        this.concurrentRequests = other.concurrentRequests;
+        this.backoffRetries = other.backoffRetries;
+        this.backoffInitialDelayMillis = other.backoffInitialDelayMillis;
+        this.afterBulkAction = other.afterBulkAction;
+    }
+
+    public int getBulkActions() {
+        return bulkActions;
+    }
+
+    public void setBulkActions(int bulkActions) {
+        this.bulkActions = bulkActions;
+    }
+
+    public long getBulkSizeBytes() {
+        return bulkSizeBytes;
+    }
+
+    public void setBulkSizeBytes(long bulkSizeBytes) {
+        this.bulkSizeBytes = bulkSizeBytes;
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    public int getConcurrentRequests() {
+        return concurrentRequests;
+    }
+
+    public void setConcurrentRequests(int concurrentRequests) {
+        this.concurrentRequests = concurrentRequests;
+    }
+
+    public int getBackoffRetries() {
+        return backoffRetries;
+    }
+
+    public void setBackoffRetries(int backoffRetries) {
+        this.backoffRetries = backoffRetries;
+    }
+
+    public long getBackoffInitialDelayMillis() {
+        return backoffInitialDelayMillis;
+    }
+
+    public void setBackoffInitialDelayMillis(long backoffInitialDelayMillis) {
+        this.backoffInitialDelayMillis = backoffInitialDelayMillis;
+    }
+
+    public BiConsumer<String, String> getAfterBulkAction() {
+        return afterBulkAction;
+    }
+
+    public void setAfterBulkAction(BiConsumer<String, String> afterBulkAction) {
+        this.afterBulkAction = afterBulkAction;
+    }
+}
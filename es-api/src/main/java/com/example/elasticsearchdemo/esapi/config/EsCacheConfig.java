@@ -0,0 +1,77 @@
+package com.example.elasticsearchdemo.esapi.config;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: EsCachingOperator的本地缓存配置。缓存按估算的字节数限制大小，超出时按W-TinyLFU淘汰，
+ * 每个条目写入后ttl时间过期，其他客户端的写入最多延迟ttl时间可见
+ **/
+public class EsCacheConfig {
+
+    /**
+     * doc缓存最多占用多少字节（按字符数估算），小于等于0表示不缓存doc
+     */
+    private long docMaxWeightBytes = 64 * 1024 * 1024;
+
+    /**
+     * doc缓存写入后多少毫秒过期
+     */
+    private long docTtlMillis = 60_000;
+
+    /**
+     * 查询结果缓存最多占用多少字节（按字符数估算），小于等于0表示不缓存查询结果
+     */
+    private long queryMaxWeightBytes = 32 * 1024 * 1024;
+
+    /**
+     * 查询结果缓存写入后多少毫秒过期
+     */
+    private long queryTtlMillis = 10_000;
+
+    /**
+     * 索引的refresh间隔，通过本操作类写入后这段时间内的查询可能还看不到写入，查询结果不缓存。
+     * 和索引的refresh_interval保持一致，小于等于0表示不限制
+     */
+    private long refreshIntervalMillis = 1_000;
+
+    public long getDocMaxWeightBytes() {
+        return docMaxWeightBytes;
+    }
+
+    public void setDocMaxWeightBytes(long docMaxWeightBytes) {
+        this.docMaxWeightBytes = docMaxWeightBytes;
+    }
+
+    public long getDocTtlMillis() {
+        return docTtlMillis;
+    }
+
+    public void setDocTtlMillis(long docTtlMillis) {
+        this.docTtlMillis = docTtlMillis;
+    }
+
+    public long getQueryMaxWeightBytes() {
+        return queryMaxWeightBytes;
+    }
+
+    public void setQueryMaxWeightBytes(long queryMaxWeightBytes) {
+        this.queryMaxWeightBytes = queryMaxWeightBytes;
+    }
+
+    public long getQueryTtlMillis() {
+        return queryTtlMillis;
+    }
+
+    public void setQueryTtlMillis(long queryTtlMillis) {
+        this.queryTtlMillis = queryTtlMillis;
+    }
+
+    public long getRefreshIntervalMillis() {
+        return refreshIntervalMillis;
+    }
+
+    public void setRefreshIntervalMillis(long refreshIntervalMillis) {
+        this.refreshIntervalMillis = refreshIntervalMillis;
+    }
+}
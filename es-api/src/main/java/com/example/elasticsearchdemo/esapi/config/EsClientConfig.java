@@ -0,0 +1,199 @@
+package com.example.elasticsearchdemo.esapi.config;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: es客户端的连接池、io和节点发现配置。rest客户端默认每个节点最多10个连接、总共30个，
+ * 并发请求多时请求在客户端的连接池里排队，es那边反而是空闲的，需要按并发量调大。
+ * 开启压缩后请求头带上Accept-Encoding: gzip，es返回压缩后的响应体（es默认开启http.compression），
+ * 命中多、_source大的查询可以省掉大部分网络传输，代价是两端的cpu。
+ * 6.3的transport客户端只使用hosts（transport端口）和sniffIntervalMillis，其余配置只对7.x的rest客户端生效
+ **/
+public class EsClientConfig {
+
+    /**
+     * es节点列表，格式为ip:port，为空时使用构造方法里的节点
+     */
+    private String[] hosts;
+
+    /**
+     * http或https
+     */
+    private String scheme = "http";
+
+    /**
+     * 连接池总的最大连接数
+     */
+    private int maxConnTotal = 100;
+
+    /**
+     * 每个节点的最大连接数
+     */
+    private int maxConnPerRoute = 50;
+
+    /**
+     * io dispatcher线程数，负责所有连接的读写，默认cpu核数
+     */
+    private int ioThreadCount = Runtime.getRuntime().availableProcessors();
+
+    private int connectTimeoutMillis = 1000;
+
+    /**
+     * 等待响应数据的超时时间，慢聚合、大scroll需要调大
+     */
+    private int socketTimeoutMillis = 30_000;
+
+    /**
+     * 空闲连接最多保留多久，响应头里有Keep-Alive时取两者中较小的值。
+     * 要比中间的负载均衡、防火墙回收空闲连接的时间短，否则会拿到已经被断开的连接
+     */
+    private long keepAliveMillis = 60_000;
+
+    /**
+     * 是否开启gzip压缩，开启后响应按gzip返回。7.x使用apache客户端时所有请求体（包括highLevelClient构建的search、bulk等）都按gzip压缩；
+     * 使用jdk http客户端和6.x的transport client时只有自己构建的low level请求的请求体会压缩
+     */
+    private boolean compressionEnabled;
+
+    /**
+     * 多久从集群拉取一次节点列表，启动时会先拉一次，小于等于0表示不嗅探，只用hosts里的节点。
+     * 嗅探到的是节点的publish_address，客户端要能直接访问到，经过nat、代理访问es时不要开启
+     */
+    private long sniffIntervalMillis;
+
+    /**
+     * 是否按节点最近的响应耗时（指数加权平均）选择节点，耗时超过最快节点nodeLatencyTolerance倍的节点暂时不再分配请求
+     */
+    private boolean latencyAwareSelection;
+
+    /**
+     * 允许的耗时倍数，越小请求越集中在最快的节点上
+     */
+    private double nodeLatencyTolerance = 1.5;
+
+    /**
+     * 不把请求发给只有master角色的节点，请求只分布在data节点和协调节点上
+     */
+    private boolean skipDedicatedMasters = true;
+
+    /**
+     * 是否用jdk11的java.net.http.HttpClient代替apache的异步客户端发送请求，需要jdk11以上编译运行，否则仍使用apache客户端。
+     * https时协商http2，多个请求复用一个连接；es本身只支持http1.1，直连es时和apache客户端一样是连接池。
+     * 开启后socketTimeoutMillis是从发出请求到收到响应头的时限，不再是socket读超时，读响应体不受它限制；
+     * jdk11上取消请求不会中断底层的请求，连接要等es返回后才释放
+     */
+    private boolean jdkHttpClientEnabled;
+
+    public String[] getHosts() {
+        return hosts;
+    }
+
+    public void setHosts(String... hosts) {
+        this.hosts = hosts;
+    }
+
+    public String getScheme() {
+        return scheme;
+    }
+
+    public void setScheme(String scheme) {
+        this.scheme = scheme;
+    }
+
+    public int getMaxConnTotal() {
+        return maxConnTotal;
+    }
+
+    public void setMaxConnTotal(int maxConnTotal) {
+        this.maxConnTotal = maxConnTotal;
+    }
+
+    public int getMaxConnPerRoute() {
+        return maxConnPerRoute;
+    }
+
+    public void setMaxConnPerRoute(int maxConnPerRoute) {
+        this.maxConnPerRoute = maxConnPerRoute;
+    }
+
+    public int getIoThreadCount() {
+        return ioThreadCount;
+    }
+
+    public void setIoThreadCount(int ioThreadCount) {
+        this.ioThreadCount = ioThreadCount;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    public int getSocketTimeoutMillis() {
+        return socketTimeoutMillis;
+    }
+
+    public void setSocketTimeoutMillis(int socketTimeoutMillis) {
+        this.socketTimeoutMillis = socketTimeoutMillis;
+    }
+
+    public long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    public void setKeepAliveMillis(long keepAliveMillis) {
+        this.keepAliveMillis = keepAliveMillis;
+    }
+
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    public void setCompressionEnabled(boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    public long getSniffIntervalMillis() {
+        return sniffIntervalMillis;
+    }
+
+    public void setSniffIntervalMillis(long sniffIntervalMillis) {
+        this.sniffIntervalMillis = sniffIntervalMillis;
+    }
+
+    public boolean isLatencyAwareSelection() {
+        return latencyAwareSelection;
+    }
+
+    public void setLatencyAwareSelection(boolean latencyAwareSelection) {
+        this.latencyAwareSelection = latencyAwareSelection;
+    }
+
+    public double getNodeLatencyTolerance() {
+        return nodeLatencyTolerance;
+    }
+
+    public void setNodeLatencyTolerance(double nodeLatencyTolerance) {
+        this.nodeLatencyTolerance = nodeLatencyTolerance;
+    }
+
+    public boolean isSkipDedicatedMasters() {
+        return skipDedicatedMasters;
+    }
+
+    public void setSkipDedicatedMasters(boolean skipDedicatedMasters) {
+        this.skipDedicatedMasters = skipDedicatedMasters;
+    }
+
+    public boolean isJdkHttpClientEnabled() {
+        return jdkHttpClientEnabled;
+    }
+
+    public void setJdkHttpClientEnabled(boolean jdkHttpClientEnabled) {
+        this.jdkHttpClientEnabled = jdkHttpClientEnabled;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.elasticsearchdemo.esapi.config;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: msearch分批配置。大量查询会拆成多个msearch并发发送，每批的查询数根据最近的耗时在min和max之间自动调整，
+ * 同时每批的请求体不超过maxBatchBytes，同一时间最多maxInFlightBatches个批次在执行
+ **/
+public class EsMultiSearchConfig {
+
+    /**
+     * 第一批的查询数
+     */
+    private int initialBatchSize = 50;
+
+    private int minBatchSize = 1;
+
+    private int maxBatchSize = 200;
+
+    /**
+     * 期望的单批耗时，实际耗时比这个长就减少每批的查询数，比这个短就增加
+     */
+    private long targetBatchLatencyMillis = 500;
+
+    /**
+     * 单批请求体的最大字节数（按queryJson长度估算）
+     */
+    private int maxBatchBytes = 1024 * 1024;
+
+    /**
+     * 同时执行的最大批次数，避免一次几百个查询把es的search线程池打满
+     */
+    private int maxInFlightBatches = 4;
+
+    public int getInitialBatchSize() {
+        return initialBatchSize;
+    }
+
+    public void setInitialBatchSize(int initialBatchSize) {
+        this.initialBatchSize = initialBatchSize;
+    }
+
+    public int getMinBatchSize() {
+        return minBatchSize;
+    }
+
+    public void setMinBatchSize(int minBatchSize) {
+        this.minBatchSize = minBatchSize;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public long getTargetBatchLatencyMillis() {
+        return targetBatchLatencyMillis;
+    }
+
+    public void setTargetBatchLatencyMillis(long targetBatchLatencyMillis) {
+        this.targetBatchLatencyMillis = targetBatchLatencyMillis;
+    }
+
+    public int getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    public void setMaxBatchBytes(int maxBatchBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    public int getMaxInFlightBatches() {
+        return maxInFlightBatches;
+    }
+
+    public void setMaxInFlightBatches(int maxInFlightBatches) {
+        this.maxInFlightBatches = maxInFlightBatches;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.elasticsearchdemo.esapi.entity;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 一次聚合查询的结果，同时带上分片情况和是否超时。
+ * 有分片失败或者超时时es仍然会返回已经完成的分片上的聚合结果，这样的结果只能临时用，不能长期缓存
+ **/
+public class EsAggregationResult<T> {
+
+    private final T value;
+    private final int totalShards;
+    private final int successfulShards;
+    private final int failedShards;
+    private final boolean timedOut;
+
+    /**
+     * @param value            聚合结果
+     * @param totalShards      参与查询的分片总数
+     * @param successfulShards 成功的分片数
+     * @param failedShards     失败的分片数
+     * @param timedOut         是否超时
+     */
+    public EsAggregationResult(T value, int totalShards, int successfulShards, int failedShards, boolean timedOut) {
+        this.value = value;
+        this.totalShards = totalShards;
+        this.successfulShards = successfulShards;
+        this.failedShards = failedShards;
+        this.timedOut = timedOut;
+    }
+
+    /**
+     * 全部分片都成功并且没有超时，结果才是完整的
+     *
+     * @return
+     */
+    public boolean isComplete() {
+        return value != null && failedShards == 0 && !timedOut && successfulShards == totalShards;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public int getTotalShards() {
+        return totalShards;
+    }
+
+    public int getSuccessfulShards() {
+        return successfulShards;
+    }
+
+    public int getFailedShards() {
+        return failedShards;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+}
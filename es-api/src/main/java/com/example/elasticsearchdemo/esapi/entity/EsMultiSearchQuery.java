@@ -0,0 +1,82 @@
+package com.example.elasticsearchdemo.esapi.entity;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: msearch中的单个查询，每个查询可以单独设置返回条数和_source过滤
+ **/
+public class EsMultiSearchQuery {
+
+    /**
+     * query下的部分，为空时查询全部doc
+     */
+    private String queryJson;
+
+    /**
+     * 返回的hit数
+     */
+    private int size = 100;
+
+    /**
+     * 为false时不返回_source，只需要命中总数时可以省掉_source的传输
+     */
+    private boolean fetchSource = true;
+
+    /**
+     * _source只返回这些字段，支持通配符，为空表示全部
+     */
+    private String[] includes;
+
+    /**
+     * _source中去掉这些字段，支持通配符
+     */
+    private String[] excludes;
+
+    public EsMultiSearchQuery() {
+    }
+
+    public EsMultiSearchQuery(String queryJson) {
+        this.queryJson = queryJson;
+    }
+
+    public String getQueryJson() {
+        return queryJson;
+    }
+
+    public void setQueryJson(String queryJson) {
+        this.queryJson = queryJson;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public boolean isFetchSource() {
+        return fetchSource;
+    }
+
+    public void setFetchSource(boolean fetchSource) {
+        this.fetchSource = fetchSource;
+    }
+
+    public String[] getIncludes() {
+        return includes;
+    }
+
+    public void setIncludes(String... includes) {
+        this.includes = includes;
+    }
+
+    public String[] getExcludes() {
+        return excludes;
+    }
+
+    public void setExcludes(String... excludes) {
+        this.excludes = excludes;
+    }
+}
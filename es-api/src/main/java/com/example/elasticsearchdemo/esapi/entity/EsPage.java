@@ -0,0 +1,41 @@
+package com.example.elasticsearchdemo.esapi.entity;
+
+import java.util.List;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 游标分页的一页结果
+ **/
+public class EsPage<T> {
+
+    private final List<T> hits;
+    /**
+     * 下一页的游标，没有下一页时为null
+     */
+    private final String nextCursor;
+    private final long totalHits;
+
+    public EsPage(List<T> hits, String nextCursor, long totalHits) {
+        this.hits = hits;
+        this.nextCursor = nextCursor;
+        this.totalHits = totalHits;
+    }
+
+    public List<T> getHits() {
+        return hits;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public long getTotalHits() {
+        return totalHits;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
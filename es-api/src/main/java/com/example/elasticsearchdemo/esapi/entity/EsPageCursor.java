@@ -0,0 +1,197 @@
+package com.example.elasticsearchdemo.esapi.entity;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 分页游标，记录下一页请求需要的sortValues（searchAfter）或scrollId（scroll）。
+ * 对外以encode后的字符串传递（比如放到前端的"下一页"参数里），翻下一页只需要一次es请求，不用再从第一页遍历
+ **/
+public class EsPageCursor implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 索引+查询条件的指纹，防止游标被用在别的查询上
+     */
+    private int queryId;
+    private int pageSize;
+    /**
+     * 游标指向的页码，从1开始
+     */
+    private int pageNum;
+    /**
+     * 上一页最后一个hit的sortValues
+     */
+    private Object[] sortValues;
+    private String scrollId;
+
+    public EsPageCursor() {
+    }
+
+    /**
+     * 第一页的游标
+     *
+     * @param indexName
+     * @param queryJson
+     * @param pageSize
+     * @return
+     */
+    public static EsPageCursor first(String indexName, String queryJson, int pageSize) {
+        EsPageCursor cursor = new EsPageCursor();
+        cursor.queryId = queryId(indexName, queryJson);
+        cursor.pageSize = pageSize;
+        cursor.pageNum = 1;
+        return cursor;
+    }
+
+    /**
+     * 解析调用方传入的游标，为空时表示第一页
+     *
+     * @param indexName
+     * @param queryJson
+     * @param pageSize
+     * @param cursor    上一页返回的nextCursor
+     * @return
+     * @throws IllegalArgumentException 游标无法解析或者不属于当前查询
+     */
+    public static EsPageCursor resolve(String indexName, String queryJson, int pageSize, String cursor) {
+        if (StringUtils.isEmpty(cursor)) {
+            return first(indexName, queryJson, pageSize);
+        }
+        EsPageCursor pageCursor = decode(cursor);
+        if (!pageCursor.matches(indexName, queryJson, pageSize)) {
+            throw new IllegalArgumentException("分页游标与当前的索引、查询条件或pageSize不匹配");
+        }
+        return pageCursor;
+    }
+
+    /**
+     * 下一页的游标
+     *
+     * @param sortValues 当前页最后一个hit的sortValues，scroll分页时为null
+     * @param scrollId   scroll分页时的scrollId，searchAfter分页时为null
+     * @return
+     */
+    public EsPageCursor next(Object[] sortValues, String scrollId) {
+        EsPageCursor cursor = new EsPageCursor();
+        cursor.queryId = queryId;
+        cursor.pageSize = pageSize;
+        cursor.pageNum = pageNum + 1;
+        cursor.sortValues = sortValues;
+        cursor.scrollId = scrollId;
+        return cursor;
+    }
+
+    /**
+     * 校验游标是否属于当前查询
+     *
+     * @param indexName
+     * @param queryJson
+     * @param pageSize
+     * @return
+     */
+    public boolean matches(String indexName, String queryJson, int pageSize) {
+        return this.queryId == queryId(indexName, queryJson) && this.pageSize == pageSize;
+    }
+
+    /**
+     * 编码成url安全的字符串
+     *
+     * @return
+     */
+    public String encode() {
+        JSONObject json = new JSONObject();
+        json.put("q", queryId);
+        json.put("s", pageSize);
+        json.put("p", pageNum);
+        if (sortValues != null) {
+            json.put("a", sortValues);
+        }
+        if (scrollId != null) {
+            json.put("i", scrollId);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.toJSONString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 从encode后的字符串还原游标
+     *
+     * @param cursor
+     * @return
+     */
+    public static EsPageCursor decode(String cursor) {
+        JSONObject json;
+        try {
+            json = JSON.parseObject(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("无法解析的分页游标:" + cursor, e);
+        }
+        //空字符串、"null"解码后fastjson返回null
+        if (json == null) {
+            throw new IllegalArgumentException("无法解析的分页游标:" + cursor);
+        }
+        EsPageCursor pageCursor = new EsPageCursor();
+        pageCursor.queryId = json.getIntValue("q");
+        pageCursor.pageSize = json.getIntValue("s");
+        pageCursor.pageNum = json.getIntValue("p");
+        pageCursor.scrollId = json.getString("i");
+        JSONArray sortValues = json.getJSONArray("a");
+        if (sortValues != null) {
+            pageCursor.sortValues = new Object[sortValues.size()];
+            for (int i = 0; i < sortValues.size(); i++) {
+                pageCursor.sortValues[i] = toSortValue(sortValues.get(i));
+            }
+        }
+        return pageCursor;
+    }
+
+    /**
+     * fastjson会把小数解析成BigDecimal、大整数解析成BigInteger，而searchAfter只接受基本类型的包装类
+     */
+    private static Object toSortValue(Object value) {
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).doubleValue();
+        }
+        if (value instanceof BigInteger) {
+            return ((BigInteger) value).longValue();
+        }
+        return value;
+    }
+
+    private static int queryId(String indexName, String queryJson) {
+        return Objects.hash(indexName, StringUtils.defaultString(queryJson));
+    }
+
+    public int getQueryId() {
+        return queryId;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getPageNum() {
+        return pageNum;
+    }
+
+    public Object[] getSortValues() {
+        return sortValues;
+    }
+
+    public String getScrollId() {
+        return scrollId;
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.elasticsearchdemo.esapi.entity;
+
+import com.example.elasticsearchdemo.esapi.sketch.EsHyperLogLog;
+import com.example.elasticsearchdemo.esapi.sketch.EsTDigest;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 可合并的聚合结果，可以是单个索引的partial，也可以是多个partial合并后的结果。
+ * 分组doc数、count、sum、min、max合并后是精确值，不同值个数用HyperLogLog估计，分位数用t-digest估计。
+ * spec中没有要求的项保持为空（sketch为null）。不是线程安全的
+ **/
+public class EsPartialAggregation {
+
+    private final EsStringLongMap groupCounts = new EsStringLongMap(16);
+    private long metricCount;
+    private double metricSum;
+    private double metricMin = Double.POSITIVE_INFINITY;
+    private double metricMax = Double.NEGATIVE_INFINITY;
+    private final EsHyperLogLog cardinalitySketch;
+    private final EsTDigest percentileDigest;
+
+    public EsPartialAggregation(EsPartialAggregationSpec spec) {
+        this.cardinalitySketch = spec.getCardinalityField() == null ? null : new EsHyperLogLog(spec.getHyperLogLogPrecision());
+        this.percentileDigest = spec.getMetricField() == null || !spec.isPercentiles() ? null : new EsTDigest(spec.getTDigestCompression());
+    }
+
+    /**
+     * 把other合并进来，other不变
+     *
+     * @param other 需要是同一个spec产生的
+     * @return this
+     */
+    public EsPartialAggregation merge(EsPartialAggregation other) {
+        for (int i = 0; i < other.groupCounts.size(); i++) {
+            groupCounts.addTo(other.groupCounts.keyAt(i), other.groupCounts.longAt(i));
+        }
+        addMetricStats(other.metricCount, other.metricSum, other.metricMin, other.metricMax);
+        if (cardinalitySketch != null && other.cardinalitySketch != null) {
+            cardinalitySketch.merge(other.cardinalitySketch);
+        }
+        if (percentileDigest != null && other.percentileDigest != null) {
+            percentileDigest.merge(other.percentileDigest);
+        }
+        return this;
+    }
+
+    /**
+     * 累加一份count、sum、min、max
+     */
+    public void addMetricStats(long count, double sum, double min, double max) {
+        if (count <= 0) {
+            return;
+        }
+        metricCount += count;
+        metricSum += sum;
+        metricMin = Math.min(metricMin, min);
+        metricMax = Math.max(metricMax, max);
+    }
+
+    /**
+     * 分组key到doc数
+     *
+     * @return
+     */
+    public EsStringLongMap getGroupCounts() {
+        return groupCounts;
+    }
+
+    public long getMetricCount() {
+        return metricCount;
+    }
+
+    public double getMetricSum() {
+        return metricSum;
+    }
+
+    /**
+     * @return 没有值时返回NaN
+     */
+    public double getMetricMin() {
+        return metricCount > 0 ? metricMin : Double.NaN;
+    }
+
+    /**
+     * @return 没有值时返回NaN
+     */
+    public double getMetricMax() {
+        return metricCount > 0 ? metricMax : Double.NaN;
+    }
+
+    /**
+     * @return 没有值时返回NaN
+     */
+    public double getMetricAvg() {
+        return metricCount > 0 ? metricSum / metricCount : Double.NaN;
+    }
+
+    /**
+     * 估计的不同值个数
+     *
+     * @return 没有统计cardinalityField时返回-1
+     */
+    public long getCardinality() {
+        return cardinalitySketch == null ? -1 : cardinalitySketch.cardinality();
+    }
+
+    /**
+     * 估计的分位数
+     *
+     * @param percent 0到100
+     * @return 没有统计分位数或没有值时返回NaN
+     */
+    public double getPercentile(double percent) {
+        return percentileDigest == null ? Double.NaN : percentileDigest.quantile(percent / 100);
+    }
+
+    public EsHyperLogLog getCardinalitySketch() {
+        return cardinalitySketch;
+    }
+
+    public EsTDigest getPercentileDigest() {
+        return percentileDigest;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.elasticsearchdemo.esapi.entity;
+
+import com.example.elasticsearchdemo.esapi.sketch.EsHyperLogLog;
+import com.example.elasticsearchdemo.esapi.sketch.EsTDigest;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: EsFanOutAggregator在每个索引上要统计哪些可合并的聚合，字段为空表示不统计该项
+ **/
+public class EsPartialAggregationSpec {
+
+    /**
+     * 分组字段，通过composite聚合拉取全部分组的doc数，合并后是精确值，不受terms默认10个分组的限制
+     */
+    private String groupField;
+
+    /**
+     * 数值字段，统计count、sum、min、max，合并后是精确值
+     */
+    private String metricField;
+
+    /**
+     * 是否统计metricField的分位数，合并后用t-digest估计
+     */
+    private boolean percentiles;
+
+    /**
+     * 统计不同值个数的字段，通过composite聚合拉取每个值放到HyperLogLog里，合并后是估计值。
+     * 拉取量和该字段在单个索引中的不同值个数成正比，适合配合partial缓存用在不再写入的索引上
+     */
+    private String cardinalityField;
+
+    /**
+     * composite聚合每次请求的分组数
+     */
+    private int compositePageSize = 1000;
+
+    private int hyperLogLogPrecision = EsHyperLogLog.DEFAULT_PRECISION;
+
+    private double tDigestCompression = EsTDigest.DEFAULT_COMPRESSION;
+
+    public String getGroupField() {
+        return groupField;
+    }
+
+    public void setGroupField(String groupField) {
+        this.groupField = groupField;
+    }
+
+    public String getMetricField() {
+        return metricField;
+    }
+
+    public void setMetricField(String metricField) {
+        this.metricField = metricField;
+    }
+
+    public boolean isPercentiles() {
+        return percentiles;
+    }
+
+    public void setPercentiles(boolean percentiles) {
+        this.percentiles = percentiles;
+    }
+
+    public String getCardinalityField() {
+        return cardinalityField;
+    }
+
+    public void setCardinalityField(String cardinalityField) {
+        this.cardinalityField = cardinalityField;
+    }
+
+    public int getCompositePageSize() {
+        return compositePageSize;
+    }
+
+    public void setCompositePageSize(int compositePageSize) {
+        this.compositePageSize = compositePageSize;
+    }
+
+    public int getHyperLogLogPrecision() {
+        return hyperLogLogPrecision;
+    }
+
+    public void setHyperLogLogPrecision(int hyperLogLogPrecision) {
+        this.hyperLogLogPrecision = hyperLogLogPrecision;
+    }
+
+    public double getTDigestCompression() {
+        return tDigestCompression;
+    }
+
+    public void setTDigestCompression(double tDigestCompression) {
+        this.tDigestCompression = tDigestCompression;
+    }
+
+    /**
+     * 决定partial结果的所有参数，用来做缓存key
+     *
+     * @return
+     */
+    public String cacheKey() {
+        return groupField + '|' + metricField + '|' + percentiles + '|' + cardinalityField + '|'
+                + hyperLogLogPrecision + '|' + tDigestCompression;
+    }
+}
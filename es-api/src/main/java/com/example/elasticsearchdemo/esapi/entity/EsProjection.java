@@ -0,0 +1,119 @@
+package com.example.elasticsearchdemo.esapi.entity;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.parser.Feature;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 查询返回字段的投影。宽文档只需要其中几个字段时，用includes、excludes让es只返回_source的一部分，
+ * 或者关掉_source只取stored_fields、docvalue_fields，es端少读少序列化，网络传输和客户端解析都少很多。
+ * stored_fields和docvalue_fields的值会作为顶层字段合并到返回的json里，只有一个值时直接是这个值，多个值时是数组
+ **/
+public class EsProjection {
+
+    /**
+     * 为false时不返回_source，只返回storedFields和docValueFields
+     */
+    private boolean fetchSource = true;
+
+    /**
+     * _source只返回这些字段，支持通配符，为空表示全部
+     */
+    private String[] includes;
+
+    /**
+     * _source中去掉这些字段，支持通配符
+     */
+    private String[] excludes;
+
+    /**
+     * mapping中store为true的字段
+     */
+    private String[] storedFields;
+
+    /**
+     * 从doc_values中取的字段，不需要解析_source，keyword、数值、日期字段默认都有doc_values。get和mget不支持，会被忽略
+     */
+    private String[] docValueFields;
+
+    public EsProjection() {
+    }
+
+    public EsProjection(String... includes) {
+        this.includes = includes;
+    }
+
+    public boolean isFetchSource() {
+        return fetchSource;
+    }
+
+    public void setFetchSource(boolean fetchSource) {
+        this.fetchSource = fetchSource;
+    }
+
+    public String[] getIncludes() {
+        return includes;
+    }
+
+    public void setIncludes(String... includes) {
+        this.includes = includes;
+    }
+
+    public String[] getExcludes() {
+        return excludes;
+    }
+
+    public void setExcludes(String... excludes) {
+        this.excludes = excludes;
+    }
+
+    public String[] getStoredFields() {
+        return storedFields;
+    }
+
+    public void setStoredFields(String... storedFields) {
+        this.storedFields = storedFields;
+    }
+
+    public String[] getDocValueFields() {
+        return docValueFields;
+    }
+
+    public void setDocValueFields(String... docValueFields) {
+        this.docValueFields = docValueFields;
+    }
+
+    /**
+     * 是否需要把stored_fields、docvalue_fields合并到返回的json里
+     *
+     * @return
+     */
+    public boolean hasFields() {
+        return (storedFields != null && storedFields.length > 0) || (docValueFields != null && docValueFields.length > 0);
+    }
+
+    /**
+     * 把hit或get结果中的fields作为顶层字段合并到_source里，_source中的字段顺序不变
+     *
+     * @param sourceJson 没有取_source时为null
+     * @param fields     字段名和值
+     * @return
+     */
+    public static String mergeFields(String sourceJson, Map<String, List<Object>> fields) {
+        if (fields.isEmpty() && sourceJson != null) {
+            return sourceJson;
+        }
+        JSONObject json = sourceJson == null ? new JSONObject(true) : JSON.parseObject(sourceJson, Feature.OrderedField);
+        for (Map.Entry<String, List<Object>> field : fields.entrySet()) {
+            List<Object> values = field.getValue();
+            json.put(field.getKey(), values.size() == 1 ? values.get(0) : values);
+        }
+        return json.toJSONString();
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.elasticsearchdemo.esapi.entity;
+
+import java.util.ArrayList;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 一次search的结果。按返回的hit数预分配的数组列表，get(i)是O(1)的，
+ * 同时带上es返回的命中总数、耗时和分片情况，调用方不用再单独查一次count
+ **/
+public class EsSearchResult<T> extends ArrayList<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 命中总数，可能大于size()
+     */
+    private long totalHits;
+    private long tookMillis;
+    private boolean timedOut;
+    private int totalShards;
+    private int successfulShards;
+    private int failedShards;
+    private int skippedShards;
+    /**
+     * 请求了聚合时的聚合结果json，为{"聚合名":{...}}，没有请求聚合时为null
+     */
+    private String aggregations;
+
+    /**
+     * @param initialCapacity 一般就是本次返回的hit数
+     */
+    public EsSearchResult(int initialCapacity) {
+        super(initialCapacity);
+    }
+
+    /**
+     * 拷贝一份，包括统计信息
+     *
+     * @param other
+     */
+    public EsSearchResult(EsSearchResult<? extends T> other) {
+        super(other);
+        this.totalHits = other.totalHits;
+        this.tookMillis = other.tookMillis;
+        this.timedOut = other.timedOut;
+        this.totalShards = other.totalShards;
+        this.successfulShards = other.successfulShards;
+        this.failedShards = other.failedShards;
+        this.skippedShards = other.skippedShards;
+        this.aggregations = other.aggregations;
+    }
+
+    public long getTotalHits() {
+        return totalHits;
+    }
+
+    public void setTotalHits(long totalHits) {
+        this.totalHits = totalHits;
+    }
+
+    public long getTookMillis() {
+        return tookMillis;
+    }
+
+    public void setTookMillis(long tookMillis) {
+        this.tookMillis = tookMillis;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    public void setTimedOut(boolean timedOut) {
+        this.timedOut = timedOut;
+    }
+
+    public int getTotalShards() {
+        return totalShards;
+    }
+
+    public void setTotalShards(int totalShards) {
+        this.totalShards = totalShards;
+    }
+
+    public int getSuccessfulShards() {
+        return successfulShards;
+    }
+
+    public void setSuccessfulShards(int successfulShards) {
+        this.successfulShards = successfulShards;
+    }
+
+    public int getFailedShards() {
+        return failedShards;
+    }
+
+    public void setFailedShards(int failedShards) {
+        this.failedShards = failedShards;
+    }
+
+    public int getSkippedShards() {
+        return skippedShards;
+    }
+
+    public void setSkippedShards(int skippedShards) {
+        this.skippedShards = skippedShards;
+    }
+
+    public String getAggregations() {
+        return aggregations;
+    }
+
+    public void setAggregations(String aggregations) {
+        this.aggregations = aggregations;
+    }
+}
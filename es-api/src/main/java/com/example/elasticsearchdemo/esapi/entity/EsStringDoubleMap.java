@@ -0,0 +1,128 @@
+package com.example.elasticsearchdemo.esapi.entity;
+
+import java.util.Arrays;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: String到double的map，用于分组求和等聚合结果。value存在double数组里不装箱，
+ * 遍历时用keyAt(i)、doubleAt(i)，求和、排序也都直接在基本类型数组上做
+ **/
+public class EsStringDoubleMap extends EsStringPrimitiveMap<Double> {
+
+    private double[] values;
+
+    /**
+     * @param expectedSize 预计的key数，一般就是bucket数
+     */
+    public EsStringDoubleMap(int expectedSize) {
+        super(expectedSize);
+        values = new double[keys.length];
+    }
+
+    /**
+     * @param key
+     * @param defaultValue
+     * @return key不存在时返回defaultValue
+     */
+    public double getDouble(String key, double defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : values[index];
+    }
+
+    /**
+     * 第i个value，和keyAt(i)对应
+     *
+     * @param i
+     * @return
+     */
+    public double doubleAt(int i) {
+        checkIndex(i);
+        return values[i];
+    }
+
+    public void putDouble(String key, double value) {
+        int index = indexOrInsert(key);
+        values[index < 0 ? -index - 1 : index] = value;
+    }
+
+    /**
+     * key不存在时当作0，合并多个分片或多页的结果时用
+     *
+     * @param key
+     * @param delta
+     * @return 累加后的值
+     */
+    public double addTo(String key, double delta) {
+        int index = indexOrInsert(key);
+        index = index < 0 ? -index - 1 : index;
+        return values[index] += delta;
+    }
+
+    @Override
+    public Double put(String key, Double value) {
+        int index = indexOrInsert(key);
+        if (index < 0) {
+            values[-index - 1] = value;
+            return null;
+        }
+        double old = values[index];
+        values[index] = value;
+        return old;
+    }
+
+    /**
+     * 所有value之和
+     *
+     * @return
+     */
+    public double sum() {
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    /**
+     * 所有value的拷贝，顺序和keyArray一致
+     *
+     * @return
+     */
+    public double[] doubleArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * 按value从大到小原地排序，之后keyAt(0)就是value最大的分组，NaN视为最大
+     *
+     * @return this
+     */
+    public EsStringDoubleMap sortByValueDesc() {
+        sortByValues();
+        return this;
+    }
+
+    @Override
+    protected void growValues(int capacity) {
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    protected Double boxedValueAt(int i) {
+        return values[i];
+    }
+
+    @Override
+    protected int compareValues(int i, int j) {
+        return Double.compare(values[j], values[i]);
+    }
+
+    @Override
+    protected void swapValues(int i, int j) {
+        double value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.elasticsearchdemo.esapi.entity;
+
+import java.util.Arrays;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: String到long的map，用于分组doc数等聚合结果。value存在long数组里不装箱，
+ * 遍历时用keyAt(i)、longAt(i)，求和、排序也都直接在基本类型数组上做
+ **/
+public class EsStringLongMap extends EsStringPrimitiveMap<Long> {
+
+    private long[] values;
+
+    /**
+     * @param expectedSize 预计的key数，一般就是bucket数
+     */
+    public EsStringLongMap(int expectedSize) {
+        super(expectedSize);
+        values = new long[keys.length];
+    }
+
+    /**
+     * @param key
+     * @param defaultValue
+     * @return key不存在时返回defaultValue
+     */
+    public long getLong(String key, long defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : values[index];
+    }
+
+    /**
+     * 第i个value，和keyAt(i)对应
+     *
+     * @param i
+     * @return
+     */
+    public long longAt(int i) {
+        checkIndex(i);
+        return values[i];
+    }
+
+    public void putLong(String key, long value) {
+        int index = indexOrInsert(key);
+        values[index < 0 ? -index - 1 : index] = value;
+    }
+
+    /**
+     * key不存在时当作0，合并多个分片或多页的结果时用
+     *
+     * @param key
+     * @param delta
+     * @return 累加后的值
+     */
+    public long addTo(String key, long delta) {
+        int index = indexOrInsert(key);
+        index = index < 0 ? -index - 1 : index;
+        return values[index] += delta;
+    }
+
+    @Override
+    public Long put(String key, Long value) {
+        int index = indexOrInsert(key);
+        if (index < 0) {
+            values[-index - 1] = value;
+            return null;
+        }
+        long old = values[index];
+        values[index] = value;
+        return old;
+    }
+
+    /**
+     * 所有value之和
+     *
+     * @return
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    /**
+     * 所有value的拷贝，顺序和keyArray一致
+     *
+     * @return
+     */
+    public long[] longArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * 按value从大到小原地排序，之后keyAt(0)就是doc数最多的分组
+     *
+     * @return this
+     */
+    public EsStringLongMap sortByValueDesc() {
+        sortByValues();
+        return this;
+    }
+
+    @Override
+    protected void growValues(int capacity) {
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    protected Long boxedValueAt(int i) {
+        return values[i];
+    }
+
+    @Override
+    protected int compareValues(int i, int j) {
+        return Long.compare(values[j], values[i]);
+    }
+
+    @Override
+    protected void swapValues(int i, int j) {
+        long value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+}
@@ -0,0 +1,263 @@
+package com.example.elasticsearchdemo.esapi.entity;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: key为String、value为基本类型的map基类。key和value按插入顺序存在连续的数组里（列式），
+ * 另外用一个开放寻址（线性探测）的int数组做hash索引，槽里存的是key在数组中的下标+1，0表示空槽。
+ * 子类只负责value数组。通过keyAt(i)和子类的基本类型访问方法遍历时不会装箱；
+ * 作为Map使用时（get、entrySet等）会装箱，只是为了兼容。不支持删除单个key，不是线程安全的
+ **/
+public abstract class EsStringPrimitiveMap<V> extends AbstractMap<String, V> {
+
+    /**
+     * hash索引的最大装载因子3/4
+     */
+    private static final int MAX_LOAD_NUMERATOR = 3;
+    private static final int MAX_LOAD_DENOMINATOR = 4;
+
+    protected String[] keys;
+    protected int size;
+    private int[] slots;
+    private int mask;
+
+    protected EsStringPrimitiveMap(int expectedSize) {
+        int capacity = Math.max(expectedSize, 4);
+        keys = new String[capacity];
+        slots = new int[tableSize(capacity)];
+        mask = slots.length - 1;
+    }
+
+    /**
+     * 第i个key，i按插入顺序（排序后按排序顺序）
+     *
+     * @param i
+     * @return
+     */
+    public String keyAt(int i) {
+        checkIndex(i);
+        return keys[i];
+    }
+
+    /**
+     * 所有key的拷贝，顺序和keyAt一致
+     *
+     * @return
+     */
+    public String[] keyArray() {
+        return Arrays.copyOf(keys, size);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public V get(Object key) {
+        int index = indexOf(key);
+        return index < 0 ? null : boxedValueAt(index);
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(slots, 0);
+        size = 0;
+    }
+
+    @Override
+    public Set<Entry<String, V>> entrySet() {
+        return new AbstractSet<Entry<String, V>>() {
+            @Override
+            public Iterator<Entry<String, V>> iterator() {
+                return new Iterator<Entry<String, V>>() {
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < size;
+                    }
+
+                    @Override
+                    public Entry<String, V> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        int index = next++;
+                        return new SimpleImmutableEntry<>(keys[index], boxedValueAt(index));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * key在数组中的下标
+     *
+     * @param key
+     * @return 不存在时返回-1
+     */
+    protected final int indexOf(Object key) {
+        if (key == null) {
+            return -1;
+        }
+        for (int slot = hash(key.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+            int index = slots[slot] - 1;
+            if (index < 0) {
+                return -1;
+            }
+            if (keys[index].equals(key)) {
+                return index;
+            }
+        }
+    }
+
+    /**
+     * 查找key，不存在时追加到数组末尾，调用方负责写入value
+     *
+     * @param key
+     * @return 已存在时返回下标，新插入时返回-(下标+1)
+     */
+    protected final int indexOrInsert(String key) {
+        Objects.requireNonNull(key, "key");
+        int slot = hash(key.hashCode()) & mask;
+        for (; ; slot = (slot + 1) & mask) {
+            int index = slots[slot] - 1;
+            if (index < 0) {
+                break;
+            }
+            if (keys[index].equals(key)) {
+                return index;
+            }
+        }
+        if (size == keys.length) {
+            int capacity = size << 1;
+            keys = Arrays.copyOf(keys, capacity);
+            growValues(capacity);
+        }
+        int index = size++;
+        keys[index] = key;
+        if ((long) size * MAX_LOAD_DENOMINATOR > (long) slots.length * MAX_LOAD_NUMERATOR) {
+            slots = new int[slots.length << 1];
+            mask = slots.length - 1;
+            rebuildSlots();
+        } else {
+            slots[slot] = index + 1;
+        }
+        return -(index + 1);
+    }
+
+    /**
+     * 按compareValues的顺序对key、value数组原地排序，然后重建hash索引
+     */
+    protected final void sortByValues() {
+        heapSort();
+        rebuildSlots();
+    }
+
+    protected final void checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("index:" + i + ",size:" + size);
+        }
+    }
+
+    /**
+     * value数组扩容到capacity
+     *
+     * @param capacity
+     */
+    protected abstract void growValues(int capacity);
+
+    protected abstract V boxedValueAt(int i);
+
+    /**
+     * 排序时比较第i和第j个value
+     */
+    protected abstract int compareValues(int i, int j);
+
+    protected abstract void swapValues(int i, int j);
+
+    /**
+     * 堆排序，原地、最坏也是O(nlogn)。分组的doc数经常大量相同，快排在这种数据上容易退化
+     */
+    private void heapSort() {
+        for (int i = (size >>> 1) - 1; i >= 0; i--) {
+            siftDown(i, size);
+        }
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    private void siftDown(int i, int end) {
+        while (true) {
+            int child = (i << 1) + 1;
+            if (child >= end) {
+                return;
+            }
+            if (child + 1 < end && compareValues(child + 1, child) > 0) {
+                child++;
+            }
+            if (compareValues(child, i) <= 0) {
+                return;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int i, int j) {
+        if (i == j) {
+            return;
+        }
+        String key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        swapValues(i, j);
+    }
+
+    private void rebuildSlots() {
+        Arrays.fill(slots, 0);
+        for (int index = 0; index < size; index++) {
+            int slot = hash(keys[index].hashCode()) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = index + 1;
+        }
+    }
+
+    /**
+     * String的hashCode低位分布不够均匀，打散一下再取低位
+     */
+    private static int hash(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSize(int capacity) {
+        int minSlots = (int) Math.min((long) capacity * MAX_LOAD_DENOMINATOR / MAX_LOAD_NUMERATOR + 1, 1 << 30);
+        return Integer.highestOneBit(minSlots - 1) << 1;
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.elasticsearchdemo.esapi.sketch;
+
+import java.util.Arrays;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: t-digest分位数估计（merging digest）。数据压缩成按均值排序的若干质心（均值+权重），
+ * 合并质心时按k1刻度函数k(q)=compression/(2π)*asin(2q-1)限制每个质心跨过的k不超过1，
+ * 两端的质心很小，所以p99、p999这类尾部分位数也比较准。质心个数不超过compression，与数据量无关。新加的点先放到缓冲区，满了再和已有质心一起排序合并。
+ * 多个digest合并就是把质心当成带权重的点加进来，所以可以按索引分别统计后在客户端合并。不是线程安全的
+ **/
+public class EsTDigest {
+
+    public static final double DEFAULT_COMPRESSION = 200;
+
+    private final double compression;
+    private double[] means;
+    private double[] weights;
+    private int centroids;
+    private final double[] bufferMeans;
+    private final double[] bufferWeights;
+    private int buffered;
+    private double totalWeight;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public EsTDigest() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param compression 越大越准、质心越多，不小于10
+     */
+    public EsTDigest(double compression) {
+        if (!(compression >= 10)) {
+            throw new IllegalArgumentException("compression不能小于10:" + compression);
+        }
+        this.compression = compression;
+        this.means = new double[0];
+        this.weights = new double[0];
+        int bufferSize = (int) Math.ceil(compression) * 5;
+        this.bufferMeans = new double[bufferSize];
+        this.bufferWeights = new double[bufferSize];
+    }
+
+    public double getCompression() {
+        return compression;
+    }
+
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    /**
+     * @param value  NaN会被忽略
+     * @param weight 小于等于0会被忽略
+     */
+    public void add(double value, double weight) {
+        if (Double.isNaN(value) || !(weight > 0)) {
+            return;
+        }
+        if (buffered == bufferMeans.length) {
+            compress();
+        }
+        bufferMeans[buffered] = value;
+        bufferWeights[buffered] = weight;
+        buffered++;
+        totalWeight += weight;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * 把other的质心和缓冲区都加进来，other不变
+     *
+     * @param other
+     */
+    public void merge(EsTDigest other) {
+        for (int i = 0; i < other.centroids; i++) {
+            add(other.means[i], other.weights[i]);
+        }
+        for (int i = 0; i < other.buffered; i++) {
+            add(other.bufferMeans[i], other.bufferWeights[i]);
+        }
+        //other的min、max可能在质心合并时被平均掉了
+        if (other.totalWeight > 0) {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+    }
+
+    /**
+     * 估计的分位数
+     *
+     * @param q 0到1
+     * @return 没有数据时返回NaN
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("q需要在0到1之间:" + q);
+        }
+        compress();
+        if (centroids == 0) {
+            return Double.NaN;
+        }
+        if (centroids == 1) {
+            return means[0];
+        }
+        double index = q * totalWeight;
+        //第一个质心中心之前在min和质心均值之间插值
+        double center = weights[0] / 2;
+        if (index <= center) {
+            return min + (means[0] - min) * index / center;
+        }
+        for (int i = 0; i < centroids - 1; i++) {
+            double nextCenter = center + (weights[i] + weights[i + 1]) / 2;
+            if (index <= nextCenter) {
+                return means[i] + (means[i + 1] - means[i]) * (index - center) / (nextCenter - center);
+            }
+            center = nextCenter;
+        }
+        int last = centroids - 1;
+        return Math.min(max, means[last] + (max - means[last]) * (index - center) / (weights[last] / 2));
+    }
+
+    public double getTotalWeight() {
+        return totalWeight;
+    }
+
+    public double getMin() {
+        return totalWeight > 0 ? min : Double.NaN;
+    }
+
+    public double getMax() {
+        return totalWeight > 0 ? max : Double.NaN;
+    }
+
+    /**
+     * 压缩后的质心个数
+     *
+     * @return
+     */
+    public int centroidCount() {
+        compress();
+        return centroids;
+    }
+
+    /**
+     * 把缓冲区和已有质心按均值排序后合并，每个质心左右两端的k(q)相差不超过1
+     */
+    public void compress() {
+        if (buffered == 0) {
+            return;
+        }
+        int n = centroids + buffered;
+        double[] sortedMeans = Arrays.copyOf(means, n);
+        double[] sortedWeights = Arrays.copyOf(weights, n);
+        System.arraycopy(bufferMeans, 0, sortedMeans, centroids, buffered);
+        System.arraycopy(bufferWeights, 0, sortedWeights, centroids, buffered);
+        buffered = 0;
+        heapSort(sortedMeans, sortedWeights, n);
+
+        int out = 0;
+        double weightSoFar = 0;
+        double mean = sortedMeans[0];
+        double weight = sortedWeights[0];
+        double kLeft = scale(0);
+        for (int i = 1; i < n; i++) {
+            double proposed = weight + sortedWeights[i];
+            if (scale((weightSoFar + proposed) / totalWeight) - kLeft <= 1) {
+                mean += (sortedMeans[i] - mean) * sortedWeights[i] / proposed;
+                weight = proposed;
+            } else {
+                //out一定不大于i，可以直接写回排序数组
+                sortedMeans[out] = mean;
+                sortedWeights[out] = weight;
+                out++;
+                weightSoFar += weight;
+                kLeft = scale(weightSoFar / totalWeight);
+                mean = sortedMeans[i];
+                weight = sortedWeights[i];
+            }
+        }
+        sortedMeans[out] = mean;
+        sortedWeights[out] = weight;
+        out++;
+        means = Arrays.copyOf(sortedMeans, out);
+        weights = Arrays.copyOf(sortedWeights, out);
+        centroids = out;
+    }
+
+    private double scale(double q) {
+        return compression / (2 * Math.PI) * Math.asin(Math.max(-1, Math.min(1, 2 * q - 1)));
+    }
+
+    /**
+     * 按keys对两个数组一起原地排序
+     */
+    private static void heapSort(double[] keys, double[] values, int n) {
+        for (int i = (n >>> 1) - 1; i >= 0; i--) {
+            siftDown(keys, values, i, n);
+        }
+        for (int end = n - 1; end > 0; end--) {
+            swap(keys, values, 0, end);
+            siftDown(keys, values, 0, end);
+        }
+    }
+
+    private static void siftDown(double[] keys, double[] values, int i, int end) {
+        while (true) {
+            int child = (i << 1) + 1;
+            if (child >= end) {
+                return;
+            }
+            if (child + 1 < end && keys[child + 1] > keys[child]) {
+                child++;
+            }
+            if (keys[child] <= keys[i]) {
+                return;
+            }
+            swap(keys, values, i, child);
+            i = child;
+        }
+    }
+
+    private static void swap(double[] keys, double[] values, int i, int j) {
+        double key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        double value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.elasticsearchdemo.esapi;
+
+import com.example.elasticsearchdemo.esapi.config.EsBulkConfig;
+import com.example.elasticsearchdemo.esapi.config.EsCacheConfig;
+import com.example.elasticsearchdemo.esapi.entity.EsSearchResult;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 缓存在bulk返回、别名查询时的失效，es用内存里的map代替
+ **/
+public class EsCachingOperatorTest {
+
+    /**
+     * "索引/docId" -> doc
+     */
+    private final Map<String, String> docs = new ConcurrentHashMap<>();
+    private final AtomicInteger searches = new AtomicInteger();
+    private final List<EsBulkConfig> bulkConfigs = new ArrayList<>();
+
+    private final EsQueryOperator queryOperator = (EsQueryOperator) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{EsQueryOperator.class}, (proxy, method, args) -> {
+                if ("getDoc".equals(method.getName())) {
+                    return docs.get(args[0] + "/" + args[1]);
+                }
+                if ("search".equals(method.getName())) {
+                    searches.incrementAndGet();
+                    EsSearchResult<String> hits = new EsSearchResult<>(1);
+                    hits.add(args[0] + ":" + searches.get());
+                    return hits;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+
+    private final EsIndexOperator indexOperator = (EsIndexOperator) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{EsIndexOperator.class}, (proxy, method, args) -> {
+                if ("updateDoc".equals(method.getName())) {
+                    docs.put(args[0] + "/" + args[1], (String) args[2]);
+                    return true;
+                }
+                if ("bulkRequest".equals(method.getName())) {
+                    bulkConfigs.add((EsBulkConfig) args[0]);
+                    //只攒着不发送，由测试调用afterBulkAction模拟bulk返回
+                    return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{EsBulkProcessor.class},
+                            (bulkProxy, bulkMethod, bulkArgs) -> bulkMethod.getReturnType() == EsBulkProcessor.class ? bulkProxy : null);
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+
+    private EsCachingOperator newCachingOperator() {
+        EsCacheConfig cacheConfig = new EsCacheConfig();
+        cacheConfig.setRefreshIntervalMillis(0);
+        return new EsCachingOperator(queryOperator, indexOperator, cacheConfig);
+    }
+
+    @Test
+    public void testBulkInvalidatesAfterBulk() {
+        EsCachingOperator cachingOperator = newCachingOperator();
+        docs.put("index/1", "v1");
+        List<String> notified = new ArrayList<>();
+        EsBulkConfig bulkConfig = new EsBulkConfig();
+        bulkConfig.setAfterBulkAction((indexName, docId) -> notified.add(indexName + "/" + docId));
+        EsBulkProcessor bulkProcessor = cachingOperator.bulkRequest(bulkConfig);
+        bulkProcessor.index("index", "1", "v2");
+
+        //add之后、bulk返回之前读到旧值并回填
+        Assertions.assertEquals("v1", cachingOperator.getDoc("index", "1"));
+        docs.put("index/1", "v2");
+        Assertions.assertEquals("v1", cachingOperator.getDoc("index", "1"));
+
+        bulkConfigs.get(0).getAfterBulkAction().accept("index", "1");
+        Assertions.assertEquals("v2", cachingOperator.getDoc("index", "1"));
+        //调用方的回调照常执行，传进来的配置没有被修改
+        Assertions.assertEquals(1, notified.size());
+        Assertions.assertEquals("index/1", notified.get(0));
+        Assertions.assertNotSame(bulkConfig, bulkConfigs.get(0));
+    }
+
+    @Test
+    public void testAliasQueryInvalidatedByAnyWrite() {
+        EsCachingOperator cachingOperator = newCachingOperator();
+        EsSearchResult<String> aliasHits = cachingOperator.search("alias", "{}");
+        Assertions.assertEquals(aliasHits, cachingOperator.search("alias", "{}"));
+        Assertions.assertEquals(1, searches.get());
+
+        //写入别名背后的真实索引，别名上的查询缓存要失效
+        cachingOperator.updateDoc("index-v1", "1", "v1");
+        Assertions.assertNotEquals(aliasHits, cachingOperator.search("alias", "{}"));
+        Assertions.assertEquals(2, searches.get());
+    }
+
+    @Test
+    public void testWrittenIndexQueryNotInvalidatedByOtherIndex() {
+        EsCachingOperator cachingOperator = newCachingOperator();
+        cachingOperator.updateDoc("index", "1", "v1");
+        EsSearchResult<String> hits = cachingOperator.search("index", "{}");
+
+        cachingOperator.updateDoc("other", "1", "v1");
+        Assertions.assertEquals(hits, cachingOperator.search("index", "{}"));
+        Assertions.assertEquals(1, searches.get());
+
+        cachingOperator.updateDoc("index", "1", "v2");
+        Assertions.assertNotEquals(hits, cachingOperator.search("index", "{}"));
+        Assertions.assertEquals(2, searches.get());
+    }
+}
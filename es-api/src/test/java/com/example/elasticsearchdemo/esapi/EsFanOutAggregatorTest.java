@@ -0,0 +1,172 @@
+package com.example.elasticsearchdemo.esapi;
+
+import com.alibaba.fastjson.JSONObject;
+import com.example.elasticsearchdemo.esapi.entity.EsPartialAggregation;
+import com.example.elasticsearchdemo.esapi.entity.EsPartialAggregationSpec;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 扇出聚合在客户端的合并，es用按索引准备好的数据代替
+ **/
+public class EsFanOutAggregatorTest {
+
+    /**
+     * 每个索引的metric字段值
+     */
+    private final Map<String, double[]> metrics = new HashMap<>();
+    /**
+     * 每个索引的分组doc数
+     */
+    private final Map<String, Map<String, Long>> groups = new HashMap<>();
+    /**
+     * 每个索引的cardinality字段值
+     */
+    private final Map<String, String[]> users = new HashMap<>();
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+
+    private final EsQueryOperator queryOperator = (EsQueryOperator) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{EsQueryOperator.class}, (proxy, method, args) -> {
+                String indexName = (String) args[0];
+                requests.computeIfAbsent(indexName, name -> new AtomicInteger()).incrementAndGet();
+                if ("broken".equals(indexName)) {
+                    return "searchAggregation".equals(method.getName()) ? null : false;
+                }
+                if ("searchAggregation".equals(method.getName())) {
+                    return aggregations(metrics.get(indexName));
+                }
+                if ("searchWithCompositeAggregation".equals(method.getName())) {
+                    @SuppressWarnings("unchecked")
+                    ObjLongConsumer<String> bucketSink = (ObjLongConsumer<String>) args[4];
+                    if ("group".equals(args[2])) {
+                        groups.get(indexName).forEach(bucketSink::accept);
+                    } else {
+                        for (String user : users.get(indexName)) {
+                            bucketSink.accept(user, 1);
+                        }
+                    }
+                    return true;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+
+    /**
+     * 按es的格式返回stats和0.5%到99.5%的分位数
+     */
+    private static String aggregations(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        JSONObject stats = new JSONObject();
+        stats.put("count", sorted.length);
+        stats.put("sum", Arrays.stream(sorted).sum());
+        stats.put("min", sorted[0]);
+        stats.put("max", sorted[sorted.length - 1]);
+        JSONObject percentiles = new JSONObject();
+        for (int i = 0; i < 100; i++) {
+            percentiles.put(i + ".5", sorted[(int) ((i + 0.5) / 100 * sorted.length)]);
+        }
+        JSONObject result = new JSONObject();
+        result.put("stats", stats);
+        result.put("percentiles", new JSONObject().fluentPut("values", percentiles));
+        return result.toJSONString();
+    }
+
+    private static EsPartialAggregationSpec spec() {
+        EsPartialAggregationSpec spec = new EsPartialAggregationSpec();
+        spec.setGroupField("group");
+        spec.setMetricField("latency");
+        spec.setPercentiles(true);
+        spec.setCardinalityField("user");
+        return spec;
+    }
+
+    private void addIndex(String indexName, double metricFrom, int metricCount, int userFrom, int userCount, Map<String, Long> groupCounts) {
+        double[] values = new double[metricCount];
+        for (int i = 0; i < metricCount; i++) {
+            values[i] = metricFrom + i;
+        }
+        metrics.put(indexName, values);
+        String[] indexUsers = new String[userCount];
+        for (int i = 0; i < userCount; i++) {
+            indexUsers[i] = "user-" + (userFrom + i);
+        }
+        users.put(indexName, indexUsers);
+        groups.put(indexName, groupCounts);
+    }
+
+    @Test
+    public void testMergePartials() {
+        Map<String, Long> dayOneGroups = new HashMap<>();
+        dayOneGroups.put("x", 3L);
+        dayOneGroups.put("y", 2L);
+        Map<String, Long> dayTwoGroups = new HashMap<>();
+        dayTwoGroups.put("y", 5L);
+        dayTwoGroups.put("z", 1L);
+        //两天的metric是0到9999和10000到29999，用户有5000个重叠
+        addIndex("log-1", 0, 10_000, 0, 10_000, dayOneGroups);
+        addIndex("log-2", 10_000, 20_000, 5_000, 10_000, dayTwoGroups);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            EsFanOutAggregator aggregator = new EsFanOutAggregator(queryOperator, executor, 0);
+            EsPartialAggregation merged = aggregator.aggregate(Arrays.asList("log-1", "log-2"), null, spec());
+
+            Assertions.assertEquals(3, merged.getGroupCounts().size());
+            Assertions.assertEquals(3, merged.getGroupCounts().getLong("x", 0));
+            Assertions.assertEquals(7, merged.getGroupCounts().getLong("y", 0));
+            Assertions.assertEquals(1, merged.getGroupCounts().getLong("z", 0));
+
+            Assertions.assertEquals(30_000, merged.getMetricCount());
+            Assertions.assertEquals(29_999.0 * 30_000 / 2, merged.getMetricSum(), 1e-3);
+            Assertions.assertEquals(0, merged.getMetricMin(), 0);
+            Assertions.assertEquals(29_999, merged.getMetricMax(), 0);
+            Assertions.assertEquals(14_999.5, merged.getMetricAvg(), 1e-9);
+
+            Assertions.assertEquals(15_000, merged.getCardinality(), 15_000 * 0.025);
+
+            //每个索引只有100个分位点，合并后按1%的量级判断
+            Assertions.assertEquals(15_000, merged.getPercentile(50), 300);
+            Assertions.assertEquals(3_000, merged.getPercentile(10), 300);
+            Assertions.assertEquals(29_700, merged.getPercentile(99), 300);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedIndex() {
+        addIndex("log-1", 0, 100, 0, 100, new HashMap<>());
+        EsFanOutAggregator aggregator = new EsFanOutAggregator(queryOperator, Runnable::run, 0);
+        Assertions.assertNull(aggregator.aggregate(Arrays.asList("log-1", "broken"), null, spec()));
+    }
+
+    @Test
+    public void testCachedPartial() {
+        addIndex("log-1", 0, 100, 0, 100, new HashMap<>());
+        addIndex("log-2", 100, 100, 100, 100, new HashMap<>());
+        EsFanOutAggregator aggregator = new EsFanOutAggregator(queryOperator, Runnable::run, 10);
+        for (int i = 0; i < 3; i++) {
+            EsPartialAggregation merged = aggregator.aggregate(Arrays.asList("log-1", "log-2"), null, spec(), "log-1"::equals);
+            Assertions.assertEquals(200, merged.getMetricCount());
+        }
+        //log-1每次统计发3个请求（metric、分组、cardinality），只统计了一次；log-2每次都重新统计
+        Assertions.assertEquals(3, requests.get("log-1").get());
+        Assertions.assertEquals(9, requests.get("log-2").get());
+
+        aggregator.invalidate("log-1");
+        aggregator.aggregate(Arrays.asList("log-1", "log-2"), null, spec(), "log-1"::equals);
+        Assertions.assertEquals(6, requests.get("log-1").get());
+    }
+}
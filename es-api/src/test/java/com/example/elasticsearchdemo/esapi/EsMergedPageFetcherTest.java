@@ -0,0 +1,117 @@
+package com.example.elasticsearchdemo.esapi;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 不需要es集群，用内存中的fetcher验证worker的启动失败和释放
+ **/
+public class EsMergedPageFetcherTest {
+
+    @Test
+    public void testMergeAllPages() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        List<CountingFetcher> fetchers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            fetchers.add(new CountingFetcher(5));
+        }
+        int hits = 0;
+        try (EsMergedPageFetcher<Integer> merged = new EsMergedPageFetcher<>(fetchers, executor, 2)) {
+            List<Integer> page;
+            while (!(page = merged.nextPage()).isEmpty()) {
+                hits += page.size();
+            }
+        }
+        Assertions.assertEquals(15, hits);
+        for (CountingFetcher fetcher : fetchers) {
+            Assertions.assertTrue(fetcher.closed.await(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void testRejectedExecutionClosesAllFetchers() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        AtomicInteger submitted = new AtomicInteger();
+        //只接受第一个worker，和线程数小于slice数的有界线程池一样
+        Executor executor = command -> {
+            if (submitted.incrementAndGet() > 1) {
+                throw new RejectedExecutionException("队列已满");
+            }
+            pool.execute(command);
+        };
+        List<CountingFetcher> fetchers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            fetchers.add(new CountingFetcher(Integer.MAX_VALUE));
+        }
+        Assertions.assertThrows(RejectedExecutionException.class, () -> new EsMergedPageFetcher<>(fetchers, executor, 1));
+        //已经启动的worker不会卡在队列上，退出时close掉自己的fetcher
+        for (CountingFetcher fetcher : fetchers) {
+            Assertions.assertTrue(fetcher.closed.await(5, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+        Assertions.assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSliceExporterRejectedExecutionClosesAllFetchers() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        AtomicInteger submitted = new AtomicInteger();
+        Executor executor = command -> {
+            if (submitted.incrementAndGet() > 1) {
+                throw new RejectedExecutionException("队列已满");
+            }
+            pool.execute(command);
+        };
+        List<CountingFetcher> fetchers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            fetchers.add(new CountingFetcher(Integer.MAX_VALUE));
+        }
+        Assertions.assertThrows(RejectedExecutionException.class, () -> EsSliceExporter.export(fetchers, executor, (sliceId, page) -> {
+        }));
+        for (CountingFetcher fetcher : fetchers) {
+            Assertions.assertEquals(0, fetcher.closed.getCount());
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * 每页一个数字，拉完pages页后返回空页
+     */
+    private static class CountingFetcher implements EsPageFetcher<Integer> {
+        private final int pages;
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private int fetched;
+
+        private CountingFetcher(int pages) {
+            this.pages = pages;
+        }
+
+        @Override
+        public List<Integer> nextPage() {
+            if (fetched >= pages) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(fetched++);
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.elasticsearchdemo.esapi;
+
+import com.example.elasticsearchdemo.esapi.config.EsMultiSearchConfig;
+import com.example.elasticsearchdemo.esapi.entity.EsMultiSearchQuery;
+import com.example.elasticsearchdemo.esapi.entity.EsSearchResult;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: msearch分批：批次划分、并发限制、结果顺序和失败批次，batchSender由测试控制何时返回
+ **/
+public class EsMultiSearchBatcherTest {
+
+    /**
+     * 测试发出去还没返回的批次
+     */
+    private final List<PendingBatch> pending = new ArrayList<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private final Function<List<EsMultiSearchQuery>, CompletableFuture<List<EsSearchResult<String>>>> batchSender = batch -> {
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        PendingBatch pendingBatch = new PendingBatch(new ArrayList<>(batch));
+        pending.add(pendingBatch);
+        return pendingBatch.future.whenComplete((results, e) -> inFlight.decrementAndGet());
+    };
+
+    private static List<EsMultiSearchQuery> queries(int count) {
+        List<EsMultiSearchQuery> queries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            queries.add(new EsMultiSearchQuery("q" + i));
+        }
+        return queries;
+    }
+
+    /**
+     * 固定每批3个查询，最多2个批次同时执行
+     */
+    private static EsMultiSearchConfig fixedConfig() {
+        EsMultiSearchConfig config = new EsMultiSearchConfig();
+        config.setInitialBatchSize(3);
+        config.setMinBatchSize(3);
+        config.setMaxBatchSize(3);
+        config.setMaxInFlightBatches(2);
+        return config;
+    }
+
+    @Test
+    public void testBatchesInFlightLimitAndOrder() {
+        EsMultiSearchBatcher batcher = new EsMultiSearchBatcher(fixedConfig());
+        CompletableFuture<List<EsSearchResult<String>>> future = batcher.execute(queries(10), batchSender);
+
+        //只发出了前两批，不阻塞调用线程
+        Assertions.assertEquals(2, pending.size());
+        Assertions.assertEquals(Arrays.asList("q0", "q1", "q2"), pending.get(0).queryJsons());
+        Assertions.assertEquals(Arrays.asList("q3", "q4", "q5"), pending.get(1).queryJsons());
+        Assertions.assertFalse(future.isDone());
+
+        //第二批先返回，才发出第三批
+        pending.get(1).succeed();
+        Assertions.assertEquals(3, pending.size());
+        Assertions.assertEquals(Arrays.asList("q6", "q7", "q8"), pending.get(2).queryJsons());
+
+        //第一批失败，发出最后一批
+        pending.get(0).fail();
+        Assertions.assertEquals(4, pending.size());
+        Assertions.assertEquals(Arrays.asList("q9"), pending.get(3).queryJsons());
+
+        pending.get(3).succeed();
+        Assertions.assertFalse(future.isDone());
+        pending.get(2).succeed();
+        Assertions.assertTrue(future.isDone());
+        Assertions.assertFalse(future.isCompletedExceptionally());
+        Assertions.assertEquals(2, maxInFlight.get());
+
+        //结果和查询一一对应，失败批次的位置为null
+        List<EsSearchResult<String>> results = future.join();
+        Assertions.assertEquals(10, results.size());
+        for (int i = 0; i < 10; i++) {
+            if (i < 3) {
+                Assertions.assertNull(results.get(i));
+            } else {
+                Assertions.assertEquals("q" + i, results.get(i).get(0));
+            }
+        }
+    }
+
+    @Test
+    public void testSenderThrowsAndNullResults() {
+        EsMultiSearchBatcher batcher = new EsMultiSearchBatcher(fixedConfig());
+        AtomicInteger calls = new AtomicInteger();
+        List<EsSearchResult<String>> results = batcher.execute(queries(7), batch -> {
+            int call = calls.incrementAndGet();
+            if (call == 1) {
+                throw new IllegalStateException("连接失败");
+            }
+            if (call == 2) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return CompletableFuture.completedFuture(resultsOf(batch));
+        }).join();
+        Assertions.assertEquals(3, calls.get());
+        Assertions.assertEquals(Arrays.asList(null, null, null, null, null, null), results.subList(0, 6));
+        Assertions.assertEquals("q6", results.get(6).get(0));
+    }
+
+    @Test
+    public void testBatchSizeAndBytes() {
+        EsMultiSearchConfig config = new EsMultiSearchConfig();
+        config.setInitialBatchSize(40);
+        config.setMaxBatchSize(200);
+        config.setMaxBatchBytes(1000);
+        config.setMaxInFlightBatches(1);
+        EsMultiSearchBatcher batcher = new EsMultiSearchBatcher(config);
+
+        //每个查询估算128字节加上queryJson长度：q0到q3共618字节，再加q4就超过1000字节；超过限制的单个查询也要单独发送
+        List<EsMultiSearchQuery> queries = queries(8);
+        queries.get(0).setQueryJson(StringUtils.repeat('x', 100));
+        queries.get(4).setQueryJson(StringUtils.repeat('y', 2000));
+        for (int i = 5; i < 8; i++) {
+            queries.get(i).setQueryJson(StringUtils.repeat('z', 100));
+        }
+        List<Integer> batchSizes = new ArrayList<>();
+        List<EsSearchResult<String>> results = batcher.execute(queries, batch -> {
+            batchSizes.add(batch.size());
+            return CompletableFuture.completedFuture(resultsOf(batch));
+        }).join();
+        Assertions.assertEquals(Arrays.asList(4, 1, 3), batchSizes);
+        Assertions.assertEquals(8, results.size());
+        Assertions.assertEquals(queries.get(4).getQueryJson(), results.get(4).get(0));
+    }
+
+    @Test
+    public void testAdjustBatchSize() {
+        EsMultiSearchConfig config = new EsMultiSearchConfig();
+        config.setInitialBatchSize(40);
+        config.setMaxInFlightBatches(1);
+        EsMultiSearchBatcher batcher = new EsMultiSearchBatcher(config);
+
+        //失败时减半
+        CompletableFuture<List<EsSearchResult<String>>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new RuntimeException("es_rejected_execution_exception"));
+        batcher.execute(queries(1), batch -> failed).join();
+        Assertions.assertEquals(20, batcher.getBatchSize());
+
+        //远快于目标耗时时逐步增加，每次最多翻倍，不超过maxBatchSize
+        for (int i = 0; i < 10; i++) {
+            batcher.execute(queries(batcher.getBatchSize()), batch -> CompletableFuture.completedFuture(resultsOf(batch))).join();
+        }
+        Assertions.assertEquals(config.getMaxBatchSize(), batcher.getBatchSize());
+    }
+
+    @Test
+    public void testConcurrentCompletion() throws Exception {
+        EsMultiSearchConfig config = fixedConfig();
+        config.setMaxInFlightBatches(3);
+        EsMultiSearchBatcher batcher = new EsMultiSearchBatcher(config);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        try {
+            //批次在其他线程上迟一些返回，第5批失败
+            List<EsSearchResult<String>> results = batcher.execute(queries(30), batch -> CompletableFuture.supplyAsync(() -> {
+                maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                concurrent.decrementAndGet();
+                if ("q12".equals(batch.get(0).getQueryJson())) {
+                    throw new IllegalStateException("批次失败");
+                }
+                return resultsOf(batch);
+            }, executor)).get(10, TimeUnit.SECONDS);
+            Assertions.assertTrue(maxConcurrent.get() <= 3);
+            for (int i = 0; i < 30; i++) {
+                if (i >= 12 && i < 15) {
+                    Assertions.assertNull(results.get(i));
+                } else {
+                    Assertions.assertEquals("q" + i, results.get(i).get(0));
+                }
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 每个查询返回一个结果，内容就是queryJson
+     */
+    private static List<EsSearchResult<String>> resultsOf(List<EsMultiSearchQuery> batch) {
+        List<EsSearchResult<String>> results = new ArrayList<>(batch.size());
+        for (EsMultiSearchQuery query : batch) {
+            EsSearchResult<String> result = new EsSearchResult<>(1);
+            result.add(query.getQueryJson());
+            results.add(result);
+        }
+        return results;
+    }
+
+    private static final class PendingBatch {
+        private final List<EsMultiSearchQuery> queries;
+        private final CompletableFuture<List<EsSearchResult<String>>> future = new CompletableFuture<>();
+
+        private PendingBatch(List<EsMultiSearchQuery> queries) {
+            this.queries = queries;
+        }
+
+        private List<String> queryJsons() {
+            List<String> queryJsons = new ArrayList<>(queries.size());
+            for (EsMultiSearchQuery query : queries) {
+                queryJsons.add(query.getQueryJson());
+            }
+            return queryJsons;
+        }
+
+        private void succeed() {
+            future.complete(resultsOf(queries));
+        }
+
+        private void fail() {
+            future.completeExceptionally(new RuntimeException("msearch超时"));
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.elasticsearchdemo.esapi.entity;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 分页游标的编码、解码
+ **/
+public class EsPageCursorTest {
+
+    @Test
+    public void testEncodeAndDecode() {
+        EsPageCursor first = EsPageCursor.resolve("index", "{\"match_all\":{}}", 10, null);
+        EsPageCursor next = EsPageCursor.decode(first.next(new Object[]{"index", "id-1"}, null).encode());
+        Assertions.assertEquals(first.getQueryId(), next.getQueryId());
+        Assertions.assertEquals(10, next.getPageSize());
+        Assertions.assertEquals(first.getPageNum() + 1, next.getPageNum());
+        Assertions.assertArrayEquals(new Object[]{"index", "id-1"}, next.getSortValues());
+    }
+
+    @Test
+    public void testDecodeInvalidCursor() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> EsPageCursor.decode(null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> EsPageCursor.decode(""));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> EsPageCursor.decode("!!!"));
+        //能正常base64解码，但内容是json的null
+        String nullJson = Base64.getUrlEncoder().withoutPadding().encodeToString("null".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> EsPageCursor.decode(nullJson));
+    }
+}
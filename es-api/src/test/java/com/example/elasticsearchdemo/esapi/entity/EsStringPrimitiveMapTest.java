@@ -0,0 +1,110 @@
+package com.example.elasticsearchdemo.esapi.entity;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 基本类型value的map：扩容、重复key、累加、排序后查找
+ **/
+public class EsStringPrimitiveMapTest {
+
+    @Test
+    public void testGrowPastLoadFactor() {
+        //初始容量4，hash表8个槽，插入到第7个key时超过3/4要扩容，之后还会多次扩容
+        EsStringLongMap map = new EsStringLongMap(1);
+        int n = 10_000;
+        for (int i = 0; i < n; i++) {
+            map.putLong("key-" + i, i);
+            Assertions.assertEquals(i + 1, map.size());
+        }
+        for (int i = 0; i < n; i++) {
+            Assertions.assertEquals("key-" + i, map.keyAt(i));
+            Assertions.assertEquals(i, map.longAt(i));
+            Assertions.assertEquals(i, map.getLong("key-" + i, -1));
+        }
+        Assertions.assertEquals(-1, map.getLong("key-" + n, -1));
+        Assertions.assertFalse(map.containsKey(null));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> map.keyAt(n));
+    }
+
+    @Test
+    public void testDuplicateKeys() {
+        EsStringLongMap map = new EsStringLongMap(4);
+        //"Aa"和"BB"的hashCode相同，会落到同一个槽上线性探测
+        Assertions.assertNull(map.put("Aa", 1L));
+        Assertions.assertNull(map.put("BB", 2L));
+        Assertions.assertEquals(Long.valueOf(1), map.put("Aa", 10L));
+        map.putLong("BB", 20);
+        Assertions.assertEquals(2, map.size());
+        Assertions.assertEquals(Long.valueOf(10), map.get("Aa"));
+        Assertions.assertEquals(Long.valueOf(20), map.get("BB"));
+        //插入顺序不因为覆盖而改变
+        Assertions.assertArrayEquals(new String[]{"Aa", "BB"}, map.keyArray());
+        Assertions.assertArrayEquals(new long[]{10, 20}, map.longArray());
+    }
+
+    @Test
+    public void testAddTo() {
+        EsStringLongMap longs = new EsStringLongMap(2);
+        Assertions.assertEquals(5, longs.addTo("a", 5));
+        Assertions.assertEquals(8, longs.addTo("a", 3));
+        Assertions.assertEquals(-1, longs.addTo("b", -1));
+        Assertions.assertEquals(7, longs.sum());
+
+        EsStringDoubleMap doubles = new EsStringDoubleMap(2);
+        doubles.addTo("a", 0.5);
+        doubles.addTo("a", 0.25);
+        Assertions.assertEquals(0.75, doubles.getDouble("a", 0), 0);
+        Assertions.assertEquals(0, doubles.getDouble("b", 0), 0);
+    }
+
+    @Test
+    public void testSortByValueDescThenGet() {
+        Random random = new Random(7);
+        EsStringLongMap map = new EsStringLongMap(16);
+        Map<String, Long> expected = new HashMap<>();
+        for (int i = 0; i < 5_000; i++) {
+            String key = "group-" + random.nextInt(1_000);
+            //大量相同的doc数
+            long delta = random.nextInt(3);
+            map.addTo(key, delta);
+            expected.merge(key, delta, Long::sum);
+        }
+        map.sortByValueDesc();
+        Assertions.assertEquals(expected.size(), map.size());
+        for (int i = 1; i < map.size(); i++) {
+            Assertions.assertTrue(map.longAt(i - 1) >= map.longAt(i));
+        }
+        //排序后hash索引重建，按key查找和keyAt(i)对应的value一致
+        for (int i = 0; i < map.size(); i++) {
+            String key = map.keyAt(i);
+            Assertions.assertEquals(expected.get(key), map.get(key));
+            Assertions.assertEquals(map.longAt(i), map.getLong(key, -1));
+        }
+        Assertions.assertEquals(expected, new HashMap<>(map));
+
+        //排序后继续插入、累加
+        map.addTo("group-new", 1);
+        map.addTo(map.keyAt(0), 1);
+        Assertions.assertEquals(1, map.getLong("group-new", -1));
+        Assertions.assertEquals(expected.get(map.keyAt(0)) + 1, map.longAt(0));
+    }
+
+    @Test
+    public void testDoubleMapSortByValueDesc() {
+        EsStringDoubleMap map = new EsStringDoubleMap(4);
+        map.putDouble("low", 1.5);
+        map.putDouble("high", 9.5);
+        map.putDouble("mid", 4.5);
+        map.sortByValueDesc();
+        Assertions.assertArrayEquals(new String[]{"high", "mid", "low"}, map.keyArray());
+        Assertions.assertEquals(Double.valueOf(4.5), map.get("mid"));
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.elasticsearchdemo.esapi.sketch;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: HyperLogLog的合并和估计误差
+ **/
+public class EsHyperLogLogTest {
+
+    @Test
+    public void testMergeEqualsSingleSketch() {
+        EsHyperLogLog single = new EsHyperLogLog();
+        EsHyperLogLog[] parts = {new EsHyperLogLog(), new EsHyperLogLog(), new EsHyperLogLog()};
+        //三份数据有重叠，合并后的寄存器要和一个sketch统计全部数据完全一样
+        for (int i = 0; i < 30_000; i++) {
+            String value = "user-" + i;
+            single.add(value);
+            parts[i % 3].add(value);
+            if (i % 5 == 0) {
+                parts[(i + 1) % 3].add(value);
+            }
+        }
+        EsHyperLogLog merged = new EsHyperLogLog(parts[0]);
+        merged.merge(parts[1]);
+        merged.merge(parts[2]);
+        Assertions.assertEquals(single, merged);
+        Assertions.assertEquals(single.cardinality(), merged.cardinality());
+        //merge不修改参数
+        Assertions.assertNotEquals(merged, parts[1]);
+    }
+
+    @Test
+    public void testCardinalityError() {
+        EsHyperLogLog strings = new EsHyperLogLog();
+        EsHyperLogLog longs = new EsHyperLogLog();
+        int distinct = 100_000;
+        for (int i = 0; i < distinct; i++) {
+            strings.add("doc-" + i);
+            longs.add((long) i);
+            //重复的值不影响估计
+            strings.add("doc-" + (i / 2));
+        }
+        //precision为14时标准误差约0.8%，按3倍标准误差判断
+        double maxError = 3 * 1.04 / Math.sqrt(1 << EsHyperLogLog.DEFAULT_PRECISION);
+        Assertions.assertEquals(distinct, strings.cardinality(), distinct * maxError);
+        Assertions.assertEquals(distinct, longs.cardinality(), distinct * maxError);
+    }
+
+    @Test
+    public void testSmallCardinality() {
+        EsHyperLogLog sketch = new EsHyperLogLog();
+        Assertions.assertTrue(sketch.isEmpty());
+        Assertions.assertEquals(0, sketch.cardinality());
+        for (int i = 0; i < 100; i++) {
+            sketch.add("value-" + i);
+        }
+        Assertions.assertFalse(sketch.isEmpty());
+        //基数小时走线性计数，基本是精确的
+        Assertions.assertEquals(100, sketch.cardinality(), 2);
+    }
+
+    @Test
+    public void testMergeDifferentPrecision() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new EsHyperLogLog(14).merge(new EsHyperLogLog(12)));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new EsHyperLogLog(3));
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.elasticsearchdemo.esapi.sketch;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: t-digest合并后的分位数精度和边界情况
+ **/
+public class EsTDigestTest {
+
+    @Test
+    public void testMergedQuantiles() {
+        Random random = new Random(42);
+        int n = 100_000;
+        double[] values = new double[n];
+        EsTDigest[] parts = {new EsTDigest(), new EsTDigest(), new EsTDigest(), new EsTDigest()};
+        for (int i = 0; i < n; i++) {
+            //指数分布，尾部比较长
+            values[i] = -Math.log(1 - random.nextDouble()) * 100;
+            parts[random.nextInt(parts.length)].add(values[i]);
+        }
+        EsTDigest merged = new EsTDigest();
+        for (EsTDigest part : parts) {
+            merged.merge(part);
+        }
+        Arrays.sort(values);
+        Assertions.assertEquals(n, merged.getTotalWeight(), 1e-6);
+        Assertions.assertTrue(merged.centroidCount() <= merged.getCompression());
+        for (double q : new double[]{0.01, 0.1, 0.5, 0.9, 0.99, 0.999}) {
+            //按排名判断：估计值在真实数据中的排名和q相差不超过0.5%
+            int rank = Arrays.binarySearch(values, merged.quantile(q));
+            double estimatedQ = (rank >= 0 ? rank : -rank - 1) / (double) n;
+            Assertions.assertEquals(q, estimatedQ, 0.005, "q=" + q);
+        }
+    }
+
+    @Test
+    public void testExtremeQuantiles() {
+        EsTDigest left = new EsTDigest();
+        EsTDigest right = new EsTDigest();
+        for (int i = 0; i < 10_000; i++) {
+            left.add(i);
+            right.add(10_000 + i);
+        }
+        left.merge(right);
+        Assertions.assertEquals(0, left.quantile(0), 0);
+        Assertions.assertEquals(19_999, left.quantile(1), 0);
+        Assertions.assertEquals(0, left.getMin(), 0);
+        Assertions.assertEquals(19_999, left.getMax(), 0);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> left.quantile(1.5));
+    }
+
+    @Test
+    public void testSingleCentroid() {
+        EsTDigest digest = new EsTDigest();
+        Assertions.assertTrue(Double.isNaN(digest.quantile(0.5)));
+        digest.add(7.5, 3);
+        Assertions.assertEquals(1, digest.centroidCount());
+        Assertions.assertEquals(7.5, digest.quantile(0), 0);
+        Assertions.assertEquals(7.5, digest.quantile(0.5), 0);
+        Assertions.assertEquals(7.5, digest.quantile(1), 0);
+
+        EsTDigest merged = new EsTDigest();
+        merged.merge(digest);
+        Assertions.assertEquals(3, merged.getTotalWeight(), 0);
+        Assertions.assertEquals(7.5, merged.quantile(0.99), 0);
+    }
+
+    @Test
+    public void testIgnoreInvalidPoints() {
+        EsTDigest digest = new EsTDigest();
+        digest.add(Double.NaN);
+        digest.add(1, 0);
+        digest.add(1, -1);
+        Assertions.assertEquals(0, digest.getTotalWeight(), 0);
+        Assertions.assertTrue(Double.isNaN(digest.getMin()));
+    }
+}
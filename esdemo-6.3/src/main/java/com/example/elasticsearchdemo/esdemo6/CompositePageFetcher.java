@@ -0,0 +1,67 @@
+package com.example.elasticsearchdemo.esdemo6;
+
+import com.example.elasticsearchdemo.esapi.entity.EsStringLongMap;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregation;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregationBuilder;
+
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 基于composite聚合的分组分页拉取，每次用上一页返回的after_key请求下一页分组，
+ * 协调节点每次只需要处理一页分组，分组数再多也不会占用大量内存，服务端不保留状态。
+ * 每页直接放到EsStringLongMap里，doc数不装箱，所以没有实现返回List的EsPageFetcher
+ **/
+class CompositePageFetcher implements Closeable {
+
+    private final SearchRequestBuilder searchRequestBuilder;
+    private final CompositeAggregationBuilder compositeBuilder;
+    private final String sourceName;
+    private boolean finished;
+
+    /**
+     * @param searchRequestBuilder 已经设置好query、size为0的请求
+     * @param compositeBuilder     只有一个分组字段的composite聚合，已经加到searchRequestBuilder中
+     * @param sourceName           分组字段在composite中的名字
+     */
+    CompositePageFetcher(SearchRequestBuilder searchRequestBuilder, CompositeAggregationBuilder compositeBuilder, String sourceName) {
+        this.searchRequestBuilder = searchRequestBuilder;
+        this.compositeBuilder = compositeBuilder;
+        this.sourceName = sourceName;
+    }
+
+    /**
+     * 拉取下一页分组
+     *
+     * @return 分组key到doc数，按key升序；没有更多分组时返回空map
+     */
+    EsStringLongMap nextPage() {
+        if (finished) {
+            return new EsStringLongMap(0);
+        }
+        SearchResponse searchResponse = searchRequestBuilder.get();
+        CompositeAggregation composite = searchResponse.getAggregations().get(compositeBuilder.getName());
+        List<? extends CompositeAggregation.Bucket> buckets = composite.getBuckets();
+        //没有after_key或者这一页没有分组说明已经拉完了
+        if (composite.afterKey() == null || buckets.isEmpty()) {
+            finished = true;
+        } else {
+            compositeBuilder.aggregateAfter(composite.afterKey());
+        }
+        EsStringLongMap page = new EsStringLongMap(buckets.size());
+        for (CompositeAggregation.Bucket bucket : buckets) {
+            page.putLong(String.valueOf(bucket.getKey().get(sourceName)), bucket.getDocCount());
+        }
+        return page;
+    }
+
+    @Override
+    public void close() {
+        finished = true;
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.elasticsearchdemo.esdemo6;
+
+import com.example.elasticsearchdemo.esapi.EsBaseOperator;
+import com.example.elasticsearchdemo.esapi.EsBulkProcessor;
+import com.example.elasticsearchdemo.esapi.codec.EsCodecRegistry;
+import com.example.elasticsearchdemo.esapi.config.EsBulkConfig;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 6.3 bulk写入器，基于官方BulkProcessor，由transport client异步发送请求
+ **/
+class EsBulkProcessorImpl implements EsBulkProcessor {
+
+    private static final Logger log = LoggerFactory.getLogger(EsBulkProcessorImpl.class);
+
+    private final BulkProcessor bulkProcessor;
+    private final AtomicLong succeededActions = new AtomicLong();
+    private final AtomicLong failedActions = new AtomicLong();
+    private final BiConsumer<String, String> afterBulkAction;
+
+    EsBulkProcessorImpl(Client client, EsBulkConfig bulkConfig) {
+        BulkProcessor.Builder builder = BulkProcessor.builder(client, new Listener())
+                .setBulkActions(bulkConfig.getBulkActions())
+                .setBulkSize(new ByteSizeValue(bulkConfig.getBulkSizeBytes()))
+                .setConcurrentRequests(bulkConfig.getConcurrentRequests())
+                .setBackoffPolicy(bulkConfig.getBackoffRetries() > 0
+                        ? BackoffPolicy.exponentialBackoff(TimeValue.timeValueMillis(bulkConfig.getBackoffInitialDelayMillis()), bulkConfig.getBackoffRetries())
+                        : BackoffPolicy.noBackoff());
+        if (bulkConfig.getFlushIntervalMillis() > 0) {
+            builder.setFlushInterval(TimeValue.timeValueMillis(bulkConfig.getFlushIntervalMillis()));
+        }
+        this.afterBulkAction = bulkConfig.getAfterBulkAction();
+        this.bulkProcessor = builder.build();
+    }
+
+    @Override
+    public EsBulkProcessor index(String indexName, String docId, String docJson) {
+        bulkProcessor.add(new IndexRequest(indexName, EsBaseOperator.DEFAULT_TYPE, docId).source(docJson, XContentType.JSON));
+        return this;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> EsBulkProcessor index(String indexName, String docId, T doc) {
+        byte[] source = EsCodecRegistry.codec((Class<T>) doc.getClass()).encode(doc);
+        bulkProcessor.add(new IndexRequest(indexName, EsBaseOperator.DEFAULT_TYPE, docId).source(source, XContentType.JSON));
+        return this;
+    }
+
+    @Override
+    public EsBulkProcessor update(String indexName, String docId, String docJson) {
+        bulkProcessor.add(new UpdateRequest(indexName, EsBaseOperator.DEFAULT_TYPE, docId).doc(docJson, XContentType.JSON));
+        return this;
+    }
+
+    @Override
+    public EsBulkProcessor upsert(String indexName, String docId, String docJson) {
+        bulkProcessor.add(new UpdateRequest(indexName, EsBaseOperator.DEFAULT_TYPE, docId).doc(docJson, XContentType.JSON).docAsUpsert(true));
+        return this;
+    }
+
+    @Override
+    public EsBulkProcessor delete(String indexName, String docId) {
+        bulkProcessor.add(new DeleteRequest(indexName, EsBaseOperator.DEFAULT_TYPE, docId));
+        return this;
+    }
+
+    @Override
+    public void flush() {
+        bulkProcessor.flush();
+    }
+
+    @Override
+    public boolean awaitClose(long timeout, TimeUnit unit) throws InterruptedException {
+        return bulkProcessor.awaitClose(timeout, unit);
+    }
+
+    @Override
+    public long getSucceededActions() {
+        return succeededActions.get();
+    }
+
+    @Override
+    public long getFailedActions() {
+        return failedActions.get();
+    }
+
+    @Override
+    public void close() {
+        bulkProcessor.close();
+    }
+
+    /**
+     * 统计每批bulk的成功失败数，失败的item只打日志，不中断后续的bulk。统计完再回调afterBulkAction
+     */
+    private class Listener implements BulkProcessor.Listener {
+
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request) {
+            log.debug("bulk-{}开始执行,action数:{},字节数:{}", executionId, request.numberOfActions(), request.estimatedSizeInBytes());
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            if (!response.hasFailures()) {
+                succeededActions.addAndGet(request.numberOfActions());
+            } else {
+                for (BulkItemResponse item : response.getItems()) {
+                    if (item.isFailed()) {
+                        failedActions.incrementAndGet();
+                        log.error("bulk-{}中索引{}文档{}执行失败:{}", executionId, item.getIndex(), item.getId(), item.getFailureMessage());
+                    } else {
+                        succeededActions.incrementAndGet();
+                    }
+                }
+            }
+            notifyActions(executionId, request);
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            failedActions.addAndGet(request.numberOfActions());
+            log.error("bulk-{}执行异常,action数:{}", executionId, request.numberOfActions(), failure);
+            notifyActions(executionId, request);
+        }
+
+        /**
+         * 失败的bulk也回调，请求可能已经部分写入了es
+         */
+        private void notifyActions(long executionId, BulkRequest request) {
+            if (afterBulkAction == null) {
+                return;
+            }
+            for (DocWriteRequest<?> action : request.requests()) {
+                try {
+                    afterBulkAction.accept(action.index(), action.id());
+                } catch (RuntimeException e) {
+                    log.error("bulk-{}回调afterBulkAction异常,索引{}文档{}", executionId, action.index(), action.id(), e);
+                }
+            }
+        }
+    }
+}
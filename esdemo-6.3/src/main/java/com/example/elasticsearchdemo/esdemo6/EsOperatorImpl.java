@@ -1,50 +1,103 @@
 package com.example.elasticsearchdemo.esdemo6;
 
 import com.alibaba.fastjson.JSONValidator;
+import com.example.elasticsearchdemo.esapi.EsAsyncIndexOperator;
+import com.example.elasticsearchdemo.esapi.EsAsyncQueryOperator;
 import com.example.elasticsearchdemo.esapi.EsBaseOperator;
+import com.example.elasticsearchdemo.esapi.EsBulkProcessor;
+import com.example.elasticsearchdemo.esapi.EsDirectBufferPool;
+import com.example.elasticsearchdemo.esapi.EsHitBuffer;
+import com.example.elasticsearchdemo.esapi.EsHitIterator;
 import com.example.elasticsearchdemo.esapi.EsIndexOperator;
+import com.example.elasticsearchdemo.esapi.EsMergedPageFetcher;
+import com.example.elasticsearchdemo.esapi.EsMultiSearchBatcher;
+import com.example.elasticsearchdemo.esapi.EsPageFetcher;
+import com.example.elasticsearchdemo.esapi.EsPrefetchPageFetcher;
 import com.example.elasticsearchdemo.esapi.EsQueryOperator;
+import com.example.elasticsearchdemo.esapi.EsSliceExporter;
+import com.example.elasticsearchdemo.esapi.EsSourceDecoder;
+import com.example.elasticsearchdemo.esapi.codec.EsCodecRegistry;
+import com.example.elasticsearchdemo.esapi.config.EsBulkConfig;
+import com.example.elasticsearchdemo.esapi.config.EsClientConfig;
+import com.example.elasticsearchdemo.esapi.config.EsMultiSearchConfig;
+import com.example.elasticsearchdemo.esapi.entity.EsAggregationResult;
+import com.example.elasticsearchdemo.esapi.entity.EsMultiSearchQuery;
+import com.example.elasticsearchdemo.esapi.entity.EsPage;
+import com.example.elasticsearchdemo.esapi.entity.EsPageCursor;
+import com.example.elasticsearchdemo.esapi.entity.EsProjection;
+import com.example.elasticsearchdemo.esapi.entity.EsSearchResult;
+import com.example.elasticsearchdemo.esapi.entity.EsStringDoubleMap;
+import com.example.elasticsearchdemo.esapi.entity.EsStringLongMap;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequestBuilder;
 import org.elasticsearch.action.admin.indices.create.CreateIndexResponse;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexResponse;
 import org.elasticsearch.action.admin.indices.exists.indices.IndicesExistsResponse;
-import org.elasticsearch.action.bulk.BulkItemResponse;
-import org.elasticsearch.action.bulk.BulkRequestBuilder;
-import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.get.GetRequestBuilder;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
 import org.elasticsearch.action.get.MultiGetRequestBuilder;
 import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.search.MultiSearchRequestBuilder;
+import org.elasticsearch.action.search.ClearScrollResponse;
 import org.elasticsearch.action.search.MultiSearchResponse;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.update.UpdateResponse;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.document.DocumentField;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.TransportAddress;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.LoggingDeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchModule;
 import org.elasticsearch.search.aggregations.AggregationBuilder;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.TermsValuesSourceBuilder;
 import org.elasticsearch.search.aggregations.bucket.terms.Terms;
 import org.elasticsearch.search.aggregations.metrics.sum.Sum;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.elasticsearch.search.slice.SliceBuilder;
 import org.elasticsearch.search.sort.SortOrder;
 import org.elasticsearch.transport.client.PreBuiltTransportClient;
 
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
 
 /**
  * @program: elasticsearch-demo
@@ -53,7 +106,14 @@ import java.util.*;
  * @description: es操作类6.3版本实现
  * 官方文档参考：https://www.elastic.co/guide/en/elasticsearch/client/java-api/6.8/index.html
  **/
-public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseOperator<Client> {
+public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsAsyncIndexOperator, EsAsyncQueryOperator, EsBaseOperator<Client> {
+
+    /**
+     * 解析aggs json用，包含es内置的所有query和aggregation类型。
+     * transportClient参数要传false，传true时SearchModule不会注册aggregation的解析器
+     */
+    private static final NamedXContentRegistry SEARCH_X_CONTENT_REGISTRY =
+            new NamedXContentRegistry(new SearchModule(Settings.EMPTY, false, Collections.emptyList()).getNamedXContents());
 
     /**
      * 6.3使用transport客户端
@@ -77,6 +137,16 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
      */
     private int nodePort;
 
+    /**
+     * multiSearch的分批发送，批次大小在多次调用之间共享
+     */
+    private EsMultiSearchBatcher multiSearchBatcher = new EsMultiSearchBatcher(new EsMultiSearchConfig());
+
+    /**
+     * 节点列表和嗅探配置，initClient时生效
+     */
+    private EsClientConfig clientConfig = new EsClientConfig();
+
     public EsOperatorImpl(String clusterName, String password, String nodeIp, int nodePort) {
         this.clusterName = clusterName;
         this.password = password;
@@ -84,6 +154,24 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
         this.nodePort = nodePort;
     }
 
+    /**
+     * 调整multiSearch的分批参数，会重新开始统计批次耗时
+     *
+     * @param multiSearchConfig
+     */
+    public void configMultiSearch(EsMultiSearchConfig multiSearchConfig) {
+        this.multiSearchBatcher = new EsMultiSearchBatcher(multiSearchConfig);
+    }
+
+    /**
+     * 调整transport客户端的节点列表和嗅探，需要在initClient之前调用
+     *
+     * @param clientConfig
+     */
+    public void configClient(EsClientConfig clientConfig) {
+        this.clientConfig = clientConfig;
+    }
+
     @Override
     public void initClient() {
         client = getClient(clusterName, password, nodeIp, nodePort);
@@ -108,10 +196,7 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
 
     @Override
     public boolean createIndexWithSettingsAndMappings(String indexName, String settingJson, String mappingJson) {
-        CreateIndexResponse createIndexResponse = client.admin().indices().prepareCreate(indexName)
-                .setSettings(settingJson, XContentType.JSON)
-                .addMapping(DEFAULT_TYPE, mappingJson, XContentType.JSON)
-                .get();
+        CreateIndexResponse createIndexResponse = prepareCreateIndex(indexName, settingJson, mappingJson).get();
         return createIndexResponse.isAcknowledged();
     }
 
@@ -121,6 +206,17 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
         return deleteIndexResponse.isAcknowledged();
     }
 
+    @Override
+    public String getIndexUuid(String indexName) {
+        try {
+            return client.admin().indices().prepareGetSettings(indexName).setNames(IndexMetaData.SETTING_INDEX_UUID).get()
+                    .getSetting(indexName, IndexMetaData.SETTING_INDEX_UUID);
+        } catch (ElasticsearchException e) {
+            log.error("获取索引{}的uuid异常", indexName, e);
+            return null;
+        }
+    }
+
     @Override
     public boolean createDoc(String indexName, String docJson) {
         IndexResponse indexResponse = client.prepareIndex(indexName, DEFAULT_TYPE).setSource(docJson, XContentType.JSON).get();
@@ -134,6 +230,14 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
         return indexResponse.status() == RestStatus.CREATED;
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> boolean createDocWithId(String indexName, String docId, T doc) {
+        byte[] source = EsCodecRegistry.codec((Class<T>) doc.getClass()).encode(doc);
+        IndexResponse indexResponse = client.prepareIndex(indexName, DEFAULT_TYPE, docId).setSource(source, XContentType.JSON).get();
+        return indexResponse.status() == RestStatus.CREATED;
+    }
+
     @Override
     public boolean updateDoc(String indexName, String docId, String docJson) {
         UpdateResponse response = client.prepareUpdate(indexName, DEFAULT_TYPE, docId)
@@ -158,82 +262,104 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
     }
 
     @Override
-    public void bulkRequest() {
-        BulkRequestBuilder bulkRequestBuilder = client.prepareBulk();
-        //add WriteRequestBuilder
-        //bulkRequestBuilder.add()
-        if (bulkRequestBuilder.numberOfActions() <= 0) {
-            log.info("bulk不包含请求，直接返回");
-        }
-        BulkResponse bulkItemResponses = bulkRequestBuilder.get();
-        for (int i = 0; i < bulkItemResponses.getItems().length; i++) {
-            BulkItemResponse item = bulkItemResponses.getItems()[i];
-            log.info("第{}个请求fail?{}", i, item.isFailed());
-        }
+    public EsBulkProcessor bulkRequest(EsBulkConfig bulkConfig) {
+        //BulkProcessor内部按action数、字节数、时间间隔攒批，并用concurrentRequests控制在途bulk数量
+        return new EsBulkProcessorImpl(client, bulkConfig);
     }
 
 
     @Override
     public String getDoc(String indexName, String docId) {
-        GetResponse getResponse = client.prepareGet(indexName, DEFAULT_TYPE, docId).get();
+        return getDoc(indexName, docId, (EsProjection) null);
+    }
+
+    @Override
+    public String getDoc(String indexName, String docId, EsProjection projection) {
+        GetRequestBuilder getRequestBuilder = client.prepareGet(indexName, DEFAULT_TYPE, docId);
         //一般我们用sourceAsString就够了，自己用jsonObject转换成所需的实体类。
         // 如果es索引设置了单独的store字段，也可以只取指定的store字段
-        return getResponse.isExists() ? getResponse.getSourceAsString() : null;
+        if (projection != null) {
+            if (projection.isFetchSource()) {
+                getRequestBuilder.setFetchSource(projection.getIncludes(), projection.getExcludes());
+            } else {
+                getRequestBuilder.setFetchSource(false);
+            }
+            if (projection.getStoredFields() != null) {
+                getRequestBuilder.setStoredFields(projection.getStoredFields());
+            }
+        }
+        GetResponse getResponse = getRequestBuilder.get();
+        return getResponse.isExists() ? docMapper(projection).apply(getResponse) : null;
+    }
+
+    @Override
+    public <T> T getDoc(String indexName, String docId, Class<T> type) {
+        GetResponse getResponse = client.prepareGet(indexName, DEFAULT_TYPE, docId).get();
+        return getResponse.isExists() ? decodeSource(getResponse.getSourceAsBytesRef(), type) : null;
     }
 
     @Override
     public List<String> mulitGet(String indexName, String... docIds) {
+        return mulitGet(indexName, (EsProjection) null, docIds);
+    }
+
+    @Override
+    public List<String> mulitGet(String indexName, EsProjection projection, String... docIds) {
         if (docIds.length <= 0) {
-            return new LinkedList<>();
-        }
-        MultiGetRequestBuilder multiGetRequestBuilder = client.prepareMultiGet();
-        for (String docId : docIds) {
-            multiGetRequestBuilder.add(indexName, DEFAULT_TYPE, docId);
+            return new ArrayList<>(0);
         }
-        List<String> res = new LinkedList<>();
-        MultiGetResponse multiGetItemResponses = multiGetRequestBuilder.get();
-        for (MultiGetItemResponse multiGetItemRespons : multiGetItemResponses) {
-            res.add(multiGetItemRespons.getResponse().isExists() ? multiGetItemRespons.getResponse().getSourceAsString() : null);
+        return getMultiGetResults(prepareMultiGet(indexName, projection, docIds).get(), docMapper(projection));
+    }
+
+    @Override
+    public <T> List<T> mulitGet(String indexName, Class<T> type, String... docIds) {
+        if (docIds.length <= 0) {
+            return new ArrayList<>(0);
         }
-        return res;
+        return getMultiGetResults(prepareMultiGet(indexName, null, docIds).get(), getResponse -> decodeSource(getResponse.getSourceAsBytesRef(), type));
     }
 
     @Override
-    public List<String> search(String indexName, String queryJson) {
-        SearchRequestBuilder searchRequestBuilder = client.prepareSearch(indexName)
-                //size不设置，似乎是默认10，无法全部返回
-                .setSize(10_000);
-        //构建QueryBuilder
-        buildQueryBuilder(queryJson, searchRequestBuilder);
-        SearchResponse searchResponse = searchRequestBuilder.get();
-        return getResStrings(searchResponse);
+    public EsSearchResult<String> search(String indexName, String queryJson) {
+        return search(indexName, queryJson, (EsProjection) null);
     }
 
     @Override
-    public List<String> searchPageByFromSize(String indexName, String queryJson, int pageNum, int pageSize) {
-        if (pageNum < 0) {
-            pageNum = 0;
-        }
-        if (pageSize < 0) {
-            pageSize = 10;
-        }
-        if (pageNum * pageSize > 10_000) {
-            throw new RuntimeException("该方法只允许查询分页数在1w以内的数据");
-        }
-        SearchRequestBuilder searchRequestBuilder = client.prepareSearch(indexName)
-                .setFrom((pageNum - 1) * pageSize)
-                .setSize(pageSize);
-        //一般用queryBuilder自己构建就成-------
-        //QueryBuilder queryBuilder=new TermQueryBuilder("field","value");
-        //searchRequestBuilder.setQuery(queryBuilder);
-        //wrapperQuery只会包含查询json中query下的部分，像别的aggs、sort这些key下面的string是不会解析的-----
-        buildQueryBuilder(queryJson, searchRequestBuilder);
-        SearchResponse searchResponse = searchRequestBuilder.get();
-        return getResStrings(searchResponse);
+    public EsSearchResult<String> search(String indexName, String queryJson, EsProjection projection) {
+        SearchResponse searchResponse = applyProjection(prepareSearch(indexName, queryJson), projection).get();
+        return getResults(searchResponse, hitMapper(projection));
     }
 
     @Override
-    public List<String> searchPageByScroll(String indexName, String queryJson, int scrollMinute, int pageNum, int pageSize) {
+    public <T> EsSearchResult<T> search(String indexName, String queryJson, Class<T> type) {
+        SearchResponse searchResponse = prepareSearch(indexName, queryJson).get();
+        return getResults(searchResponse, hit -> decodeSource(hit.getSourceRef(), type));
+    }
+
+    @Override
+    public EsHitBuffer searchAsBuffer(String indexName, String queryJson) {
+        SearchResponse searchResponse = prepareSearch(indexName, queryJson).get();
+        return getHitBuffer(searchResponse);
+    }
+
+    @Override
+    public EsSearchResult<String> searchPageByFromSize(String indexName, String queryJson, int pageNum, int pageSize) {
+        return searchPageByFromSize(indexName, queryJson, pageNum, pageSize, null);
+    }
+
+    @Override
+    public EsSearchResult<String> searchPageByFromSize(String indexName, String queryJson, int pageNum, int pageSize, EsProjection projection) {
+        SearchResponse searchResponse = applyProjection(prepareFromSize(indexName, queryJson, pageNum, pageSize), projection).get();
+        return getResults(searchResponse, hitMapper(projection));
+    }
+
+    @Override
+    public EsSearchResult<String> searchPageByScroll(String indexName, String queryJson, int scrollMinute, int pageNum, int pageSize) {
+        return searchPageByScroll(indexName, queryJson, scrollMinute, pageNum, pageSize, null);
+    }
+
+    @Override
+    public EsSearchResult<String> searchPageByScroll(String indexName, String queryJson, int scrollMinute, int pageNum, int pageSize, EsProjection projection) {
         if (pageNum <= 0) {
             pageNum = 1;
         }
@@ -245,10 +371,10 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
                 .setSize(pageSize);
         //构建queryBuilder
         buildQueryBuilder(queryJson, searchRequestBuilder);
-        SearchResponse searchResponse = searchRequestBuilder.get();
+        SearchResponse searchResponse = applyProjection(searchRequestBuilder, projection).get();
         //如果pageNum页已经超过了数据最大量，那么直接pageNum页直接返回空列表
         if (searchResponse.getSuccessfulShards() <= 0 || searchResponse.getHits().totalHits <= (long) (pageNum - 1) * pageSize) {
-            return new LinkedList<>();
+            return newSearchResult(searchResponse, 0);
         }
         //for循环查询下一页。其实吧，searchAfter和scroll都不适合深度分页。跳页查询其实都会遍历前边的数据，产品前端最好做些折衷比较适合，
         // 让用户只能一页一页翻。mysql好歹能通过b+tree主键索引进行分页优化。而es因为是通过对docId进行hash定位的，本身分页查询就没特别好的方式
@@ -257,11 +383,74 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
         }
         //最后可以clear掉当前的scroll，减少es服务端内存占用。或者当快照到期自然clear也成
         //client.prepareClearScroll().addScrollId(searchResponse.getScrollId()).get();
-        return getResStrings(searchResponse);
+        return getResults(searchResponse, hitMapper(projection));
+    }
+
+    @Override
+    public EsPage<String> searchPageByScroll(String indexName, String queryJson, int scrollMinute, int pageSize, String cursor) {
+        return searchPageByScroll(indexName, queryJson, scrollMinute, pageSize, cursor, null);
+    }
+
+    @Override
+    public EsPage<String> searchPageByScroll(String indexName, String queryJson, int scrollMinute, int pageSize, String cursor, EsProjection projection) {
+        if (pageSize <= 0) {
+            pageSize = 10;
+        }
+        EsPageCursor pageCursor = EsPageCursor.resolve(indexName, queryJson, pageSize, cursor);
+        TimeValue keepAlive = TimeValue.timeValueMinutes(scrollMinute);
+        SearchResponse searchResponse;
+        if (pageCursor.getScrollId() == null) {
+            searchResponse = applyProjection(prepareScroll(indexName, queryJson, keepAlive, pageSize), projection).get();
+        } else {
+            searchResponse = client.prepareSearchScroll(pageCursor.getScrollId()).setScroll(keepAlive).get();
+        }
+        EsPage<String> page = toScrollPage(pageCursor, pageSize, searchResponse, hitMapper(projection));
+        if (!page.hasNext()) {
+            //最后一页了，直接clear掉快照
+            client.prepareClearScroll().addScrollId(searchResponse.getScrollId()).get();
+        }
+        return page;
+    }
+
+    @Override
+    public EsHitIterator<String> searchByScroll(String indexName, String queryJson, int scrollMinute, int pageSize) {
+        return searchByScroll(indexName, queryJson, scrollMinute, pageSize, 0);
+    }
+
+    @Override
+    public EsHitIterator<String> searchByScroll(String indexName, String queryJson, int scrollMinute, int pageSize, int prefetchPages) {
+        return searchByScroll(indexName, queryJson, scrollMinute, pageSize, prefetchPages, null);
+    }
+
+    @Override
+    public EsHitIterator<String> searchByScroll(String indexName, String queryJson, int scrollMinute, int pageSize, int prefetchPages, EsProjection projection) {
+        if (pageSize <= 0) {
+            pageSize = 10;
+        }
+        SearchRequestBuilder searchRequestBuilder = client.prepareSearch(indexName);
+        buildQueryBuilder(queryJson, searchRequestBuilder);
+        applyProjection(searchRequestBuilder, projection);
+        return toHitIterator(new ScrollPageFetcher<>(client, searchRequestBuilder, pageSize, TimeValue.timeValueMinutes(scrollMinute), hitMapper(projection)), prefetchPages);
+    }
+
+    @Override
+    public EsHitIterator<String> searchBySlicedScroll(String indexName, String queryJson, int scrollMinute, int pageSize, int slices, Executor executor) {
+        List<ScrollPageFetcher<String>> fetchers = buildSliceFetchers(indexName, queryJson, scrollMinute, pageSize, slices);
+        return new EsHitIterator<>(new EsMergedPageFetcher<>(fetchers, executor, fetchers.size()));
+    }
+
+    @Override
+    public boolean exportBySlicedScroll(String indexName, String queryJson, int scrollMinute, int pageSize, int slices, Executor executor, BiConsumer<Integer, List<String>> sliceSink) {
+        return EsSliceExporter.export(buildSliceFetchers(indexName, queryJson, scrollMinute, pageSize, slices), executor, sliceSink);
+    }
+
+    @Override
+    public EsSearchResult<String> searchPageBySearchAfter(String indexName, String queryJson, int pageNum, int pageSize) {
+        return searchPageBySearchAfter(indexName, queryJson, pageNum, pageSize, null);
     }
 
     @Override
-    public List<String> searchPageBySearchAfter(String indexName, String queryJson, int pageNum, int pageSize) {
+    public EsSearchResult<String> searchPageBySearchAfter(String indexName, String queryJson, int pageNum, int pageSize, EsProjection projection) {
         if (pageNum <= 0) {
             pageNum = 1;
         }
@@ -273,10 +462,10 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
                 .addSort("_index", SortOrder.ASC)
                 .addSort("_id", SortOrder.ASC);
         buildQueryBuilder(queryJson, searchRequestBuilder);
-        SearchResponse searchResponse = searchRequestBuilder.get();
+        SearchResponse searchResponse = applyProjection(searchRequestBuilder, projection).get();
         //如果pageNum页已经超过了数据最大量，那么直接pageNum页直接返回空列表
         if (searchResponse.getSuccessfulShards() <= 0 || searchResponse.getHits().totalHits <= (long) (pageNum - 1) * pageSize) {
-            return new LinkedList<>();
+            return newSearchResult(searchResponse, 0);
         }
         //for循环查询下一页。其实吧，searchAfter和scroll都不适合深度分页。跳页查询其实都会遍历前边的数据，产品前端最好做些折衷比较适合，
         // 让用户只能一页一页翻。mysql好歹能通过b+tree主键索引进行分页优化。而es因为是通过对docId进行hash定位的，本身分页查询就没特别好的方式
@@ -285,169 +474,389 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
             Object[] sortValues = hits[hits.length - 1].getSortValues();
             searchResponse = searchRequestBuilder.searchAfter(sortValues).get();
         }
-        return getResStrings(searchResponse);
+        return getResults(searchResponse, hitMapper(projection));
     }
 
 
     @Override
-    public List<String> searchWithSort(String indexName, String queryJson, String... sortFields) {
-        SearchRequestBuilder searchRequestBuilder = client.prepareSearch(indexName)
-                .setSize(10_000);
+    public <T> EsHitIterator<T> searchByScroll(String indexName, String queryJson, int scrollMinute, int pageSize, Class<T> type) {
+        if (pageSize <= 0) {
+            pageSize = 10;
+        }
+        SearchRequestBuilder searchRequestBuilder = client.prepareSearch(indexName);
         buildQueryBuilder(queryJson, searchRequestBuilder);
-        for (String sortField : sortFields) {
-            searchRequestBuilder.addSort(sortField, SortOrder.ASC);
+        return new EsHitIterator<>(new ScrollPageFetcher<>(client, searchRequestBuilder, pageSize, TimeValue.timeValueMinutes(scrollMinute), hit -> decodeSource(hit.getSourceRef(), type)));
+    }
+
+    @Override
+    public EsPage<String> searchPageBySearchAfter(String indexName, String queryJson, int pageSize, String cursor) {
+        return searchPageBySearchAfter(indexName, queryJson, pageSize, cursor, null);
+    }
+
+    @Override
+    public EsPage<String> searchPageBySearchAfter(String indexName, String queryJson, int pageSize, String cursor, EsProjection projection) {
+        if (pageSize <= 0) {
+            pageSize = 10;
         }
-        SearchResponse searchResponse = searchRequestBuilder.get();
-        return getResStrings(searchResponse);
+        EsPageCursor pageCursor = EsPageCursor.resolve(indexName, queryJson, pageSize, cursor);
+        SearchResponse searchResponse = applyProjection(prepareSearchAfter(indexName, queryJson, pageSize, pageCursor), projection).get();
+        return toSearchAfterPage(pageCursor, pageSize, searchResponse, hitMapper(projection));
+    }
+
+    @Override
+    public EsHitIterator<String> searchBySearchAfter(String indexName, String queryJson, int pageSize) {
+        return searchBySearchAfter(indexName, queryJson, pageSize, 0);
+    }
+
+    @Override
+    public EsHitIterator<String> searchBySearchAfter(String indexName, String queryJson, int pageSize, int prefetchPages) {
+        return searchBySearchAfter(indexName, queryJson, pageSize, prefetchPages, null);
+    }
+
+    @Override
+    public EsHitIterator<String> searchBySearchAfter(String indexName, String queryJson, int pageSize, int prefetchPages, EsProjection projection) {
+        if (pageSize <= 0) {
+            pageSize = 10;
+        }
+        SearchRequestBuilder searchRequestBuilder = client.prepareSearch(indexName)
+                .addSort("_index", SortOrder.ASC)
+                .addSort("_id", SortOrder.ASC);
+        buildQueryBuilder(queryJson, searchRequestBuilder);
+        applyProjection(searchRequestBuilder, projection);
+        return toHitIterator(new SearchAfterPageFetcher<>(searchRequestBuilder, pageSize, hitMapper(projection)), prefetchPages);
+    }
+
+
+    @Override
+    public EsSearchResult<String> searchWithSort(String indexName, String queryJson, String... sortFields) {
+        return searchWithSort(indexName, queryJson, (EsProjection) null, sortFields);
+    }
+
+    @Override
+    public EsSearchResult<String> searchWithSort(String indexName, String queryJson, EsProjection projection, String... sortFields) {
+        SearchResponse searchResponse = applyProjection(prepareSort(indexName, queryJson, sortFields), projection).get();
+        return getResults(searchResponse, hitMapper(projection));
     }
 
     @Override
     public Double searchWithMetricAggregation(String indexName, String sumField) {
+        return searchWithMetricAggregationResult(indexName, sumField).getValue();
+    }
+
+    @Override
+    public EsAggregationResult<Double> searchWithMetricAggregationResult(String indexName, String sumField) {
         //这里替换成成自己需要的aggs方法，进行处理
         AggregationBuilder aggregationBuilder = AggregationBuilders.sum("sum").field(sumField);
-        SearchResponse searchResponse = client.prepareSearch(indexName)
-                //设置size为0，就不返回hits了，只返回aggregation结果。
-                .setSize(0)
-                .addAggregation(aggregationBuilder)
-                .get();
-        if (searchResponse.getSuccessfulShards() <= 0) {
-            return null;
-        }
-        Aggregations aggregations = searchResponse.getAggregations();
-        Sum sum = aggregations.get("sum");
-        return sum.getValue();
+        SearchResponse searchResponse = prepareAggregation(indexName, aggregationBuilder).get();
+        return toAggregationResult(searchResponse, getMetricAggregation(searchResponse));
     }
 
     @Override
-    public Map<String, Long> searchWithBulkAggregation(String indexName, String groupField) {
+    public EsStringLongMap searchWithBulkAggregation(String indexName, String groupField) {
+        return searchWithBulkAggregationResult(indexName, groupField).getValue();
+    }
+
+    @Override
+    public EsAggregationResult<EsStringLongMap> searchWithBulkAggregationResult(String indexName, String groupField) {
         //这里替换成成自己需要的aggs方法，进行处理
         AggregationBuilder aggregationBuilder = AggregationBuilders.terms("groupBy").field(groupField);
-        SearchResponse searchResponse = client.prepareSearch(indexName)
-                //设置size为0，就不返回hits了，只返回aggregation结果。
-                .setSize(0)
-                .addAggregation(aggregationBuilder)
-                .get();
-        Map<String, Long> groupFieldAndCountMap = new HashMap<>();
-        if (searchResponse.getSuccessfulShards() <= 0) {
-            return groupFieldAndCountMap;
-        }
-        //groupby查询和解析
-        Aggregations aggregations = searchResponse.getAggregations();
-        Terms terms = aggregations.get("groupBy");
-        for (Terms.Bucket bucket : terms.getBuckets()) {
-            groupFieldAndCountMap.put(bucket.getKeyAsString(), bucket.getDocCount());
+        SearchResponse searchResponse = prepareAggregation(indexName, aggregationBuilder).get();
+        return toAggregationResult(searchResponse, getBulkAggregation(searchResponse));
+    }
+
+
+    @Override
+    public boolean searchWithCompositeAggregation(String indexName, String queryJson, String groupField, int pageSize, ObjLongConsumer<String> bucketSink) {
+        CompositeAggregationBuilder compositeBuilder = new CompositeAggregationBuilder("groupby",
+                Collections.singletonList(new TermsValuesSourceBuilder(groupField).field(groupField)))
+                .size(pageSize > 0 ? pageSize : 1000);
+        SearchRequestBuilder searchRequestBuilder = prepareAggregation(indexName, compositeBuilder);
+        buildQueryBuilder(queryJson, searchRequestBuilder);
+        try (CompositePageFetcher pageFetcher = new CompositePageFetcher(searchRequestBuilder, compositeBuilder, groupField)) {
+            EsStringLongMap page;
+            while (!(page = pageFetcher.nextPage()).isEmpty()) {
+                for (int i = 0; i < page.size(); i++) {
+                    bucketSink.accept(page.keyAt(i), page.longAt(i));
+                }
+            }
+            return true;
+        } catch (RuntimeException e) {
+            log.error("索引{}按{}分组聚合时异常", indexName, groupField, e);
+            return false;
         }
-        return groupFieldAndCountMap;
     }
 
+    @Override
+    public EsStringDoubleMap searchWithPipelineAggregation(String indexName, String groupField, String sumField) {
+        return searchWithPipelineAggregationResult(indexName, groupField, sumField).getValue();
+    }
 
     @Override
-    public Map<String, Double> searchWithPipelineAggregation(String indexName, String groupField, String sumField) {
+    public EsAggregationResult<EsStringDoubleMap> searchWithPipelineAggregationResult(String indexName, String groupField, String sumField) {
         //这里替换成成自己需要的aggs方法，进行处理
         AggregationBuilder aggregationBuilder = AggregationBuilders.terms("groupBy").field(groupField);
         aggregationBuilder.subAggregation(AggregationBuilders.sum("sum").field(sumField));
-        SearchResponse searchResponse = client.prepareSearch(indexName)
-                //设置size为0，就不返回hits了，只返回aggregation结果。
-                .setSize(0)
-                .addAggregation(aggregationBuilder)
-                .get();
-        Map<String, Double> groupFieldAndSumMap = new HashMap<>();
-        if (searchResponse.getSuccessfulShards() <= 0) {
-            return groupFieldAndSumMap;
-        }
-        Terms terms = searchResponse.getAggregations().get("groupBy");
-        for (Terms.Bucket bucket : terms.getBuckets()) {
-            Sum sum = bucket.getAggregations().get("sum");
-            groupFieldAndSumMap.put(bucket.getKeyAsString(), sum.getValue());
-        }
-        return groupFieldAndSumMap;
+        SearchResponse searchResponse = prepareAggregation(indexName, aggregationBuilder).get();
+        return toAggregationResult(searchResponse, getPipelineAggregation(searchResponse));
     }
 
 
     @Override
-    public List<String> multiSearchWithIndexNames(String... indexNames) {
-        SearchResponse searchResponse = client.prepareSearch(indexNames)
-                .setQuery(QueryBuilders.matchAllQuery())
-                .setSize(100)
-                .get();
-        return getResStrings(searchResponse);
+    public String searchAggregation(String indexName, String queryJson, String aggsJson) {
+        EsAggregationResult<String> result = searchAggregationResult(indexName, queryJson, aggsJson);
+        return result == null ? null : result.getValue();
     }
 
     @Override
-    public List<List<String>> multiSearchWithQueryJsons(String indexName, String... queryJson) {
-        if (queryJson.length <= 0) {
-            return new LinkedList<>();
-        }
-        MultiSearchRequestBuilder multiSearchRequestBuilder = client.prepareMultiSearch();
-        for (String singleQueryJson : queryJson) {
-            if (StringUtils.isNotEmpty(singleQueryJson) && !JSONValidator.from(singleQueryJson).validate()) {
-                throw new RuntimeException("传入的queryJson不能转换为json串，请检查");
-            }
-            SearchRequestBuilder searchRequestBuilder = client.prepareSearch(indexName).setSize(100);
-            buildQueryBuilder(singleQueryJson, searchRequestBuilder);
-            multiSearchRequestBuilder.add(searchRequestBuilder);
-        }
-        List<List<String>> res = new LinkedList<>();
-        MultiSearchResponse multiSearchResponse = multiSearchRequestBuilder.get();
-        for (MultiSearchResponse.Item respons : multiSearchResponse.getResponses()) {
-            if (respons.isFailure()) {
-                res.add(null);
-                continue;
-            }
-            List<String> resStrings = getResStrings(respons.getResponse());
-            res.add(resStrings);
+    public EsAggregationResult<String> searchAggregationResult(String indexName, String queryJson, String aggsJson) {
+        SearchRequestBuilder searchRequestBuilder = prepareAggregation(indexName, queryJson, aggsJson);
+        if (searchRequestBuilder == null) {
+            return null;
         }
-        return res;
+        SearchResponse searchResponse = searchRequestBuilder.get();
+        return toAggregationResult(searchResponse, getAggregationJson(searchResponse));
     }
 
     @Override
-    public void asyncSearch(String indexName) {
-        client.prepareSearch(indexName)
-                .setQuery(QueryBuilders.matchAllQuery())
-                .execute(new ActionListener<SearchResponse>() {
-                    @Override
-                    public void onResponse(SearchResponse searchResponse) {
-                        List<String> resStrings = getResStrings(searchResponse);
-                        log.info("输出结果为:{}", resStrings);
-                    }
+    public EsSearchResult<String> multiSearchWithIndexNames(String... indexNames) {
+        SearchResponse searchResponse = prepareMultiIndexSearch(indexNames).get();
+        return getResStrings(searchResponse);
+    }
+
+    @Override
+    public List<EsSearchResult<String>> multiSearchWithQueryJsons(String indexName, String... queryJson) {
+        return multiSearch(indexName, toMultiSearchQueries(queryJson));
+    }
+
+    @Override
+    public List<EsSearchResult<String>> multiSearch(String indexName, List<EsMultiSearchQuery> queries) {
+        return multiSearchAsync(indexName, queries).join();
+    }
 
-                    @Override
-                    public void onFailure(Exception e) {
+    @Override
+    public void asyncSearch(String indexName) {
+        executeAsync(client.prepareSearch(indexName).setQuery(QueryBuilders.matchAllQuery()), this::getResStrings)
+                .whenComplete((resStrings, e) -> {
+                    if (e != null) {
                         log.error("异步请求出错", e);
+                        return;
                     }
+                    log.info("输出结果为:{}", resStrings);
                 });
     }
 
+    @Override
+    public CompletableFuture<Boolean> existIndexAsync(String indexName) {
+        return executeAsync(client.admin().indices().prepareExists(indexName), IndicesExistsResponse::isExists);
+    }
 
     @Override
-    public Client getClient() {
-        return client;
+    public CompletableFuture<Boolean> createIndexAsync(String indexName) {
+        return executeAsync(client.admin().indices().prepareCreate(indexName), CreateIndexResponse::isAcknowledged);
     }
 
-    /**
-     * 创建es client 一定要是单例，单例，单例！不要在应用中构造多个客户端！
-     * clusterName:集群名字
-     * nodeIp:集群中节点的ip地址
-     * nodePort:节点的端口
-     *
+    @Override
+    public CompletableFuture<Boolean> createIndexWithSettingsAndMappingsAsync(String indexName, String settingJson, String mappingJson) {
+        return executeAsync(prepareCreateIndex(indexName, settingJson, mappingJson), CreateIndexResponse::isAcknowledged);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteIndexAsync(String indexName) {
+        return executeAsync(client.admin().indices().prepareDelete(indexName), DeleteIndexResponse::isAcknowledged);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> createDocAsync(String indexName, String docJson) {
+        return indexAsync(client.prepareIndex(indexName, DEFAULT_TYPE).setSource(docJson, XContentType.JSON));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> createDocWithIdAsync(String indexName, String docId, String docJson) {
+        return indexAsync(client.prepareIndex(indexName, DEFAULT_TYPE, docId).setSource(docJson, XContentType.JSON));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<Boolean> createDocWithIdAsync(String indexName, String docId, T doc) {
+        byte[] source = EsCodecRegistry.codec((Class<T>) doc.getClass()).encode(doc);
+        return indexAsync(client.prepareIndex(indexName, DEFAULT_TYPE, docId).setSource(source, XContentType.JSON));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updateDocAsync(String indexName, String docId, String docJson) {
+        return executeAsync(client.prepareUpdate(indexName, DEFAULT_TYPE, docId).setDoc(docJson, XContentType.JSON),
+                response -> response.status() == RestStatus.OK);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> upsertDocAsync(String indexName, String docId, String docJson) {
+        return executeAsync(client.prepareUpdate(indexName, DEFAULT_TYPE, docId).setDoc(docJson, XContentType.JSON).setDocAsUpsert(true),
+                response -> response.status() == RestStatus.CREATED || response.status() == RestStatus.OK);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteIndexDocAsync(String indexName, String docId) {
+        return executeAsync(client.prepareDelete(indexName, DEFAULT_TYPE, docId), deleteResponse -> deleteResponse.status() == RestStatus.OK);
+    }
+
+    @Override
+    public CompletableFuture<String> getDocAsync(String indexName, String docId) {
+        return executeAsync(client.prepareGet(indexName, DEFAULT_TYPE, docId),
+                getResponse -> getResponse.isExists() ? getResponse.getSourceAsString() : null);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> getDocAsync(String indexName, String docId, Class<T> type) {
+        return executeAsync(client.prepareGet(indexName, DEFAULT_TYPE, docId),
+                getResponse -> getResponse.isExists() ? decodeSource(getResponse.getSourceAsBytesRef(), type) : null);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> mulitGetAsync(String indexName, String... docIds) {
+        if (docIds.length <= 0) {
+            return CompletableFuture.completedFuture(new ArrayList<>(0));
+        }
+        return executeAsync(prepareMultiGet(indexName, null, docIds), multiGetResponse -> getMultiGetResults(multiGetResponse, GetResponse::getSourceAsString));
+    }
+
+    @Override
+    public <T> CompletableFuture<List<T>> mulitGetAsync(String indexName, Class<T> type, String... docIds) {
+        if (docIds.length <= 0) {
+            return CompletableFuture.completedFuture(new ArrayList<>(0));
+        }
+        return executeAsync(prepareMultiGet(indexName, null, docIds),
+                multiGetResponse -> getMultiGetResults(multiGetResponse, getResponse -> decodeSource(getResponse.getSourceAsBytesRef(), type)));
+    }
+
+    @Override
+    public CompletableFuture<EsSearchResult<String>> searchAsync(String indexName, String queryJson) {
+        return executeAsync(prepareSearch(indexName, queryJson), this::getResStrings);
+    }
+
+    @Override
+    public <T> CompletableFuture<EsSearchResult<T>> searchAsync(String indexName, String queryJson, Class<T> type) {
+        return executeAsync(prepareSearch(indexName, queryJson), searchResponse -> getResults(searchResponse, hit -> decodeSource(hit.getSourceRef(), type)));
+    }
+
+    @Override
+    public CompletableFuture<EsSearchResult<String>> searchPageByFromSizeAsync(String indexName, String queryJson, int pageNum, int pageSize) {
+        return executeAsync(prepareFromSize(indexName, queryJson, pageNum, pageSize), this::getResStrings);
+    }
+
+    @Override
+    public CompletableFuture<EsPage<String>> searchPageByScrollAsync(String indexName, String queryJson, int scrollMinute, int pageSize, String cursor) {
+        int size = pageSize <= 0 ? 10 : pageSize;
+        EsPageCursor pageCursor = EsPageCursor.resolve(indexName, queryJson, size, cursor);
+        TimeValue keepAlive = TimeValue.timeValueMinutes(scrollMinute);
+        Function<SearchResponse, EsPage<String>> pageMapper = searchResponse -> {
+            EsPage<String> page = toScrollPage(pageCursor, size, searchResponse, SearchHit::getSourceAsString);
+            if (!page.hasNext()) {
+                //回调所在的transport线程中不能同步等待es响应，这里异步clear掉快照
+                clearScrollAsync(searchResponse.getScrollId());
+            }
+            return page;
+        };
+        if (pageCursor.getScrollId() == null) {
+            return executeAsync(prepareScroll(indexName, queryJson, keepAlive, size), pageMapper);
+        }
+        return executeAsync(client.prepareSearchScroll(pageCursor.getScrollId()).setScroll(keepAlive), pageMapper);
+    }
+
+    @Override
+    public CompletableFuture<EsPage<String>> searchPageBySearchAfterAsync(String indexName, String queryJson, int pageSize, String cursor) {
+        int size = pageSize <= 0 ? 10 : pageSize;
+        EsPageCursor pageCursor = EsPageCursor.resolve(indexName, queryJson, size, cursor);
+        return executeAsync(prepareSearchAfter(indexName, queryJson, size, pageCursor), searchResponse -> toSearchAfterPage(pageCursor, size, searchResponse, SearchHit::getSourceAsString));
+    }
+
+    @Override
+    public CompletableFuture<EsSearchResult<String>> searchWithSortAsync(String indexName, String queryJson, String... sortFields) {
+        return executeAsync(prepareSort(indexName, queryJson, sortFields), this::getResStrings);
+    }
+
+    @Override
+    public CompletableFuture<Double> searchWithMetricAggregationAsync(String indexName, String sumField) {
+        AggregationBuilder aggregationBuilder = AggregationBuilders.sum("sum").field(sumField);
+        return executeAsync(prepareAggregation(indexName, aggregationBuilder), EsOperatorImpl::getMetricAggregation);
+    }
+
+    @Override
+    public CompletableFuture<EsStringLongMap> searchWithBulkAggregationAsync(String indexName, String groupField) {
+        AggregationBuilder aggregationBuilder = AggregationBuilders.terms("groupBy").field(groupField);
+        return executeAsync(prepareAggregation(indexName, aggregationBuilder), EsOperatorImpl::getBulkAggregation);
+    }
+
+    @Override
+    public CompletableFuture<EsStringDoubleMap> searchWithPipelineAggregationAsync(String indexName, String groupField, String sumField) {
+        AggregationBuilder aggregationBuilder = AggregationBuilders.terms("groupBy").field(groupField);
+        aggregationBuilder.subAggregation(AggregationBuilders.sum("sum").field(sumField));
+        return executeAsync(prepareAggregation(indexName, aggregationBuilder), EsOperatorImpl::getPipelineAggregation);
+    }
+
+    @Override
+    public CompletableFuture<String> searchAggregationAsync(String indexName, String queryJson, String aggsJson) {
+        SearchRequestBuilder searchRequestBuilder = prepareAggregation(indexName, queryJson, aggsJson);
+        if (searchRequestBuilder == null) {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalArgumentException("aggsJson解析失败:" + aggsJson));
+            return future;
+        }
+        return executeAsync(searchRequestBuilder, EsOperatorImpl::getAggregationJson);
+    }
+
+    @Override
+    public CompletableFuture<EsSearchResult<String>> multiSearchWithIndexNamesAsync(String... indexNames) {
+        return executeAsync(prepareMultiIndexSearch(indexNames), this::getResStrings);
+    }
+
+    @Override
+    public CompletableFuture<List<EsSearchResult<String>>> multiSearchWithQueryJsonsAsync(String indexName, String... queryJson) {
+        return multiSearchAsync(indexName, toMultiSearchQueries(queryJson));
+    }
+
+    @Override
+    public CompletableFuture<List<EsSearchResult<String>>> multiSearchAsync(String indexName, List<EsMultiSearchQuery> queries) {
+        return multiSearchBatcher.execute(queries, batch -> executeAsync(prepareMultiSearch(indexName, batch), this::getMultiSearchResStrings));
+    }
+
+    @Override
+    public Client getClient() {
+        return client;
+    }
+
+    /**
+     * 创建es client 一定要是单例，单例，单例！不要在应用中构造多个客户端！
+     * clusterName:集群名字
+     * nodeIp:集群中节点的ip地址
+     * nodePort:节点的端口
+     *
      * @return
      */
     private Client getClient(String clusterName, String password, String nodeIp, int nodePort) {
-        //设置集群的名字
+        EsClientConfig config = clientConfig;
+        //开启嗅探后客户端定时拉取集群里的data节点，请求在这些节点之间轮询，master节点不会收到请求
         Settings settings = Settings.builder()
                 .put("cluster.name", clusterName)
                 .put("request.headers.Authorization", basicAuthHeaderValue(clusterName, password))
-                .put("client.transport.sniff", false)
+                .put("client.transport.sniff", config.getSniffIntervalMillis() > 0)
+                .put("client.transport.nodes_sampler_interval", TimeValue.timeValueMillis(config.getSniffIntervalMillis() > 0 ? config.getSniffIntervalMillis() : 5000))
                 .build();
 
-        TransportAddress transportAddress = null;
-        try {
-            transportAddress = new TransportAddress(InetAddress.getByName(nodeIp), nodePort);
-        } catch (UnknownHostException e) {
-            log.error("未识别的host地址", e);
-            e.printStackTrace();
+        TransportClient client = new PreBuiltTransportClient(settings);
+        String[] hosts = config.getHosts();
+        if (hosts == null || hosts.length == 0) {
+            hosts = new String[]{nodeIp + ":" + nodePort};
+        }
+        for (String host : hosts) {
+            int colon = host.lastIndexOf(':');
+            try {
+                client.addTransportAddress(colon < 0
+                        ? new TransportAddress(InetAddress.getByName(host), nodePort)
+                        : new TransportAddress(InetAddress.getByName(host.substring(0, colon)), Integer.parseInt(host.substring(colon + 1))));
+            } catch (UnknownHostException e) {
+                log.error("未识别的host地址", e);
+            }
         }
-        Client client = new PreBuiltTransportClient(settings).addTransportAddress(transportAddress);
         return client;
     }
 
@@ -477,23 +886,525 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
         return bytes;
     }
 
+    /**
+     * 通过execute(ActionListener)异步执行请求，转换成CompletableFuture，resultMapper在transport客户端的回调线程中执行
+     *
+     * @param requestBuilder
+     * @param resultMapper   把es的response转换成返回结果，抛出的异常会结束future
+     * @return
+     */
+    private static <R extends ActionResponse, T> CompletableFuture<T> executeAsync(ActionRequestBuilder<?, R, ?> requestBuilder, Function<R, T> resultMapper) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        requestBuilder.execute(new ActionListener<R>() {
+            @Override
+            public void onResponse(R response) {
+                try {
+                    future.complete(resultMapper.apply(response));
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 异步执行index，创建成功返回true
+     *
+     * @param indexRequestBuilder
+     * @return
+     */
+    private static CompletableFuture<Boolean> indexAsync(IndexRequestBuilder indexRequestBuilder) {
+        return executeAsync(indexRequestBuilder, indexResponse -> indexResponse.status() == RestStatus.CREATED);
+    }
+
+    /**
+     * 异步clear掉scroll快照，用在transport客户端的回调线程中
+     *
+     * @param scrollId
+     */
+    private void clearScrollAsync(String scrollId) {
+        if (scrollId == null) {
+            return;
+        }
+        client.prepareClearScroll().addScrollId(scrollId).execute(new ActionListener<ClearScrollResponse>() {
+            @Override
+            public void onResponse(ClearScrollResponse clearScrollResponse) {
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                log.warn("clearScroll异常,scrollId:{}", scrollId, e);
+            }
+        });
+    }
+
+    private CreateIndexRequestBuilder prepareCreateIndex(String indexName, String settingJson, String mappingJson) {
+        return client.admin().indices().prepareCreate(indexName)
+                .setSettings(settingJson, XContentType.JSON)
+                .addMapping(DEFAULT_TYPE, mappingJson, XContentType.JSON);
+    }
+
+    private MultiGetRequestBuilder prepareMultiGet(String indexName, EsProjection projection, String... docIds) {
+        MultiGetRequestBuilder multiGetRequestBuilder = client.prepareMultiGet();
+        for (String docId : docIds) {
+            MultiGetRequest.Item item = new MultiGetRequest.Item(indexName, DEFAULT_TYPE, docId);
+            if (projection != null) {
+                item.fetchSourceContext(new FetchSourceContext(projection.isFetchSource(), projection.getIncludes(), projection.getExcludes()));
+                if (projection.getStoredFields() != null) {
+                    item.storedFields(projection.getStoredFields());
+                }
+            }
+            multiGetRequestBuilder.add(item);
+        }
+        return multiGetRequestBuilder;
+    }
+
+    /**
+     * 解析mget结果，和请求的docIds一一对应，不存在或获取失败的doc对应位置为null
+     *
+     * @param multiGetResponse
+     * @param docMapper
+     * @return
+     */
+    private static <T> List<T> getMultiGetResults(MultiGetResponse multiGetResponse, Function<GetResponse, T> docMapper) {
+        List<T> res = new ArrayList<>(multiGetResponse.getResponses().length);
+        for (MultiGetItemResponse multiGetItemRespons : multiGetResponse) {
+            GetResponse getResponse = multiGetItemRespons.getResponse();
+            res.add(getResponse != null && getResponse.isExists() ? docMapper.apply(getResponse) : null);
+        }
+        return res;
+    }
+
+    private SearchRequestBuilder prepareSearch(String indexName, String queryJson) {
+        SearchRequestBuilder searchRequestBuilder = client.prepareSearch(indexName)
+                //size不设置，似乎是默认10，无法全部返回。结果量大时用searchByScroll流式遍历，避免全部放到内存
+                .setSize(10_000);
+        //构建QueryBuilder
+        buildQueryBuilder(queryJson, searchRequestBuilder);
+        return searchRequestBuilder;
+    }
+
+    private SearchRequestBuilder prepareFromSize(String indexName, String queryJson, int pageNum, int pageSize) {
+        if (pageNum < 0) {
+            pageNum = 0;
+        }
+        if (pageSize < 0) {
+            pageSize = 10;
+        }
+        if (pageNum * pageSize > 10_000) {
+            throw new RuntimeException("该方法只允许查询分页数在1w以内的数据");
+        }
+        SearchRequestBuilder searchRequestBuilder = client.prepareSearch(indexName)
+                .setFrom((pageNum - 1) * pageSize)
+                .setSize(pageSize);
+        //一般用queryBuilder自己构建就成-------
+        //QueryBuilder queryBuilder=new TermQueryBuilder("field","value");
+        //searchRequestBuilder.setQuery(queryBuilder);
+        //wrapperQuery只会包含查询json中query下的部分，像别的aggs、sort这些key下面的string是不会解析的-----
+        buildQueryBuilder(queryJson, searchRequestBuilder);
+        return searchRequestBuilder;
+    }
+
+    private SearchRequestBuilder prepareScroll(String indexName, String queryJson, TimeValue keepAlive, int pageSize) {
+        SearchRequestBuilder searchRequestBuilder = client.prepareSearch(indexName)
+                .setScroll(keepAlive)
+                .setSize(pageSize);
+        buildQueryBuilder(queryJson, searchRequestBuilder);
+        return searchRequestBuilder;
+    }
+
+    /**
+     * 解析scroll分页结果，不满一页说明是最后一页，nextCursor为null，需要调用方clear掉快照
+     *
+     * @param pageCursor
+     * @param pageSize
+     * @param searchResponse
+     * @param hitMapper
+     * @return
+     */
+    private EsPage<String> toScrollPage(EsPageCursor pageCursor, int pageSize, SearchResponse searchResponse, Function<SearchHit, String> hitMapper) {
+        SearchHit[] hits = searchResponse.getHits().getHits();
+        String nextCursor = hits.length < pageSize ? null : pageCursor.next(null, searchResponse.getScrollId()).encode();
+        return new EsPage<>(getResults(searchResponse, hitMapper), nextCursor, searchResponse.getHits().totalHits);
+    }
+
+    private SearchRequestBuilder prepareSearchAfter(String indexName, String queryJson, int pageSize, EsPageCursor pageCursor) {
+        SearchRequestBuilder searchRequestBuilder = client.prepareSearch(indexName)
+                .setSize(pageSize)
+                .addSort("_index", SortOrder.ASC)
+                .addSort("_id", SortOrder.ASC);
+        buildQueryBuilder(queryJson, searchRequestBuilder);
+        if (pageCursor.getSortValues() != null) {
+            searchRequestBuilder.searchAfter(pageCursor.getSortValues());
+        }
+        return searchRequestBuilder;
+    }
+
+    /**
+     * 解析searchAfter分页结果，nextCursor中带上当前页最后一个hit的sortValues
+     *
+     * @param pageCursor
+     * @param pageSize
+     * @param searchResponse
+     * @param hitMapper
+     * @return
+     */
+    private EsPage<String> toSearchAfterPage(EsPageCursor pageCursor, int pageSize, SearchResponse searchResponse, Function<SearchHit, String> hitMapper) {
+        SearchHit[] hits = searchResponse.getHits().getHits();
+        String nextCursor = hits.length < pageSize ? null : pageCursor.next(hits[hits.length - 1].getSortValues(), null).encode();
+        return new EsPage<>(getResults(searchResponse, hitMapper), nextCursor, searchResponse.getHits().totalHits);
+    }
+
+    /**
+     * 按projection设置返回的_source、stored_fields、docvalue_fields，projection为null时返回完整的_source
+     *
+     * @param searchRequestBuilder
+     * @param projection
+     * @return
+     */
+    private static SearchRequestBuilder applyProjection(SearchRequestBuilder searchRequestBuilder, EsProjection projection) {
+        if (projection == null) {
+            return searchRequestBuilder;
+        }
+        //设置了stored_fields时es默认不返回_source，这里总是显式设置
+        if (projection.isFetchSource()) {
+            searchRequestBuilder.setFetchSource(projection.getIncludes(), projection.getExcludes());
+        } else {
+            searchRequestBuilder.setFetchSource(false);
+        }
+        if (projection.getStoredFields() != null) {
+            for (String storedField : projection.getStoredFields()) {
+                searchRequestBuilder.addStoredField(storedField);
+            }
+        }
+        if (projection.getDocValueFields() != null) {
+            for (String docValueField : projection.getDocValueFields()) {
+                searchRequestBuilder.addDocValueField(docValueField);
+            }
+        }
+        return searchRequestBuilder;
+    }
+
+    /**
+     * 没有stored_fields、docvalue_fields时直接取_source，否则把fields合并到_source里
+     *
+     * @param projection
+     * @return
+     */
+    private static Function<SearchHit, String> hitMapper(EsProjection projection) {
+        if (projection == null || !projection.hasFields()) {
+            return SearchHit::getSourceAsString;
+        }
+        return hit -> EsProjection.mergeFields(hit.getSourceAsString(), getFieldValues(hit.getFields()));
+    }
+
+    private static Function<GetResponse, String> docMapper(EsProjection projection) {
+        if (projection == null || !projection.hasFields()) {
+            return GetResponse::getSourceAsString;
+        }
+        return getResponse -> EsProjection.mergeFields(getResponse.getSourceAsString(), getFieldValues(getResponse.getFields()));
+    }
+
+    private static Map<String, List<Object>> getFieldValues(Map<String, DocumentField> fields) {
+        Map<String, List<Object>> res = new LinkedHashMap<>(fields.size() * 2);
+        for (DocumentField field : fields.values()) {
+            res.put(field.getName(), field.getValues());
+        }
+        return res;
+    }
+
+    private SearchRequestBuilder prepareSort(String indexName, String queryJson, String... sortFields) {
+        SearchRequestBuilder searchRequestBuilder = client.prepareSearch(indexName)
+                .setSize(10_000);
+        buildQueryBuilder(queryJson, searchRequestBuilder);
+        for (String sortField : sortFields) {
+            searchRequestBuilder.addSort(sortField, SortOrder.ASC);
+        }
+        return searchRequestBuilder;
+    }
+
+    private SearchRequestBuilder prepareAggregation(String indexName, AggregationBuilder aggregationBuilder) {
+        return client.prepareSearch(indexName)
+                //设置size为0，就不返回hits了，只返回aggregation结果。
+                .setSize(0)
+                .addAggregation(aggregationBuilder);
+    }
+
+    /**
+     * 用任意的aggs json构建只做聚合的请求。transport协议没有filter_path，
+     * 不过size为0、不统计命中总数之后，返回的内容除了聚合结果只剩很少的元数据
+     *
+     * @param indexName
+     * @param queryJson
+     * @param aggsJson
+     * @return aggsJson解析失败时返回null
+     */
+    private SearchRequestBuilder prepareAggregation(String indexName, String queryJson, String aggsJson) {
+        SearchSourceBuilder searchSourceBuilder;
+        try (XContentParser parser = XContentType.JSON.xContent().createParser(SEARCH_X_CONTENT_REGISTRY,
+                LoggingDeprecationHandler.INSTANCE, "{\"aggs\":" + aggsJson + "}")) {
+            searchSourceBuilder = SearchSourceBuilder.fromXContent(parser);
+        } catch (IOException | RuntimeException e) {
+            log.error("解析aggsJson:{}时异常", aggsJson, e);
+            return null;
+        }
+        SearchRequestBuilder searchRequestBuilder = client.prepareSearch(indexName)
+                .setSource(searchSourceBuilder)
+                .setSize(0)
+                .setTrackTotalHits(false);
+        buildQueryBuilder(queryJson, searchRequestBuilder);
+        return searchRequestBuilder;
+    }
+
+    /**
+     * 把返回的聚合结果转成json，key是聚合名
+     *
+     * @param searchResponse
+     * @return
+     */
+    private static String getAggregationJson(SearchResponse searchResponse) {
+        Aggregations aggregations = searchResponse.getAggregations();
+        if (aggregations == null) {
+            return "{}";
+        }
+        try {
+            XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+            aggregations.toXContentInternal(builder, ToXContent.EMPTY_PARAMS);
+            return Strings.toString(builder.endObject());
+        } catch (IOException e) {
+            log.error("聚合结果转json时异常", e);
+            return null;
+        }
+    }
+
+    private static <T> EsAggregationResult<T> toAggregationResult(SearchResponse searchResponse, T value) {
+        return new EsAggregationResult<>(value, searchResponse.getTotalShards(), searchResponse.getSuccessfulShards(),
+                searchResponse.getFailedShards(), searchResponse.isTimedOut());
+    }
+
+    private static Double getMetricAggregation(SearchResponse searchResponse) {
+        if (searchResponse.getSuccessfulShards() <= 0) {
+            return null;
+        }
+        Aggregations aggregations = searchResponse.getAggregations();
+        Sum sum = aggregations.get("sum");
+        return sum.getValue();
+    }
+
+    private static EsStringLongMap getBulkAggregation(SearchResponse searchResponse) {
+        if (searchResponse.getSuccessfulShards() <= 0) {
+            return new EsStringLongMap(0);
+        }
+        //groupby查询和解析
+        Aggregations aggregations = searchResponse.getAggregations();
+        Terms terms = aggregations.get("groupBy");
+        EsStringLongMap groupFieldAndCountMap = new EsStringLongMap(terms.getBuckets().size());
+        for (Terms.Bucket bucket : terms.getBuckets()) {
+            groupFieldAndCountMap.putLong(bucket.getKeyAsString(), bucket.getDocCount());
+        }
+        return groupFieldAndCountMap;
+    }
+
+    private static EsStringDoubleMap getPipelineAggregation(SearchResponse searchResponse) {
+        if (searchResponse.getSuccessfulShards() <= 0) {
+            return new EsStringDoubleMap(0);
+        }
+        Terms terms = searchResponse.getAggregations().get("groupBy");
+        EsStringDoubleMap groupFieldAndSumMap = new EsStringDoubleMap(terms.getBuckets().size());
+        for (Terms.Bucket bucket : terms.getBuckets()) {
+            Sum sum = bucket.getAggregations().get("sum");
+            groupFieldAndSumMap.putDouble(bucket.getKeyAsString(), sum.getValue());
+        }
+        return groupFieldAndSumMap;
+    }
+
+    private SearchRequestBuilder prepareMultiIndexSearch(String... indexNames) {
+        return client.prepareSearch(indexNames)
+                .setQuery(QueryBuilders.matchAllQuery())
+                .setSize(100);
+    }
+
+    private static List<EsMultiSearchQuery> toMultiSearchQueries(String... queryJson) {
+        List<EsMultiSearchQuery> queries = new ArrayList<>(queryJson.length);
+        for (String singleQueryJson : queryJson) {
+            queries.add(new EsMultiSearchQuery(singleQueryJson));
+        }
+        return queries;
+    }
+
+    /**
+     * queryJson通过wrapperQuery原样发给es解析，不在本地校验，不合法的queryJson只会让对应的查询失败
+     *
+     * @param indexName
+     * @param queries
+     * @return
+     */
+    private MultiSearchRequestBuilder prepareMultiSearch(String indexName, List<EsMultiSearchQuery> queries) {
+        MultiSearchRequestBuilder multiSearchRequestBuilder = client.prepareMultiSearch();
+        for (EsMultiSearchQuery query : queries) {
+            SearchRequestBuilder searchRequestBuilder = client.prepareSearch(indexName).setSize(query.getSize());
+            if (!query.isFetchSource()) {
+                searchRequestBuilder.setFetchSource(false);
+            } else if (query.getIncludes() != null || query.getExcludes() != null) {
+                searchRequestBuilder.setFetchSource(query.getIncludes(), query.getExcludes());
+            }
+            if (StringUtils.isNotEmpty(query.getQueryJson())) {
+                searchRequestBuilder.setQuery(QueryBuilders.wrapperQuery(query.getQueryJson()));
+            }
+            multiSearchRequestBuilder.add(searchRequestBuilder);
+        }
+        return multiSearchRequestBuilder;
+    }
+
+    /**
+     * 解析msearch结果，和请求的queryJson一一对应，失败的查询对应位置为null
+     *
+     * @param multiSearchResponse
+     * @return
+     */
+    private List<EsSearchResult<String>> getMultiSearchResStrings(MultiSearchResponse multiSearchResponse) {
+        List<EsSearchResult<String>> res = new ArrayList<>(multiSearchResponse.getResponses().length);
+        for (MultiSearchResponse.Item respons : multiSearchResponse.getResponses()) {
+            if (respons.isFailure()) {
+                res.add(null);
+                continue;
+            }
+            EsSearchResult<String> resStrings = getResStrings(respons.getResponse());
+            res.add(resStrings);
+        }
+        return res;
+    }
+
+    /**
+     * 为每个slice构建一个scroll fetcher，每个slice的请求只会在自己负责的那部分doc上scroll
+     *
+     * @param indexName
+     * @param queryJson
+     * @param scrollMinute
+     * @param pageSize
+     * @param slices
+     * @return
+     */
+    private List<ScrollPageFetcher<String>> buildSliceFetchers(String indexName, String queryJson, int scrollMinute, int pageSize, int slices) {
+        if (pageSize <= 0) {
+            pageSize = 10;
+        }
+        //es要求slice的max大于1
+        int sliceCount = Math.max(slices, 1);
+        List<ScrollPageFetcher<String>> fetchers = new ArrayList<>(sliceCount);
+        for (int i = 0; i < sliceCount; i++) {
+            SearchRequestBuilder searchRequestBuilder = client.prepareSearch(indexName);
+            buildQueryBuilder(queryJson, searchRequestBuilder);
+            if (sliceCount > 1) {
+                searchRequestBuilder.slice(new SliceBuilder(i, sliceCount));
+            }
+            fetchers.add(new ScrollPageFetcher<>(client, searchRequestBuilder, pageSize, TimeValue.timeValueMinutes(scrollMinute), SearchHit::getSourceAsString));
+        }
+        return fetchers;
+    }
+
+    /**
+     * 包装成懒加载迭代器，prefetchPages大于0时由后台线程预取
+     *
+     * @param pageFetcher
+     * @param prefetchPages
+     * @return
+     */
+    private static <T> EsHitIterator<T> toHitIterator(EsPageFetcher<T> pageFetcher, int prefetchPages) {
+        return new EsHitIterator<>(prefetchPages > 0 ? new EsPrefetchPageFetcher<>(pageFetcher, prefetchPages) : pageFetcher);
+    }
+
     /**
      * 解析searchResponse获取返回结果
      *
      * @param searchResponse
      * @return
      */
-    private List<String> getResStrings(SearchResponse searchResponse) {
+    private EsSearchResult<String> getResStrings(SearchResponse searchResponse) {
+        return getResults(searchResponse, SearchHit::getSourceAsString);
+    }
+
+    /**
+     * 把searchResponse中每个hit的_source字节拷贝到堆外的EsHitBuffer
+     *
+     * @param searchResponse
+     * @return
+     */
+    private static EsHitBuffer getHitBuffer(SearchResponse searchResponse) {
+        SearchHit[] hits = searchResponse.getSuccessfulShards() <= 0 ? new SearchHit[0] : searchResponse.getHits().getHits();
+        EsHitBuffer hitBuffer = new EsHitBuffer(EsDirectBufferPool.DEFAULT, hits.length);
+        hitBuffer.setTotalHits(searchResponse.getHits().totalHits);
+        for (SearchHit hit : hits) {
+            BytesReference source = hit.getSourceRef();
+            if (source == null) {
+                hitBuffer.append(null, 0, 0);
+                continue;
+            }
+            BytesRef bytesRef = source.toBytesRef();
+            hitBuffer.append(bytesRef.bytes, bytesRef.offset, bytesRef.length);
+        }
+        return hitBuffer;
+    }
+
+    /**
+     * 解析searchResponse，用hitMapper把每个hit转换成返回结果
+     *
+     * @param searchResponse
+     * @param hitMapper
+     * @return
+     */
+    private static <T> EsSearchResult<T> getResults(SearchResponse searchResponse, Function<SearchHit, T> hitMapper) {
         if (searchResponse.getSuccessfulShards() <= 0 || searchResponse.getHits().totalHits <= 0) {
-            return new LinkedList<>();
+            return newSearchResult(searchResponse, 0);
         }
-        List<String> res = new LinkedList<>();
-        for (SearchHit hit : searchResponse.getHits().getHits()) {
-            res.add(hit.getSourceAsString());
+        SearchHit[] hits = searchResponse.getHits().getHits();
+        EsSearchResult<T> res = newSearchResult(searchResponse, hits.length);
+        for (SearchHit hit : hits) {
+            res.add(hitMapper.apply(hit));
         }
         return res;
     }
 
+    /**
+     * 按hit数预分配结果列表，并带上searchResponse中的命中总数、耗时和分片情况
+     *
+     * @param searchResponse
+     * @param capacity
+     * @return
+     */
+    private static <T> EsSearchResult<T> newSearchResult(SearchResponse searchResponse, int capacity) {
+        EsSearchResult<T> res = new EsSearchResult<>(capacity);
+        res.setTotalHits(searchResponse.getHits().totalHits);
+        res.setTookMillis(searchResponse.getTook().millis());
+        res.setTimedOut(searchResponse.isTimedOut());
+        res.setTotalShards(searchResponse.getTotalShards());
+        res.setSuccessfulShards(searchResponse.getSuccessfulShards());
+        res.setFailedShards(searchResponse.getFailedShards());
+        res.setSkippedShards(searchResponse.getSkippedShards());
+        return res;
+    }
+
+    /**
+     * _source的字节直接反序列化成实体类。BytesArray的toBytesRef不会拷贝数据
+     *
+     * @param source
+     * @param type
+     * @return
+     */
+    private static <T> T decodeSource(BytesReference source, Class<T> type) {
+        if (source == null) {
+            return null;
+        }
+        BytesRef bytesRef = source.toBytesRef();
+        return EsSourceDecoder.decode(bytesRef.bytes, bytesRef.offset, bytesRef.length, type);
+    }
+
     /**
      * 构建QueryBuilder
      *
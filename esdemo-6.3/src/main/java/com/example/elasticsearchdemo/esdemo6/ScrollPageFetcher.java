@@ -0,0 +1,77 @@
+package com.example.elasticsearchdemo.esdemo6;
+
+import com.example.elasticsearchdemo.esapi.EsPageFetcher;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 基于scroll的分页拉取，第一次走search创建快照，之后每次带着scrollId拉下一页
+ **/
+class ScrollPageFetcher<T> implements EsPageFetcher<T> {
+
+    private final Client client;
+    private final SearchRequestBuilder searchRequestBuilder;
+    private final int pageSize;
+    private final TimeValue keepAlive;
+    private final Function<SearchHit, T> hitMapper;
+    private String scrollId;
+    private boolean finished;
+
+    /**
+     * @param client
+     * @param searchRequestBuilder 已经设置好query的请求，size和scroll留存时间由这里统一设置
+     * @param pageSize
+     * @param keepAlive
+     * @param hitMapper            把每个hit转换成返回结果
+     */
+    ScrollPageFetcher(Client client, SearchRequestBuilder searchRequestBuilder, int pageSize, TimeValue keepAlive, Function<SearchHit, T> hitMapper) {
+        this.client = client;
+        this.searchRequestBuilder = searchRequestBuilder.setSize(pageSize).setScroll(keepAlive);
+        this.pageSize = pageSize;
+        this.keepAlive = keepAlive;
+        this.hitMapper = hitMapper;
+    }
+
+    @Override
+    public List<T> nextPage() {
+        if (finished) {
+            return Collections.emptyList();
+        }
+        SearchResponse searchResponse = scrollId == null
+                ? searchRequestBuilder.get()
+                : client.prepareSearchScroll(scrollId).setScroll(keepAlive).get();
+        scrollId = searchResponse.getScrollId();
+        SearchHit[] hits = searchResponse.getHits().getHits();
+        //不满一页说明已经是最后一页了，提前clear掉快照，省掉一次空请求
+        if (hits.length < pageSize) {
+            close();
+        }
+        List<T> page = new ArrayList<>(hits.length);
+        for (SearchHit hit : hits) {
+            page.add(hitMapper.apply(hit));
+        }
+        return page;
+    }
+
+    @Override
+    public void close() {
+        finished = true;
+        if (scrollId == null) {
+            return;
+        }
+        String clearScrollId = scrollId;
+        scrollId = null;
+        client.prepareClearScroll().addScrollId(clearScrollId).get();
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.elasticsearchdemo.esdemo6;
+
+import com.example.elasticsearchdemo.esapi.EsPageFetcher;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.SearchHit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 基于searchAfter的分页拉取，每次用上一页最后一个hit的sortValues请求下一页，服务端不保留状态
+ **/
+class SearchAfterPageFetcher<T> implements EsPageFetcher<T> {
+
+    private final SearchRequestBuilder searchRequestBuilder;
+    private final int pageSize;
+    private final Function<SearchHit, T> hitMapper;
+    private boolean finished;
+
+    /**
+     * @param searchRequestBuilder 已经设置好query、sort的请求，size由这里统一设置
+     * @param pageSize
+     * @param hitMapper            把每个hit转换成返回结果
+     */
+    SearchAfterPageFetcher(SearchRequestBuilder searchRequestBuilder, int pageSize, Function<SearchHit, T> hitMapper) {
+        this.searchRequestBuilder = searchRequestBuilder.setSize(pageSize);
+        this.pageSize = pageSize;
+        this.hitMapper = hitMapper;
+    }
+
+    @Override
+    public List<T> nextPage() {
+        if (finished) {
+            return Collections.emptyList();
+        }
+        SearchResponse searchResponse = searchRequestBuilder.get();
+        SearchHit[] hits = searchResponse.getHits().getHits();
+        if (hits.length < pageSize) {
+            finished = true;
+        } else {
+            searchRequestBuilder.searchAfter(hits[hits.length - 1].getSortValues());
+        }
+        List<T> page = new ArrayList<>(hits.length);
+        for (SearchHit hit : hits) {
+            page.add(hitMapper.apply(hit));
+        }
+        return page;
+    }
+
+    @Override
+    public void close() {
+        finished = true;
+    }
+}
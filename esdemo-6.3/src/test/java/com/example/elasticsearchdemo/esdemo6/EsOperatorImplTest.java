@@ -1,6 +1,25 @@
 package com.example.elasticsearchdemo.esdemo6;
 
 import com.alibaba.fastjson.JSONObject;
+import com.example.elasticsearchdemo.esapi.EsAggregationFileCache;
+import com.example.elasticsearchdemo.esapi.EsBulkProcessor;
+import com.example.elasticsearchdemo.esapi.EsCachingOperator;
+import com.example.elasticsearchdemo.esapi.EsFanOutAggregator;
+import com.example.elasticsearchdemo.esapi.EsGetCoalescer;
+import com.example.elasticsearchdemo.esapi.EsHitBuffer;
+import com.example.elasticsearchdemo.esapi.config.EsBulkConfig;
+import com.example.elasticsearchdemo.esapi.config.EsCacheConfig;
+import com.example.elasticsearchdemo.esapi.config.EsClientConfig;
+import com.example.elasticsearchdemo.esapi.config.EsMultiSearchConfig;
+import com.example.elasticsearchdemo.esapi.entity.EsAggregationResult;
+import com.example.elasticsearchdemo.esapi.entity.EsMultiSearchQuery;
+import com.example.elasticsearchdemo.esapi.entity.EsPage;
+import com.example.elasticsearchdemo.esapi.entity.EsProjection;
+import com.example.elasticsearchdemo.esapi.entity.EsPartialAggregation;
+import com.example.elasticsearchdemo.esapi.entity.EsPartialAggregationSpec;
+import com.example.elasticsearchdemo.esapi.entity.EsSearchResult;
+import com.example.elasticsearchdemo.esapi.entity.EsStringDoubleMap;
+import com.example.elasticsearchdemo.esapi.entity.EsStringLongMap;
 import com.example.elasticsearchdemo.esapi.entity.TestPojo;
 import org.apache.commons.lang3.StringUtils;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
@@ -10,16 +29,26 @@ import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.Marker;
 import org.slf4j.MarkerFactory;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 
@@ -145,6 +174,15 @@ public class EsOperatorImplTest {
         public void testCreateDocWithId() {
             Assertions.assertTrue(esOperator.createDocWithId(INDEX_NAME, "1", JSONObject.toJSONString(testPojo)), "doc创建失败");
         }
+
+        @Test
+        public void testCreateDocWithIdByPojo() {
+            esOperator.deleteIndexDoc(INDEX_NAME, "2");
+            Assertions.assertTrue(esOperator.createDocWithId(INDEX_NAME, "2", testPojo), "doc创建失败");
+            TestPojo doc = esOperator.getDoc(INDEX_NAME, "2", TestPojo.class);
+            Assertions.assertEquals(testPojo.getUser(), doc.getUser());
+            Assertions.assertEquals(testPojo.getDate().withNano(0), doc.getDate().withNano(0));
+        }
     }
 
     @Nested
@@ -204,6 +242,37 @@ public class EsOperatorImplTest {
     }
 
 
+    @Nested
+    class TestBulk {
+        @BeforeEach
+        public void before() {
+            if (!esOperator.existIndex(INDEX_NAME)) {
+                esOperator.createIndexWithSettingsAndMappings(INDEX_NAME, DEFAULT_SETTINGs, DEFAULT_MAPPINGS);
+            }
+        }
+
+        @Test
+        public void testBulkRequest() throws InterruptedException {
+            EsBulkConfig bulkConfig = new EsBulkConfig();
+            bulkConfig.setBulkActions(2);
+            EsBulkProcessor bulkProcessor = esOperator.bulkRequest(bulkConfig);
+            for (int i = 0; i < 3; i++) {
+                TestPojo testPojo = new TestPojo();
+                testPojo.setUser(String.format("bulk-%d", i));
+                testPojo.setAge(i);
+                bulkProcessor.index(INDEX_NAME, testPojo.getUser(), JSONObject.toJSONString(testPojo));
+            }
+            bulkProcessor.upsert(INDEX_NAME, "bulk-3", "{\"user\":\"bulk-3\"}");
+            bulkProcessor.delete(INDEX_NAME, "bulk-0");
+            Assertions.assertTrue(bulkProcessor.awaitClose(30, TimeUnit.SECONDS), "bulk未在超时前完成");
+            Assertions.assertEquals(0, bulkProcessor.getFailedActions());
+            Assertions.assertEquals(5, bulkProcessor.getSucceededActions());
+            Assertions.assertNull(esOperator.getDoc(INDEX_NAME, "bulk-0"));
+            Assertions.assertNotNull(esOperator.getDoc(INDEX_NAME, "bulk-3"));
+        }
+    }
+
+
     @Nested
     class TestGetOrMultiGet {
         @BeforeEach
@@ -239,6 +308,43 @@ public class EsOperatorImplTest {
         public void testMulitGet() {
             Assertions.assertEquals(2, esOperator.mulitGet(INDEX_NAME, "grd-1", "grd-2").size());
         }
+
+        @Test
+        public void testTypedGetAndMulitGet() {
+            Assertions.assertEquals("grd-1", esOperator.getDoc(INDEX_NAME, "grd-1", TestPojo.class).getUser());
+            List<TestPojo> testPojos = esOperator.mulitGet(INDEX_NAME, TestPojo.class, "grd-0", "grd-1");
+            Assertions.assertEquals("grd-0", testPojos.get(0).getUser());
+            Assertions.assertEquals("grd-1", testPojos.get(1).getUser());
+        }
+
+        @Test
+        public void testProjectedGetAndMulitGet() {
+            EsProjection projection = new EsProjection("user");
+            Assertions.assertEquals("{\"user\":\"grd-1\"}", esOperator.getDoc(INDEX_NAME, "grd-1", projection));
+            List<String> docs = esOperator.mulitGet(INDEX_NAME, projection, "grd-0", "grd-1");
+            Assertions.assertEquals("{\"user\":\"grd-0\"}", docs.get(0));
+            Assertions.assertEquals("{\"user\":\"grd-1\"}", docs.get(1));
+        }
+
+        @Test
+        public void testGetDocCoalesced() throws Exception {
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            try (EsGetCoalescer coalescer = new EsGetCoalescer(esOperator, 100, 500)) {
+                List<CompletableFuture<String>> docs = new ArrayList<>();
+                for (int i = 0; i < 200; i++) {
+                    String docId = String.format("grd-%d", i % 3);
+                    docs.add(CompletableFuture.supplyAsync(() -> coalescer.getDoc(INDEX_NAME, docId), executor).thenCompose(doc -> doc));
+                }
+                CompletableFuture.allOf(docs.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+                for (int i = 0; i < docs.size(); i++) {
+                    String doc = docs.get(i).get();
+                    Assertions.assertEquals(i % 3 == 2 ? null : esOperator.getDoc(INDEX_NAME, String.format("grd-%d", i % 3)), doc);
+                }
+                Assertions.assertTrue(coalescer.getSentBatches() < coalescer.getRequestedDocs());
+            } finally {
+                executor.shutdown();
+            }
+        }
     }
 
 
@@ -284,6 +390,34 @@ public class EsOperatorImplTest {
             Assertions.assertTrue(esOperator.search(INDEX_NAME, queryJson).size() > 0);
         }
 
+        @Test
+        public void testSearchResultStats() {
+            EsSearchResult<String> result = esOperator.search(INDEX_NAME, null);
+            Assertions.assertTrue(result.getTotalHits() >= result.size());
+            Assertions.assertTrue(result.getSuccessfulShards() > 0);
+            Assertions.assertTrue(result.getTotalShards() >= result.getSuccessfulShards());
+            Assertions.assertNotNull(result.get(result.size() - 1));
+        }
+
+        @Test
+        public void testTypedSearch() {
+            List<TestPojo> testPojos = esOperator.search(INDEX_NAME, null, TestPojo.class);
+            Assertions.assertTrue(testPojos.size() > 0);
+            testPojos.forEach(Assertions::assertNotNull);
+        }
+
+        @Test
+        public void testSearchAsBuffer() {
+            List<String> expected = esOperator.search(INDEX_NAME, null);
+            try (EsHitBuffer hitBuffer = esOperator.searchAsBuffer(INDEX_NAME, null)) {
+                Assertions.assertEquals(expected.size(), hitBuffer.size());
+                for (int i = 0; i < hitBuffer.size(); i++) {
+                    Assertions.assertEquals(expected.get(i), hitBuffer.sourceAsString(i));
+                    Assertions.assertNotNull(hitBuffer.decode(i, TestPojo.class));
+                }
+            }
+        }
+
         @Test
         public void testSearchPageByFromSize() {
             Assertions.assertEquals(1, esOperator.searchPageByFromSize(INDEX_NAME, null, 2, 1).size());
@@ -299,6 +433,64 @@ public class EsOperatorImplTest {
             Assertions.assertEquals(1, esOperator.searchPageBySearchAfter(INDEX_NAME, null, 2, 1).size());
         }
 
+        @Test
+        public void testSearchPageBySearchAfterWithCursor() {
+            EsPage<String> firstPage = esOperator.searchPageBySearchAfter(INDEX_NAME, null, 1, null);
+            Assertions.assertTrue(firstPage.hasNext());
+            EsPage<String> secondPage = esOperator.searchPageBySearchAfter(INDEX_NAME, null, 1, firstPage.getNextCursor());
+            Assertions.assertEquals(esOperator.searchPageBySearchAfter(INDEX_NAME, null, 2, 1), secondPage.getHits());
+        }
+
+        @Test
+        public void testSearchPageByScrollWithCursor() {
+            EsPage<String> firstPage = esOperator.searchPageByScroll(INDEX_NAME, null, 1, 1, null);
+            Assertions.assertTrue(firstPage.hasNext());
+            Assertions.assertEquals(1, esOperator.searchPageByScroll(INDEX_NAME, null, 1, 1, firstPage.getNextCursor()).getHits().size());
+        }
+
+        @Test
+        public void testSearchByScroll() {
+            try (Stream<String> hits = esOperator.searchByScroll(INDEX_NAME, null, 1, 1).stream()) {
+                Assertions.assertTrue(hits.count() >= 2);
+            }
+        }
+
+        @Test
+        public void testSearchByScrollWithPrefetch() {
+            try (Stream<String> hits = esOperator.searchByScroll(INDEX_NAME, null, 1, 1, 2).stream()) {
+                Assertions.assertTrue(hits.count() >= 2);
+            }
+        }
+
+        @Test
+        public void testSearchBySlicedScroll() {
+            ExecutorService executor = Executors.newFixedThreadPool(3);
+            try (Stream<String> hits = esOperator.searchBySlicedScroll(INDEX_NAME, null, 1, 1, 3, executor).stream()) {
+                Assertions.assertTrue(hits.count() >= 2);
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        @Test
+        public void testExportBySlicedScroll() {
+            ExecutorService executor = Executors.newFixedThreadPool(3);
+            AtomicLong count = new AtomicLong();
+            try {
+                Assertions.assertTrue(esOperator.exportBySlicedScroll(INDEX_NAME, null, 1, 1, 3, executor, (sliceId, page) -> count.addAndGet(page.size())));
+            } finally {
+                executor.shutdown();
+            }
+            Assertions.assertTrue(count.get() >= 2);
+        }
+
+        @Test
+        public void testSearchBySearchAfter() {
+            try (Stream<String> hits = esOperator.searchBySearchAfter(INDEX_NAME, null, 1).stream()) {
+                Assertions.assertTrue(hits.count() >= 2);
+            }
+        }
+
         @Test
         public void testSearchWithSort() {
             List<String> resJson = esOperator.searchWithSort(INDEX_NAME, null, "user");
@@ -310,6 +502,28 @@ public class EsOperatorImplTest {
             }
         }
 
+        @Test
+        public void testSearchWithProjection() {
+            EsProjection projection = new EsProjection("user");
+            for (String hit : esOperator.searchWithSort(INDEX_NAME, null, projection, "user")) {
+                Assertions.assertEquals(Collections.singleton("user"), JSONObject.parseObject(hit).keySet());
+            }
+            //不取_source，只从doc_values里取user
+            projection = new EsProjection();
+            projection.setFetchSource(false);
+            projection.setDocValueFields("user");
+            EsPage<String> page = esOperator.searchPageBySearchAfter(INDEX_NAME, null, 1, null, projection);
+            Assertions.assertTrue(JSONObject.parseObject(page.getHits().get(0)).getString("user").startsWith("grd-"));
+            //按pageNum跳页时也只返回projection指定的字段
+            EsProjection userOnly = new EsProjection("user");
+            for (String hit : esOperator.searchPageBySearchAfter(INDEX_NAME, null, 2, 1, userOnly)) {
+                Assertions.assertEquals(Collections.singleton("user"), JSONObject.parseObject(hit).keySet());
+            }
+            for (String hit : esOperator.searchPageByScroll(INDEX_NAME, null, 1, 2, 1, userOnly)) {
+                Assertions.assertEquals(Collections.singleton("user"), JSONObject.parseObject(hit).keySet());
+            }
+        }
+
     }
 
     @Nested
@@ -340,11 +554,91 @@ public class EsOperatorImplTest {
             Assertions.assertTrue(user.size() > 0);
         }
 
+        @Test
+        public void testBulkAggregationSortByValue() {
+            EsStringLongMap user = esOperator.searchWithBulkAggregation(INDEX_NAME, "user");
+            long sum = user.sum();
+            user.sortByValueDesc();
+            for (int i = 1; i < user.size(); i++) {
+                Assertions.assertTrue(user.longAt(i - 1) >= user.longAt(i));
+            }
+            Assertions.assertEquals(sum, user.sum());
+            Assertions.assertEquals(user.longAt(0), user.getLong(user.keyAt(0), -1));
+        }
+
+        @Test
+        public void testSearchWithCompositeAggregation() {
+            Map<String, Long> expected = esOperator.searchWithBulkAggregation(INDEX_NAME, "user");
+            EsStringLongMap groups = new EsStringLongMap(16);
+            //每页1个分组，验证after_key翻页
+            Assertions.assertTrue(esOperator.searchWithCompositeAggregation(INDEX_NAME, null, "user", 1, groups::putLong));
+            Assertions.assertEquals(expected, groups);
+        }
+
+        @Test
+        public void testFanOutAggregation() {
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            EsFanOutAggregator aggregator = new EsFanOutAggregator(esOperator, executor, 16);
+            EsPartialAggregationSpec spec = new EsPartialAggregationSpec();
+            spec.setGroupField("user");
+            spec.setMetricField("age");
+            spec.setPercentiles(true);
+            spec.setCardinalityField("user");
+            EsStringLongMap groups = new EsStringLongMap(16);
+            Assertions.assertTrue(esOperator.searchWithCompositeAggregation(INDEX_NAME, null, "user", 0, groups::putLong));
+            //同一个索引算两次再合并，count、sum、分组doc数都是单个索引的两倍，不同值个数不变
+            List<String> indexNames = Arrays.asList(INDEX_NAME, INDEX_NAME);
+            EsPartialAggregation merged = aggregator.aggregate(indexNames, null, spec, indexName -> true);
+            Assertions.assertNotNull(merged);
+            Assertions.assertEquals(2 * esOperator.searchWithMetricAggregation(INDEX_NAME, "age"), merged.getMetricSum(), 1e-6);
+            Assertions.assertEquals(groups.size(), merged.getGroupCounts().size());
+            for (int i = 0; i < groups.size(); i++) {
+                Assertions.assertEquals(2 * groups.longAt(i), merged.getGroupCounts().getLong(groups.keyAt(i), 0));
+            }
+            Assertions.assertEquals(groups.size(), merged.getCardinality());
+            double median = merged.getPercentile(50);
+            Assertions.assertTrue(median >= merged.getMetricMin() && median <= merged.getMetricMax());
+            //不再写入的索引第二次直接用缓存的partial
+            Assertions.assertEquals(merged.getMetricSum(), aggregator.aggregate(indexNames, null, spec, indexName -> true).getMetricSum(), 1e-6);
+            Assertions.assertTrue(aggregator.getPartialCacheStats().hitCount() > 0);
+            executor.shutdown();
+        }
+
+        @Test
+        public void testAggregationFileCache(@TempDir Path directory) throws IOException {
+            EsAggregationFileCache fileCache = new EsAggregationFileCache(esOperator, directory, indexName -> true);
+            EsStringDoubleMap expected = esOperator.searchWithPipelineAggregation(INDEX_NAME, "user", "age");
+            Assertions.assertEquals(expected, fileCache.searchWithPipelineAggregation(INDEX_NAME, "user", "age"));
+            Assertions.assertTrue(esOperator.searchWithPipelineAggregationResult(INDEX_NAME, "user", "age").isComplete());
+            Path uuidDirectory = directory.resolve(INDEX_NAME).resolve(esOperator.getIndexUuid(INDEX_NAME));
+            Assertions.assertEquals(1, Files.list(uuidDirectory).count());
+            //重启后新建的实例直接读文件
+            EsAggregationFileCache restarted = new EsAggregationFileCache(esOperator, directory, indexName -> true);
+            Assertions.assertEquals(expected, restarted.searchWithPipelineAggregation(INDEX_NAME, "user", "age"));
+            Assertions.assertEquals(esOperator.searchWithMetricAggregation(INDEX_NAME, "age"), restarted.searchWithMetricAggregation(INDEX_NAME, "age"));
+            Assertions.assertEquals(2, Files.list(uuidDirectory).count());
+            restarted.invalidate(INDEX_NAME);
+            Assertions.assertFalse(Files.exists(directory.resolve(INDEX_NAME)));
+        }
+
         @Test
         public void testSearchWithPipelineAggregation() {
             Map<String, Double> stringDoubleMap = esOperator.searchWithPipelineAggregation(INDEX_NAME, "user", "age");
             Assertions.assertTrue(stringDoubleMap.size() > 0);
         }
+
+        @Test
+        public void testSearchAggregation() throws Exception {
+            String aggsJson = "{\"groupby\":{\"terms\":{\"field\":\"user\"},\"aggs\":{\"sum\":{\"sum\":{\"field\":\"age\"}}}}}";
+            JSONObject aggregations = JSONObject.parseObject(esOperator.searchAggregation(INDEX_NAME, "{\"term\":{\"user\":\"grd\"}}", aggsJson));
+            Assertions.assertFalse(aggregations.getJSONObject("groupby").getJSONArray("buckets").isEmpty());
+            Assertions.assertFalse(aggregations.containsKey("hits"));
+            Assertions.assertEquals(aggregations, JSONObject.parseObject(esOperator.searchAggregationAsync(INDEX_NAME, "{\"term\":{\"user\":\"grd\"}}", aggsJson).get(5, TimeUnit.SECONDS)));
+            EsAggregationResult<String> result = esOperator.searchAggregationResult(INDEX_NAME, "{\"term\":{\"user\":\"grd\"}}", aggsJson);
+            Assertions.assertEquals(aggregations, JSONObject.parseObject(result.getValue()));
+            Assertions.assertTrue(result.isComplete());
+            Assertions.assertEquals(result.getTotalShards(), result.getSuccessfulShards());
+        }
     }
 
     @Nested
@@ -377,11 +671,159 @@ public class EsOperatorImplTest {
 
         @Test
         public void testMultiSearchWithQueryJsons() {
-            List<List<String>> strings = esOperator.multiSearchWithQueryJsons(INDEX_NAME, null, "{\"term\":{\"user\":\"grd\"}}", "{\"term\":{\"age\":\"20\"}}");
+            List<EsSearchResult<String>> strings = esOperator.multiSearchWithQueryJsons(INDEX_NAME, null, "{\"term\":{\"user\":\"grd\"}}", "{\"term\":{\"age\":\"20\"}}");
             Assertions.assertEquals(3, strings.size());
         }
+
+        @Test
+        public void testMultiSearchBatched() throws Exception {
+            //每批最多2个查询，5个查询会拆成至少3批
+            EsMultiSearchConfig multiSearchConfig = new EsMultiSearchConfig();
+            multiSearchConfig.setInitialBatchSize(2);
+            multiSearchConfig.setMaxBatchSize(2);
+            multiSearchConfig.setMaxInFlightBatches(2);
+            esOperator.configMultiSearch(multiSearchConfig);
+            List<EsMultiSearchQuery> queries = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                EsMultiSearchQuery query = new EsMultiSearchQuery("{\"term\":{\"user\":\"grd\"}}");
+                query.setSize(1);
+                query.setIncludes("user");
+                queries.add(query);
+            }
+            //不合法的queryJson只影响自己
+            queries.add(new EsMultiSearchQuery("{\"term\":"));
+            try {
+                List<EsSearchResult<String>> results = esOperator.multiSearchAsync(INDEX_NAME, queries).get(10, TimeUnit.SECONDS);
+                Assertions.assertEquals(5, results.size());
+                for (int i = 0; i < 4; i++) {
+                    Assertions.assertEquals(1, results.get(i).size());
+                    Assertions.assertFalse(JSONObject.parseObject(results.get(i).get(0)).containsKey("age"));
+                }
+                Assertions.assertNull(results.get(4));
+            } finally {
+                esOperator.configMultiSearch(new EsMultiSearchConfig());
+            }
+        }
+    }
+
+
+    @Nested
+    class TestAsync {
+        @BeforeEach
+        public void before() {
+            if (!esOperator.existIndex(INDEX_NAME)) {
+                esOperator.createIndexWithSettingsAndMappings(INDEX_NAME, DEFAULT_SETTINGs, DEFAULT_MAPPINGS);
+            }
+        }
+
+        @Test
+        public void testDocAsync() throws Exception {
+            TestPojo testPojo = new TestPojo();
+            testPojo.setUser("grd-async");
+            testPojo.setAge(18);
+            esOperator.deleteIndexDoc(INDEX_NAME, "async-1");
+            Assertions.assertTrue(esOperator.createDocWithIdAsync(INDEX_NAME, "async-1", testPojo).get(5, TimeUnit.SECONDS));
+            Assertions.assertEquals("grd-async", esOperator.getDocAsync(INDEX_NAME, "async-1", TestPojo.class).get(5, TimeUnit.SECONDS).getUser());
+            Assertions.assertEquals(1, esOperator.mulitGetAsync(INDEX_NAME, "async-1").get(5, TimeUnit.SECONDS).size());
+            Assertions.assertTrue(esOperator.deleteIndexDocAsync(INDEX_NAME, "async-1").get(5, TimeUnit.SECONDS));
+            Assertions.assertNull(esOperator.getDocAsync(INDEX_NAME, "async-1").get(5, TimeUnit.SECONDS));
+        }
+
+        @Test
+        public void testSearchAsync() throws Exception {
+            //多个请求同时在途，调用方线程只在最后等待
+            CompletableFuture<EsSearchResult<String>> search = esOperator.searchAsync(INDEX_NAME, null);
+            CompletableFuture<EsPage<String>> page = esOperator.searchPageBySearchAfterAsync(INDEX_NAME, null, 1, null);
+            CompletableFuture<EsStringLongMap> groupBy = esOperator.searchWithBulkAggregationAsync(INDEX_NAME, "user");
+            CompletableFuture.allOf(search, page, groupBy).get(5, TimeUnit.SECONDS);
+            Assertions.assertEquals(search.get(), esOperator.search(INDEX_NAME, null));
+            Assertions.assertEquals(esOperator.searchPageBySearchAfter(INDEX_NAME, null, 1, null).getHits(), page.get().getHits());
+            Assertions.assertEquals(esOperator.searchWithBulkAggregation(INDEX_NAME, "user"), groupBy.get());
+        }
+
+        @Test
+        public void testSearchAsyncFailure() {
+            CompletableFuture<EsSearchResult<String>> search = esOperator.searchAsync(INDEX_NAME + "-not-exist", null);
+            Assertions.assertThrows(ExecutionException.class, () -> search.get(5, TimeUnit.SECONDS));
+        }
     }
 
+    @Nested
+    class TestCache {
+        private final EsCachingOperator cachingOperator = new EsCachingOperator(esOperator, new EsCacheConfig());
+
+        @BeforeEach
+        public void before() {
+            if (!esOperator.existIndex(INDEX_NAME)) {
+                esOperator.createIndexWithSettingsAndMappings(INDEX_NAME, DEFAULT_SETTINGs, DEFAULT_MAPPINGS);
+            }
+            TestPojo testPojo = new TestPojo();
+            testPojo.setUser("grd-cache");
+            testPojo.setAge(18);
+            esOperator.upsertDoc(INDEX_NAME, "cache-1", JSONObject.toJSONString(testPojo));
+        }
+
+        @Test
+        public void testGetDocCached() {
+            String doc = cachingOperator.getDoc(INDEX_NAME, "cache-1");
+            Assertions.assertEquals(doc, cachingOperator.getDoc(INDEX_NAME, "cache-1"));
+            Assertions.assertEquals(Collections.singletonList(doc), cachingOperator.mulitGet(INDEX_NAME, "cache-1"));
+            Assertions.assertEquals(2, cachingOperator.getDocCacheStats().hitCount());
+        }
+
+        @Test
+        public void testInvalidateOnWrite() {
+            cachingOperator.getDoc(INDEX_NAME, "cache-1");
+            Assertions.assertTrue(cachingOperator.updateDoc(INDEX_NAME, "cache-1", "{\"age\":19}"));
+            Assertions.assertEquals(19, JSONObject.parseObject(cachingOperator.getDoc(INDEX_NAME, "cache-1"), TestPojo.class).getAge());
+            Assertions.assertTrue(cachingOperator.deleteIndexDoc(INDEX_NAME, "cache-1"));
+            Assertions.assertNull(cachingOperator.getDoc(INDEX_NAME, "cache-1"));
+        }
+
+        @Test
+        public void testQueryCached() {
+            //只有空白和key顺序不同的queryJson命中同一个缓存
+            List<String> first = cachingOperator.search(INDEX_NAME, "{\"bool\": {\"must\": {\"term\": {\"user\": \"grd-cache\"}}, \"boost\": 1}}");
+            List<String> second = cachingOperator.search(INDEX_NAME, "{\"bool\":{\"boost\":1,\"must\":{\"term\":{\"user\":\"grd-cache\"}}}}");
+            Assertions.assertEquals(first, second);
+            Assertions.assertEquals(1, cachingOperator.getQueryCacheStats().hitCount());
+            //写入后该索引的查询缓存失效
+            cachingOperator.upsertDoc(INDEX_NAME, "cache-1", "{\"age\":20}");
+            cachingOperator.search(INDEX_NAME, "{\"bool\":{\"boost\":1,\"must\":{\"term\":{\"user\":\"grd-cache\"}}}}");
+            Assertions.assertEquals(1, cachingOperator.getQueryCacheStats().hitCount());
+        }
+
+        @Test
+        public void testQueryNotCachedBeforeRefresh() throws InterruptedException {
+            String queryJson = "{\"term\":{\"user\":\"grd-cache\"}}";
+            cachingOperator.search(INDEX_NAME, queryJson);
+            Assertions.assertTrue(cachingOperator.updateDoc(INDEX_NAME, "cache-1", "{\"age\":21}"));
+            //写入后马上查询，es可能还没refresh，查到的旧结果不能被缓存
+            cachingOperator.search(INDEX_NAME, queryJson);
+            Thread.sleep(new EsCacheConfig().getRefreshIntervalMillis() + 500);
+            List<String> hits = cachingOperator.search(INDEX_NAME, queryJson);
+            Assertions.assertEquals(21, JSONObject.parseObject(hits.get(0), TestPojo.class).getAge());
+            //refresh之后的结果正常缓存
+            long hitCount = cachingOperator.getQueryCacheStats().hitCount();
+            Assertions.assertEquals(hits, cachingOperator.search(INDEX_NAME, queryJson));
+            Assertions.assertEquals(hitCount + 1, cachingOperator.getQueryCacheStats().hitCount());
+        }
+    }
+
+    @Test
+    public void testSniffClient() {
+        EsClientConfig clientConfig = new EsClientConfig();
+        clientConfig.setHosts(nodeId + ":" + port);
+        clientConfig.setSniffIntervalMillis(TimeUnit.SECONDS.toMillis(30));
+        EsOperatorImpl sniffOperator = new EsOperatorImpl(clusterName, password, nodeId, port);
+        sniffOperator.configClient(clientConfig);
+        sniffOperator.initClient();
+        try {
+            Assertions.assertEquals(esOperator.search(INDEX_NAME, null), sniffOperator.search(INDEX_NAME, null));
+        } finally {
+            sniffOperator.close();
+        }
+    }
 
     @Test
     public void testAsyncSearch() {
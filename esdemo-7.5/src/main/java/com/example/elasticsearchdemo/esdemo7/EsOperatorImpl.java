@@ -1,18 +1,59 @@
 package com.example.elasticsearchdemo.esdemo7;
 
 import com.alibaba.fastjson.JSONValidator;
+import com.example.elasticsearchdemo.esapi.EsAsyncIndexOperator;
+import com.example.elasticsearchdemo.esapi.EsAsyncQueryOperator;
 import com.example.elasticsearchdemo.esapi.EsBaseOperator;
+import com.example.elasticsearchdemo.esapi.EsBulkProcessor;
+import com.example.elasticsearchdemo.esapi.EsDirectBufferPool;
+import com.example.elasticsearchdemo.esapi.EsHitBuffer;
+import com.example.elasticsearchdemo.esapi.EsHitIterator;
 import com.example.elasticsearchdemo.esapi.EsIndexOperator;
+import com.example.elasticsearchdemo.esapi.EsMultiSearchBatcher;
+import com.example.elasticsearchdemo.esapi.EsMergedPageFetcher;
+import com.example.elasticsearchdemo.esapi.EsPageFetcher;
+import com.example.elasticsearchdemo.esapi.EsPrefetchPageFetcher;
 import com.example.elasticsearchdemo.esapi.EsQueryOperator;
+import com.example.elasticsearchdemo.esapi.EsSliceExporter;
+import com.example.elasticsearchdemo.esapi.EsSourceDecoder;
+import com.example.elasticsearchdemo.esapi.codec.EsCodecRegistry;
+import com.example.elasticsearchdemo.esapi.config.EsBulkConfig;
+import com.example.elasticsearchdemo.esapi.config.EsClientConfig;
+import com.example.elasticsearchdemo.esapi.config.EsMultiSearchConfig;
+import com.example.elasticsearchdemo.esapi.entity.EsAggregationResult;
+import com.example.elasticsearchdemo.esapi.entity.EsMultiSearchQuery;
+import com.example.elasticsearchdemo.esapi.entity.EsPage;
+import com.example.elasticsearchdemo.esapi.entity.EsPageCursor;
+import com.example.elasticsearchdemo.esapi.entity.EsProjection;
+import com.example.elasticsearchdemo.esapi.entity.EsSearchResult;
+import com.example.elasticsearchdemo.esapi.entity.EsStringDoubleMap;
+import com.example.elasticsearchdemo.esapi.entity.EsStringLongMap;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpHost;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponseInterceptor;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.protocol.HttpProcessor;
+import org.apache.http.protocol.ImmutableHttpProcessor;
+import org.apache.http.util.EntityUtils;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
-import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.delete.DeleteResponse;
 import org.elasticsearch.action.get.*;
@@ -22,26 +63,49 @@ import org.elasticsearch.action.search.*;
 import org.elasticsearch.action.support.master.AcknowledgedResponse;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.Request;
 import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
 import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestClientBuilder;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.client.indices.CreateIndexRequest;
 import org.elasticsearch.client.indices.CreateIndexResponse;
 import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.document.DocumentField;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.TermsValuesSourceBuilder;
 import org.elasticsearch.search.aggregations.bucket.terms.Terms;
 import org.elasticsearch.search.aggregations.metrics.Sum;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.elasticsearch.search.slice.SliceBuilder;
 import org.elasticsearch.search.sort.SortOrder;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Constructor;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * @program: elasticsearch-demo
@@ -49,13 +113,61 @@ import java.util.*;
  * @author: gaorunding1
  * @description: 7.x版本操作类，采用highLevelClient
  **/
-public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseOperator<RestHighLevelClient> {
+public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsAsyncIndexOperator, EsAsyncQueryOperator, EsBaseOperator<RestHighLevelClient> {
+
+    /**
+     * searchAfter固定的排序方式
+     */
+    private static final String SEARCH_AFTER_SORT = "_index:asc,_id:asc";
+
+    /**
+     * src/main/java11下的jdk http客户端
+     */
+    private static final String JDK_HTTP_CLIENT_CLASS = "com.example.elasticsearchdemo.esdemo7.JdkHttpAsyncClient";
+
+    /**
+     * raw查询只让es返回用得到的字段
+     */
+    private static final String RAW_SEARCH_FILTER_PATH = "took,timed_out,_shards,hits.total,hits.hits._source,aggregations";
+
+    /**
+     * searchAsBuffer只要命中总数和_source，带上_id是为了没有_source的hit不被filter_path整个去掉，保证hit数一致
+     */
+    private static final String RAW_BUFFER_FILTER_PATH = "hits.total,hits.hits._id,hits.hits._source";
 
     private RestHighLevelClient client;
+    /**
+     * RestClient实际使用的jdk http客户端，使用apache客户端时为null
+     */
+    private volatile CloseableHttpAsyncClient jdkHttpClient;
+    /**
+     * 所有请求使用的RequestOptions，开启压缩时带上gzip响应的解压
+     */
+    private RequestOptions requestOptions = RequestOptions.DEFAULT;
+    /**
+     * 连接池、io线程、超时、压缩等配置，initClient时生效
+     */
+    private EsClientConfig clientConfig = new EsClientConfig();
+    /**
+     * 开启嗅探时定时刷新RestClient的节点列表，请求失败时也会触发一次
+     */
+    private volatile NodeSniffer nodeSniffer;
     private String clusterName;
     private String password;
     private String nodeIp;
     private int nodePort;
+    /**
+     * searchAfter跳页的检查点缓存，默认每10页记一个检查点，缓存1000个查询，5分钟过期
+     */
+    private SearchAfterCheckpointCache checkpointCache = new SearchAfterCheckpointCache(10, 1000, TimeUnit.MINUTES.toMillis(5));
+    /**
+     * multiSearch的分批发送，批次大小在多次调用之间共享
+     */
+    private EsMultiSearchBatcher multiSearchBatcher = new EsMultiSearchBatcher(new EsMultiSearchConfig());
+    /**
+     * 为true时search、searchPageByFromSize走searchRaw，不经过highLevelClient的响应解析
+     */
+    private boolean rawSearch;
 
     public EsOperatorImpl(String clusterName, String password, String nodeIp, int nodePort) {
         this.clusterName = clusterName;
@@ -64,15 +176,214 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
         this.nodePort = nodePort;
     }
 
+    /**
+     * 调整searchAfter跳页的检查点缓存
+     *
+     * @param checkpointInterval 每隔多少页记录一个检查点
+     * @param maxQueries         最多缓存多少个查询的检查点
+     * @param ttlMillis          检查点存活时间，索引写入频繁时要设置得短一些
+     */
+    public void configSearchAfterCheckpoint(int checkpointInterval, int maxQueries, long ttlMillis) {
+        this.checkpointCache = new SearchAfterCheckpointCache(checkpointInterval, maxQueries, ttlMillis);
+    }
+
+    /**
+     * 调整http客户端的连接池、io线程、超时、压缩等配置，需要在initClient之前调用
+     *
+     * @param clientConfig
+     */
+    public void configClient(EsClientConfig clientConfig) {
+        this.clientConfig = clientConfig;
+    }
+
+    /**
+     * 调整multiSearch的分批参数，会重新开始统计批次耗时
+     *
+     * @param multiSearchConfig
+     */
+    public void configMultiSearch(EsMultiSearchConfig multiSearchConfig) {
+        this.multiSearchBatcher = new EsMultiSearchBatcher(multiSearchConfig);
+    }
+
+    /**
+     * 开启后search、searchPageByFromSize通过low level client请求，直接从响应字节中切出_source，
+     * 省掉highLevelClient把响应解析成SearchHit、再把_source序列化回字符串的开销。
+     * projection中有stored_fields、docvalue_fields或者不取_source时仍走highLevelClient
+     *
+     * @param rawSearch
+     */
+    public void configRawSearch(boolean rawSearch) {
+        this.rawSearch = rawSearch;
+    }
+
     @Override
     public void initClient() {
-        RestClientBuilder restClientBuilder = RestClient.builder(new HttpHost(nodeIp, nodePort, "http"))
-                .setHttpClientConfigCallback(httpAsyncClientBuilder -> httpAsyncClientBuilder.setDefaultCredentialsProvider(init()));
+        EsClientConfig config = clientConfig;
+        jdkHttpClient = null;
+        EwmaNodeSelector nodeSelector = new EwmaNodeSelector(config.isLatencyAwareSelection(), config.getNodeLatencyTolerance(), config.isSkipDedicatedMasters());
+        RestClientBuilder restClientBuilder = RestClient.builder(buildHttpHosts(config))
+                .setRequestConfigCallback(requestConfigBuilder -> requestConfigBuilder
+                        .setConnectTimeout(config.getConnectTimeoutMillis())
+                        .setSocketTimeout(config.getSocketTimeoutMillis()))
+                //默认每个节点最多10个连接、总共30个，并发高时请求在连接池里排队
+                .setHttpClientConfigCallback(httpAsyncClientBuilder -> {
+                    HttpProcessor latencyRecorder = config.isLatencyAwareSelection() ? latencyRecorder(nodeSelector) : null;
+                    if (config.isJdkHttpClientEnabled()) {
+                        CloseableHttpAsyncClient httpClient = newJdkHttpClient(config, latencyRecorder);
+                        if (httpClient != null) {
+                            //builder的setter都是final的，RestClient最后调用build，在这里换成jdk客户端
+                            return new HttpAsyncClientBuilder() {
+                                @Override
+                                public CloseableHttpAsyncClient build() {
+                                    jdkHttpClient = httpClient;
+                                    return httpClient;
+                                }
+                            };
+                        }
+                    }
+                    httpAsyncClientBuilder
+                            .setDefaultCredentialsProvider(init())
+                            .setMaxConnTotal(config.getMaxConnTotal())
+                            .setMaxConnPerRoute(config.getMaxConnPerRoute())
+                            .setDefaultIOReactorConfig(IOReactorConfig.custom()
+                                    .setIoThreadCount(config.getIoThreadCount())
+                                    .setSoKeepAlive(true)
+                                    .build())
+                            .setKeepAliveStrategy((response, context) -> {
+                                long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                                return keepAlive > 0 ? Math.min(keepAlive, config.getKeepAliveMillis()) : config.getKeepAliveMillis();
+                            });
+                    if (latencyRecorder != null) {
+                        httpAsyncClientBuilder
+                                .addInterceptorLast((HttpRequestInterceptor) latencyRecorder)
+                                .addInterceptorFirst((HttpResponseInterceptor) latencyRecorder);
+                    }
+                    if (config.isCompressionEnabled()) {
+                        //highLevelClient的请求体在发送前才能换成压缩的，见GzipRequestHttpAsyncClient
+                        return new HttpAsyncClientBuilder() {
+                            @Override
+                            public CloseableHttpAsyncClient build() {
+                                return new GzipRequestHttpAsyncClient(httpAsyncClientBuilder.build());
+                            }
+                        };
+                    }
+                    return httpAsyncClientBuilder;
+                });
+        configNodeSelection(restClientBuilder, config, nodeSelector);
+        RequestOptions.Builder requestOptionsBuilder = RequestOptions.DEFAULT.toBuilder();
+        if (config.isCompressionEnabled()) {
+            restClientBuilder.setDefaultHeaders(new Header[]{new BasicHeader(HttpHeaders.ACCEPT_ENCODING, "gzip")});
+            requestOptionsBuilder.setHttpAsyncResponseConsumerFactory(GzipResponseConsumerFactory.INSTANCE);
+        }
+        requestOptions = requestOptionsBuilder.build();
         client = new RestHighLevelClient(restClientBuilder);
+        if (config.getSniffIntervalMillis() > 0) {
+            NodeSniffer sniffer = new NodeSniffer(client.getLowLevelClient(), requestOptions, config.getScheme());
+            sniffer.start(config.getSniffIntervalMillis());
+            nodeSniffer = sniffer;
+        }
+    }
+
+    /**
+     * RestClient实际使用的jdk http客户端
+     *
+     * @return 没有开启或者jdk客户端不可用、使用apache客户端时返回null
+     */
+    CloseableHttpAsyncClient getJdkHttpClient() {
+        return jdkHttpClient;
+    }
+
+    /**
+     * 配置节点选择和失败处理。RestClient默认在节点之间轮询，失败的节点按次数指数退避，
+     * 这里在轮询之前先去掉只有master角色的节点和耗时明显偏高的节点，耗时在http请求发出前、收到响应头后记录
+     *
+     * @param restClientBuilder
+     * @param config
+     * @param nodeSelector
+     */
+    private void configNodeSelection(RestClientBuilder restClientBuilder, EsClientConfig config, EwmaNodeSelector nodeSelector) {
+        if (config.isLatencyAwareSelection() || config.isSkipDedicatedMasters()) {
+            restClientBuilder.setNodeSelector(nodeSelector);
+        }
+        restClientBuilder.setFailureListener(new RestClient.FailureListener() {
+            @Override
+            public void onFailure(Node node) {
+                //连接失败、超时按一次超时计入耗时，节点恢复前不再优先分配请求
+                nodeSelector.record(node.getHost(), config.getSocketTimeoutMillis());
+                NodeSniffer sniffer = nodeSniffer;
+                if (sniffer != null) {
+                    sniffer.sniffOnFailure();
+                }
+            }
+        });
+    }
+
+    /**
+     * 请求发出前记下开始时间，收到响应头时按目标节点记录耗时，不包含读取响应体的时间
+     *
+     * @param nodeSelector
+     * @return
+     */
+    private static HttpProcessor latencyRecorder(EwmaNodeSelector nodeSelector) {
+        return new ImmutableHttpProcessor(
+                new HttpRequestInterceptor[]{(request, context) ->
+                        context.setAttribute(EwmaNodeSelector.START_NANOS_ATTRIBUTE, System.nanoTime())},
+                new HttpResponseInterceptor[]{(response, context) -> {
+                    Object startNanos = context.getAttribute(EwmaNodeSelector.START_NANOS_ATTRIBUTE);
+                    HttpHost host = HttpClientContext.adapt(context).getTargetHost();
+                    if (startNanos != null && host != null) {
+                        nodeSelector.record(host, (System.nanoTime() - (Long) startNanos) / 1_000_000.0);
+                    }
+                }});
+    }
+
+    /**
+     * 创建基于jdk HttpClient的客户端。它只在jdk11以上的profile里编译，这里通过反射创建，
+     * 没有编译进来或运行在jdk8上时记录错误，仍使用apache客户端
+     *
+     * @param config        超时、协议配置
+     * @param httpProcessor 请求前后执行的拦截器，可以为null
+     * @return 不可用时返回null
+     */
+    private CloseableHttpAsyncClient newJdkHttpClient(EsClientConfig config, HttpProcessor httpProcessor) {
+        try {
+            Constructor<?> constructor = Class.forName(JDK_HTTP_CLIENT_CLASS)
+                    .getDeclaredConstructor(EsClientConfig.class, CredentialsProvider.class, HttpProcessor.class);
+            return (CloseableHttpAsyncClient) constructor.newInstance(config, init(), httpProcessor);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            log.error("jdk http客户端不可用，需要jdk11以上编译运行，改用apache客户端", e);
+            return null;
+        }
+    }
+
+    /**
+     * 配置了hosts时使用配置的全部节点，RestClient在节点之间轮询，否则使用构造方法里的节点
+     *
+     * @param config
+     * @return
+     */
+    private HttpHost[] buildHttpHosts(EsClientConfig config) {
+        String[] hosts = config.getHosts();
+        if (hosts == null || hosts.length == 0) {
+            return new HttpHost[]{new HttpHost(nodeIp, nodePort, config.getScheme())};
+        }
+        HttpHost[] httpHosts = new HttpHost[hosts.length];
+        for (int i = 0; i < hosts.length; i++) {
+            int colon = hosts[i].lastIndexOf(':');
+            httpHosts[i] = colon < 0
+                    ? new HttpHost(hosts[i], nodePort, config.getScheme())
+                    : new HttpHost(hosts[i].substring(0, colon), Integer.parseInt(hosts[i].substring(colon + 1)), config.getScheme());
+        }
+        return httpHosts;
     }
 
     @Override
     public void close() {
+        NodeSniffer sniffer = nodeSniffer;
+        if (sniffer != null) {
+            sniffer.close();
+            nodeSniffer = null;
+        }
         try {
             client.close();
         } catch (IOException e) {
@@ -88,7 +399,7 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
     @Override
     public boolean existIndex(String indexName) {
         try {
-            return client.indices().exists(new GetIndexRequest(indexName), RequestOptions.DEFAULT);
+            return client.indices().exists(new GetIndexRequest(indexName), requestOptions);
         } catch (IOException e) {
             log.error("existIndex-{}执行异常", indexName, e);
             return false;
@@ -99,7 +410,7 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
     public boolean createIndex(String indexName) {
         CreateIndexResponse createIndexResponse;
         try {
-            createIndexResponse = client.indices().create(new CreateIndexRequest(indexName), RequestOptions.DEFAULT);
+            createIndexResponse = client.indices().create(new CreateIndexRequest(indexName), requestOptions);
         } catch (IOException e) {
             log.error("创建索引{}异常", indexName, e);
             return false;
@@ -109,12 +420,9 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
 
     @Override
     public boolean createIndexWithSettingsAndMappings(String indexName, String settingJson, String mappingJson) {
-        CreateIndexRequest createIndexRequest = new CreateIndexRequest(indexName);
-        createIndexRequest.settings(settingJson, XContentType.JSON);
-        createIndexRequest.mapping(mappingJson, XContentType.JSON);
         CreateIndexResponse createIndexResponse;
         try {
-            createIndexResponse = client.indices().create(createIndexRequest, RequestOptions.DEFAULT);
+            createIndexResponse = client.indices().create(buildCreateIndexRequest(indexName, settingJson, mappingJson), requestOptions);
         } catch (IOException e) {
             log.error("创建索引{}异常", indexName, e);
             return false;
@@ -126,7 +434,7 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
     public boolean deleteIndex(String indexName) {
         AcknowledgedResponse delete;
         try {
-            delete = client.indices().delete(new DeleteIndexRequest(indexName), RequestOptions.DEFAULT);
+            delete = client.indices().delete(new DeleteIndexRequest(indexName), requestOptions);
         } catch (IOException e) {
             log.error("删除索引{}异常", indexName, e);
             return false;
@@ -134,13 +442,24 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
         return delete.isAcknowledged();
     }
 
+    @Override
+    public String getIndexUuid(String indexName) {
+        GetSettingsRequest getSettingsRequest = new GetSettingsRequest().indices(indexName).names(IndexMetaData.SETTING_INDEX_UUID);
+        try {
+            return client.indices().getSettings(getSettingsRequest, requestOptions).getSetting(indexName, IndexMetaData.SETTING_INDEX_UUID);
+        } catch (IOException | ElasticsearchException e) {
+            log.error("获取索引{}的uuid异常", indexName, e);
+            return null;
+        }
+    }
+
     @Override
     public boolean createDoc(String indexName, String docJson) {
         IndexRequest indexRequest = new IndexRequest(indexName);
         indexRequest.source(docJson, XContentType.JSON);
         IndexResponse index;
         try {
-            index = client.index(indexRequest, RequestOptions.DEFAULT);
+            index = client.index(indexRequest, requestOptions);
         } catch (IOException e) {
             log.error("索引{}创建文档({})异常", indexName, docJson, e);
             return false;
@@ -153,7 +472,22 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
         IndexRequest indexRequest = new IndexRequest(indexName).source(docJson, XContentType.JSON).id(docId);
         IndexResponse index;
         try {
-            index = client.index(indexRequest, RequestOptions.DEFAULT);
+            index = client.index(indexRequest, requestOptions);
+        } catch (IOException e) {
+            log.error("索引{}创建文档{}异常", indexName, docId, e);
+            return false;
+        }
+        return index.status() == RestStatus.CREATED;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> boolean createDocWithId(String indexName, String docId, T doc) {
+        byte[] source = EsCodecRegistry.codec((Class<T>) doc.getClass()).encode(doc);
+        IndexRequest indexRequest = new IndexRequest(indexName).source(source, XContentType.JSON).id(docId);
+        IndexResponse index;
+        try {
+            index = client.index(indexRequest, requestOptions);
         } catch (IOException e) {
             log.error("索引{}创建文档{}异常", indexName, docId, e);
             return false;
@@ -166,7 +500,7 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
         UpdateRequest updateRequest = new UpdateRequest(indexName, docId).doc(docJson, XContentType.JSON);
         UpdateResponse update;
         try {
-            update = client.update(updateRequest, RequestOptions.DEFAULT);
+            update = client.update(updateRequest, requestOptions);
         } catch (IOException e) {
             log.error("索引{}更新文档{}异常", indexName, docId, e);
             return false;
@@ -179,7 +513,7 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
         UpdateRequest updateRequest = new UpdateRequest(indexName, docId).doc(docJson, XContentType.JSON).docAsUpsert(true);
         UpdateResponse update;
         try {
-            update = client.update(updateRequest, RequestOptions.DEFAULT);
+            update = client.update(updateRequest, requestOptions);
         } catch (IOException e) {
             log.error("索引{}更新文档{}异常", indexName, docId, e);
             return false;
@@ -192,7 +526,7 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
         DeleteRequest deleteRequest = new DeleteRequest(indexName, docId);
         DeleteResponse delete;
         try {
-            delete = client.delete(deleteRequest, RequestOptions.DEFAULT);
+            delete = client.delete(deleteRequest, requestOptions);
         } catch (IOException e) {
             log.error("索引{}删除文档{}失败", indexName, docId);
             return false;
@@ -201,97 +535,165 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
     }
 
     @Override
-    public void bulkRequest() {
-        BulkRequest bulkRequest = new BulkRequest();
-        //bulkRequest.add(new IndexRequest());
-        if (bulkRequest.numberOfActions() <= 0) {
-            return;
+    public EsBulkProcessor bulkRequest(EsBulkConfig bulkConfig) {
+        //BulkProcessor内部按action数、字节数、时间间隔攒批，并用concurrentRequests控制在途bulk数量
+        return new EsBulkProcessorImpl(client, requestOptions, bulkConfig);
+    }
+
+    @Override
+    public String getDoc(String indexName, String docId) {
+        return getDoc(indexName, docId, (EsProjection) null);
+    }
+
+    @Override
+    public String getDoc(String indexName, String docId, EsProjection projection) {
+        GetRequest getRequest = new GetRequest(indexName, docId);
+        if (projection != null) {
+            getRequest.fetchSourceContext(toFetchSourceContext(projection));
+            if (projection.getStoredFields() != null) {
+                getRequest.storedFields(projection.getStoredFields());
+            }
         }
+        GetResponse getResponse = null;
         try {
-            client.bulk(bulkRequest, RequestOptions.DEFAULT);
+            getResponse = client.get(getRequest, requestOptions);
         } catch (IOException e) {
-            log.error("bulk操作异常", e);
+            log.error("获取索引{}文档{}异常", indexName, docId, e);
+            return null;
         }
+        return getResponse.isExists() ? docMapper(projection).apply(getResponse) : null;
     }
 
     @Override
-    public String getDoc(String indexName, String docId) {
-        GetRequest getRequest = new GetRequest(indexName, docId);
-        GetResponse getResponse = null;
+    public <T> T getDoc(String indexName, String docId, Class<T> type) {
+        GetResponse getResponse;
         try {
-            getResponse = client.get(getRequest, RequestOptions.DEFAULT);
+            getResponse = client.get(new GetRequest(indexName, docId), requestOptions);
         } catch (IOException e) {
             log.error("获取索引{}文档{}异常", indexName, docId, e);
             return null;
         }
-        return getResponse.getSourceAsString();
+        return getResponse.isExists() ? decodeSource(getResponse.getSourceAsBytesRef(), type) : null;
     }
 
     @Override
     public List<String> mulitGet(String indexName, String... docIds) {
+        return mulitGet(indexName, (EsProjection) null, docIds);
+    }
+
+    @Override
+    public List<String> mulitGet(String indexName, EsProjection projection, String... docIds) {
         if (docIds.length <= 0) {
-            return new LinkedList<>();
-        }
-        MultiGetRequest multiGetRequest = new MultiGetRequest();
-        for (String docId : docIds) {
-            multiGetRequest.add(indexName, docId);
+            return new ArrayList<>(0);
         }
         MultiGetResponse mget;
         try {
-            mget = client.mget(multiGetRequest, RequestOptions.DEFAULT);
+            mget = client.mget(buildMultiGetRequest(indexName, projection, docIds), requestOptions);
         } catch (IOException e) {
             log.error("mget获取索引{}文档{}异常", indexName, Arrays.toString(docIds), e);
             return null;
         }
-        List<String> res = new LinkedList<>();
-        MultiGetItemResponse[] multiGetItemResponses = mget.getResponses();
-        for (MultiGetItemResponse multiGetItemRespons : multiGetItemResponses) {
-            res.add(multiGetItemRespons.getResponse().isExists() ? multiGetItemRespons.getResponse().getSourceAsString() : null);
+        return getMultiGetResults(mget, docMapper(projection));
+    }
+
+    @Override
+    public <T> List<T> mulitGet(String indexName, Class<T> type, String... docIds) {
+        if (docIds.length <= 0) {
+            return new ArrayList<>(0);
         }
-        return res;
+        MultiGetResponse mget;
+        try {
+            mget = client.mget(buildMultiGetRequest(indexName, null, docIds), requestOptions);
+        } catch (IOException e) {
+            log.error("mget获取索引{}文档{}异常", indexName, Arrays.toString(docIds), e);
+            return null;
+        }
+        return getMultiGetResults(mget, getResponse -> decodeSource(getResponse.getSourceAsBytesRef(), type));
+    }
+
+    @Override
+    public EsSearchResult<String> search(String indexName, String queryJson) {
+        return search(indexName, queryJson, (EsProjection) null);
     }
 
     @Override
-    public List<String> search(String indexName, String queryJson) {
+    public EsSearchResult<String> search(String indexName, String queryJson, EsProjection projection) {
         SearchRequest searchRequest = new SearchRequest(indexName);
         buildQueryJson(queryJson, searchRequest);
+        applyProjection(searchRequest.source(), projection);
+        if (useRawSearch(projection)) {
+            return searchRaw(indexName, searchRequest.source(), null);
+        }
         SearchResponse searchResponse = null;
         try {
-            searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
+            searchResponse = client.search(searchRequest, requestOptions);
         } catch (IOException e) {
             log.error("执行索引{}search:{}时异常", indexName, queryJson, e);
             return null;
         }
-        return getResStrings(searchResponse);
+        return getResults(searchResponse, hitMapper(projection));
     }
 
 
     @Override
-    public List<String> searchPageByFromSize(String indexName, String queryJson, int pageNum, int pageSize) {
-        if (pageNum < 0) {
-            pageNum = 0;
-        }
-        if (pageSize < 0) {
-            pageSize = 10;
-        }
-        if (pageNum * pageSize > 10_000) {
-            throw new RuntimeException("该方法只允许查询分页数在1w以内的数据");
+    public <T> EsSearchResult<T> search(String indexName, String queryJson, Class<T> type) {
+        SearchRequest searchRequest = new SearchRequest(indexName);
+        buildQueryJson(queryJson, searchRequest);
+        SearchResponse searchResponse;
+        try {
+            searchResponse = client.search(searchRequest, requestOptions);
+        } catch (IOException e) {
+            log.error("执行索引{}search:{}时异常", indexName, queryJson, e);
+            return null;
         }
+        return getResults(searchResponse, hit -> decodeSource(hit.getSourceRef(), type));
+    }
+
+    @Override
+    public EsHitBuffer searchAsBuffer(String indexName, String queryJson) {
+        //通过low level client请求，_source字节从响应体直接拷贝到堆外，不构建SearchResponse、SearchHit
         SearchRequest searchRequest = new SearchRequest(indexName);
         buildQueryJson(queryJson, searchRequest);
-        searchRequest.source().from((pageNum - 1) * pageSize).size(pageSize);
+        try {
+            Response response = client.getLowLevelClient().performRequest(
+                    buildRawSearchRequest(indexName, searchRequest.source(), null, RAW_BUFFER_FILTER_PATH));
+            return RawSearchResponseParser.parseToBuffer(EntityUtils.toByteArray(response.getEntity()), EsDirectBufferPool.DEFAULT);
+        } catch (IOException | RuntimeException e) {
+            log.error("执行索引{}search:{}时异常", indexName, queryJson, e);
+            return null;
+        }
+    }
+
+
+    @Override
+    public EsSearchResult<String> searchPageByFromSize(String indexName, String queryJson, int pageNum, int pageSize) {
+        return searchPageByFromSize(indexName, queryJson, pageNum, pageSize, null);
+    }
+
+    @Override
+    public EsSearchResult<String> searchPageByFromSize(String indexName, String queryJson, int pageNum, int pageSize, EsProjection projection) {
+        SearchRequest searchRequest = buildFromSizeRequest(indexName, queryJson, pageNum, pageSize);
+        applyProjection(searchRequest.source(), projection);
+        if (useRawSearch(projection)) {
+            return searchRaw(indexName, searchRequest.source(), null);
+        }
         SearchResponse searchResponse = null;
         try {
-            searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
+            searchResponse = client.search(searchRequest, requestOptions);
         } catch (IOException e) {
-            log.error("执行索引{}search:{}时异常,from:{},size:{}", indexName, queryJson, (pageNum - 1) * pageSize, pageSize, e);
+            log.error("执行索引{}search:{}时异常,from:{},size:{}", indexName, queryJson, searchRequest.source().from(), searchRequest.source().size(), e);
             return null;
         }
-        return getResStrings(searchResponse);
+        return getResults(searchResponse, hitMapper(projection));
+    }
+
+    @Override
+    public EsSearchResult<String> searchPageByScroll(String indexName, String queryJson, int scrollMinute, int pageNum, int pageSize) {
+        return searchPageByScroll(indexName, queryJson, scrollMinute, pageNum, pageSize, null);
     }
 
     @Override
-    public List<String> searchPageByScroll(String indexName, String queryJson, int scrollMinute, int pageNum, int pageSize) {
+    public EsSearchResult<String> searchPageByScroll(String indexName, String queryJson, int scrollMinute, int pageNum, int pageSize, EsProjection projection) {
         if (pageNum <= 0) {
             pageNum = 1;
         }
@@ -301,22 +703,23 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
         SearchRequest searchRequest = new SearchRequest(indexName).scroll(TimeValue.timeValueMinutes(scrollMinute));
         buildQueryJson(queryJson, searchRequest);
         searchRequest.source().size(pageSize);
+        applyProjection(searchRequest.source(), projection);
         SearchResponse searchResponse;
         try {
-            searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
+            searchResponse = client.search(searchRequest, requestOptions);
         } catch (IOException e) {
             log.error("执行索引{}search:{}时异常,from:{},size:{}", indexName, queryJson, (pageNum - 1) * pageSize, pageSize, e);
             return null;
         }
         //如果pageNum页已经超过了数据最大量，那么直接pageNum页直接返回空列表
         if (searchResponse.getSuccessfulShards() <= 0 || searchResponse.getHits().getTotalHits().value <= (long) (pageNum - 1) * pageSize) {
-            return new LinkedList<>();
+            return newSearchResult(searchResponse, 0);
         }
         //for循环查询下一页。其实吧，searchAfter和scroll都不适合深度分页。跳页查询其实都会遍历前边的数据，产品前端最好做些折衷比较适合，
         // 让用户只能一页一页翻。mysql好歹能通过b+tree主键索引进行分页优化。而es因为是通过对docId进行hash定位的，本身分页查询就没特别好的方式
         for (int i = 1; i < pageNum; i++) {
             try {
-                searchResponse = client.scroll(new SearchScrollRequest(searchResponse.getScrollId()), RequestOptions.DEFAULT);
+                searchResponse = client.scroll(new SearchScrollRequest(searchResponse.getScrollId()), requestOptions);
             } catch (IOException e) {
                 log.error("执行索引{}scroll:{}时异常,scrollId:{}", indexName, queryJson, searchResponse.getScrollId(), e);
                 return null;
@@ -324,11 +727,82 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
         }
         //最后可以clear掉当前的scroll，减少es服务端内存占用。或者当快照到期自然clear也成
         //client.prepareClearScroll().addScrollId(searchResponse.getScrollId()).get();
-        return getResStrings(searchResponse);
+        return getResults(searchResponse, hitMapper(projection));
+    }
+
+    @Override
+    public EsPage<String> searchPageByScroll(String indexName, String queryJson, int scrollMinute, int pageSize, String cursor) {
+        return searchPageByScroll(indexName, queryJson, scrollMinute, pageSize, cursor, null);
+    }
+
+    @Override
+    public EsPage<String> searchPageByScroll(String indexName, String queryJson, int scrollMinute, int pageSize, String cursor, EsProjection projection) {
+        if (pageSize <= 0) {
+            pageSize = 10;
+        }
+        EsPageCursor pageCursor = EsPageCursor.resolve(indexName, queryJson, pageSize, cursor);
+        TimeValue keepAlive = TimeValue.timeValueMinutes(scrollMinute);
+        SearchResponse searchResponse;
+        try {
+            if (pageCursor.getScrollId() == null) {
+                SearchRequest searchRequest = buildScrollRequest(indexName, queryJson, keepAlive, pageSize);
+                applyProjection(searchRequest.source(), projection);
+                searchResponse = client.search(searchRequest, requestOptions);
+            } else {
+                searchResponse = client.scroll(new SearchScrollRequest(pageCursor.getScrollId()).scroll(keepAlive), requestOptions);
+            }
+        } catch (IOException e) {
+            log.error("执行索引{}scroll:{}时异常,第{}页", indexName, queryJson, pageCursor.getPageNum(), e);
+            return null;
+        }
+        EsPage<String> page = toScrollPage(pageCursor, pageSize, searchResponse, hitMapper(projection));
+        if (!page.hasNext()) {
+            //最后一页了，直接clear掉快照
+            clearScroll(searchResponse.getScrollId());
+        }
+        return page;
+    }
+
+    @Override
+    public EsHitIterator<String> searchByScroll(String indexName, String queryJson, int scrollMinute, int pageSize) {
+        return searchByScroll(indexName, queryJson, scrollMinute, pageSize, 0);
+    }
+
+    @Override
+    public EsHitIterator<String> searchByScroll(String indexName, String queryJson, int scrollMinute, int pageSize, int prefetchPages) {
+        return searchByScroll(indexName, queryJson, scrollMinute, pageSize, prefetchPages, null);
+    }
+
+    @Override
+    public EsHitIterator<String> searchByScroll(String indexName, String queryJson, int scrollMinute, int pageSize, int prefetchPages, EsProjection projection) {
+        if (pageSize <= 0) {
+            pageSize = 10;
+        }
+        SearchRequest searchRequest = new SearchRequest(indexName);
+        buildQueryJson(queryJson, searchRequest);
+        searchRequest.source().size(pageSize);
+        applyProjection(searchRequest.source(), projection);
+        return toHitIterator(new ScrollPageFetcher<>(client, requestOptions, searchRequest, TimeValue.timeValueMinutes(scrollMinute), hitMapper(projection)), prefetchPages);
     }
 
     @Override
-    public List<String> searchPageBySearchAfter(String indexName, String queryJson, int pageNum, int pageSize) {
+    public EsHitIterator<String> searchBySlicedScroll(String indexName, String queryJson, int scrollMinute, int pageSize, int slices, Executor executor) {
+        List<ScrollPageFetcher<String>> fetchers = buildSliceFetchers(indexName, queryJson, scrollMinute, pageSize, slices);
+        return new EsHitIterator<>(new EsMergedPageFetcher<>(fetchers, executor, fetchers.size()));
+    }
+
+    @Override
+    public boolean exportBySlicedScroll(String indexName, String queryJson, int scrollMinute, int pageSize, int slices, Executor executor, BiConsumer<Integer, List<String>> sliceSink) {
+        return EsSliceExporter.export(buildSliceFetchers(indexName, queryJson, scrollMinute, pageSize, slices), executor, sliceSink);
+    }
+
+    @Override
+    public EsSearchResult<String> searchPageBySearchAfter(String indexName, String queryJson, int pageNum, int pageSize) {
+        return searchPageBySearchAfter(indexName, queryJson, pageNum, pageSize, null);
+    }
+
+    @Override
+    public EsSearchResult<String> searchPageBySearchAfter(String indexName, String queryJson, int pageNum, int pageSize, EsProjection projection) {
         if (pageNum <= 0) {
             pageNum = 1;
         }
@@ -338,115 +812,261 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
         SearchRequest searchRequest = new SearchRequest(indexName);
         buildQueryJson(queryJson, searchRequest);
         searchRequest.source().sort("_index", SortOrder.ASC).sort("_id", SortOrder.ASC).size(pageSize);
+        applyProjection(searchRequest.source(), projection);
+        //从不超过pageNum的最近检查点开始翻，检查点和pageSize相关，所以key里带上pageSize
+        String checkpointKey = SearchAfterCheckpointCache.key(indexName, queryJson, SEARCH_AFTER_SORT + ":" + pageSize);
+        Map.Entry<Integer, Object[]> checkpoint = checkpointCache.floor(checkpointKey, pageNum);
+        int startPage = 1;
+        if (checkpoint != null) {
+            startPage = checkpoint.getKey();
+            searchRequest.source().searchAfter(checkpoint.getValue());
+        }
         SearchResponse searchResponse;
         try {
-            searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
+            searchResponse = client.search(searchRequest, requestOptions);
         } catch (IOException e) {
             log.error("执行索引{}searchAfter:{}时异常", indexName, queryJson, e);
             return null;
         }
         //如果pageNum页已经超过了数据最大量，那么直接pageNum页直接返回空列表
         if (searchResponse.getSuccessfulShards() <= 0 || searchResponse.getHits().getTotalHits().value <= (long) (pageNum - 1) * pageSize) {
-            return new LinkedList<>();
+            return newSearchResult(searchResponse, 0);
         }
         try {
             //for循环查询下一页。其实吧，searchAfter和scroll都不适合深度分页。跳页查询其实都会遍历前边的数据，产品前端最好做些折衷比较适合，
             // 让用户只能一页一页翻。mysql好歹能通过b+tree主键索引进行分页优化。而es因为是通过对docId进行hash定位的，本身分页查询就没特别好的方式
-            for (int i = 1; i < pageNum; i++) {
+            //这里每隔checkpointInterval页记录一次检查点，之后跳到后面的页时可以从检查点开始翻
+            for (int i = startPage; i < pageNum; i++) {
                 SearchHit[] hits = searchResponse.getHits().getHits();
+                if (hits.length == 0) {
+                    return newSearchResult(searchResponse, 0);
+                }
                 Object[] sortValues = hits[hits.length - 1].getSortValues();
+                if (checkpointCache.isCheckpoint(i + 1)) {
+                    checkpointCache.put(checkpointKey, i + 1, sortValues);
+                }
                 searchRequest.source().searchAfter(sortValues);
-                searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
+                searchResponse = client.search(searchRequest, requestOptions);
             }
         } catch (IOException e) {
             log.error("执行索引{}searchAfter:{}时异常", indexName, queryJson, e);
             return null;
         }
-        return getResStrings(searchResponse);
+        return getResults(searchResponse, hitMapper(projection));
     }
 
     @Override
-    public List<String> searchWithSort(String indexName, String queryJson, String... sortFields) {
+    public <T> EsHitIterator<T> searchByScroll(String indexName, String queryJson, int scrollMinute, int pageSize, Class<T> type) {
+        if (pageSize <= 0) {
+            pageSize = 10;
+        }
         SearchRequest searchRequest = new SearchRequest(indexName);
         buildQueryJson(queryJson, searchRequest);
-        for (String sortField : sortFields) {
-            searchRequest.source().sort(sortField, SortOrder.ASC);
+        searchRequest.source().size(pageSize);
+        return new EsHitIterator<>(new ScrollPageFetcher<>(client, requestOptions, searchRequest, TimeValue.timeValueMinutes(scrollMinute), hit -> decodeSource(hit.getSourceRef(), type)));
+    }
+
+    @Override
+    public EsPage<String> searchPageBySearchAfter(String indexName, String queryJson, int pageSize, String cursor) {
+        return searchPageBySearchAfter(indexName, queryJson, pageSize, cursor, null);
+    }
+
+    @Override
+    public EsPage<String> searchPageBySearchAfter(String indexName, String queryJson, int pageSize, String cursor, EsProjection projection) {
+        if (pageSize <= 0) {
+            pageSize = 10;
         }
+        EsPageCursor pageCursor = EsPageCursor.resolve(indexName, queryJson, pageSize, cursor);
+        SearchRequest searchRequest = buildSearchAfterRequest(indexName, queryJson, pageSize, pageCursor);
+        applyProjection(searchRequest.source(), projection);
         SearchResponse searchResponse;
         try {
-            searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
+            searchResponse = client.search(searchRequest, requestOptions);
         } catch (IOException e) {
-            log.error("执行索引{}search:{}时异常,sort:{}", indexName, queryJson, Arrays.toString(sortFields), e);
+            log.error("执行索引{}searchAfter:{}时异常,第{}页", indexName, queryJson, pageCursor.getPageNum(), e);
             return null;
         }
-        return getResStrings(searchResponse);
+        return toSearchAfterPage(pageCursor, pageSize, searchResponse, hitMapper(projection));
     }
 
     @Override
-    public Double searchWithMetricAggregation(String indexName, String sumField) {
+    public EsHitIterator<String> searchBySearchAfter(String indexName, String queryJson, int pageSize) {
+        return searchBySearchAfter(indexName, queryJson, pageSize, 0);
+    }
+
+    @Override
+    public EsHitIterator<String> searchBySearchAfter(String indexName, String queryJson, int pageSize, int prefetchPages) {
+        return searchBySearchAfter(indexName, queryJson, pageSize, prefetchPages, null);
+    }
+
+    @Override
+    public EsHitIterator<String> searchBySearchAfter(String indexName, String queryJson, int pageSize, int prefetchPages, EsProjection projection) {
+        if (pageSize <= 0) {
+            pageSize = 10;
+        }
         SearchRequest searchRequest = new SearchRequest(indexName);
-        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder()
-                .aggregation(AggregationBuilders.sum("sum").field(sumField));
-        searchRequest.source(searchSourceBuilder);
+        buildQueryJson(queryJson, searchRequest);
+        searchRequest.source().sort("_index", SortOrder.ASC).sort("_id", SortOrder.ASC).size(pageSize);
+        applyProjection(searchRequest.source(), projection);
+        return toHitIterator(new SearchAfterPageFetcher<>(client, requestOptions, searchRequest, hitMapper(projection)), prefetchPages);
+    }
+
+    @Override
+    public EsSearchResult<String> searchWithSort(String indexName, String queryJson, String... sortFields) {
+        return searchWithSort(indexName, queryJson, (EsProjection) null, sortFields);
+    }
+
+    @Override
+    public EsSearchResult<String> searchWithSort(String indexName, String queryJson, EsProjection projection, String... sortFields) {
+        SearchRequest searchRequest = buildSortRequest(indexName, queryJson, sortFields);
+        applyProjection(searchRequest.source(), projection);
         SearchResponse searchResponse;
         try {
-            searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
+            searchResponse = client.search(searchRequest, requestOptions);
         } catch (IOException e) {
-            log.error("search索引{}时异常", indexName, e);
+            log.error("执行索引{}search:{}时异常,sort:{}", indexName, queryJson, Arrays.toString(sortFields), e);
             return null;
         }
-        Sum sum = searchResponse.getAggregations().get("sum");
-        return sum.getValue();
+        return getResults(searchResponse, hitMapper(projection));
     }
 
     @Override
-    public Map<String, Long> searchWithBulkAggregation(String indexName, String groupField) {
-        SearchRequest searchRequest = new SearchRequest(indexName);
-        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder()
-                .aggregation(AggregationBuilders.terms("groupby").field(groupField));
-        searchRequest.source(searchSourceBuilder);
+    public Double searchWithMetricAggregation(String indexName, String sumField) {
+        EsAggregationResult<Double> result = searchWithMetricAggregationResult(indexName, sumField);
+        return result == null ? null : result.getValue();
+    }
+
+    @Override
+    public EsAggregationResult<Double> searchWithMetricAggregationResult(String indexName, String sumField) {
         SearchResponse searchResponse;
         try {
-            searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
+            searchResponse = client.search(buildMetricAggregationRequest(indexName, sumField), requestOptions);
         } catch (IOException e) {
             log.error("search索引{}时异常", indexName, e);
             return null;
         }
-        Terms terms = searchResponse.getAggregations().get("groupby");
-        Map<String, Long> resMap = new HashMap<>();
-        for (Terms.Bucket bucket : terms.getBuckets()) {
-            resMap.put(bucket.getKeyAsString(), bucket.getDocCount());
+        return toAggregationResult(searchResponse, getMetricAggregation(searchResponse));
+    }
+
+    @Override
+    public EsStringLongMap searchWithBulkAggregation(String indexName, String groupField) {
+        EsAggregationResult<EsStringLongMap> result = searchWithBulkAggregationResult(indexName, groupField);
+        return result == null ? null : result.getValue();
+    }
+
+    @Override
+    public EsAggregationResult<EsStringLongMap> searchWithBulkAggregationResult(String indexName, String groupField) {
+        SearchResponse searchResponse;
+        try {
+            searchResponse = client.search(buildBulkAggregationRequest(indexName, groupField), requestOptions);
+        } catch (IOException e) {
+            log.error("search索引{}时异常", indexName, e);
+            return null;
         }
-        return resMap;
+        return toAggregationResult(searchResponse, getBulkAggregation(searchResponse));
     }
 
     @Override
-    public Map<String, Double> searchWithPipelineAggregation(String indexName, String groupField, String sumField) {
-        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder()
-                .aggregation(AggregationBuilders.terms("groupby").field(groupField)
-                        .subAggregation(AggregationBuilders.sum("sum").field(sumField)));
-        SearchRequest searchRequest = new SearchRequest(indexName).source(searchSourceBuilder);
+    public boolean searchWithCompositeAggregation(String indexName, String queryJson, String groupField, int pageSize, ObjLongConsumer<String> bucketSink) {
+        CompositeAggregationBuilder compositeBuilder = new CompositeAggregationBuilder("groupby",
+                Collections.singletonList(new TermsValuesSourceBuilder(groupField).field(groupField)))
+                .size(pageSize > 0 ? pageSize : 1000);
+        SearchRequest searchRequest = new SearchRequest(indexName);
+        buildQueryJson(queryJson, searchRequest);
+        //设置size为0，就不返回hits了，只返回aggregation结果。
+        searchRequest.source().size(0).aggregation(compositeBuilder);
+        try (CompositePageFetcher pageFetcher = new CompositePageFetcher(client, requestOptions, searchRequest, compositeBuilder, groupField)) {
+            EsStringLongMap page;
+            while (!(page = pageFetcher.nextPage()).isEmpty()) {
+                for (int i = 0; i < page.size(); i++) {
+                    bucketSink.accept(page.keyAt(i), page.longAt(i));
+                }
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.error("索引{}按{}分组聚合时异常", indexName, groupField, e);
+            return false;
+        }
+    }
+
+    @Override
+    public EsStringDoubleMap searchWithPipelineAggregation(String indexName, String groupField, String sumField) {
+        EsAggregationResult<EsStringDoubleMap> result = searchWithPipelineAggregationResult(indexName, groupField, sumField);
+        return result == null ? null : result.getValue();
+    }
+
+    @Override
+    public EsAggregationResult<EsStringDoubleMap> searchWithPipelineAggregationResult(String indexName, String groupField, String sumField) {
         SearchResponse searchResponse;
         try {
-            searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
+            searchResponse = client.search(buildPipelineAggregationRequest(indexName, groupField, sumField), requestOptions);
         } catch (IOException e) {
             log.error("search索引{}时异常", indexName, e);
             return null;
         }
-        Terms terms = searchResponse.getAggregations().get("groupby");
-        Map<String, Double> resMap = new HashMap<>();
-        for (Terms.Bucket bucket : terms.getBuckets()) {
-            Sum sum = bucket.getAggregations().get("sum");
-            resMap.put(bucket.getKeyAsString(), sum.getValue());
+        return toAggregationResult(searchResponse, getPipelineAggregation(searchResponse));
+    }
+
+    /**
+     * 通过low level client分页查询，响应不经过highLevelClient解析，按字节切出每个hit的_source，
+     * 同时可以带上聚合，聚合结果的json在返回值的aggregations里
+     *
+     * @param indexName
+     * @param queryJson  查询条件，为空时查全部
+     * @param pageNum    从1开始
+     * @param pageSize
+     * @param projection 返回字段，只支持_source的includes、excludes，可以为null
+     * @param aggsJson   聚合json，为{"聚合名":{...}}，为空时不聚合
+     * @return 异常时返回null
+     */
+    public EsSearchResult<String> searchRaw(String indexName, String queryJson, int pageNum, int pageSize, EsProjection projection, String aggsJson) {
+        SearchRequest searchRequest = buildFromSizeRequest(indexName, queryJson, pageNum, pageSize);
+        if (projection != null) {
+            searchRequest.source().fetchSource(toFetchSourceContext(projection));
+        }
+        return searchRaw(indexName, searchRequest.source(), aggsJson);
+    }
+
+    private EsSearchResult<String> searchRaw(String indexName, SearchSourceBuilder source, String aggsJson) {
+        try {
+            Response response = client.getLowLevelClient().performRequest(buildRawSearchRequest(indexName, source, aggsJson, RAW_SEARCH_FILTER_PATH));
+            return RawSearchResponseParser.parse(EntityUtils.toByteArray(response.getEntity()));
+        } catch (IOException | RuntimeException e) {
+            log.error("执行索引{}raw search:{}时异常,aggs:{}", indexName, source, aggsJson, e);
+            return null;
         }
-        return resMap;
+    }
+
+    /**
+     * filter_path会把没有_source的hit整个去掉，不取_source时也走highLevelClient，保证返回的条数一致
+     */
+    private boolean useRawSearch(EsProjection projection) {
+        return rawSearch && (projection == null || (projection.isFetchSource() && !projection.hasFields()));
     }
 
     @Override
-    public List<String> multiSearchWithIndexNames(String... indexNames) {
+    public String searchAggregation(String indexName, String queryJson, String aggsJson) {
+        EsAggregationResult<String> result = searchAggregationResult(indexName, queryJson, aggsJson);
+        return result == null ? null : result.getValue();
+    }
+
+    @Override
+    public EsAggregationResult<String> searchAggregationResult(String indexName, String queryJson, String aggsJson) {
+        try {
+            Response response = client.getLowLevelClient().performRequest(buildAggregationRequest(indexName, queryJson, aggsJson));
+            return getAggregationResult(response);
+        } catch (IOException | RuntimeException e) {
+            //aggsJson、queryJson不是合法的json、响应解析失败时也返回null
+            log.error("执行索引{}聚合查询时异常,query:{},aggs:{}", indexName, queryJson, aggsJson, e);
+            return null;
+        }
+    }
+
+    @Override
+    public EsSearchResult<String> multiSearchWithIndexNames(String... indexNames) {
         SearchResponse search;
         try {
-            search = client.search(new SearchRequest(indexNames), RequestOptions.DEFAULT);
+            search = client.search(new SearchRequest(indexNames), requestOptions);
         } catch (IOException e) {
             log.error("multiSearch异常，indexNames为:{}", Arrays.toString(indexNames), e);
             return null;
@@ -455,63 +1075,717 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
     }
 
     @Override
-    public List<List<String>> multiSearchWithQueryJsons(String indexName, String... queryJson) {
-        if (queryJson.length<=0){
-            return new LinkedList<>();
+    public List<EsSearchResult<String>> multiSearchWithQueryJsons(String indexName, String... queryJson) {
+        return multiSearch(indexName, toMultiSearchQueries(queryJson));
+    }
+
+    @Override
+    public List<EsSearchResult<String>> multiSearch(String indexName, List<EsMultiSearchQuery> queries) {
+        return multiSearchAsync(indexName, queries).join();
+    }
+
+    @Override
+    public void asyncSearch(String indexName) {
+        searchAsync(indexName, null).whenComplete((resStrings, e) -> {
+            if (e != null) {
+                log.error("异步请求出错", e);
+                return;
+            }
+            log.info("输出结果为:{}", resStrings);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> existIndexAsync(String indexName) {
+        return toFuture(listener -> client.indices().existsAsync(new GetIndexRequest(indexName), requestOptions, listener), Function.identity());
+    }
+
+    @Override
+    public CompletableFuture<Boolean> createIndexAsync(String indexName) {
+        return toFuture(listener -> client.indices().createAsync(new CreateIndexRequest(indexName), requestOptions, listener), CreateIndexResponse::isAcknowledged);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> createIndexWithSettingsAndMappingsAsync(String indexName, String settingJson, String mappingJson) {
+        CreateIndexRequest createIndexRequest = buildCreateIndexRequest(indexName, settingJson, mappingJson);
+        return toFuture(listener -> client.indices().createAsync(createIndexRequest, requestOptions, listener), CreateIndexResponse::isAcknowledged);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteIndexAsync(String indexName) {
+        return toFuture(listener -> client.indices().deleteAsync(new DeleteIndexRequest(indexName), requestOptions, listener), AcknowledgedResponse::isAcknowledged);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> createDocAsync(String indexName, String docJson) {
+        return indexAsync(new IndexRequest(indexName).source(docJson, XContentType.JSON));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> createDocWithIdAsync(String indexName, String docId, String docJson) {
+        return indexAsync(new IndexRequest(indexName).source(docJson, XContentType.JSON).id(docId));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<Boolean> createDocWithIdAsync(String indexName, String docId, T doc) {
+        byte[] source = EsCodecRegistry.codec((Class<T>) doc.getClass()).encode(doc);
+        return indexAsync(new IndexRequest(indexName).source(source, XContentType.JSON).id(docId));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updateDocAsync(String indexName, String docId, String docJson) {
+        UpdateRequest updateRequest = new UpdateRequest(indexName, docId).doc(docJson, XContentType.JSON);
+        return toFuture(listener -> client.updateAsync(updateRequest, requestOptions, listener), (UpdateResponse update) -> update.status() == RestStatus.OK);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> upsertDocAsync(String indexName, String docId, String docJson) {
+        UpdateRequest updateRequest = new UpdateRequest(indexName, docId).doc(docJson, XContentType.JSON).docAsUpsert(true);
+        return toFuture(listener -> client.updateAsync(updateRequest, requestOptions, listener),
+                (UpdateResponse update) -> update.status() == RestStatus.OK || update.status() == RestStatus.CREATED);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteIndexDocAsync(String indexName, String docId) {
+        return toFuture(listener -> client.deleteAsync(new DeleteRequest(indexName, docId), requestOptions, listener),
+                (DeleteResponse delete) -> delete.status() == RestStatus.OK);
+    }
+
+    @Override
+    public CompletableFuture<String> getDocAsync(String indexName, String docId) {
+        return toFuture(listener -> client.getAsync(new GetRequest(indexName, docId), requestOptions, listener), GetResponse::getSourceAsString);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> getDocAsync(String indexName, String docId, Class<T> type) {
+        return toFuture(listener -> client.getAsync(new GetRequest(indexName, docId), requestOptions, listener),
+                (GetResponse getResponse) -> getResponse.isExists() ? decodeSource(getResponse.getSourceAsBytesRef(), type) : null);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> mulitGetAsync(String indexName, String... docIds) {
+        if (docIds.length <= 0) {
+            return CompletableFuture.completedFuture(new ArrayList<>(0));
         }
-        MultiSearchRequest multiSearchRequest=new MultiSearchRequest();
-        for (String singleQueryJson : queryJson) {
-            if (StringUtils.isNotEmpty(singleQueryJson)&& !JSONValidator.from(singleQueryJson).validate()){
+        return toFuture(listener -> client.mgetAsync(buildMultiGetRequest(indexName, null, docIds), requestOptions, listener),
+                (MultiGetResponse mget) -> getMultiGetResults(mget, GetResponse::getSourceAsString));
+    }
+
+    @Override
+    public <T> CompletableFuture<List<T>> mulitGetAsync(String indexName, Class<T> type, String... docIds) {
+        if (docIds.length <= 0) {
+            return CompletableFuture.completedFuture(new ArrayList<>(0));
+        }
+        return toFuture(listener -> client.mgetAsync(buildMultiGetRequest(indexName, null, docIds), requestOptions, listener),
+                (MultiGetResponse mget) -> getMultiGetResults(mget, getResponse -> decodeSource(getResponse.getSourceAsBytesRef(), type)));
+    }
+
+    @Override
+    public CompletableFuture<EsSearchResult<String>> searchAsync(String indexName, String queryJson) {
+        SearchRequest searchRequest = new SearchRequest(indexName);
+        buildQueryJson(queryJson, searchRequest);
+        return executeSearchAsync(searchRequest, this::getResStrings);
+    }
+
+    @Override
+    public <T> CompletableFuture<EsSearchResult<T>> searchAsync(String indexName, String queryJson, Class<T> type) {
+        SearchRequest searchRequest = new SearchRequest(indexName);
+        buildQueryJson(queryJson, searchRequest);
+        return executeSearchAsync(searchRequest, searchResponse -> getResults(searchResponse, hit -> decodeSource(hit.getSourceRef(), type)));
+    }
+
+    @Override
+    public CompletableFuture<EsSearchResult<String>> searchPageByFromSizeAsync(String indexName, String queryJson, int pageNum, int pageSize) {
+        return executeSearchAsync(buildFromSizeRequest(indexName, queryJson, pageNum, pageSize), this::getResStrings);
+    }
+
+    @Override
+    public CompletableFuture<EsPage<String>> searchPageByScrollAsync(String indexName, String queryJson, int scrollMinute, int pageSize, String cursor) {
+        int size = pageSize <= 0 ? 10 : pageSize;
+        EsPageCursor pageCursor = EsPageCursor.resolve(indexName, queryJson, size, cursor);
+        TimeValue keepAlive = TimeValue.timeValueMinutes(scrollMinute);
+        Function<SearchResponse, EsPage<String>> pageMapper = searchResponse -> {
+            EsPage<String> page = toScrollPage(pageCursor, size, searchResponse, SearchHit::getSourceAsString);
+            if (!page.hasNext()) {
+                //在网络线程中不能同步请求es，这里异步clear掉快照
+                clearScrollAsync(searchResponse.getScrollId());
+            }
+            return page;
+        };
+        if (pageCursor.getScrollId() == null) {
+            return executeSearchAsync(buildScrollRequest(indexName, queryJson, keepAlive, size), pageMapper);
+        }
+        SearchScrollRequest scrollRequest = new SearchScrollRequest(pageCursor.getScrollId()).scroll(keepAlive);
+        return toFuture(listener -> client.scrollAsync(scrollRequest, requestOptions, listener), pageMapper);
+    }
+
+    @Override
+    public CompletableFuture<EsPage<String>> searchPageBySearchAfterAsync(String indexName, String queryJson, int pageSize, String cursor) {
+        int size = pageSize <= 0 ? 10 : pageSize;
+        EsPageCursor pageCursor = EsPageCursor.resolve(indexName, queryJson, size, cursor);
+        return executeSearchAsync(buildSearchAfterRequest(indexName, queryJson, size, pageCursor), searchResponse -> toSearchAfterPage(pageCursor, size, searchResponse, SearchHit::getSourceAsString));
+    }
+
+    @Override
+    public CompletableFuture<EsSearchResult<String>> searchWithSortAsync(String indexName, String queryJson, String... sortFields) {
+        return executeSearchAsync(buildSortRequest(indexName, queryJson, sortFields), this::getResStrings);
+    }
+
+    @Override
+    public CompletableFuture<Double> searchWithMetricAggregationAsync(String indexName, String sumField) {
+        return executeSearchAsync(buildMetricAggregationRequest(indexName, sumField), EsOperatorImpl::getMetricAggregation);
+    }
+
+    @Override
+    public CompletableFuture<EsStringLongMap> searchWithBulkAggregationAsync(String indexName, String groupField) {
+        return executeSearchAsync(buildBulkAggregationRequest(indexName, groupField), EsOperatorImpl::getBulkAggregation);
+    }
+
+    @Override
+    public CompletableFuture<EsStringDoubleMap> searchWithPipelineAggregationAsync(String indexName, String groupField, String sumField) {
+        return executeSearchAsync(buildPipelineAggregationRequest(indexName, groupField, sumField), EsOperatorImpl::getPipelineAggregation);
+    }
+
+    @Override
+    public CompletableFuture<String> searchAggregationAsync(String indexName, String queryJson, String aggsJson) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        Request request;
+        try {
+            request = buildAggregationRequest(indexName, queryJson, aggsJson);
+        } catch (RuntimeException e) {
+            //json不合法时和请求失败一样通过future返回，不在调用线程抛出
+            future.completeExceptionally(e);
+            return future;
+        }
+        client.getLowLevelClient().performRequestAsync(request, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                try {
+                    future.complete(getAggregationResult(response).getValue());
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<EsSearchResult<String>> multiSearchWithIndexNamesAsync(String... indexNames) {
+        return executeSearchAsync(new SearchRequest(indexNames), this::getResStrings);
+    }
+
+    @Override
+    public CompletableFuture<List<EsSearchResult<String>>> multiSearchWithQueryJsonsAsync(String indexName, String... queryJson) {
+        return multiSearchAsync(indexName, toMultiSearchQueries(queryJson));
+    }
+
+    @Override
+    public CompletableFuture<List<EsSearchResult<String>>> multiSearchAsync(String indexName, List<EsMultiSearchQuery> queries) {
+        return multiSearchBatcher.execute(queries, batch -> toFuture(
+                listener -> client.msearchAsync(buildMultiSearchRequest(indexName, batch), requestOptions, listener),
+                this::getMultiSearchResStrings));
+    }
+
+    private CredentialsProvider init() {
+        CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+        credentialsProvider.setCredentials(AuthScope.ANY,
+                new UsernamePasswordCredentials(clusterName, password));
+        return credentialsProvider;
+    }
+
+    /**
+     * 把es客户端的异步回调转换成CompletableFuture，resultMapper在es客户端的网络线程中执行
+     *
+     * @param asyncCall    发起异步请求，入参为回调listener
+     * @param resultMapper 把es的response转换成返回结果，抛出的异常会结束future
+     * @return
+     */
+    private static <R, T> CompletableFuture<T> toFuture(Consumer<ActionListener<R>> asyncCall, Function<R, T> resultMapper) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        asyncCall.accept(new ActionListener<R>() {
+            @Override
+            public void onResponse(R response) {
+                try {
+                    future.complete(resultMapper.apply(response));
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 异步执行search
+     *
+     * @param searchRequest
+     * @param resultMapper
+     * @return
+     */
+    private <T> CompletableFuture<T> executeSearchAsync(SearchRequest searchRequest, Function<SearchResponse, T> resultMapper) {
+        return toFuture(listener -> client.searchAsync(searchRequest, requestOptions, listener), resultMapper);
+    }
+
+    /**
+     * 异步执行index，创建成功返回true
+     *
+     * @param indexRequest
+     * @return
+     */
+    private CompletableFuture<Boolean> indexAsync(IndexRequest indexRequest) {
+        return toFuture(listener -> client.indexAsync(indexRequest, requestOptions, listener), (IndexResponse index) -> index.status() == RestStatus.CREATED);
+    }
+
+    private CreateIndexRequest buildCreateIndexRequest(String indexName, String settingJson, String mappingJson) {
+        CreateIndexRequest createIndexRequest = new CreateIndexRequest(indexName);
+        createIndexRequest.settings(settingJson, XContentType.JSON);
+        createIndexRequest.mapping(mappingJson, XContentType.JSON);
+        return createIndexRequest;
+    }
+
+    private MultiGetRequest buildMultiGetRequest(String indexName, EsProjection projection, String... docIds) {
+        MultiGetRequest multiGetRequest = new MultiGetRequest();
+        for (String docId : docIds) {
+            MultiGetRequest.Item item = new MultiGetRequest.Item(indexName, docId);
+            if (projection != null) {
+                item.fetchSourceContext(toFetchSourceContext(projection));
+                if (projection.getStoredFields() != null) {
+                    item.storedFields(projection.getStoredFields());
+                }
+            }
+            multiGetRequest.add(item);
+        }
+        return multiGetRequest;
+    }
+
+    /**
+     * 解析mget结果，和请求的docIds一一对应，不存在或获取失败的doc对应位置为null
+     *
+     * @param multiGetResponse
+     * @param docMapper
+     * @return
+     */
+    private static <T> List<T> getMultiGetResults(MultiGetResponse multiGetResponse, Function<GetResponse, T> docMapper) {
+        MultiGetItemResponse[] multiGetItemResponses = multiGetResponse.getResponses();
+        List<T> res = new ArrayList<>(multiGetItemResponses.length);
+        for (MultiGetItemResponse multiGetItemRespons : multiGetItemResponses) {
+            GetResponse getResponse = multiGetItemRespons.getResponse();
+            res.add(getResponse != null && getResponse.isExists() ? docMapper.apply(getResponse) : null);
+        }
+        return res;
+    }
+
+    private SearchRequest buildFromSizeRequest(String indexName, String queryJson, int pageNum, int pageSize) {
+        if (pageNum < 0) {
+            pageNum = 0;
+        }
+        if (pageSize < 0) {
+            pageSize = 10;
+        }
+        if (pageNum * pageSize > 10_000) {
+            throw new RuntimeException("该方法只允许查询分页数在1w以内的数据");
+        }
+        SearchRequest searchRequest = new SearchRequest(indexName);
+        buildQueryJson(queryJson, searchRequest);
+        searchRequest.source().from((pageNum - 1) * pageSize).size(pageSize);
+        return searchRequest;
+    }
+
+    private SearchRequest buildScrollRequest(String indexName, String queryJson, TimeValue keepAlive, int pageSize) {
+        SearchRequest searchRequest = new SearchRequest(indexName).scroll(keepAlive);
+        buildQueryJson(queryJson, searchRequest);
+        searchRequest.source().size(pageSize);
+        return searchRequest;
+    }
+
+    /**
+     * 解析scroll分页结果，不满一页说明是最后一页，nextCursor为null，需要调用方clear掉快照
+     *
+     * @param pageCursor
+     * @param pageSize
+     * @param searchResponse
+     * @param hitMapper
+     * @return
+     */
+    private EsPage<String> toScrollPage(EsPageCursor pageCursor, int pageSize, SearchResponse searchResponse, Function<SearchHit, String> hitMapper) {
+        SearchHit[] hits = searchResponse.getHits().getHits();
+        String nextCursor = hits.length < pageSize ? null : pageCursor.next(null, searchResponse.getScrollId()).encode();
+        return new EsPage<>(getResults(searchResponse, hitMapper), nextCursor, searchResponse.getHits().getTotalHits().value);
+    }
+
+    private SearchRequest buildSearchAfterRequest(String indexName, String queryJson, int pageSize, EsPageCursor pageCursor) {
+        SearchRequest searchRequest = new SearchRequest(indexName);
+        buildQueryJson(queryJson, searchRequest);
+        searchRequest.source().sort("_index", SortOrder.ASC).sort("_id", SortOrder.ASC).size(pageSize);
+        if (pageCursor.getSortValues() != null) {
+            searchRequest.source().searchAfter(pageCursor.getSortValues());
+        }
+        return searchRequest;
+    }
+
+    /**
+     * 解析searchAfter分页结果，nextCursor中带上当前页最后一个hit的sortValues
+     *
+     * @param pageCursor
+     * @param pageSize
+     * @param searchResponse
+     * @param hitMapper
+     * @return
+     */
+    private EsPage<String> toSearchAfterPage(EsPageCursor pageCursor, int pageSize, SearchResponse searchResponse, Function<SearchHit, String> hitMapper) {
+        SearchHit[] hits = searchResponse.getHits().getHits();
+        String nextCursor = hits.length < pageSize ? null : pageCursor.next(hits[hits.length - 1].getSortValues(), null).encode();
+        return new EsPage<>(getResults(searchResponse, hitMapper), nextCursor, searchResponse.getHits().getTotalHits().value);
+    }
+
+    /**
+     * 按projection设置返回的_source、stored_fields、docvalue_fields，projection为null时返回完整的_source
+     *
+     * @param searchSourceBuilder
+     * @param projection
+     */
+    private static void applyProjection(SearchSourceBuilder searchSourceBuilder, EsProjection projection) {
+        if (projection == null) {
+            return;
+        }
+        //设置了stored_fields时es默认不返回_source，这里总是显式设置
+        searchSourceBuilder.fetchSource(toFetchSourceContext(projection));
+        if (projection.getStoredFields() != null) {
+            for (String storedField : projection.getStoredFields()) {
+                searchSourceBuilder.storedField(storedField);
+            }
+        }
+        if (projection.getDocValueFields() != null) {
+            for (String docValueField : projection.getDocValueFields()) {
+                searchSourceBuilder.docValueField(docValueField);
+            }
+        }
+    }
+
+    private static FetchSourceContext toFetchSourceContext(EsProjection projection) {
+        return new FetchSourceContext(projection.isFetchSource(), projection.getIncludes(), projection.getExcludes());
+    }
+
+    /**
+     * 没有stored_fields、docvalue_fields时直接取_source，否则把fields合并到_source里
+     *
+     * @param projection
+     * @return
+     */
+    private static Function<SearchHit, String> hitMapper(EsProjection projection) {
+        if (projection == null || !projection.hasFields()) {
+            return SearchHit::getSourceAsString;
+        }
+        return hit -> EsProjection.mergeFields(hit.getSourceAsString(), getFieldValues(hit.getFields()));
+    }
+
+    private static Function<GetResponse, String> docMapper(EsProjection projection) {
+        if (projection == null || !projection.hasFields()) {
+            return GetResponse::getSourceAsString;
+        }
+        return getResponse -> EsProjection.mergeFields(getResponse.getSourceAsString(), getFieldValues(getResponse.getFields()));
+    }
+
+    private static Map<String, List<Object>> getFieldValues(Map<String, DocumentField> fields) {
+        Map<String, List<Object>> res = new LinkedHashMap<>(fields.size() * 2);
+        for (DocumentField field : fields.values()) {
+            res.put(field.getName(), field.getValues());
+        }
+        return res;
+    }
+
+    private SearchRequest buildSortRequest(String indexName, String queryJson, String... sortFields) {
+        SearchRequest searchRequest = new SearchRequest(indexName);
+        buildQueryJson(queryJson, searchRequest);
+        for (String sortField : sortFields) {
+            searchRequest.source().sort(sortField, SortOrder.ASC);
+        }
+        return searchRequest;
+    }
+
+    private static SearchRequest buildMetricAggregationRequest(String indexName, String sumField) {
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder()
+                //设置size为0，就不返回hits了，只返回aggregation结果。
+                .size(0)
+                .aggregation(AggregationBuilders.sum("sum").field(sumField));
+        return new SearchRequest(indexName).source(searchSourceBuilder);
+    }
+
+    /**
+     * 只做聚合的请求直接用low level client发，高级客户端的SearchRequest没法设置filter_path。
+     * size为0不取hit，track_total_hits为false不统计命中总数，filter_path让es只返回aggregations和判断结果是否完整的分片数、timed_out，
+     * 省掉took、hits、分片失败详情这些字段的序列化、传输和解析
+     *
+     * @param indexName
+     * @param queryJson
+     * @param aggsJson
+     * @return
+     */
+    private Request buildAggregationRequest(String indexName, String queryJson, String aggsJson) {
+        if (StringUtils.isEmpty(aggsJson) || !JSONValidator.from(aggsJson).validate()) {
+            throw new RuntimeException("传入的aggsJson不能转换为json串，请检查");
+        }
+        StringBuilder body = new StringBuilder(64 + aggsJson.length() + StringUtils.length(queryJson))
+                .append("{\"size\":0,\"track_total_hits\":false");
+        if (StringUtils.isNotEmpty(queryJson)) {
+            if (!JSONValidator.from(queryJson).validate()) {
                 throw new RuntimeException("传入的queryJson不能转换为json串，请检查");
             }
-            SearchRequest searchRequest=new SearchRequest(indexName);
-            buildQueryJson(singleQueryJson,searchRequest);
-            searchRequest.source().size(100);
-            multiSearchRequest.add(searchRequest);
+            body.append(",\"query\":").append(queryJson);
         }
-        if (multiSearchRequest.requests().size()<=0){
-            return new LinkedList<>();
+        body.append(",\"aggs\":").append(aggsJson).append('}');
+        Request request = new Request("POST", "/" + indexName + "/_search");
+        request.addParameter("filter_path", "aggregations,timed_out,_shards.total,_shards.successful,_shards.failed");
+        request.setOptions(requestOptions);
+        setJsonBody(request, body.toString());
+        return request;
+    }
+
+    /**
+     * 把highLevelClient的查询条件序列化成请求体，有聚合时把aggsJson原样拼进去
+     *
+     * @param indexName
+     * @param source
+     * @param aggsJson
+     * @param filterPath 只让es返回的字段
+     * @return
+     */
+    private Request buildRawSearchRequest(String indexName, SearchSourceBuilder source, String aggsJson, String filterPath) {
+        String body = source.toString();
+        if (StringUtils.isNotEmpty(aggsJson)) {
+            if (!JSONValidator.from(aggsJson).validate()) {
+                throw new RuntimeException("传入的aggsJson不能转换为json串，请检查");
+            }
+            //source至少是{}
+            body = body.substring(0, body.length() - 1) + (body.length() > 2 ? "," : "") + "\"aggs\":" + aggsJson + "}";
         }
-        MultiSearchResponse.Item[] responses = new MultiSearchResponse.Item[0];
-        try {
-            responses = client.msearch(multiSearchRequest, RequestOptions.DEFAULT).getResponses();
+        Request request = new Request("POST", "/" + indexName + "/_search");
+        request.addParameter("filter_path", filterPath);
+        request.setOptions(requestOptions);
+        setJsonBody(request, body);
+        return request;
+    }
+
+    /**
+     * 设置low level请求的json请求体，开启压缩时按gzip压缩，es根据Content-Encoding解压
+     *
+     * @param request
+     * @param body
+     */
+    private void setJsonBody(Request request, String body) {
+        if (!clientConfig.isCompressionEnabled()) {
+            request.setJsonEntity(body);
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length() / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(body.getBytes(StandardCharsets.UTF_8));
         } catch (IOException e) {
-            e.printStackTrace();
-            return null;
+            //写到内存里不会有io异常
+            throw new UncheckedIOException(e);
         }
-        List<List<String>> res=new ArrayList<>();
-        for (MultiSearchResponse.Item respons : responses) {
-            if(respons.isFailure()){
+        ByteArrayEntity entity = new ByteArrayEntity(bytes.toByteArray(), ContentType.APPLICATION_JSON);
+        entity.setContentEncoding("gzip");
+        request.setEntity(entity);
+    }
+
+    /**
+     * 按字节切出aggregations，同时带上分片数和timed_out
+     *
+     * @param response
+     * @return
+     * @throws IOException
+     */
+    private static EsAggregationResult<String> getAggregationResult(Response response) throws IOException {
+        EsSearchResult<String> parsed = RawSearchResponseParser.parse(EntityUtils.toByteArray(response.getEntity()));
+        //没有任何聚合结果时返回{}
+        String aggregations = parsed.getAggregations() == null ? "{}" : parsed.getAggregations();
+        return new EsAggregationResult<>(aggregations, parsed.getTotalShards(), parsed.getSuccessfulShards(),
+                parsed.getFailedShards(), parsed.isTimedOut());
+    }
+
+    private static <T> EsAggregationResult<T> toAggregationResult(SearchResponse searchResponse, T value) {
+        return new EsAggregationResult<>(value, searchResponse.getTotalShards(), searchResponse.getSuccessfulShards(),
+                searchResponse.getFailedShards(), searchResponse.isTimedOut());
+    }
+
+    private static Double getMetricAggregation(SearchResponse searchResponse) {
+        Sum sum = searchResponse.getAggregations().get("sum");
+        return sum.getValue();
+    }
+
+    private static SearchRequest buildBulkAggregationRequest(String indexName, String groupField) {
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder()
+                //设置size为0，就不返回hits了，只返回aggregation结果。
+                .size(0)
+                .aggregation(AggregationBuilders.terms("groupby").field(groupField));
+        return new SearchRequest(indexName).source(searchSourceBuilder);
+    }
+
+    private static EsStringLongMap getBulkAggregation(SearchResponse searchResponse) {
+        Terms terms = searchResponse.getAggregations().get("groupby");
+        EsStringLongMap resMap = new EsStringLongMap(terms.getBuckets().size());
+        for (Terms.Bucket bucket : terms.getBuckets()) {
+            resMap.putLong(bucket.getKeyAsString(), bucket.getDocCount());
+        }
+        return resMap;
+    }
+
+    private static SearchRequest buildPipelineAggregationRequest(String indexName, String groupField, String sumField) {
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder()
+                //设置size为0，就不返回hits了，只返回aggregation结果。
+                .size(0)
+                .aggregation(AggregationBuilders.terms("groupby").field(groupField)
+                        .subAggregation(AggregationBuilders.sum("sum").field(sumField)));
+        return new SearchRequest(indexName).source(searchSourceBuilder);
+    }
+
+    private static EsStringDoubleMap getPipelineAggregation(SearchResponse searchResponse) {
+        Terms terms = searchResponse.getAggregations().get("groupby");
+        EsStringDoubleMap resMap = new EsStringDoubleMap(terms.getBuckets().size());
+        for (Terms.Bucket bucket : terms.getBuckets()) {
+            Sum sum = bucket.getAggregations().get("sum");
+            resMap.putDouble(bucket.getKeyAsString(), sum.getValue());
+        }
+        return resMap;
+    }
+
+    private static List<EsMultiSearchQuery> toMultiSearchQueries(String... queryJson) {
+        List<EsMultiSearchQuery> queries = new ArrayList<>(queryJson.length);
+        for (String singleQueryJson : queryJson) {
+            queries.add(new EsMultiSearchQuery(singleQueryJson));
+        }
+        return queries;
+    }
+
+    /**
+     * queryJson通过wrapperQuery原样发给es解析，不在本地校验，不合法的queryJson只会让对应的查询失败
+     *
+     * @param indexName
+     * @param queries
+     * @return
+     */
+    private MultiSearchRequest buildMultiSearchRequest(String indexName, List<EsMultiSearchQuery> queries) {
+        MultiSearchRequest multiSearchRequest = new MultiSearchRequest();
+        for (EsMultiSearchQuery query : queries) {
+            SearchRequest searchRequest = new SearchRequest(indexName);
+            buildQueryJson(query.getQueryJson(), searchRequest);
+            searchRequest.source().size(query.getSize())
+                    .fetchSource(new FetchSourceContext(query.isFetchSource(), query.getIncludes(), query.getExcludes()));
+            multiSearchRequest.add(searchRequest);
+        }
+        return multiSearchRequest;
+    }
+
+    /**
+     * 解析msearch结果，和请求的queryJson一一对应，失败的查询对应位置为null
+     *
+     * @param multiSearchResponse
+     * @return
+     */
+    private List<EsSearchResult<String>> getMultiSearchResStrings(MultiSearchResponse multiSearchResponse) {
+        List<EsSearchResult<String>> res = new ArrayList<>(multiSearchResponse.getResponses().length);
+        for (MultiSearchResponse.Item respons : multiSearchResponse.getResponses()) {
+            if (respons.isFailure()) {
                 res.add(null);
                 continue;
             }
-            List<String> resStrings = getResStrings(respons.getResponse());
-            res.add(resStrings);
+            res.add(getResStrings(respons.getResponse()));
         }
         return res;
     }
 
-    @Override
-    public void asyncSearch(String indexName) {
-        client.searchAsync(new SearchRequest(), RequestOptions.DEFAULT, new ActionListener<SearchResponse>() {
+    /**
+     * 为每个slice构建一个scroll fetcher，每个slice的请求只会在自己负责的那部分doc上scroll
+     *
+     * @param indexName
+     * @param queryJson
+     * @param scrollMinute
+     * @param pageSize
+     * @param slices
+     * @return
+     */
+    private List<ScrollPageFetcher<String>> buildSliceFetchers(String indexName, String queryJson, int scrollMinute, int pageSize, int slices) {
+        if (pageSize <= 0) {
+            pageSize = 10;
+        }
+        //es要求slice的max大于1
+        int sliceCount = Math.max(slices, 1);
+        List<ScrollPageFetcher<String>> fetchers = new ArrayList<>(sliceCount);
+        for (int i = 0; i < sliceCount; i++) {
+            SearchRequest searchRequest = new SearchRequest(indexName);
+            buildQueryJson(queryJson, searchRequest);
+            searchRequest.source().size(pageSize);
+            if (sliceCount > 1) {
+                searchRequest.source().slice(new SliceBuilder(i, sliceCount));
+            }
+            fetchers.add(new ScrollPageFetcher<>(client, requestOptions, searchRequest, TimeValue.timeValueMinutes(scrollMinute), SearchHit::getSourceAsString));
+        }
+        return fetchers;
+    }
+
+    /**
+     * clear掉scroll快照，减少es服务端内存占用
+     *
+     * @param scrollId
+     */
+    private void clearScroll(String scrollId) {
+        if (scrollId == null) {
+            return;
+        }
+        ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+        clearScrollRequest.addScrollId(scrollId);
+        try {
+            client.clearScroll(clearScrollRequest, requestOptions);
+        } catch (IOException e) {
+            log.warn("clearScroll异常,scrollId:{}", scrollId, e);
+        }
+    }
+
+    /**
+     * 异步clear掉scroll快照，用在es客户端的网络线程中
+     *
+     * @param scrollId
+     */
+    private void clearScrollAsync(String scrollId) {
+        if (scrollId == null) {
+            return;
+        }
+        ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+        clearScrollRequest.addScrollId(scrollId);
+        client.clearScrollAsync(clearScrollRequest, requestOptions, new ActionListener<ClearScrollResponse>() {
             @Override
-            public void onResponse(SearchResponse searchResponse) {
-                List<String> resStrings = getResStrings(searchResponse);
-                log.info("输出结果为:{}", resStrings);
+            public void onResponse(ClearScrollResponse clearScrollResponse) {
             }
 
             @Override
             public void onFailure(Exception e) {
-                log.error("异步请求出错", e);
+                log.warn("clearScroll异常,scrollId:{}", scrollId, e);
             }
         });
     }
 
-    private CredentialsProvider init() {
-        CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-        credentialsProvider.setCredentials(AuthScope.ANY,
-                new UsernamePasswordCredentials(clusterName, password));
-        return credentialsProvider;
+    /**
+     * 包装成懒加载迭代器，prefetchPages大于0时由后台线程预取
+     *
+     * @param pageFetcher
+     * @param prefetchPages
+     * @return
+     */
+    private static <T> EsHitIterator<T> toHitIterator(EsPageFetcher<T> pageFetcher, int prefetchPages) {
+        return new EsHitIterator<>(prefetchPages > 0 ? new EsPrefetchPageFetcher<>(pageFetcher, prefetchPages) : pageFetcher);
     }
 
     /**
@@ -520,17 +1794,70 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
      * @param searchResponse
      * @return
      */
-    private List<String> getResStrings(SearchResponse searchResponse) {
-        if (searchResponse == null || searchResponse.getSuccessfulShards() <= 0 || searchResponse.getHits().getTotalHits().value <= 0) {
-            return new LinkedList<>();
+    private EsSearchResult<String> getResStrings(SearchResponse searchResponse) {
+        return getResults(searchResponse, SearchHit::getSourceAsString);
+    }
+
+
+    /**
+     * 解析searchResponse，用hitMapper把每个hit转换成返回结果
+     *
+     * @param searchResponse
+     * @param hitMapper
+     * @return
+     */
+    private static <T> EsSearchResult<T> getResults(SearchResponse searchResponse, Function<SearchHit, T> hitMapper) {
+        if (searchResponse == null) {
+            return new EsSearchResult<>(0);
+        }
+        if (searchResponse.getSuccessfulShards() <= 0) {
+            return newSearchResult(searchResponse, 0);
+        }
+        SearchHit[] hits = searchResponse.getHits().getHits();
+        EsSearchResult<T> res = newSearchResult(searchResponse, hits.length);
+        for (SearchHit hit : hits) {
+            res.add(hitMapper.apply(hit));
         }
-        List<String> res = new LinkedList<>();
-        for (SearchHit hit : searchResponse.getHits().getHits()) {
-            res.add(hit.getSourceAsString());
+        return res;
+    }
+
+    /**
+     * 按hit数预分配结果列表，并带上searchResponse中的命中总数、耗时和分片情况
+     *
+     * @param searchResponse
+     * @param capacity
+     * @return
+     */
+    private static <T> EsSearchResult<T> newSearchResult(SearchResponse searchResponse, int capacity) {
+        EsSearchResult<T> res = new EsSearchResult<>(capacity);
+        //track_total_hits为false时es不返回总数
+        if (searchResponse.getHits().getTotalHits() != null) {
+            res.setTotalHits(searchResponse.getHits().getTotalHits().value);
         }
+        res.setTookMillis(searchResponse.getTook().millis());
+        res.setTimedOut(searchResponse.isTimedOut());
+        res.setTotalShards(searchResponse.getTotalShards());
+        res.setSuccessfulShards(searchResponse.getSuccessfulShards());
+        res.setFailedShards(searchResponse.getFailedShards());
+        res.setSkippedShards(searchResponse.getSkippedShards());
         return res;
     }
 
+    /**
+     * _source的字节直接反序列化成实体类。BytesArray的toBytesRef不会拷贝数据
+     *
+     * @param source
+     * @param type
+     * @return
+     */
+    private static <T> T decodeSource(BytesReference source, Class<T> type) {
+        if (source == null) {
+            return null;
+        }
+        BytesRef bytesRef = source.toBytesRef();
+        return EsSourceDecoder.decode(bytesRef.bytes, bytesRef.offset, bytesRef.length, type);
+    }
+
 
     /**
      * 构建queryBuilder
@@ -543,9 +1870,12 @@ public class EsOperatorImpl implements EsIndexOperator, EsQueryOperator, EsBaseO
         //QueryBuilder queryBuilder=new TermQueryBuilder("field","value");
         //searchRequestBuilder.setQuery(queryBuilder);
         //wrapperQuery只会包含查询json中query下的部分，像别的aggs、sort这些key下面的string是不会解析的-----
+        //7.x的new SearchRequest(indices)已经会初始化source，这里仍总是设置一个新的source，属于防御性写法，
+        //后面设置size、sort等参数时不依赖构造方法的这个行为，queryJson为空时也不用判空
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
         if (StringUtils.isNotEmpty(queryJson)) {
-            SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder().query(QueryBuilders.wrapperQuery(queryJson));
-            searchRequest.source(searchSourceBuilder);
+            searchSourceBuilder.query(QueryBuilders.wrapperQuery(queryJson));
         }
+        searchRequest.source(searchSourceBuilder);
     }
 }
@@ -0,0 +1,143 @@
+package com.example.elasticsearchdemo.esdemo7;
+
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.NodeSelector;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 按节点最近的响应耗时选择节点。每个节点的耗时取指数加权平均（EWMA），
+ * 耗时超过最快节点tolerance倍的节点从候选中去掉，剩下的节点由RestClient轮询，所以请求不会全部压到一个节点上。
+ * 被去掉的节点没有新的耗时样本，超过PROBE_INTERVAL_NANOS没有样本的节点重新作为候选，恢复后能重新分到请求。
+ * 还没有样本的节点（比如刚嗅探到的）始终是候选。可以同时去掉只有master角色的节点
+ **/
+class EwmaNodeSelector implements NodeSelector {
+
+    /**
+     * HttpContext中记录请求开始时间的key
+     */
+    static final String START_NANOS_ATTRIBUTE = EwmaNodeSelector.class.getName() + ".startNanos";
+
+    /**
+     * 新样本的权重，越大越快反映最近的耗时
+     */
+    private static final double ALPHA = 0.3;
+
+    private static final long PROBE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final boolean latencyAware;
+    private final double tolerance;
+    private final boolean skipDedicatedMasters;
+    private final ConcurrentHashMap<HttpHost, Latency> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * @param latencyAware         是否按耗时选择节点
+     * @param tolerance            允许的耗时倍数，不小于1
+     * @param skipDedicatedMasters 是否去掉只有master角色的节点
+     */
+    EwmaNodeSelector(boolean latencyAware, double tolerance, boolean skipDedicatedMasters) {
+        this.latencyAware = latencyAware;
+        this.tolerance = Math.max(tolerance, 1);
+        this.skipDedicatedMasters = skipDedicatedMasters;
+    }
+
+    /**
+     * 记录一次请求的耗时
+     *
+     * @param host
+     * @param millis
+     */
+    void record(HttpHost host, double millis) {
+        long now = System.nanoTime();
+        latencies.merge(host, new Latency(millis, now), (old, sample) -> new Latency(old.ewma + ALPHA * (sample.ewma - old.ewma), now));
+    }
+
+    /**
+     * 节点当前的耗时均值
+     *
+     * @param host
+     * @return 没有样本时返回NaN
+     */
+    double getLatency(HttpHost host) {
+        Latency latency = latencies.get(host);
+        return latency == null ? Double.NaN : latency.ewma;
+    }
+
+    @Override
+    public void select(Iterable<Node> nodes) {
+        if (skipDedicatedMasters) {
+            removeDedicatedMasters(nodes);
+        }
+        if (!latencyAware) {
+            return;
+        }
+        long now = System.nanoTime();
+        double min = Double.POSITIVE_INFINITY;
+        for (Node node : nodes) {
+            Latency latency = latencies.get(node.getHost());
+            if (latency != null) {
+                min = Math.min(min, latency.ewma);
+            }
+        }
+        if (min == Double.POSITIVE_INFINITY) {
+            return;
+        }
+        double limit = min * tolerance;
+        for (Iterator<Node> iterator = nodes.iterator(); iterator.hasNext(); ) {
+            Latency latency = latencies.get(iterator.next().getHost());
+            if (latency != null && latency.ewma > limit && now - latency.sampleNanos < PROBE_INTERVAL_NANOS) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * 只有全是master节点时才保留，否则RestClient会因为没有候选节点直接报错
+     */
+    private static void removeDedicatedMasters(Iterable<Node> nodes) {
+        boolean hasOthers = false;
+        for (Node node : nodes) {
+            if (!isDedicatedMaster(node)) {
+                hasOthers = true;
+                break;
+            }
+        }
+        if (!hasOthers) {
+            return;
+        }
+        for (Iterator<Node> iterator = nodes.iterator(); iterator.hasNext(); ) {
+            if (isDedicatedMaster(iterator.next())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * 没有嗅探过的节点不知道角色，当作普通节点
+     */
+    private static boolean isDedicatedMaster(Node node) {
+        Node.Roles roles = node.getRoles();
+        return roles != null && roles.isMasterEligible() && !roles.isData() && !roles.isIngest();
+    }
+
+    @Override
+    public String toString() {
+        return "EWMA_LATENCY";
+    }
+
+    private static final class Latency {
+        private final double ewma;
+        private final long sampleNanos;
+
+        private Latency(double ewma, long sampleNanos) {
+            this.ewma = ewma;
+            this.sampleNanos = sampleNanos;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.elasticsearchdemo.esdemo7;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 开启压缩时包装apache客户端，把请求体按gzip压缩后再发送，es根据Content-Encoding解压。
+ * RestClient在请求拦截器执行前就创建好了发送请求体的producer，拦截器里换entity不会改变实际发送的字节，
+ * 所以在execute时换成压缩后的entity重新创建producer。已经带Content-Encoding的请求体（setJsonBody压缩过的）不再压缩
+ **/
+class GzipRequestHttpAsyncClient extends CloseableHttpAsyncClient {
+
+    private static final Logger log = LoggerFactory.getLogger(GzipRequestHttpAsyncClient.class);
+
+    private final CloseableHttpAsyncClient delegate;
+
+    GzipRequestHttpAsyncClient(CloseableHttpAsyncClient delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public <T> Future<T> execute(HttpAsyncRequestProducer requestProducer, HttpAsyncResponseConsumer<T> responseConsumer,
+                                 HttpContext context, FutureCallback<T> callback) {
+        HttpAsyncRequestProducer compressedProducer;
+        try {
+            compressedProducer = compress(requestProducer);
+        } catch (IOException | HttpException e) {
+            log.error("压缩请求体异常", e);
+            if (callback != null) {
+                callback.failed(e);
+            }
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        return delegate.execute(compressedProducer, responseConsumer, context, callback);
+    }
+
+    /**
+     * 请求的entity换成gzip压缩后的字节，Content-Length、Content-Encoding由apache客户端按新的entity设置。
+     * RestClient重试其他节点时复用同一个请求，第二次已经带了Content-Encoding，不会重复压缩
+     *
+     * @param requestProducer
+     * @return 没有请求体或者已经压缩过时返回原来的producer
+     * @throws IOException
+     * @throws HttpException
+     */
+    private static HttpAsyncRequestProducer compress(HttpAsyncRequestProducer requestProducer) throws IOException, HttpException {
+        HttpRequest request = requestProducer.generateRequest();
+        if (!(request instanceof HttpEntityEnclosingRequest)) {
+            return requestProducer;
+        }
+        HttpEntityEnclosingRequest entityRequest = (HttpEntityEnclosingRequest) request;
+        HttpEntity entity = entityRequest.getEntity();
+        if (entity == null || entity.getContentLength() == 0 || entity.getContentEncoding() != null) {
+            return requestProducer;
+        }
+        long contentLength = entity.getContentLength();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(contentLength > 0 ? (int) Math.min(contentLength / 4 + 64, Integer.MAX_VALUE) : 1024);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            entity.writeTo(gzip);
+        }
+        ByteArrayEntity compressed = new ByteArrayEntity(bytes.toByteArray());
+        compressed.setContentType(entity.getContentType());
+        compressed.setContentEncoding("gzip");
+        entityRequest.setEntity(compressed);
+        //原来的producer持有未压缩的entity，不会再被使用
+        requestProducer.close();
+        return HttpAsyncMethods.create(requestProducer.getTarget(), request);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return delegate.isRunning();
+    }
+
+    @Override
+    public void start() {
+        delegate.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.elasticsearchdemo.esdemo7;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+import org.elasticsearch.client.HeapBufferedAsyncResponseConsumer;
+import org.elasticsearch.client.HttpAsyncResponseConsumerFactory;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 7.6的RestClient不会解压gzip响应，这里在响应体读完后把gzip的entity换成解压的entity，
+ * highLevelClient解析时边读边解压。内存里缓冲的是压缩后的字节，同样的缓冲上限能放下更大的响应
+ **/
+class GzipResponseConsumerFactory implements HttpAsyncResponseConsumerFactory {
+
+    /**
+     * 和RestClient默认的缓冲上限一致
+     */
+    private static final int BUFFER_LIMIT_BYTES = 100 * 1024 * 1024;
+
+    static final GzipResponseConsumerFactory INSTANCE = new GzipResponseConsumerFactory();
+
+    @Override
+    public HttpAsyncResponseConsumer<HttpResponse> createHttpAsyncResponseConsumer() {
+        return new HeapBufferedAsyncResponseConsumer(BUFFER_LIMIT_BYTES) {
+            @Override
+            protected HttpResponse buildResult(HttpContext context) throws Exception {
+                HttpResponse response = super.buildResult(context);
+                HttpEntity entity = response.getEntity();
+                Header contentEncoding = entity == null ? null : entity.getContentEncoding();
+                if (contentEncoding != null && "gzip".equalsIgnoreCase(contentEncoding.getValue())) {
+                    response.setEntity(new GzipDecompressingEntity(entity));
+                    response.removeHeaders(HTTP.CONTENT_ENCODING);
+                    response.removeHeaders(HTTP.CONTENT_LEN);
+                }
+                return response;
+            }
+        };
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.elasticsearchdemo.esdemo7;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import org.apache.http.HttpHost;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 定时通过_nodes/http拉取集群里开启了http的节点，替换RestClient的节点列表，
+ * 集群扩缩容后不用改配置。请求失败时会额外触发一次嗅探，多次失败只会排队一次。
+ * 官方的sniffer是单独的依赖，这里只用到它的核心逻辑，直接用low level client实现
+ **/
+class NodeSniffer implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(NodeSniffer.class);
+
+    private final RestClient restClient;
+    private final RequestOptions requestOptions;
+    private final String scheme;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean sniffOnFailurePending = new AtomicBoolean();
+
+    /**
+     * @param restClient     要更新节点列表的客户端，嗅探请求也通过它发送
+     * @param requestOptions
+     * @param scheme         嗅探到的节点使用的协议
+     */
+    NodeSniffer(RestClient restClient, RequestOptions requestOptions, String scheme) {
+        this.restClient = restClient;
+        this.requestOptions = requestOptions;
+        this.scheme = scheme;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "es-node-sniffer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 先同步嗅探一次，之后每隔intervalMillis嗅探一次
+     *
+     * @param intervalMillis
+     */
+    void start(long intervalMillis) {
+        sniff();
+        scheduler.scheduleWithFixedDelay(this::sniff, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 请求失败时调用，在后台线程嗅探一次
+     */
+    void sniffOnFailure() {
+        if (sniffOnFailurePending.compareAndSet(false, true) && !scheduler.isShutdown()) {
+            scheduler.execute(() -> {
+                sniffOnFailurePending.set(false);
+                sniff();
+            });
+        }
+    }
+
+    /**
+     * 拉取节点列表并替换，失败或没有可用节点时保留原来的节点列表
+     *
+     * @return 嗅探到的节点，失败时为空
+     */
+    List<Node> sniff() {
+        List<Node> nodes;
+        try {
+            Request request = new Request("GET", "/_nodes/http");
+            request.addParameter("filter_path", "nodes.*.name,nodes.*.version,nodes.*.roles,nodes.*.http.publish_address");
+            request.setOptions(requestOptions);
+            Response response = restClient.performRequest(request);
+            nodes = parseNodes(EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8), scheme);
+        } catch (IOException | RuntimeException e) {
+            log.error("嗅探es节点异常", e);
+            return new ArrayList<>(0);
+        }
+        if (nodes.isEmpty()) {
+            log.warn("没有嗅探到开启http的es节点，保留原来的节点列表");
+            return nodes;
+        }
+        restClient.setNodes(nodes);
+        log.debug("嗅探到es节点{}", nodes);
+        return nodes;
+    }
+
+    /**
+     * 解析_nodes/http的响应，没有http模块的节点会被跳过
+     *
+     * @param body
+     * @param scheme
+     * @return
+     */
+    static List<Node> parseNodes(String body, String scheme) {
+        JSONObject nodesJson = JSON.parseObject(body).getJSONObject("nodes");
+        if (nodesJson == null) {
+            return new ArrayList<>(0);
+        }
+        List<Node> nodes = new ArrayList<>(nodesJson.size());
+        for (Map.Entry<String, Object> entry : nodesJson.entrySet()) {
+            JSONObject nodeJson = (JSONObject) entry.getValue();
+            JSONObject http = nodeJson.getJSONObject("http");
+            if (http == null || http.getString("publish_address") == null) {
+                continue;
+            }
+            JSONArray roles = nodeJson.getJSONArray("roles");
+            TreeSet<String> roleSet = new TreeSet<>();
+            if (roles != null) {
+                roleSet.addAll(roles.toJavaList(String.class));
+            }
+            nodes.add(new Node(toHttpHost(http.getString("publish_address"), scheme), null,
+                    nodeJson.getString("name"), nodeJson.getString("version"), new Node.Roles(roleSet), null));
+        }
+        return nodes;
+    }
+
+    /**
+     * publish_address的格式是ip:port，节点配置了hostname时是hostname/ip:port，这里直接用ip，不再解析域名
+     */
+    private static HttpHost toHttpHost(String publishAddress, String scheme) {
+        String address = publishAddress.substring(publishAddress.indexOf('/') + 1);
+        int colon = address.lastIndexOf(':');
+        return new HttpHost(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)), scheme);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
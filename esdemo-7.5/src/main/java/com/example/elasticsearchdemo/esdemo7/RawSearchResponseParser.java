@@ -0,0 +1,209 @@
+package com.example.elasticsearchdemo.esdemo7;
+
+import com.example.elasticsearchdemo.esapi.EsDirectBufferPool;
+import com.example.elasticsearchdemo.esapi.EsHitBuffer;
+import com.example.elasticsearchdemo.esapi.entity.EsSearchResult;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 直接解析search响应体的字节，只按token往下走，不构建SearchResponse、SearchHit。
+ * 每个hit的_source和aggregations按字节偏移整段切出来转成字符串（或者直接拷贝到EsHitBuffer），其他字段只读took、timed_out、_shards和命中总数，剩下的直接跳过。
+ * _source是es返回的原始字节，和highLevelClient重新序列化的结果相比可能保留了写入时的空白
+ **/
+class RawSearchResponseParser {
+
+    /**
+     * JsonFactory线程安全，创建parser时复用它的符号表
+     */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private RawSearchResponseParser() {
+    }
+
+    /**
+     * @param body search响应体，已经解压
+     * @return
+     * @throws IOException 响应体不是合法的json
+     */
+    static EsSearchResult<String> parse(byte[] body) throws IOException {
+        EsSearchResult<String> res = new EsSearchResult<>(16);
+        parse(body, res, (offset, length) -> res.add(offset < 0 ? null : new String(body, offset, length, StandardCharsets.UTF_8)));
+        return res;
+    }
+
+    /**
+     * 每个hit的_source字节从响应体直接拷贝到堆外的EsHitBuffer，不创建String
+     *
+     * @param body search响应体，已经解压
+     * @param pool EsHitBuffer的内存块池
+     * @return 只带命中总数，解析失败时已经close
+     * @throws IOException 响应体不是合法的json
+     */
+    static EsHitBuffer parseToBuffer(byte[] body, EsDirectBufferPool pool) throws IOException {
+        EsHitBuffer hitBuffer = new EsHitBuffer(pool, 16);
+        EsSearchResult<String> stats = new EsSearchResult<>(0);
+        try {
+            parse(body, stats, (offset, length) -> hitBuffer.append(offset < 0 ? null : body, offset, length));
+        } catch (IOException | RuntimeException e) {
+            hitBuffer.close();
+            throw e;
+        }
+        hitBuffer.setTotalHits(stats.getTotalHits());
+        return hitBuffer;
+    }
+
+    /**
+     * @param body       search响应体
+     * @param res        写入命中总数、耗时、分片数和aggregations，hit不会加到里面
+     * @param sourceSink 每个hit的_source在body中的偏移和长度，没有_source时偏移为-1
+     * @throws IOException
+     */
+    private static void parse(byte[] body, EsSearchResult<?> res, SourceSink sourceSink) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("search响应不是json对象");
+            }
+            long took = 0;
+            boolean timedOut = false;
+            int[] shards = new int[4];
+            long totalHits = 0;
+            String aggregations = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "took":
+                        took = parser.getLongValue();
+                        break;
+                    case "timed_out":
+                        timedOut = parser.getBooleanValue();
+                        break;
+                    case "_shards":
+                        parseShards(parser, shards);
+                        break;
+                    case "hits":
+                        totalHits = parseHits(parser, sourceSink);
+                        break;
+                    case "aggregations":
+                        aggregations = slice(parser, body);
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            //filter_path下没有命中时es不返回hits，命中总数为0
+            res.setTotalHits(totalHits);
+            res.setTookMillis(took);
+            res.setTimedOut(timedOut);
+            res.setTotalShards(shards[0]);
+            res.setSuccessfulShards(shards[1]);
+            res.setSkippedShards(shards[2]);
+            res.setFailedShards(shards[3]);
+            res.setAggregations(aggregations);
+        }
+    }
+
+    private static void parseShards(JsonParser parser, int[] shards) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "total":
+                    shards[0] = parser.getIntValue();
+                    break;
+                case "successful":
+                    shards[1] = parser.getIntValue();
+                    break;
+                case "skipped":
+                    shards[2] = parser.getIntValue();
+                    break;
+                case "failed":
+                    shards[3] = parser.getIntValue();
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * @return 命中总数
+     */
+    private static long parseHits(JsonParser parser, SourceSink sourceSink) throws IOException {
+        long totalHits = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("total".equals(field)) {
+                //rest_total_hits_as_int=true时是数字，否则是{"value":..,"relation":..}
+                totalHits = token == JsonToken.VALUE_NUMBER_INT ? parser.getLongValue() : parseTotalValue(parser);
+            } else if ("hits".equals(field) && token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    parseSource(parser, sourceSink);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return totalHits;
+    }
+
+    private static long parseTotalValue(JsonParser parser) throws IOException {
+        long value = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("value".equals(field)) {
+                value = parser.getLongValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return value;
+    }
+
+    /**
+     * 只取一个hit里的_source，没有_source时偏移为-1，和SearchHit.getSourceAsString返回null一致
+     */
+    private static void parseSource(JsonParser parser, SourceSink sourceSink) throws IOException {
+        int start = -1;
+        int end = -1;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("_source".equals(field)) {
+                start = (int) parser.getTokenLocation().getByteOffset();
+                parser.skipChildren();
+                end = (int) parser.getCurrentLocation().getByteOffset();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        sourceSink.accept(start, end - start);
+    }
+
+    /**
+     * 当前token是对象或数组的开始，跳到它的结束，把中间的字节原样转成字符串
+     */
+    private static String slice(JsonParser parser, byte[] body) throws IOException {
+        int start = (int) parser.getTokenLocation().getByteOffset();
+        parser.skipChildren();
+        int end = (int) parser.getCurrentLocation().getByteOffset();
+        return new String(body, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 接收每个hit的_source在响应体中的位置
+     */
+    private interface SourceSink {
+        void accept(int offset, int length);
+    }
+}
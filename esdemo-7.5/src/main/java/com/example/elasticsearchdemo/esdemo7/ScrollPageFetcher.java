@@ -0,0 +1,82 @@
+package com.example.elasticsearchdemo.esdemo7;
+
+import com.example.elasticsearchdemo.esapi.EsPageFetcher;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 基于scroll的分页拉取，第一次走search创建快照，之后每次带着scrollId拉下一页
+ **/
+class ScrollPageFetcher<T> implements EsPageFetcher<T> {
+
+    private final RestHighLevelClient client;
+    private final RequestOptions requestOptions;
+    private final SearchRequest searchRequest;
+    private final TimeValue keepAlive;
+    private final Function<SearchHit, T> hitMapper;
+    private String scrollId;
+    private boolean finished;
+
+    /**
+     * @param client
+     * @param requestOptions
+     * @param searchRequest  已经设置好query、size的请求，scroll留存时间由这里统一设置
+     * @param keepAlive
+     * @param hitMapper      把每个hit转换成返回结果
+     */
+    ScrollPageFetcher(RestHighLevelClient client, RequestOptions requestOptions, SearchRequest searchRequest, TimeValue keepAlive, Function<SearchHit, T> hitMapper) {
+        this.client = client;
+        this.requestOptions = requestOptions;
+        this.searchRequest = searchRequest.scroll(keepAlive);
+        this.keepAlive = keepAlive;
+        this.hitMapper = hitMapper;
+    }
+
+    @Override
+    public List<T> nextPage() throws IOException {
+        if (finished) {
+            return Collections.emptyList();
+        }
+        SearchResponse searchResponse = scrollId == null
+                ? client.search(searchRequest, requestOptions)
+                : client.scroll(new SearchScrollRequest(scrollId).scroll(keepAlive), requestOptions);
+        scrollId = searchResponse.getScrollId();
+        SearchHit[] hits = searchResponse.getHits().getHits();
+        //不满一页说明已经是最后一页了，提前clear掉快照，省掉一次空请求
+        if (hits.length < searchRequest.source().size()) {
+            close();
+        }
+        List<T> page = new ArrayList<>(hits.length);
+        for (SearchHit hit : hits) {
+            page.add(hitMapper.apply(hit));
+        }
+        return page;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        if (scrollId == null) {
+            return;
+        }
+        ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+        clearScrollRequest.addScrollId(scrollId);
+        scrollId = null;
+        client.clearScroll(clearScrollRequest, requestOptions);
+    }
+}
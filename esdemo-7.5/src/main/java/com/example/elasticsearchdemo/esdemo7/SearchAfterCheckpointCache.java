@@ -0,0 +1,107 @@
+package com.example.elasticsearchdemo.esdemo7;
+
+import com.example.elasticsearchdemo.esapi.EsQueryNormalizer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: searchAfter跳页用的检查点缓存。按(索引、规范化后的queryJson、排序)分别记录每隔checkpointInterval页的起始sortValues，
+ * 跳到第n页时从不超过n的最近检查点开始翻，而不是每次都从第一页开始。
+ * 索引有增删时检查点对应的位置会偏移，所以每个查询的检查点都有ttl，过期后整体丢弃重新积累
+ **/
+class SearchAfterCheckpointCache {
+
+    /**
+     * 每隔多少页记录一个检查点
+     */
+    private final int checkpointInterval;
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Checkpoints> cache;
+
+    /**
+     * @param checkpointInterval 每隔多少页记录一个检查点
+     * @param maxQueries         最多缓存多少个查询的检查点，超过后按LRU淘汰
+     * @param ttlMillis          每个查询的检查点从第一次记录开始的存活时间
+     */
+    SearchAfterCheckpointCache(int checkpointInterval, int maxQueries, long ttlMillis) {
+        this.checkpointInterval = Math.max(checkpointInterval, 1);
+        this.ttlMillis = ttlMillis;
+        this.cache = new LinkedHashMap<String, Checkpoints>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Checkpoints> eldest) {
+                return size() > maxQueries;
+            }
+        };
+    }
+
+    /**
+     * 生成缓存key
+     *
+     * @param indexName
+     * @param queryJson
+     * @param sort      排序描述，排序不同检查点不能混用
+     * @return
+     */
+    static String key(String indexName, String queryJson, String sort) {
+        return indexName + '\n' + EsQueryNormalizer.normalize(queryJson) + '\n' + sort;
+    }
+
+    /**
+     * 查找不超过pageNum的最近检查点
+     *
+     * @param key
+     * @param pageNum
+     * @return 没有可用检查点时返回null
+     */
+    synchronized Map.Entry<Integer, Object[]> floor(String key, int pageNum) {
+        Checkpoints checkpoints = cache.get(key);
+        if (checkpoints == null) {
+            return null;
+        }
+        if (checkpoints.isExpired()) {
+            cache.remove(key);
+            return null;
+        }
+        return checkpoints.pages.floorEntry(pageNum);
+    }
+
+    /**
+     * 是否需要为该页记录检查点
+     *
+     * @param pageNum
+     * @return
+     */
+    boolean isCheckpoint(int pageNum) {
+        return pageNum > 1 && (pageNum - 1) % checkpointInterval == 0;
+    }
+
+    /**
+     * 记录检查点
+     *
+     * @param key
+     * @param pageNum    检查点对应的页码
+     * @param sortValues 请求pageNum页时searchAfter要带的sortValues，也就是上一页最后一个hit的sortValues
+     */
+    synchronized void put(String key, int pageNum, Object[] sortValues) {
+        Checkpoints checkpoints = cache.get(key);
+        if (checkpoints == null || checkpoints.isExpired()) {
+            checkpoints = new Checkpoints();
+            cache.put(key, checkpoints);
+        }
+        checkpoints.pages.put(pageNum, sortValues);
+    }
+
+    private class Checkpoints {
+        private final long createTime = System.currentTimeMillis();
+        private final TreeMap<Integer, Object[]> pages = new TreeMap<>();
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() - createTime > ttlMillis;
+        }
+    }
+}
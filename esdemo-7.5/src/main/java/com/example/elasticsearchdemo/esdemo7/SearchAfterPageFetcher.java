@@ -0,0 +1,66 @@
+package com.example.elasticsearchdemo.esdemo7;
+
+import com.example.elasticsearchdemo.esapi.EsPageFetcher;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.SearchHit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 基于searchAfter的分页拉取，每次用上一页最后一个hit的sortValues请求下一页，服务端不保留状态
+ **/
+class SearchAfterPageFetcher<T> implements EsPageFetcher<T> {
+
+    private final RestHighLevelClient client;
+    private final RequestOptions requestOptions;
+    private final SearchRequest searchRequest;
+    private final Function<SearchHit, T> hitMapper;
+    private boolean finished;
+
+    /**
+     * @param client
+     * @param requestOptions
+     * @param searchRequest  已经设置好query、sort、size的请求
+     * @param hitMapper      把每个hit转换成返回结果
+     */
+    SearchAfterPageFetcher(RestHighLevelClient client, RequestOptions requestOptions, SearchRequest searchRequest, Function<SearchHit, T> hitMapper) {
+        this.client = client;
+        this.requestOptions = requestOptions;
+        this.searchRequest = searchRequest;
+        this.hitMapper = hitMapper;
+    }
+
+    @Override
+    public List<T> nextPage() throws IOException {
+        if (finished) {
+            return Collections.emptyList();
+        }
+        SearchResponse searchResponse = client.search(searchRequest, requestOptions);
+        SearchHit[] hits = searchResponse.getHits().getHits();
+        if (hits.length < searchRequest.source().size()) {
+            finished = true;
+        } else {
+            searchRequest.source().searchAfter(hits[hits.length - 1].getSortValues());
+        }
+        List<T> page = new ArrayList<>(hits.length);
+        for (SearchHit hit : hits) {
+            page.add(hitMapper.apply(hit));
+        }
+        return page;
+    }
+
+    @Override
+    public void close() {
+        finished = true;
+    }
+}
@@ -0,0 +1,514 @@
+package com.example.elasticsearchdemo.esdemo7;
+
+import com.example.elasticsearchdemo.esapi.config.EsClientConfig;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpVersion;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.Credentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.methods.AbstractExecutionAwareRequest;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.impl.EnglishReasonPhraseCatalog;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.HttpAsyncContentProducer;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.apache.http.protocol.HttpProcessor;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 用jdk11的java.net.http.HttpClient实现apache的CloseableHttpAsyncClient，RestClient和highLevelClient不用改动就跑在jdk客户端上，
+ * 节点选择、失败重试、gzip解压仍由RestClient和responseConsumer完成。
+ * https时优先协商http2，同一个节点的并发请求复用一个连接；http时使用http1.1连接池，es本身不支持http2。
+ * 请求体直接把entity里的ByteBuffer交给HttpClient写socket，不再复制一份，堆外的buffer也原样写出；响应体按块交给responseConsumer，不先拼成完整的byte[]。
+ * 连接池大小和空闲时间由jdk.httpclient.connectionPoolSize、jdk.httpclient.keepalive.timeout系统属性控制，EsClientConfig里的连接池配置对它不生效。
+ * 超时和取消的语义和apache客户端不同：
+ * socketTimeoutMillis对应HttpRequest.timeout，是从发出请求到收到响应头的时限，不是socket两次读之间的超时，收到响应头后读响应体不再受它限制；
+ * RestClient取消请求时调用exchange.cancel(true)，jdk11上这只会把future标记为取消，不会中断底层的请求，连接要等es返回后才释放，jdk16起才会真正中断。
+ * 只在jdk11以上的profile里编译
+ **/
+class JdkHttpAsyncClient extends CloseableHttpAsyncClient {
+
+    private static final Logger log = LoggerFactory.getLogger(JdkHttpAsyncClient.class);
+
+    /**
+     * HttpClient自己维护的请求头，手动设置会报错
+     */
+    private static final Set<String> RESTRICTED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        Collections.addAll(RESTRICTED_HEADERS, "Connection", "Content-Length", "Expect", "Host", "Upgrade", "Transfer-Encoding");
+    }
+
+    private static final ProtocolVersion HTTP_2 = new ProtocolVersion("HTTP", 2, 0);
+
+    private static final IOControl NO_IO_CONTROL = new IOControl() {
+        @Override
+        public void requestInput() {
+        }
+
+        @Override
+        public void suspendInput() {
+        }
+
+        @Override
+        public void requestOutput() {
+        }
+
+        @Override
+        public void suspendOutput() {
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    };
+
+    private final ExecutorService executor;
+    private final HttpClient httpClient;
+    private final Duration requestTimeout;
+    private final CredentialsProvider credentialsProvider;
+    private final HttpProcessor httpProcessor;
+    private volatile boolean running;
+
+    /**
+     * @param config              超时和协议配置
+     * @param credentialsProvider 每个请求都直接带上basic认证，不等401
+     * @param httpProcessor       请求发出前、收到响应头时执行，可以为null
+     */
+    JdkHttpAsyncClient(EsClientConfig config, CredentialsProvider credentialsProvider, HttpProcessor httpProcessor) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "es-jdk-http-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.httpClient = HttpClient.newBuilder()
+                .version("https".equalsIgnoreCase(config.getScheme()) ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(config.getConnectTimeoutMillis()))
+                .executor(executor)
+                .build();
+        //到收到响应头为止的时限，不是socket读超时
+        this.requestTimeout = Duration.ofMillis(config.getSocketTimeoutMillis());
+        this.credentialsProvider = credentialsProvider;
+        this.httpProcessor = httpProcessor;
+    }
+
+    @Override
+    public <T> Future<T> execute(HttpAsyncRequestProducer requestProducer, HttpAsyncResponseConsumer<T> responseConsumer,
+                                 HttpContext context, FutureCallback<T> callback) {
+        BasicFuture<T> future = new BasicFuture<>(callback);
+        HttpContext localContext = context == null ? new BasicHttpContext() : context;
+        CompletableFuture<HttpResponse<Void>> exchange;
+        HttpRequest request;
+        try {
+            HttpHost target = requestProducer.getTarget();
+            request = requestProducer.generateRequest();
+            localContext.setAttribute(HttpCoreContext.HTTP_TARGET_HOST, target);
+            localContext.setAttribute(HttpCoreContext.HTTP_REQUEST, request);
+            if (httpProcessor != null) {
+                httpProcessor.process(request, localContext);
+            }
+            exchange = httpClient.sendAsync(toJdkRequest(target, request),
+                    responseInfo -> new ConsumerBodySubscriber<>(request, responseInfo, responseConsumer, httpProcessor, localContext));
+        } catch (IOException | HttpException | RuntimeException e) {
+            fail(requestProducer, responseConsumer, future, e);
+            return future;
+        }
+        if (request instanceof AbstractExecutionAwareRequest) {
+            //RestClient取消请求时调用abort，jdk11上只是不再等结果，底层的请求仍会执行完
+            ((AbstractExecutionAwareRequest) request).setCancellable(() -> exchange.cancel(true));
+        }
+        exchange.whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                if (cause instanceof CancellationException) {
+                    responseConsumer.cancel();
+                    future.cancel();
+                    close(requestProducer, responseConsumer);
+                } else {
+                    fail(requestProducer, responseConsumer, future, cause instanceof Exception ? (Exception) cause : new ExecutionException(cause));
+                }
+                return;
+            }
+            Exception exception = responseConsumer.getException();
+            if (exception != null) {
+                future.failed(exception);
+            } else {
+                future.completed(responseConsumer.getResult());
+            }
+            close(requestProducer, responseConsumer);
+        });
+        return future;
+    }
+
+    private java.net.http.HttpRequest toJdkRequest(HttpHost target, HttpRequest request) throws IOException {
+        String uri = request.getRequestLine().getUri();
+        java.net.http.HttpRequest.Builder builder = java.net.http.HttpRequest.newBuilder(URI.create(uri.startsWith("/") ? target.toURI() + uri : uri))
+                .timeout(requestTimeout);
+        for (Header header : request.getAllHeaders()) {
+            if (!RESTRICTED_HEADERS.contains(header.getName())) {
+                builder.header(header.getName(), header.getValue());
+            }
+        }
+        if (credentialsProvider != null && !request.containsHeader(HttpHeaders.AUTHORIZATION)) {
+            Credentials credentials = credentialsProvider.getCredentials(new AuthScope(target));
+            if (credentials != null) {
+                String password = credentials.getPassword() == null ? "null" : credentials.getPassword();
+                String token = credentials.getUserPrincipal().getName() + ":" + password;
+                builder.header(HttpHeaders.AUTHORIZATION, "Basic " + Base64.getEncoder().encodeToString(token.getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+        HttpEntity entity = request instanceof HttpEntityEnclosingRequest ? ((HttpEntityEnclosingRequest) request).getEntity() : null;
+        if (entity == null) {
+            return builder.method(request.getRequestLine().getMethod(), java.net.http.HttpRequest.BodyPublishers.noBody()).build();
+        }
+        //apache客户端由拦截器根据entity加上这两个请求头
+        if (entity.getContentType() != null && !request.containsHeader(HttpHeaders.CONTENT_TYPE)) {
+            builder.header(HttpHeaders.CONTENT_TYPE, entity.getContentType().getValue());
+        }
+        if (entity.getContentEncoding() != null && !request.containsHeader(HttpHeaders.CONTENT_ENCODING)) {
+            builder.header(HttpHeaders.CONTENT_ENCODING, entity.getContentEncoding().getValue());
+        }
+        return builder.method(request.getRequestLine().getMethod(), bodyPublisher(entity)).build();
+    }
+
+    /**
+     * NByteArrayEntity、NStringEntity等nio entity写出的是自己持有的ByteBuffer，直接拿来发送；其他entity读成byte[]
+     */
+    private static java.net.http.HttpRequest.BodyPublisher bodyPublisher(HttpEntity entity) throws IOException {
+        List<ByteBuffer> buffers = new ArrayList<>(1);
+        if (entity instanceof HttpAsyncContentProducer) {
+            BufferCollector collector = new BufferCollector(buffers);
+            while (!collector.isCompleted()) {
+                int collected = buffers.size();
+                ((HttpAsyncContentProducer) entity).produceContent(collector, NO_IO_CONTROL);
+                if (buffers.size() == collected && !collector.isCompleted()) {
+                    throw new IOException("请求体没有写完: " + entity);
+                }
+            }
+            //重试时从头开始写
+            ((HttpAsyncContentProducer) entity).close();
+        } else {
+            buffers.add(ByteBuffer.wrap(EntityUtils.toByteArray(entity)));
+        }
+        long contentLength = 0;
+        for (ByteBuffer buffer : buffers) {
+            contentLength += buffer.remaining();
+        }
+        if (contentLength == 0) {
+            return java.net.http.HttpRequest.BodyPublishers.noBody();
+        }
+        return java.net.http.HttpRequest.BodyPublishers.fromPublisher(new ByteBufferPublisher(buffers), contentLength);
+    }
+
+    private static <T> void fail(HttpAsyncRequestProducer requestProducer, HttpAsyncResponseConsumer<T> responseConsumer,
+                                 BasicFuture<T> future, Exception e) {
+        responseConsumer.failed(e);
+        future.failed(e);
+        close(requestProducer, responseConsumer);
+    }
+
+    private static void close(Closeable... closeables) {
+        for (Closeable closeable : closeables) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                log.error("关闭请求异常", e);
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        executor.shutdown();
+    }
+
+    /**
+     * 收集entity写出的ByteBuffer，只记录位置，不复制内容
+     */
+    private static final class BufferCollector implements ContentEncoder {
+        private final List<ByteBuffer> buffers;
+        private boolean completed;
+
+        private BufferCollector(List<ByteBuffer> buffers) {
+            this.buffers = buffers;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int remaining = src.remaining();
+            buffers.add(src.slice());
+            src.position(src.limit());
+            return remaining;
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+        }
+
+        @Override
+        public boolean isCompleted() {
+            return completed;
+        }
+    }
+
+    /**
+     * 按需发出请求体的ByteBuffer，HttpClient因为认证、重定向重发时会重新订阅，每次订阅都从头发
+     */
+    private static final class ByteBufferPublisher implements Flow.Publisher<ByteBuffer> {
+        private final List<ByteBuffer> buffers;
+
+        private ByteBufferPublisher(List<ByteBuffer> buffers) {
+            this.buffers = buffers;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                private final AtomicLong demand = new AtomicLong();
+                private int index;
+                private volatile boolean done;
+
+                @Override
+                public void request(long n) {
+                    if (done) {
+                        return;
+                    }
+                    if (n <= 0) {
+                        done = true;
+                        subscriber.onError(new IllegalArgumentException("request必须大于0: " + n));
+                        return;
+                    }
+                    //已经有线程在发送时只增加需求量，由它继续发
+                    if (demand.getAndUpdate(d -> d + n < 0 ? Long.MAX_VALUE : d + n) > 0) {
+                        return;
+                    }
+                    long emitted;
+                    do {
+                        emitted = 0;
+                        long requested = demand.get();
+                        while (emitted < requested && index < buffers.size() && !done) {
+                            subscriber.onNext(buffers.get(index++).duplicate());
+                            emitted++;
+                        }
+                        if (index == buffers.size() && !done) {
+                            done = true;
+                            subscriber.onComplete();
+                            return;
+                        }
+                    } while (demand.addAndGet(-emitted) > 0 && !done);
+                }
+
+                @Override
+                public void cancel() {
+                    done = true;
+                }
+            });
+        }
+    }
+
+    /**
+     * 把jdk的响应转换成apache的响应交给responseConsumer，响应体每收到一块就交给responseConsumer缓冲
+     */
+    private static final class ConsumerBodySubscriber<T> implements HttpResponse.BodySubscriber<Void> {
+        private final HttpAsyncResponseConsumer<T> responseConsumer;
+        private final HttpContext context;
+        private final CompletableFuture<Void> body = new CompletableFuture<>();
+        private final BufferDecoder decoder = new BufferDecoder();
+        private Flow.Subscription subscription;
+        private Exception receiveException;
+        private boolean hasEntity;
+
+        private ConsumerBodySubscriber(HttpRequest request, HttpResponse.ResponseInfo responseInfo, HttpAsyncResponseConsumer<T> responseConsumer,
+                                      HttpProcessor httpProcessor, HttpContext context) {
+            this.responseConsumer = responseConsumer;
+            this.context = context;
+            try {
+                org.apache.http.HttpResponse response = toApacheResponse(request, responseInfo);
+                hasEntity = response.getEntity() != null;
+                context.setAttribute(HttpCoreContext.HTTP_RESPONSE, response);
+                if (httpProcessor != null) {
+                    httpProcessor.process(response, context);
+                }
+                responseConsumer.responseReceived(response);
+            } catch (IOException | HttpException | RuntimeException e) {
+                receiveException = e;
+            }
+        }
+
+        private static org.apache.http.HttpResponse toApacheResponse(HttpRequest request, HttpResponse.ResponseInfo responseInfo) {
+            int statusCode = responseInfo.statusCode();
+            BasicHttpResponse response = new BasicHttpResponse(new BasicStatusLine(
+                    responseInfo.version() == HttpClient.Version.HTTP_2 ? HTTP_2 : HttpVersion.HTTP_1_1,
+                    statusCode, EnglishReasonPhraseCatalog.INSTANCE.getReason(statusCode, Locale.ENGLISH)));
+            responseInfo.headers().map().forEach((name, values) -> {
+                //http2的伪头
+                if (!name.startsWith(":")) {
+                    values.forEach(value -> response.addHeader(name, value));
+                }
+            });
+            boolean hasBody = !"HEAD".equalsIgnoreCase(request.getRequestLine().getMethod())
+                    && statusCode >= 200 && statusCode != 204 && statusCode != 304;
+            if (hasBody) {
+                BasicHttpEntity entity = new BasicHttpEntity();
+                entity.setContentLength(responseInfo.headers().firstValueAsLong(HttpHeaders.CONTENT_LENGTH).orElse(-1));
+                entity.setContentType(response.getFirstHeader(HttpHeaders.CONTENT_TYPE));
+                entity.setContentEncoding(response.getFirstHeader(HttpHeaders.CONTENT_ENCODING));
+                response.setEntity(entity);
+            }
+            return response;
+        }
+
+        @Override
+        public CompletionStage<Void> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (receiveException != null) {
+                subscription.cancel();
+                body.completeExceptionally(receiveException);
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            try {
+                for (ByteBuffer item : items) {
+                    if (!hasEntity) {
+                        break;
+                    }
+                    decoder.current = item;
+                    while (item.hasRemaining() && !responseConsumer.isDone()) {
+                        int position = item.position();
+                        responseConsumer.consumeContent(decoder, NO_IO_CONTROL);
+                        if (item.position() == position) {
+                            break;
+                        }
+                    }
+                }
+                subscription.request(1);
+            } catch (IOException | RuntimeException e) {
+                subscription.cancel();
+                body.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            body.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (body.isDone()) {
+                return;
+            }
+            try {
+                decoder.current = null;
+                decoder.completed = true;
+                if (!responseConsumer.isDone()) {
+                    if (hasEntity) {
+                        responseConsumer.consumeContent(decoder, NO_IO_CONTROL);
+                    }
+                    responseConsumer.responseCompleted(context);
+                }
+                body.complete(null);
+            } catch (IOException | RuntimeException e) {
+                body.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * 从jdk交过来的ByteBuffer读取响应体
+     */
+    private static final class BufferDecoder implements ContentDecoder {
+        private ByteBuffer current;
+        private boolean completed;
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (current == null || !current.hasRemaining()) {
+                return completed ? -1 : 0;
+            }
+            int length = Math.min(dst.remaining(), current.remaining());
+            ByteBuffer slice = current.slice();
+            slice.limit(length);
+            dst.put(slice);
+            current.position(current.position() + length);
+            return length;
+        }
+
+        @Override
+        public boolean isCompleted() {
+            return completed;
+        }
+    }
+}
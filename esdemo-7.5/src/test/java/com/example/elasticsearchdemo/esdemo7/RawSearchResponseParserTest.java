@@ -0,0 +1,96 @@
+package com.example.elasticsearchdemo.esdemo7;
+
+import com.example.elasticsearchdemo.esapi.EsDirectBufferPool;
+import com.example.elasticsearchdemo.esapi.EsHitBuffer;
+import com.example.elasticsearchdemo.esapi.entity.EsSearchResult;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @program: elasticsearch-demo
+ * @date: 2026/10/18
+ * @author: gaorunding1
+ * @description: 按字节解析固定的search响应体，不需要es集群
+ **/
+public class RawSearchResponseParserTest {
+
+    private static final String CHINESE_SOURCE = "{\"title\":\"中文标题\",\"emoji\":\"😀\",\"tags\":[\"é\",\"ß\"]}";
+
+    private static final String BODY = "{\"took\":12,\"timed_out\":false,"
+            + "\"_shards\":{\"total\":5,\"successful\":4,\"skipped\":1,\"failed\":1,\"failures\":[{\"reason\":{\"type\":\"x\"}}]},"
+            + "\"hits\":{\"total\":{\"value\":1234,\"relation\":\"gte\"},\"max_score\":1.0,\"hits\":["
+            + "{\"_index\":\"i\",\"_id\":\"1\",\"_source\":" + CHINESE_SOURCE + "},"
+            + "{\"_index\":\"i\",\"_id\":\"2\",\"_score\":null},"
+            + "{\"_index\":\"i\",\"_id\":\"3\",\"_source\":{ \"n\" : [1, {\"m\":2}] },\"sort\":[3]}]},"
+            + "\"aggregations\":{\"names\":{\"buckets\":[{\"key\":\"张三\",\"doc_count\":2}]}}}";
+
+    private static byte[] utf8(String body) {
+        return body.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testParse() throws IOException {
+        EsSearchResult<String> result = RawSearchResponseParser.parse(utf8(BODY));
+        Assertions.assertEquals(3, result.size());
+        //多字节的utf8按字节偏移切出来，解码后和原文一致
+        Assertions.assertEquals(CHINESE_SOURCE, result.get(0));
+        //没有_source的hit占一个位置，为null
+        Assertions.assertNull(result.get(1));
+        //原样保留es返回的空白
+        Assertions.assertEquals("{ \"n\" : [1, {\"m\":2}] }", result.get(2));
+        Assertions.assertEquals(1234, result.getTotalHits());
+        Assertions.assertEquals(12, result.getTookMillis());
+        Assertions.assertFalse(result.isTimedOut());
+        Assertions.assertEquals(5, result.getTotalShards());
+        Assertions.assertEquals(4, result.getSuccessfulShards());
+        Assertions.assertEquals(1, result.getSkippedShards());
+        Assertions.assertEquals(1, result.getFailedShards());
+        Assertions.assertEquals("{\"names\":{\"buckets\":[{\"key\":\"张三\",\"doc_count\":2}]}}", result.getAggregations());
+    }
+
+    @Test
+    public void testTotalHitsAsInt() throws IOException {
+        //rest_total_hits_as_int=true时total是数字，没有请求聚合时不返回aggregations
+        EsSearchResult<String> result = RawSearchResponseParser.parse(utf8(
+                "{\"timed_out\":true,\"hits\":{\"total\":42,\"hits\":[{\"_source\":{\"a\":1}}]}}"));
+        Assertions.assertEquals(42, result.getTotalHits());
+        Assertions.assertEquals(1, result.size());
+        Assertions.assertEquals("{\"a\":1}", result.get(0));
+        Assertions.assertTrue(result.isTimedOut());
+        Assertions.assertNull(result.getAggregations());
+    }
+
+    @Test
+    public void testWithoutHits() throws IOException {
+        //filter_path下只做聚合、没有命中时es不返回hits
+        EsSearchResult<String> result = RawSearchResponseParser.parse(utf8(
+                "{\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},\"aggregations\":{\"sum\":{\"value\":3.0}}}"));
+        Assertions.assertTrue(result.isEmpty());
+        Assertions.assertEquals(0, result.getTotalHits());
+        Assertions.assertEquals("{\"sum\":{\"value\":3.0}}", result.getAggregations());
+        Assertions.assertTrue(RawSearchResponseParser.parse(utf8("{}")).isEmpty());
+    }
+
+    @Test
+    public void testInvalidBody() {
+        Assertions.assertThrows(IOException.class, () -> RawSearchResponseParser.parse(utf8("[]")));
+        Assertions.assertThrows(IOException.class, () -> RawSearchResponseParser.parse(utf8("{\"hits\":{\"hits\":[{\"_source\":{")));
+    }
+
+    @Test
+    public void testParseToBuffer() throws IOException {
+        try (EsHitBuffer hitBuffer = RawSearchResponseParser.parseToBuffer(utf8(BODY), EsDirectBufferPool.DEFAULT)) {
+            Assertions.assertEquals(3, hitBuffer.size());
+            Assertions.assertEquals(1234, hitBuffer.getTotalHits());
+            Assertions.assertEquals(CHINESE_SOURCE, hitBuffer.sourceAsString(0));
+            Assertions.assertEquals(utf8(CHINESE_SOURCE).length, hitBuffer.source(0).remaining());
+            Assertions.assertNull(hitBuffer.source(1));
+            Assertions.assertEquals("{ \"n\" : [1, {\"m\":2}] }", hitBuffer.sourceAsString(2));
+        }
+        Assertions.assertThrows(IOException.class,
+                () -> RawSearchResponseParser.parseToBuffer(utf8("{\"hits\":{\"hits\":[{\"_source\":{}},{\"_source\":{"), EsDirectBufferPool.DEFAULT));
+    }
+}